@@ -1,7 +0,0 @@
-package com.snap
-
-import android.opengl.Matrix
-
-fun identityMatrix() = FloatArray(16).apply {
-    Matrix.setIdentityM(this, 0)
-}
\ No newline at end of file
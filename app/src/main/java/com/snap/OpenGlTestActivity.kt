@@ -6,7 +6,10 @@ import android.opengl.GLSurfaceView
 import android.os.Bundle
 import android.support.v7.app.AppCompatActivity
 import android.widget.Toast
+import com.snap.model.GlContext
+import com.snap.model.shading.ProgramBinaryCache
 import com.snap.renderers.RotatingTrianglesRenderer
+import java.io.File
 
 class OpenGlTestActivity : AppCompatActivity() {
 
@@ -26,6 +29,7 @@ class OpenGlTestActivity : AppCompatActivity() {
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
+        GlContext.current.programBinaryCache = ProgramBinaryCache(File(cacheDir, "programs"))
         glSurfaceView = GLSurfaceView(this)
 
         setupSurfaceView()
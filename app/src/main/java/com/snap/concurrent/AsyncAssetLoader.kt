@@ -0,0 +1,145 @@
+package com.snap.concurrent
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Second half of loading an asset - sends data decoded by a worker to GL. Runs on the GL thread.
+ */
+interface AssetUpload<in T, out R> {
+
+    /**
+     * Bytes [data] sends to GL, charged against byte budget of the frame.
+     */
+    fun sizeInBytes(data: T): Int
+
+    fun upload(data: T): R
+}
+
+/**
+ * Loads assets in two steps: decoding (bitmaps, vertex data, ...) on [workers], then uploading the
+ * decoded data on the GL thread from [uploadReady], called once per frame.
+ *
+ * Each frame uploads what fits into [frameTimeBudgetNanos] and [frameByteBudget], so a big scene is
+ * loaded over several frames rather than freezing the surface. At least one asset is uploaded per call,
+ * so an asset bigger than the budget still gets through.
+ */
+class AsyncAssetLoader @JvmOverloads constructor(
+        val frameTimeBudgetNanos: Long = TimeUnit.MILLISECONDS.toNanos(4),
+        val frameByteBudget: Int = 4 * 1024 * 1024,
+        private val workers: ExecutorService = ParallelFor.newWorkerPool(defaultWorkerCount, "asset-loader")) {
+
+    private inner class PendingAsset<T, R>(decode: Callable<T>, private val upload: AssetUpload<T, R>) {
+
+        val decoded = object : FutureTask<T>(decode) {
+            override fun done() {
+                ready.add(this@PendingAsset)
+            }
+        }
+
+        val uploaded = object : FutureTask<R>(Callable { upload.upload(decodedValue()) }) {
+            override fun cancel(mayInterruptIfRunning: Boolean): Boolean {
+                decoded.cancel(mayInterruptIfRunning)
+                return super.cancel(mayInterruptIfRunning)
+            }
+        }
+
+        /**
+         * Failed and cancelled assets cost nothing - their upload only completes [uploaded].
+         */
+        fun sizeInBytes(): Int {
+            if (decoded.isCancelled || uploaded.isDone) {
+                return 0
+            }
+            return try {
+                upload.sizeInBytes(decoded.get())
+            } catch (e: ExecutionException) {
+                0
+            }
+        }
+
+        private fun decodedValue(): T {
+            try {
+                return decoded.get()
+            } catch (e: ExecutionException) {
+                throw e.cause as? Exception ?: e
+            }
+        }
+    }
+
+    /**
+     * Decoded assets waiting for upload, in order of decoding.
+     */
+    private val ready = ConcurrentLinkedQueue<PendingAsset<*, *>>()
+
+    private val pending = AtomicInteger()
+
+    /**
+     * Assets loaded but not uploaded yet.
+     */
+    val pendingCount: Int
+        get() = pending.get()
+
+    /**
+     * Assets decoded and waiting for [uploadReady].
+     */
+    val readyCount: Int
+        get() = ready.size
+
+    /**
+     * Bytes uploaded since creation. Read on the GL thread.
+     */
+    var uploadedBytes = 0L
+        private set
+
+    /**
+     * Starts decoding with [decode] on a worker. Returned future completes once [upload] has run on the GL
+     * thread, with its result or failure of either step. Cancelling it cancels the decoding too.
+     */
+    fun <T, R> load(decode: Callable<T>, upload: AssetUpload<T, R>): Future<R> {
+        val asset = PendingAsset(decode, upload)
+        pending.incrementAndGet()
+        workers.execute(asset.decoded)
+        return asset.uploaded
+    }
+
+    /**
+     * Uploads decoded assets within budgets of a frame. Has to be called on the GL thread. Returns number of
+     * assets completed.
+     */
+    fun uploadReady(): Int {
+        val start = System.nanoTime()
+        var bytes = 0L
+        var count = 0
+        while (true) {
+            val asset = ready.peek() ?: break
+            val size = asset.sizeInBytes()
+            if (count > 0 && (bytes + size > frameByteBudget || System.nanoTime() - start >= frameTimeBudgetNanos)) {
+                break
+            }
+            ready.poll()
+            pending.decrementAndGet()
+            asset.uploaded.run()
+            bytes += size
+            count++
+        }
+        uploadedBytes += bytes
+        return count
+    }
+
+    fun shutdown() {
+        workers.shutdown()
+    }
+
+    override fun toString() = "AsyncAssetLoader($pendingCount pending, $uploadedBytes bytes uploaded)"
+
+    private companion object {
+        val defaultWorkerCount = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1)
+    }
+}
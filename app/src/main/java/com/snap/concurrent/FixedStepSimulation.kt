@@ -0,0 +1,160 @@
+package com.snap.concurrent
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * State of a simulated world advanced in steps of fixed length.
+ */
+interface Simulation<S> {
+
+    /**
+     * Returns state [stepSeconds] after [state]. Must not modify [state] - renderer may still be reading it.
+     */
+    fun step(state: S, stepSeconds: Float): S
+}
+
+/**
+ * Two latest states published by [FixedStepSimulation] - [latest] at [latestTimeNanos], [previous] a step
+ * before. Immutable, so the renderer reads a consistent pair however the simulation goes on meanwhile.
+ */
+class Snapshots<out S>(val previous: S,
+                       val latest: S,
+                       val latestTimeNanos: Long,
+                       val stepNanos: Long,
+                       val tick: Long) {
+
+    /**
+     * Fraction of the way from [previous] to [latest] to draw at [nowNanos], in [0, 1]. Drawn states
+     * trail the simulation by a step, so frames show motion of even speed whenever they come.
+     */
+    fun alpha(nowNanos: Long): Float {
+        val alpha = (nowNanos - latestTimeNanos).toFloat() / stepNanos
+        return Math.min(Math.max(alpha, 0f), 1f)
+    }
+}
+
+/**
+ * Runs [simulation] on its own thread at a fixed rate of a step per [stepNanos], whatever the frame rate
+ * is - neither a slow frame slows the simulation down nor a slow step the frames.
+ *
+ * Every step publishes new [Snapshots] by a single atomic reference swap, the renderer takes the latest
+ * with [snapshots] and interpolates between its two states by [Snapshots.alpha]. States are never modified
+ * once published, so no locks are needed.
+ *
+ * When the thread falls behind, e.g. while the process was in background, at most [maxStepsPerUpdate]
+ * steps are caught up at once and the rest of the time is dropped - counted in [droppedStepCount].
+ */
+class FixedStepSimulation<S> @JvmOverloads constructor(
+        private val simulation: Simulation<S>,
+        initialState: S,
+        val stepNanos: Long = TimeUnit.SECONDS.toNanos(1) / 60,
+        val maxStepsPerUpdate: Int = 5,
+        private val clock: () -> Long = { System.nanoTime() }) {
+
+    init {
+        if (stepNanos <= 0 || maxStepsPerUpdate <= 0) {
+            throw IllegalArgumentException("Step of $stepNanos ns, $maxStepsPerUpdate steps per update " +
+                    "is not a valid rate.")
+        }
+    }
+
+    private val stepSeconds = stepNanos.toFloat() / TimeUnit.SECONDS.toNanos(1)
+
+    private val handoff = AtomicReference(Snapshots(initialState, initialState, clock(), stepNanos, 0))
+
+    /**
+     * Scheduled time of the next step. Touched only by the thread advancing the simulation.
+     */
+    private var nextStepNanos = handoff.get().latestTimeNanos + stepNanos
+
+    @Volatile
+    private var thread: Thread? = null
+
+    /**
+     * Steps skipped because the simulation could not keep up.
+     */
+    @Volatile
+    var droppedStepCount = 0L
+        private set
+
+    /**
+     * States of the two latest steps. Safe to call from any thread.
+     */
+    val snapshots: Snapshots<S>
+        get() = handoff.get()
+
+    val isRunning: Boolean
+        get() = thread != null
+
+    /**
+     * Starts the simulation thread, unless it is running already. Time spent stopped is skipped - the
+     * simulation goes on from its latest state.
+     */
+    @Synchronized
+    fun start() {
+        if (thread != null) {
+            return
+        }
+        restartAt(clock())
+        thread = Thread(Runnable { run() }, "simulation-${threadCounter.incrementAndGet()}").apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    /**
+     * Stops the simulation thread and waits for it to finish its step.
+     */
+    @Synchronized
+    fun stop() {
+        val thread = this.thread ?: return
+        this.thread = null
+        thread.interrupt()
+        thread.join()
+    }
+
+    /**
+     * Runs steps scheduled up to [nowNanos] and returns their number. Called by the simulation thread - call
+     * it directly only to drive a simulation which was not started.
+     */
+    fun advanceTo(nowNanos: Long): Int {
+        var steps = 0
+        while (nextStepNanos <= nowNanos && steps < maxStepsPerUpdate) {
+            val current = handoff.get()
+            handoff.set(Snapshots(current.latest, simulation.step(current.latest, stepSeconds), nextStepNanos,
+                    stepNanos, current.tick + 1))
+            nextStepNanos += stepNanos
+            steps++
+        }
+        if (nextStepNanos <= nowNanos) {
+            val dropped = (nowNanos - nextStepNanos) / stepNanos + 1
+            droppedStepCount += dropped
+            restartAt(nowNanos)
+        }
+        return steps
+    }
+
+    private fun restartAt(nowNanos: Long) {
+        val current = handoff.get()
+        // without previous state to move from, the latest one is drawn until the next step
+        handoff.set(Snapshots(current.latest, current.latest, nowNanos, stepNanos, current.tick))
+        nextStepNanos = nowNanos + stepNanos
+    }
+
+    private fun run() {
+        while (!Thread.currentThread().isInterrupted) {
+            advanceTo(clock())
+            val waitNanos = nextStepNanos - clock()
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos)
+            }
+        }
+    }
+
+    private companion object {
+        val threadCounter = AtomicInteger()
+    }
+}
@@ -0,0 +1,90 @@
+package com.snap.concurrent
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Work on a contiguous range of indices - [from] inclusive, [to] exclusive.
+ */
+interface RangeTask {
+
+    fun run(from: Int, to: Int)
+}
+
+/**
+ * Splits index range into [parallelism] contiguous chunks - one of them is processed by the calling
+ * thread, the rest by [executor] - and waits for all of them.
+ *
+ * Plays the role of fork/join for flat data-parallel loops. ForkJoinPool itself needs API 21, while
+ * minSdk is 16. Each call allocates a latch and a task per extra chunk, so use it only where the loop
+ * is big enough to be worth it.
+ */
+class ParallelFor(val parallelism: Int = Runtime.getRuntime().availableProcessors(),
+                  private val executor: ExecutorService = newWorkerPool(parallelism - 1)) {
+
+    init {
+        if (parallelism < 1) {
+            throw IllegalArgumentException("Parallelism has to be positive, not $parallelism.")
+        }
+    }
+
+    /**
+     * Runs [task] over [0, [count]). The first failure of any chunk is rethrown on the calling thread
+     * once all chunks are done.
+     */
+    fun run(count: Int, task: RangeTask) {
+        val chunks = Math.min(parallelism, count)
+        if (chunks <= 1) {
+            task.run(0, count)
+            return
+        }
+        val pending = CountDownLatch(chunks - 1)
+        val failure = AtomicReference<Throwable>()
+        for (chunk in 1 until chunks) {
+            val from = chunkStart(count, chunks, chunk)
+            val to = chunkStart(count, chunks, chunk + 1)
+            executor.execute {
+                try {
+                    task.run(from, to)
+                } catch (t: Throwable) {
+                    failure.compareAndSet(null, t)
+                } finally {
+                    pending.countDown()
+                }
+            }
+        }
+        try {
+            task.run(0, chunkStart(count, chunks, 1))
+        } catch (t: Throwable) {
+            failure.compareAndSet(null, t)
+        }
+        pending.await()
+        val firstFailure = failure.get() ?: return
+        throw RuntimeException("Parallel task failed.", firstFailure)
+    }
+
+    fun shutdown() {
+        executor.shutdown()
+    }
+
+    private fun chunkStart(count: Int, chunks: Int, chunk: Int) = (count.toLong() * chunk / chunks).toInt()
+
+    companion object {
+
+        private val workerCounter = AtomicInteger()
+
+        /**
+         * Daemon threads, so forgotten pools do not keep the process alive.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun newWorkerPool(threads: Int, name: String = "parallel-for"): ExecutorService =
+                Executors.newFixedThreadPool(Math.max(threads, 1), ThreadFactory { runnable ->
+                    Thread(runnable, "$name-${workerCounter.incrementAndGet()}").apply { isDaemon = true }
+                })
+    }
+}
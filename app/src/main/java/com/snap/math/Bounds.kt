@@ -0,0 +1,88 @@
+package com.snap.math
+
+/**
+ * Axis aligned box around geometry plus a sphere around the box's center containing every point - the
+ * sphere is the cheap test, the box the tight one.
+ */
+class Bounds(val minX: Float, val minY: Float, val minZ: Float,
+             val maxX: Float, val maxY: Float, val maxZ: Float,
+             val radius: Float) {
+
+    init {
+        if (minX > maxX || minY > maxY || minZ > maxZ || radius < 0f) {
+            throw IllegalArgumentException("Box ($minX, $minY, $minZ) - ($maxX, $maxY, $maxZ) with radius $radius " +
+                    "is inside out.")
+        }
+    }
+
+    val centerX: Float
+        get() = (minX + maxX) * 0.5f
+
+    val centerY: Float
+        get() = (minY + maxY) * 0.5f
+
+    val centerZ: Float
+        get() = (minZ + maxZ) * 0.5f
+
+    /**
+     * Half of the box's size along X.
+     */
+    val extentX: Float
+        get() = (maxX - minX) * 0.5f
+
+    val extentY: Float
+        get() = (maxY - minY) * 0.5f
+
+    val extentZ: Float
+        get() = (maxZ - minZ) * 0.5f
+
+    override fun toString() = "Bounds(($minX, $minY, $minZ) - ($maxX, $maxY, $maxZ), radius $radius)"
+
+    companion object {
+
+        /**
+         * Bounds of points stored as [componentCount] coordinates each in [positions] - x, y and (when
+         * there are 3 or more) z, any further coordinate is ignored.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun of(positions: FloatArray, componentCount: Int = Vec3.size): Bounds {
+            if (componentCount < 2 || positions.size % componentCount != 0) {
+                throw IllegalArgumentException("${positions.size} values are not points of $componentCount coordinates.")
+            }
+            if (positions.isEmpty()) {
+                throw IllegalArgumentException("There are no points to bound.")
+            }
+            var minX = Float.POSITIVE_INFINITY
+            var minY = Float.POSITIVE_INFINITY
+            var minZ = Float.POSITIVE_INFINITY
+            var maxX = Float.NEGATIVE_INFINITY
+            var maxY = Float.NEGATIVE_INFINITY
+            var maxZ = Float.NEGATIVE_INFINITY
+            for (i in 0 until positions.size step componentCount) {
+                val z = zOf(positions, i, componentCount)
+                minX = Math.min(minX, positions[i])
+                minY = Math.min(minY, positions[i + 1])
+                minZ = Math.min(minZ, z)
+                maxX = Math.max(maxX, positions[i])
+                maxY = Math.max(maxY, positions[i + 1])
+                maxZ = Math.max(maxZ, z)
+            }
+            // farthest point from the box's center - often well inside the box's corners
+            val centerX = (minX + maxX) * 0.5f
+            val centerY = (minY + maxY) * 0.5f
+            val centerZ = (minZ + maxZ) * 0.5f
+            var radiusSquared = 0f
+            for (i in 0 until positions.size step componentCount) {
+                val dx = positions[i] - centerX
+                val dy = positions[i + 1] - centerY
+                val dz = zOf(positions, i, componentCount) - centerZ
+                radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz)
+            }
+            return Bounds(minX, minY, minZ, maxX, maxY, maxZ, Math.sqrt(radiusSquared.toDouble()).toFloat())
+        }
+
+        private fun zOf(positions: FloatArray, i: Int, componentCount: Int) =
+                if (componentCount > 2) positions[i + 2] else 0f
+    }
+}
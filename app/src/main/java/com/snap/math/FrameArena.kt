@@ -0,0 +1,71 @@
+package com.snap.math
+
+/**
+ * Scratch storage for temporary matrices and vectors of a single frame.
+ *
+ * Call [reset] at the beginning of each frame, then take as many temporaries as needed. Arrays handed out
+ * before [reset] are reused afterwards, so they must not outlive the frame. New arrays are allocated only
+ * while the arena grows to the frame's high-water mark - in steady state a frame allocates nothing.
+ *
+ * Not thread safe - give each thread its own arena.
+ */
+class FrameArena {
+
+    private class Slab(private val arraySize: Int) {
+
+        private val arrays = ArrayList<FloatArray>()
+        var used = 0
+            private set
+
+        fun take(): FloatArray {
+            if (used == arrays.size) {
+                arrays.add(FloatArray(arraySize))
+            }
+            return arrays[used++]
+        }
+
+        fun reset() {
+            used = 0
+        }
+
+        val capacity: Int
+            get() = arrays.size
+    }
+
+    private val mat4s = Slab(Mat4.size)
+    private val vec3s = Slab(Vec3.size)
+    private val quats = Slab(Quat.size)
+
+    /**
+     * Identity matrix.
+     */
+    fun mat4(): FloatArray = mat4s.take().also { Mat4.setIdentity(it, 0) }
+
+    /**
+     * Zero vector.
+     */
+    fun vec3(): FloatArray = vec3s.take().also { Vec3.set(it, 0, 0f, 0f, 0f) }
+
+    /**
+     * Identity rotation.
+     */
+    fun quat(): FloatArray = quats.take().also { Quat.setIdentity(it, 0) }
+
+    fun reset() {
+        mat4s.reset()
+        vec3s.reset()
+        quats.reset()
+    }
+
+    /**
+     * Number of arrays allocated so far - stops growing once frames reach steady state.
+     */
+    val allocatedArrays: Int
+        get() = mat4s.capacity + vec3s.capacity + quats.capacity
+
+    /**
+     * Number of arrays taken since last [reset].
+     */
+    val usedArrays: Int
+        get() = mat4s.used + vec3s.used + quats.used
+}
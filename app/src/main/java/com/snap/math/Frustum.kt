@@ -0,0 +1,81 @@
+package com.snap.math
+
+/**
+ * Six planes of the volume a camera sees - left, right, bottom, top, near, far - extracted from a
+ * projection x view matrix. Normals point inside, so a point is in front of a plane when
+ * a * x + b * y + c * z + d >= 0.
+ *
+ * With Model-View-Projection matrix the planes are in the model's space instead of the world.
+ */
+class Frustum {
+
+    /**
+     * a, b, c, d of every plane, normalized. Read only.
+     */
+    val planes = FloatArray(planeCount * 4)
+
+    /**
+     * Extracts planes of [viewProjection] at [offset] (Gribb and Hartmann) - sums and differences of the
+     * fourth row with the other rows.
+     */
+    fun set(viewProjection: FloatArray, offset: Int): Frustum = apply {
+        for (plane in 0 until planeCount) {
+            val row = plane / 2
+            val sign = if (plane % 2 == 0) 1f else -1f
+            var length = 0f
+            for (column in 0 until 4) {
+                // column-major - row r of column c is at c * 4 + r
+                val value = viewProjection[offset + column * 4 + 3] + sign * viewProjection[offset + column * 4 + row]
+                planes[plane * 4 + column] = value
+                if (column < 3) {
+                    length += value * value
+                }
+            }
+            val scale = 1f / Math.sqrt(length.toDouble()).toFloat()
+            for (component in 0 until 4) {
+                planes[plane * 4 + component] *= scale
+            }
+        }
+    }
+
+    /**
+     * True when the sphere is at least partly inside.
+     */
+    fun intersectsSphere(x: Float, y: Float, z: Float, radius: Float): Boolean {
+        for (plane in 0 until planeCount) {
+            val i = plane * 4
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * True when the box with center and half sizes given is at least partly inside. Conservative - boxes
+     * outside near a corner of the frustum may pass.
+     */
+    fun intersectsBox(centerX: Float, centerY: Float, centerZ: Float,
+                      extentX: Float, extentY: Float, extentZ: Float): Boolean {
+        for (plane in 0 until planeCount) {
+            val i = plane * 4
+            val a = planes[i]
+            val b = planes[i + 1]
+            val c = planes[i + 2]
+            // distance of the box's corner farthest along the normal
+            val reach = Math.abs(a) * extentX + Math.abs(b) * extentY + Math.abs(c) * extentZ
+            if (a * centerX + b * centerY + c * centerZ + planes[i + 3] + reach < 0f) {
+                return false
+            }
+        }
+        return true
+    }
+
+    fun intersects(bounds: Bounds) = intersectsSphere(bounds.centerX, bounds.centerY, bounds.centerZ, bounds.radius) &&
+            intersectsBox(bounds.centerX, bounds.centerY, bounds.centerZ, bounds.extentX, bounds.extentY, bounds.extentZ)
+
+    companion object {
+
+        const val planeCount = 6
+    }
+}
@@ -0,0 +1,408 @@
+package com.snap.math
+
+/**
+ * 4x4 matrices stored column-major in 16 consecutive floats of a [FloatArray], starting at an offset -
+ * the same layout [android.opengl.Matrix] and glUniformMatrix4fv use.
+ *
+ * Nothing here allocates. Every result is written into caller provided storage and may alias any of
+ * the inputs. Formulas (and order of operations) follow android.opengl.Matrix, so results match it.
+ */
+object Mat4 {
+
+    const val size = 16
+
+    /**
+     * Allocates new identity matrix. Meant for fields, not for per-frame code.
+     */
+    @JvmStatic
+    fun create() = FloatArray(size).also { setIdentity(it, 0) }
+
+    @JvmStatic
+    fun setIdentity(m: FloatArray, mOffset: Int) {
+        for (i in 0 until size) {
+            m[mOffset + i] = 0f
+        }
+        m[mOffset] = 1f
+        m[mOffset + 5] = 1f
+        m[mOffset + 10] = 1f
+        m[mOffset + 15] = 1f
+    }
+
+    @JvmStatic
+    fun copy(result: FloatArray, resultOffset: Int, m: FloatArray, mOffset: Int) {
+        System.arraycopy(m, mOffset, result, resultOffset, size)
+    }
+
+    /**
+     * result = lhs x rhs, like [android.opengl.Matrix.multiplyMM] - but [result] may alias [lhs] or [rhs].
+     */
+    @JvmStatic
+    fun multiply(result: FloatArray, resultOffset: Int,
+                 lhs: FloatArray, lhsOffset: Int,
+                 rhs: FloatArray, rhsOffset: Int) {
+        val l00 = lhs[lhsOffset]
+        val l10 = lhs[lhsOffset + 1]
+        val l20 = lhs[lhsOffset + 2]
+        val l30 = lhs[lhsOffset + 3]
+        val l01 = lhs[lhsOffset + 4]
+        val l11 = lhs[lhsOffset + 5]
+        val l21 = lhs[lhsOffset + 6]
+        val l31 = lhs[lhsOffset + 7]
+        val l02 = lhs[lhsOffset + 8]
+        val l12 = lhs[lhsOffset + 9]
+        val l22 = lhs[lhsOffset + 10]
+        val l32 = lhs[lhsOffset + 11]
+        val l03 = lhs[lhsOffset + 12]
+        val l13 = lhs[lhsOffset + 13]
+        val l23 = lhs[lhsOffset + 14]
+        val l33 = lhs[lhsOffset + 15]
+        // column j of result depends only on column j of rhs, so writing it can not spoil columns still to read
+        for (column in 0 until 4) {
+            val r0 = rhs[rhsOffset + column * 4]
+            val r1 = rhs[rhsOffset + column * 4 + 1]
+            val r2 = rhs[rhsOffset + column * 4 + 2]
+            val r3 = rhs[rhsOffset + column * 4 + 3]
+            val target = resultOffset + column * 4
+            result[target] = l00 * r0 + l01 * r1 + l02 * r2 + l03 * r3
+            result[target + 1] = l10 * r0 + l11 * r1 + l12 * r2 + l13 * r3
+            result[target + 2] = l20 * r0 + l21 * r1 + l22 * r2 + l23 * r3
+            result[target + 3] = l30 * r0 + l31 * r1 + l32 * r2 + l33 * r3
+        }
+    }
+
+    /**
+     * Transforms 4 component vector: result = m x v. [result] may alias [v].
+     */
+    @JvmStatic
+    fun multiplyVec4(result: FloatArray, resultOffset: Int,
+                     m: FloatArray, mOffset: Int,
+                     v: FloatArray, vOffset: Int) {
+        val x = v[vOffset]
+        val y = v[vOffset + 1]
+        val z = v[vOffset + 2]
+        val w = v[vOffset + 3]
+        for (row in 0 until 4) {
+            result[resultOffset + row] = m[mOffset + row] * x + m[mOffset + 4 + row] * y +
+                    m[mOffset + 8 + row] * z + m[mOffset + 12 + row] * w
+        }
+    }
+
+    /**
+     * Multiplies [m] in place by translation matrix, like [android.opengl.Matrix.translateM].
+     */
+    @JvmStatic
+    fun translate(m: FloatArray, mOffset: Int, x: Float, y: Float, z: Float) {
+        for (i in 0 until 4) {
+            m[mOffset + 12 + i] += m[mOffset + i] * x + m[mOffset + 4 + i] * y + m[mOffset + 8 + i] * z
+        }
+    }
+
+    /**
+     * Multiplies [m] in place by scale matrix, like [android.opengl.Matrix.scaleM].
+     */
+    @JvmStatic
+    fun scale(m: FloatArray, mOffset: Int, x: Float, y: Float, z: Float) {
+        for (i in 0 until 4) {
+            m[mOffset + i] *= x
+            m[mOffset + 4 + i] *= y
+            m[mOffset + 8 + i] *= z
+        }
+    }
+
+    /**
+     * Multiplies [m] in place by rotation of [angleInDegrees] around axis ([x], [y], [z]), like
+     * [android.opengl.Matrix.rotateM] - without its temporary array.
+     */
+    @JvmStatic
+    fun rotate(m: FloatArray, mOffset: Int, angleInDegrees: Float, x: Float, y: Float, z: Float) {
+        val angle = angleInDegrees * (Math.PI / 180.0).toFloat()
+        val s = Math.sin(angle.toDouble()).toFloat()
+        val c = Math.cos(angle.toDouble()).toFloat()
+        var ax = x
+        var ay = y
+        var az = z
+        val length = Vec3.length(x, y, z)
+        if (length != 1f) {
+            val reciprocalLength = 1f / length
+            ax *= reciprocalLength
+            ay *= reciprocalLength
+            az *= reciprocalLength
+        }
+        val nc = 1f - c
+        val xy = ax * ay
+        val yz = ay * az
+        val zx = az * ax
+        val xs = ax * s
+        val ys = ay * s
+        val zs = az * s
+        // rotation part of the matrix, row-column
+        val r00 = ax * ax * nc + c
+        val r01 = xy * nc - zs
+        val r02 = zx * nc + ys
+        val r10 = xy * nc + zs
+        val r11 = ay * ay * nc + c
+        val r12 = yz * nc - xs
+        val r20 = zx * nc - ys
+        val r21 = yz * nc + xs
+        val r22 = az * az * nc + c
+        for (row in 0 until 4) {
+            val m0 = m[mOffset + row]
+            val m1 = m[mOffset + 4 + row]
+            val m2 = m[mOffset + 8 + row]
+            m[mOffset + row] = m0 * r00 + m1 * r10 + m2 * r20
+            m[mOffset + 4 + row] = m0 * r01 + m1 * r11 + m2 * r21
+            m[mOffset + 8 + row] = m0 * r02 + m1 * r12 + m2 * r22
+        }
+    }
+
+    /**
+     * Perspective projection of view frustum, like [android.opengl.Matrix.frustumM].
+     */
+    @JvmStatic
+    fun frustum(m: FloatArray, mOffset: Int,
+                left: Float, right: Float, bottom: Float, top: Float, near: Float, far: Float) {
+        checkProjectionBounds(left, right, bottom, top, near, far)
+        if (near <= 0f || far <= 0f) {
+            throw IllegalArgumentException("Near and far have to be positive: near $near, far $far.")
+        }
+        val reciprocalWidth = 1f / (right - left)
+        val reciprocalHeight = 1f / (top - bottom)
+        val reciprocalDepth = 1f / (near - far)
+        setZero(m, mOffset)
+        m[mOffset] = 2f * (near * reciprocalWidth)
+        m[mOffset + 5] = 2f * (near * reciprocalHeight)
+        m[mOffset + 8] = (right + left) * reciprocalWidth
+        m[mOffset + 9] = (top + bottom) * reciprocalHeight
+        m[mOffset + 10] = (far + near) * reciprocalDepth
+        m[mOffset + 11] = -1f
+        m[mOffset + 14] = 2f * (far * near * reciprocalDepth)
+    }
+
+    /**
+     * Symmetric perspective projection, like [android.opengl.Matrix.perspectiveM].
+     */
+    @JvmStatic
+    fun perspective(m: FloatArray, mOffset: Int, fovYInDegrees: Float, aspect: Float, near: Float, far: Float) {
+        val f = 1.0f / Math.tan(fovYInDegrees * (Math.PI / 360.0)).toFloat()
+        val reciprocalRange = 1.0f / (near - far)
+        setZero(m, mOffset)
+        m[mOffset] = f / aspect
+        m[mOffset + 5] = f
+        m[mOffset + 10] = (far + near) * reciprocalRange
+        m[mOffset + 11] = -1f
+        m[mOffset + 14] = 2f * far * near * reciprocalRange
+    }
+
+    /**
+     * Orthographic projection, like [android.opengl.Matrix.orthoM].
+     */
+    @JvmStatic
+    fun ortho(m: FloatArray, mOffset: Int,
+              left: Float, right: Float, bottom: Float, top: Float, near: Float, far: Float) {
+        checkProjectionBounds(left, right, bottom, top, near, far)
+        val reciprocalWidth = 1f / (right - left)
+        val reciprocalHeight = 1f / (top - bottom)
+        val reciprocalDepth = 1f / (far - near)
+        setZero(m, mOffset)
+        m[mOffset] = 2f * reciprocalWidth
+        m[mOffset + 5] = 2f * reciprocalHeight
+        m[mOffset + 10] = -2f * reciprocalDepth
+        m[mOffset + 12] = -(right + left) * reciprocalWidth
+        m[mOffset + 13] = -(top + bottom) * reciprocalHeight
+        m[mOffset + 14] = -(far + near) * reciprocalDepth
+        m[mOffset + 15] = 1f
+    }
+
+    /**
+     * View matrix of camera in eye point looking at center point, like [android.opengl.Matrix.setLookAtM].
+     */
+    @JvmStatic
+    fun lookAt(m: FloatArray, mOffset: Int,
+               eyeX: Float, eyeY: Float, eyeZ: Float,
+               centerX: Float, centerY: Float, centerZ: Float,
+               upX: Float, upY: Float, upZ: Float) {
+        var fx = centerX - eyeX
+        var fy = centerY - eyeY
+        var fz = centerZ - eyeZ
+
+        val reciprocalForwardLength = 1.0f / Vec3.length(fx, fy, fz)
+        fx *= reciprocalForwardLength
+        fy *= reciprocalForwardLength
+        fz *= reciprocalForwardLength
+
+        // side = forward x up
+        var sx = fy * upZ - fz * upY
+        var sy = fz * upX - fx * upZ
+        var sz = fx * upY - fy * upX
+
+        val reciprocalSideLength = 1.0f / Vec3.length(sx, sy, sz)
+        sx *= reciprocalSideLength
+        sy *= reciprocalSideLength
+        sz *= reciprocalSideLength
+
+        // recomputed up = side x forward
+        val ux = sy * fz - sz * fy
+        val uy = sz * fx - sx * fz
+        val uz = sx * fy - sy * fx
+
+        m[mOffset] = sx
+        m[mOffset + 1] = ux
+        m[mOffset + 2] = -fx
+        m[mOffset + 3] = 0.0f
+
+        m[mOffset + 4] = sy
+        m[mOffset + 5] = uy
+        m[mOffset + 6] = -fy
+        m[mOffset + 7] = 0.0f
+
+        m[mOffset + 8] = sz
+        m[mOffset + 9] = uz
+        m[mOffset + 10] = -fz
+        m[mOffset + 11] = 0.0f
+
+        m[mOffset + 12] = 0.0f
+        m[mOffset + 13] = 0.0f
+        m[mOffset + 14] = 0.0f
+        m[mOffset + 15] = 1.0f
+
+        translate(m, mOffset, -eyeX, -eyeY, -eyeZ)
+    }
+
+    /**
+     * [result] may alias [m].
+     */
+    @JvmStatic
+    fun transpose(result: FloatArray, resultOffset: Int, m: FloatArray, mOffset: Int) {
+        for (column in 0 until 4) {
+            // diagonal stays, pairs below it are swapped with pairs above it
+            result[resultOffset + column * 5] = m[mOffset + column * 5]
+            for (row in column + 1 until 4) {
+                val below = m[mOffset + column * 4 + row]
+                val above = m[mOffset + row * 4 + column]
+                result[resultOffset + column * 4 + row] = above
+                result[resultOffset + row * 4 + column] = below
+            }
+        }
+    }
+
+    /**
+     * Inverts general 4x4 matrix by cofactors. Returns false (leaving [result] untouched) when [m] is
+     * singular. [result] may alias [m].
+     */
+    @JvmStatic
+    fun invert(result: FloatArray, resultOffset: Int, m: FloatArray, mOffset: Int): Boolean {
+        val m00 = m[mOffset]
+        val m10 = m[mOffset + 1]
+        val m20 = m[mOffset + 2]
+        val m30 = m[mOffset + 3]
+        val m01 = m[mOffset + 4]
+        val m11 = m[mOffset + 5]
+        val m21 = m[mOffset + 6]
+        val m31 = m[mOffset + 7]
+        val m02 = m[mOffset + 8]
+        val m12 = m[mOffset + 9]
+        val m22 = m[mOffset + 10]
+        val m32 = m[mOffset + 11]
+        val m03 = m[mOffset + 12]
+        val m13 = m[mOffset + 13]
+        val m23 = m[mOffset + 14]
+        val m33 = m[mOffset + 15]
+
+        // 2x2 sub-determinants of the upper two rows and of the lower two rows
+        val a0 = m00 * m11 - m01 * m10
+        val a1 = m00 * m12 - m02 * m10
+        val a2 = m00 * m13 - m03 * m10
+        val a3 = m01 * m12 - m02 * m11
+        val a4 = m01 * m13 - m03 * m11
+        val a5 = m02 * m13 - m03 * m12
+        val b0 = m20 * m31 - m21 * m30
+        val b1 = m20 * m32 - m22 * m30
+        val b2 = m20 * m33 - m23 * m30
+        val b3 = m21 * m32 - m22 * m31
+        val b4 = m21 * m33 - m23 * m31
+        val b5 = m22 * m33 - m23 * m32
+
+        val determinant = a0 * b5 - a1 * b4 + a2 * b3 + a3 * b2 - a4 * b1 + a5 * b0
+        if (determinant == 0f || determinant.isNaN()) {
+            return false
+        }
+        val reciprocal = 1f / determinant
+
+        result[resultOffset] = (m11 * b5 - m12 * b4 + m13 * b3) * reciprocal
+        result[resultOffset + 1] = (-m10 * b5 + m12 * b2 - m13 * b1) * reciprocal
+        result[resultOffset + 2] = (m10 * b4 - m11 * b2 + m13 * b0) * reciprocal
+        result[resultOffset + 3] = (-m10 * b3 + m11 * b1 - m12 * b0) * reciprocal
+        result[resultOffset + 4] = (-m01 * b5 + m02 * b4 - m03 * b3) * reciprocal
+        result[resultOffset + 5] = (m00 * b5 - m02 * b2 + m03 * b1) * reciprocal
+        result[resultOffset + 6] = (-m00 * b4 + m01 * b2 - m03 * b0) * reciprocal
+        result[resultOffset + 7] = (m00 * b3 - m01 * b1 + m02 * b0) * reciprocal
+        result[resultOffset + 8] = (m31 * a5 - m32 * a4 + m33 * a3) * reciprocal
+        result[resultOffset + 9] = (-m30 * a5 + m32 * a2 - m33 * a1) * reciprocal
+        result[resultOffset + 10] = (m30 * a4 - m31 * a2 + m33 * a0) * reciprocal
+        result[resultOffset + 11] = (-m30 * a3 + m31 * a1 - m32 * a0) * reciprocal
+        result[resultOffset + 12] = (-m21 * a5 + m22 * a4 - m23 * a3) * reciprocal
+        result[resultOffset + 13] = (m20 * a5 - m22 * a2 + m23 * a1) * reciprocal
+        result[resultOffset + 14] = (-m20 * a4 + m21 * a2 - m23 * a0) * reciprocal
+        result[resultOffset + 15] = (m20 * a3 - m21 * a1 + m22 * a0) * reciprocal
+        return true
+    }
+
+    /**
+     * Writes column-major 3x3 matrix (9 floats, for glUniformMatrix3fv) transforming normals the same
+     * way [modelView] transforms positions - inverse transpose of its upper left 3x3 part.
+     * Returns false (leaving [result] untouched) when that part is singular.
+     */
+    @JvmStatic
+    fun normalMatrix(result: FloatArray, resultOffset: Int, modelView: FloatArray, modelViewOffset: Int): Boolean {
+        val m00 = modelView[modelViewOffset]
+        val m10 = modelView[modelViewOffset + 1]
+        val m20 = modelView[modelViewOffset + 2]
+        val m01 = modelView[modelViewOffset + 4]
+        val m11 = modelView[modelViewOffset + 5]
+        val m21 = modelView[modelViewOffset + 6]
+        val m02 = modelView[modelViewOffset + 8]
+        val m12 = modelView[modelViewOffset + 9]
+        val m22 = modelView[modelViewOffset + 10]
+
+        // cofactors - inverse transpose is cofactor matrix divided by determinant
+        val c00 = m11 * m22 - m12 * m21
+        val c01 = m12 * m20 - m10 * m22
+        val c02 = m10 * m21 - m11 * m20
+        val c10 = m02 * m21 - m01 * m22
+        val c11 = m00 * m22 - m02 * m20
+        val c12 = m01 * m20 - m00 * m21
+        val c20 = m01 * m12 - m02 * m11
+        val c21 = m02 * m10 - m00 * m12
+        val c22 = m00 * m11 - m01 * m10
+
+        val determinant = m00 * c00 + m01 * c01 + m02 * c02
+        if (determinant == 0f || determinant.isNaN()) {
+            return false
+        }
+        val reciprocal = 1f / determinant
+
+        result[resultOffset] = c00 * reciprocal
+        result[resultOffset + 1] = c10 * reciprocal
+        result[resultOffset + 2] = c20 * reciprocal
+        result[resultOffset + 3] = c01 * reciprocal
+        result[resultOffset + 4] = c11 * reciprocal
+        result[resultOffset + 5] = c21 * reciprocal
+        result[resultOffset + 6] = c02 * reciprocal
+        result[resultOffset + 7] = c12 * reciprocal
+        result[resultOffset + 8] = c22 * reciprocal
+        return true
+    }
+
+    private fun setZero(m: FloatArray, mOffset: Int) {
+        for (i in 0 until size) {
+            m[mOffset + i] = 0f
+        }
+    }
+
+    private fun checkProjectionBounds(left: Float, right: Float, bottom: Float, top: Float, near: Float, far: Float) {
+        if (left == right || bottom == top || near == far) {
+            throw IllegalArgumentException("Empty view volume: left $left, right $right, bottom $bottom, " +
+                    "top $top, near $near, far $far.")
+        }
+    }
+}
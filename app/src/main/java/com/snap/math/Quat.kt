@@ -0,0 +1,175 @@
+package com.snap.math
+
+/**
+ * Rotation quaternions stored as x, y, z, w in consecutive floats of a [FloatArray], starting at an offset.
+ *
+ * Nothing here allocates and results may alias inputs - see [Mat4].
+ */
+object Quat {
+
+    const val size = 4
+
+    @JvmStatic
+    fun setIdentity(q: FloatArray, qOffset: Int) {
+        q[qOffset] = 0f
+        q[qOffset + 1] = 0f
+        q[qOffset + 2] = 0f
+        q[qOffset + 3] = 1f
+    }
+
+    /**
+     * Rotation of [angleInDegrees] around axis ([x], [y], [z]) - axis does not have to be normalized.
+     */
+    @JvmStatic
+    fun setAxisAngle(q: FloatArray, qOffset: Int, angleInDegrees: Float, x: Float, y: Float, z: Float) {
+        val halfAngle = angleInDegrees * (Math.PI / 360.0)
+        val length = Vec3.length(x, y, z)
+        val s = if (length == 0f) 0f else Math.sin(halfAngle).toFloat() / length
+        q[qOffset] = x * s
+        q[qOffset + 1] = y * s
+        q[qOffset + 2] = z * s
+        q[qOffset + 3] = Math.cos(halfAngle).toFloat()
+    }
+
+    /**
+     * result = a x b - rotation by b followed by rotation by a.
+     */
+    @JvmStatic
+    fun multiply(result: FloatArray, resultOffset: Int, a: FloatArray, aOffset: Int, b: FloatArray, bOffset: Int) {
+        val ax = a[aOffset]
+        val ay = a[aOffset + 1]
+        val az = a[aOffset + 2]
+        val aw = a[aOffset + 3]
+        val bx = b[bOffset]
+        val by = b[bOffset + 1]
+        val bz = b[bOffset + 2]
+        val bw = b[bOffset + 3]
+        result[resultOffset] = aw * bx + ax * bw + ay * bz - az * by
+        result[resultOffset + 1] = aw * by - ax * bz + ay * bw + az * bx
+        result[resultOffset + 2] = aw * bz + ax * by - ay * bx + az * bw
+        result[resultOffset + 3] = aw * bw - ax * bx - ay * by - az * bz
+    }
+
+    @JvmStatic
+    fun normalize(result: FloatArray, resultOffset: Int, q: FloatArray, qOffset: Int) {
+        val x = q[qOffset]
+        val y = q[qOffset + 1]
+        val z = q[qOffset + 2]
+        val w = q[qOffset + 3]
+        val length = Math.sqrt((x * x + y * y + z * z + w * w).toDouble()).toFloat()
+        if (length == 0f) {
+            setIdentity(result, resultOffset)
+            return
+        }
+        val reciprocal = 1f / length
+        result[resultOffset] = x * reciprocal
+        result[resultOffset + 1] = y * reciprocal
+        result[resultOffset + 2] = z * reciprocal
+        result[resultOffset + 3] = w * reciprocal
+    }
+
+    /**
+     * Spherical interpolation along the shorter arc, [t] of 0 gives [a] and 1 gives [b].
+     */
+    @JvmStatic
+    fun slerp(result: FloatArray, resultOffset: Int,
+              a: FloatArray, aOffset: Int,
+              b: FloatArray, bOffset: Int,
+              t: Float) {
+        val ax = a[aOffset]
+        val ay = a[aOffset + 1]
+        val az = a[aOffset + 2]
+        val aw = a[aOffset + 3]
+        var bx = b[bOffset]
+        var by = b[bOffset + 1]
+        var bz = b[bOffset + 2]
+        var bw = b[bOffset + 3]
+        var cosine = ax * bx + ay * by + az * bz + aw * bw
+        if (cosine < 0f) {
+            // q and -q are the same rotation - pick the one closer to a
+            cosine = -cosine
+            bx = -bx
+            by = -by
+            bz = -bz
+            bw = -bw
+        }
+        val weightOfA: Float
+        val weightOfB: Float
+        if (cosine > 0.9995f) {
+            // nearly parallel - sine goes to zero, linear interpolation is exact enough
+            weightOfA = 1f - t
+            weightOfB = t
+        } else {
+            val angle = Math.acos(cosine.toDouble())
+            val reciprocalSine = 1.0 / Math.sin(angle)
+            weightOfA = (Math.sin((1 - t) * angle) * reciprocalSine).toFloat()
+            weightOfB = (Math.sin(t * angle) * reciprocalSine).toFloat()
+        }
+        result[resultOffset] = weightOfA * ax + weightOfB * bx
+        result[resultOffset + 1] = weightOfA * ay + weightOfB * by
+        result[resultOffset + 2] = weightOfA * az + weightOfB * bz
+        result[resultOffset + 3] = weightOfA * aw + weightOfB * bw
+        normalize(result, resultOffset, result, resultOffset)
+    }
+
+    /**
+     * Writes rotation matrix of unit quaternion [q].
+     */
+    @JvmStatic
+    fun toMat4(m: FloatArray, mOffset: Int, q: FloatArray, qOffset: Int) {
+        val x = q[qOffset]
+        val y = q[qOffset + 1]
+        val z = q[qOffset + 2]
+        val w = q[qOffset + 3]
+        val xx = x * x
+        val yy = y * y
+        val zz = z * z
+        val xy = x * y
+        val xz = x * z
+        val yz = y * z
+        val wx = w * x
+        val wy = w * y
+        val wz = w * z
+
+        m[mOffset] = 1f - 2f * (yy + zz)
+        m[mOffset + 1] = 2f * (xy + wz)
+        m[mOffset + 2] = 2f * (xz - wy)
+        m[mOffset + 3] = 0f
+
+        m[mOffset + 4] = 2f * (xy - wz)
+        m[mOffset + 5] = 1f - 2f * (xx + zz)
+        m[mOffset + 6] = 2f * (yz + wx)
+        m[mOffset + 7] = 0f
+
+        m[mOffset + 8] = 2f * (xz + wy)
+        m[mOffset + 9] = 2f * (yz - wx)
+        m[mOffset + 10] = 1f - 2f * (xx + yy)
+        m[mOffset + 11] = 0f
+
+        m[mOffset + 12] = 0f
+        m[mOffset + 13] = 0f
+        m[mOffset + 14] = 0f
+        m[mOffset + 15] = 1f
+    }
+
+    /**
+     * Rotates 3 component vector [v] by unit quaternion [q].
+     */
+    @JvmStatic
+    fun rotateVec3(result: FloatArray, resultOffset: Int, q: FloatArray, qOffset: Int, v: FloatArray, vOffset: Int) {
+        val qx = q[qOffset]
+        val qy = q[qOffset + 1]
+        val qz = q[qOffset + 2]
+        val qw = q[qOffset + 3]
+        val vx = v[vOffset]
+        val vy = v[vOffset + 1]
+        val vz = v[vOffset + 2]
+        // t = 2 * (q.xyz x v); v' = v + w * t + q.xyz x t
+        val tx = 2f * (qy * vz - qz * vy)
+        val ty = 2f * (qz * vx - qx * vz)
+        val tz = 2f * (qx * vy - qy * vx)
+        result[resultOffset] = vx + qw * tx + (qy * tz - qz * ty)
+        result[resultOffset + 1] = vy + qw * ty + (qz * tx - qx * tz)
+        result[resultOffset + 2] = vz + qw * tz + (qx * ty - qy * tx)
+    }
+}
@@ -0,0 +1,100 @@
+package com.snap.math
+
+/**
+ * 3 component vectors stored in consecutive floats of a [FloatArray], starting at an offset.
+ *
+ * Nothing here allocates and results may alias inputs - see [Mat4].
+ */
+object Vec3 {
+
+    const val size = 3
+
+    @JvmStatic
+    fun set(v: FloatArray, vOffset: Int, x: Float, y: Float, z: Float) {
+        v[vOffset] = x
+        v[vOffset + 1] = y
+        v[vOffset + 2] = z
+    }
+
+    @JvmStatic
+    fun length(x: Float, y: Float, z: Float) = Math.sqrt((x * x + y * y + z * z).toDouble()).toFloat()
+
+    @JvmStatic
+    fun length(v: FloatArray, vOffset: Int) = length(v[vOffset], v[vOffset + 1], v[vOffset + 2])
+
+    @JvmStatic
+    fun dot(a: FloatArray, aOffset: Int, b: FloatArray, bOffset: Int) =
+            a[aOffset] * b[bOffset] + a[aOffset + 1] * b[bOffset + 1] + a[aOffset + 2] * b[bOffset + 2]
+
+    @JvmStatic
+    fun add(result: FloatArray, resultOffset: Int, a: FloatArray, aOffset: Int, b: FloatArray, bOffset: Int) {
+        for (i in 0 until size) {
+            result[resultOffset + i] = a[aOffset + i] + b[bOffset + i]
+        }
+    }
+
+    @JvmStatic
+    fun subtract(result: FloatArray, resultOffset: Int, a: FloatArray, aOffset: Int, b: FloatArray, bOffset: Int) {
+        for (i in 0 until size) {
+            result[resultOffset + i] = a[aOffset + i] - b[bOffset + i]
+        }
+    }
+
+    @JvmStatic
+    fun scale(result: FloatArray, resultOffset: Int, v: FloatArray, vOffset: Int, factor: Float) {
+        for (i in 0 until size) {
+            result[resultOffset + i] = v[vOffset + i] * factor
+        }
+    }
+
+    /**
+     * Scales vector to unit length. Zero vector stays zero.
+     */
+    @JvmStatic
+    fun normalize(result: FloatArray, resultOffset: Int, v: FloatArray, vOffset: Int) {
+        val length = length(v, vOffset)
+        scale(result, resultOffset, v, vOffset, if (length == 0f) 0f else 1f / length)
+    }
+
+    @JvmStatic
+    fun cross(result: FloatArray, resultOffset: Int, a: FloatArray, aOffset: Int, b: FloatArray, bOffset: Int) {
+        val ax = a[aOffset]
+        val ay = a[aOffset + 1]
+        val az = a[aOffset + 2]
+        val bx = b[bOffset]
+        val by = b[bOffset + 1]
+        val bz = b[bOffset + 2]
+        result[resultOffset] = ay * bz - az * by
+        result[resultOffset + 1] = az * bx - ax * bz
+        result[resultOffset + 2] = ax * by - ay * bx
+    }
+
+    /**
+     * result = m x (v, 1), divided by resulting w when [m] is a projection.
+     */
+    @JvmStatic
+    fun transformPoint(result: FloatArray, resultOffset: Int, m: FloatArray, mOffset: Int, v: FloatArray, vOffset: Int) {
+        val x = v[vOffset]
+        val y = v[vOffset + 1]
+        val z = v[vOffset + 2]
+        val w = m[mOffset + 3] * x + m[mOffset + 7] * y + m[mOffset + 11] * z + m[mOffset + 15]
+        val reciprocalW = if (w == 1f || w == 0f) 1f else 1f / w
+        for (row in 0 until size) {
+            result[resultOffset + row] = (m[mOffset + row] * x + m[mOffset + 4 + row] * y +
+                    m[mOffset + 8 + row] * z + m[mOffset + 12 + row]) * reciprocalW
+        }
+    }
+
+    /**
+     * result = m x (v, 0) - translation does not apply to directions.
+     */
+    @JvmStatic
+    fun transformDirection(result: FloatArray, resultOffset: Int, m: FloatArray, mOffset: Int, v: FloatArray, vOffset: Int) {
+        val x = v[vOffset]
+        val y = v[vOffset + 1]
+        val z = v[vOffset + 2]
+        for (row in 0 until size) {
+            result[resultOffset + row] = m[mOffset + row] * x + m[mOffset + 4 + row] * y + m[mOffset + 8 + row] * z
+        }
+    }
+}
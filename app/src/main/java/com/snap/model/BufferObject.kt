@@ -0,0 +1,115 @@
+package com.snap.model
+
+import android.opengl.GLES20
+
+import com.snap.model.exception.GlException
+import com.snap.model.exception.GlLibException
+
+import java.nio.Buffer
+
+private const val notDefinedHandle = 0
+
+/**
+ * Hint telling the driver how often data store of a buffer object is going to be respecified.
+ */
+enum class BufferUsage(private val usageAsInt: Int) {
+
+    /**
+     * Uploaded once, drawn many times - e.g. scenery geometry.
+     */
+    STATIC(GLES20.GL_STATIC_DRAW),
+
+    /**
+     * Updated now and then, drawn many times between updates.
+     */
+    DYNAMIC(GLES20.GL_DYNAMIC_DRAW),
+
+    /**
+     * Rewritten every frame and drawn a few times.
+     */
+    STREAM(GLES20.GL_STREAM_DRAW);
+
+    fun asInt(): Int {
+        return usageAsInt
+    }
+}
+
+/**
+ * Data store living in GPU memory. Unlike client-side arrays it is copied by the driver only when
+ * uploaded, not on every draw call.
+ *
+ * Has to be created and used on the GL thread.
+ */
+abstract class BufferObject internal constructor(internal val target: Int,
+                                                 val usage: BufferUsage,
+                                                 protected val glContext: GlContext) {
+
+    /**
+     * Reference to the buffer object. Generated by OpenGL on first upload.
+     */
+    var bufferHandle: Int = notDefinedHandle
+        private set
+
+    /**
+     * Size of the data store in bytes.
+     */
+    var sizeInBytes: Int = 0
+        private set
+
+    val isSetup: Boolean
+        get() = bufferHandle != notDefinedHandle
+
+    fun bind() {
+        checkIsSetup()
+        glContext.state.bindBuffer(target, bufferHandle)
+    }
+
+    /**
+     * (Re)creates data store of the buffer with [sizeInBytes] bytes taken from current position of [data].
+     */
+    internal fun uploadBytes(data: Buffer?, sizeInBytes: Int) {
+        if (!isSetup) {
+            bufferHandle = generateBuffer()
+        }
+        bind()
+        glContext.backend.glBufferData(target, sizeInBytes, data, usage.asInt())
+        this.sizeInBytes = sizeInBytes
+    }
+
+    /**
+     * Replaces part of existing data store, without reallocating it.
+     */
+    internal fun updateBytes(offsetInBytes: Int, data: Buffer, sizeInBytes: Int) {
+        checkIsSetup()
+        if (offsetInBytes < 0 || offsetInBytes + sizeInBytes > this.sizeInBytes) {
+            throw IndexOutOfBoundsException("Update of [$offsetInBytes, ${offsetInBytes + sizeInBytes}) bytes " +
+                    "does not fit into buffer of ${this.sizeInBytes} bytes.")
+        }
+        bind()
+        glContext.backend.glBufferSubData(target, offsetInBytes, sizeInBytes, data)
+    }
+
+    private fun generateBuffer(): Int {
+        val handles = IntArray(1)
+        glContext.backend.glGenBuffers(1, handles, 0)
+        if (handles[0] == notDefinedHandle) {
+            throw GlException("Could not generate buffer object.")
+        }
+        return handles[0]
+    }
+
+    private fun checkIsSetup() {
+        if (!isSetup) {
+            throw IllegalStateException("You have to upload data before using buffer object.")
+        }
+    }
+
+    fun release() {
+        if (isSetup) {
+            glContext.state.onBufferDeleted(bufferHandle)
+            glContext.backend.glDeleteBuffers(1, intArrayOf(bufferHandle), 0)
+            bufferHandle = notDefinedHandle
+            sizeInBytes = 0
+        }
+    }
+}
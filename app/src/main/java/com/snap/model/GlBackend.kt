@@ -0,0 +1,352 @@
+package com.snap.model
+
+import android.annotation.TargetApi
+import android.opengl.GLES20
+import android.opengl.GLES30
+import android.os.Build
+
+import java.nio.Buffer
+
+/**
+ * Entry point for every GL call issued by the library and renderers.
+ *
+ * Mirrors the subset of [GLES20] the project uses, with the same names and argument order, so that
+ * frame path can be recorded, counted and tested without a device.
+ */
+interface GlBackend {
+
+    // state
+
+    fun glUseProgram(program: Int)
+
+    fun glEnableVertexAttribArray(index: Int)
+
+    fun glDisableVertexAttribArray(index: Int)
+
+    fun glBindBuffer(target: Int, buffer: Int)
+
+    fun glEnable(capability: Int)
+
+    fun glDisable(capability: Int)
+
+    fun glHint(target: Int, mode: Int)
+
+    fun glViewport(x: Int, y: Int, width: Int, height: Int)
+
+    fun glClearColor(red: Float, green: Float, blue: Float, alpha: Float)
+
+    fun glGetString(name: Int): String
+
+    // shaders and programs
+
+    fun glCreateShader(type: Int): Int
+
+    fun glShaderSource(shader: Int, source: String)
+
+    fun glCompileShader(shader: Int)
+
+    fun glGetShaderiv(shader: Int, parameterName: Int, params: IntArray, offset: Int)
+
+    fun glGetShaderInfoLog(shader: Int): String
+
+    fun glDeleteShader(shader: Int)
+
+    fun glCreateProgram(): Int
+
+    fun glAttachShader(program: Int, shader: Int)
+
+    fun glBindAttribLocation(program: Int, index: Int, name: String)
+
+    fun glLinkProgram(program: Int)
+
+    fun glGetProgramiv(program: Int, parameterName: Int, params: IntArray, offset: Int)
+
+    fun glGetProgramInfoLog(program: Int): String
+
+    fun glDeleteProgram(program: Int)
+
+    fun glGetActiveAttrib(program: Int, index: Int,
+                          size: IntArray, sizeOffset: Int,
+                          type: IntArray, typeOffset: Int): String
+
+    fun glGetActiveUniform(program: Int, index: Int,
+                           size: IntArray, sizeOffset: Int,
+                           type: IntArray, typeOffset: Int): String
+
+    fun glGetAttribLocation(program: Int, name: String): Int
+
+    fun glGetUniformLocation(program: Int, name: String): Int
+
+    // program binaries - GLES 3.0, call only when isProgramBinarySupported
+
+    /**
+     * True when linked programs can be saved with [glGetProgramBinary] and loaded back with [glProgramBinary].
+     */
+    fun isProgramBinarySupported(): Boolean
+
+    fun glGetProgramBinary(program: Int, bufferSize: Int,
+                           length: IntArray, lengthOffset: Int,
+                           binaryFormat: IntArray, binaryFormatOffset: Int,
+                           binary: Buffer)
+
+    fun glProgramBinary(program: Int, binaryFormat: Int, binary: Buffer, length: Int)
+
+    // buffer objects
+
+    fun glGenBuffers(count: Int, buffers: IntArray, offset: Int)
+
+    fun glBufferData(target: Int, size: Int, data: Buffer?, usage: Int)
+
+    fun glBufferSubData(target: Int, offset: Int, size: Int, data: Buffer)
+
+    fun glDeleteBuffers(count: Int, buffers: IntArray, offset: Int)
+
+    /**
+     * GLES 3.0 - maps [length] bytes at [offset] of the buffer bound to [target] into client memory,
+     * null when mapping failed.
+     */
+    fun glMapBufferRange(target: Int, offset: Int, length: Int, access: Int): Buffer?
+
+    /**
+     * GLES 3.0 - false when content of the data store got corrupted while mapped.
+     */
+    fun glUnmapBuffer(target: Int): Boolean
+
+    // sync objects - GLES 3.0
+
+    fun glFenceSync(condition: Int, flags: Int): Long
+
+    fun glClientWaitSync(sync: Long, flags: Int, timeout: Long): Int
+
+    fun glDeleteSync(sync: Long)
+
+    // textures
+
+    fun glGenTextures(count: Int, textures: IntArray, offset: Int)
+
+    fun glBindTexture(target: Int, texture: Int)
+
+    fun glTexParameteri(target: Int, parameterName: Int, value: Int)
+
+    fun glPixelStorei(parameterName: Int, value: Int)
+
+    fun glTexImage2D(target: Int, level: Int, internalFormat: Int, width: Int, height: Int, border: Int,
+                     format: Int, type: Int, pixels: Buffer?)
+
+    fun glCompressedTexImage2D(target: Int, level: Int, internalFormat: Int, width: Int, height: Int, border: Int,
+                               imageSize: Int, data: Buffer)
+
+    fun glDeleteTextures(count: Int, textures: IntArray, offset: Int)
+
+    // vertex data and uniforms
+
+    fun glVertexAttribPointer(index: Int, size: Int, type: Int, normalized: Boolean, stride: Int, data: Buffer)
+
+    fun glVertexAttribPointer(index: Int, size: Int, type: Int, normalized: Boolean, stride: Int, offset: Int)
+
+    fun glVertexAttrib4f(index: Int, x: Float, y: Float, z: Float, w: Float)
+
+    /**
+     * GLES 3.0 - attribute [index] advances once per [divisor] instances, 0 is once per vertex.
+     */
+    fun glVertexAttribDivisor(index: Int, divisor: Int)
+
+    fun glUniformMatrix4fv(location: Int, count: Int, transpose: Boolean, value: FloatArray, offset: Int)
+
+    fun glUniform3f(location: Int, x: Float, y: Float, z: Float)
+
+    fun glUniform4f(location: Int, x: Float, y: Float, z: Float, w: Float)
+
+    // drawing
+
+    fun glClear(mask: Int)
+
+    fun glDrawArrays(mode: Int, first: Int, count: Int)
+
+    fun glDrawElements(mode: Int, count: Int, type: Int, offset: Int)
+
+    /**
+     * GLES 3.0.
+     */
+    fun glDrawArraysInstanced(mode: Int, first: Int, count: Int, instanceCount: Int)
+
+    /**
+     * GLES 3.0.
+     */
+    fun glDrawElementsInstanced(mode: Int, count: Int, type: Int, offset: Int, instanceCount: Int)
+}
+
+/**
+ * Backend forwarding everything to [GLES20] of the current EGL context.
+ */
+object Gles20Backend : GlBackend {
+
+    override fun glUseProgram(program: Int) = GLES20.glUseProgram(program)
+
+    override fun glEnableVertexAttribArray(index: Int) = GLES20.glEnableVertexAttribArray(index)
+
+    override fun glDisableVertexAttribArray(index: Int) = GLES20.glDisableVertexAttribArray(index)
+
+    override fun glBindBuffer(target: Int, buffer: Int) = GLES20.glBindBuffer(target, buffer)
+
+    override fun glEnable(capability: Int) = GLES20.glEnable(capability)
+
+    override fun glDisable(capability: Int) = GLES20.glDisable(capability)
+
+    override fun glHint(target: Int, mode: Int) = GLES20.glHint(target, mode)
+
+    override fun glViewport(x: Int, y: Int, width: Int, height: Int) = GLES20.glViewport(x, y, width, height)
+
+    override fun glClearColor(red: Float, green: Float, blue: Float, alpha: Float) =
+            GLES20.glClearColor(red, green, blue, alpha)
+
+    override fun glGetString(name: Int): String = GLES20.glGetString(name) ?: ""
+
+    override fun glCreateShader(type: Int) = GLES20.glCreateShader(type)
+
+    override fun glShaderSource(shader: Int, source: String) = GLES20.glShaderSource(shader, source)
+
+    override fun glCompileShader(shader: Int) = GLES20.glCompileShader(shader)
+
+    override fun glGetShaderiv(shader: Int, parameterName: Int, params: IntArray, offset: Int) =
+            GLES20.glGetShaderiv(shader, parameterName, params, offset)
+
+    override fun glGetShaderInfoLog(shader: Int): String = GLES20.glGetShaderInfoLog(shader)
+
+    override fun glDeleteShader(shader: Int) = GLES20.glDeleteShader(shader)
+
+    override fun glCreateProgram() = GLES20.glCreateProgram()
+
+    override fun glAttachShader(program: Int, shader: Int) = GLES20.glAttachShader(program, shader)
+
+    override fun glBindAttribLocation(program: Int, index: Int, name: String) =
+            GLES20.glBindAttribLocation(program, index, name)
+
+    override fun glLinkProgram(program: Int) = GLES20.glLinkProgram(program)
+
+    override fun glGetProgramiv(program: Int, parameterName: Int, params: IntArray, offset: Int) =
+            GLES20.glGetProgramiv(program, parameterName, params, offset)
+
+    override fun glGetProgramInfoLog(program: Int): String = GLES20.glGetProgramInfoLog(program)
+
+    override fun glDeleteProgram(program: Int) = GLES20.glDeleteProgram(program)
+
+    override fun glGetActiveAttrib(program: Int, index: Int,
+                                   size: IntArray, sizeOffset: Int,
+                                   type: IntArray, typeOffset: Int): String =
+            GLES20.glGetActiveAttrib(program, index, size, sizeOffset, type, typeOffset)
+
+    override fun glGetActiveUniform(program: Int, index: Int,
+                                    size: IntArray, sizeOffset: Int,
+                                    type: IntArray, typeOffset: Int): String =
+            GLES20.glGetActiveUniform(program, index, size, sizeOffset, type, typeOffset)
+
+    override fun glGetAttribLocation(program: Int, name: String) = GLES20.glGetAttribLocation(program, name)
+
+    override fun glGetUniformLocation(program: Int, name: String) = GLES20.glGetUniformLocation(program, name)
+
+    override fun isProgramBinarySupported(): Boolean {
+        // GLES30 bindings appeared in API 18, and a 2.0 context may still be created on 3.0 capable hardware
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2 ||
+                !glGetString(GLES20.GL_VERSION).startsWith("OpenGL ES 3")) {
+            return false
+        }
+        val formatCount = IntArray(1)
+        GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formatCount, 0)
+        return formatCount[0] > 0
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glGetProgramBinary(program: Int, bufferSize: Int,
+                                    length: IntArray, lengthOffset: Int,
+                                    binaryFormat: IntArray, binaryFormatOffset: Int,
+                                    binary: Buffer) =
+            GLES30.glGetProgramBinary(program, bufferSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary)
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glProgramBinary(program: Int, binaryFormat: Int, binary: Buffer, length: Int) =
+            GLES30.glProgramBinary(program, binaryFormat, binary, length)
+
+    override fun glGenBuffers(count: Int, buffers: IntArray, offset: Int) = GLES20.glGenBuffers(count, buffers, offset)
+
+    override fun glBufferData(target: Int, size: Int, data: Buffer?, usage: Int) =
+            GLES20.glBufferData(target, size, data, usage)
+
+    override fun glBufferSubData(target: Int, offset: Int, size: Int, data: Buffer) =
+            GLES20.glBufferSubData(target, offset, size, data)
+
+    override fun glDeleteBuffers(count: Int, buffers: IntArray, offset: Int) =
+            GLES20.glDeleteBuffers(count, buffers, offset)
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glMapBufferRange(target: Int, offset: Int, length: Int, access: Int): Buffer? =
+            GLES30.glMapBufferRange(target, offset, length, access)
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glUnmapBuffer(target: Int) = GLES30.glUnmapBuffer(target)
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glFenceSync(condition: Int, flags: Int) = GLES30.glFenceSync(condition, flags)
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glClientWaitSync(sync: Long, flags: Int, timeout: Long) = GLES30.glClientWaitSync(sync, flags, timeout)
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glDeleteSync(sync: Long) = GLES30.glDeleteSync(sync)
+
+    override fun glGenTextures(count: Int, textures: IntArray, offset: Int) =
+            GLES20.glGenTextures(count, textures, offset)
+
+    override fun glBindTexture(target: Int, texture: Int) = GLES20.glBindTexture(target, texture)
+
+    override fun glTexParameteri(target: Int, parameterName: Int, value: Int) =
+            GLES20.glTexParameteri(target, parameterName, value)
+
+    override fun glPixelStorei(parameterName: Int, value: Int) = GLES20.glPixelStorei(parameterName, value)
+
+    override fun glTexImage2D(target: Int, level: Int, internalFormat: Int, width: Int, height: Int, border: Int,
+                              format: Int, type: Int, pixels: Buffer?) =
+            GLES20.glTexImage2D(target, level, internalFormat, width, height, border, format, type, pixels)
+
+    override fun glCompressedTexImage2D(target: Int, level: Int, internalFormat: Int, width: Int, height: Int,
+                                        border: Int, imageSize: Int, data: Buffer) =
+            GLES20.glCompressedTexImage2D(target, level, internalFormat, width, height, border, imageSize, data)
+
+    override fun glDeleteTextures(count: Int, textures: IntArray, offset: Int) =
+            GLES20.glDeleteTextures(count, textures, offset)
+
+    override fun glVertexAttribPointer(index: Int, size: Int, type: Int, normalized: Boolean, stride: Int, data: Buffer) =
+            GLES20.glVertexAttribPointer(index, size, type, normalized, stride, data)
+
+    override fun glVertexAttribPointer(index: Int, size: Int, type: Int, normalized: Boolean, stride: Int, offset: Int) =
+            GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset)
+
+    override fun glVertexAttrib4f(index: Int, x: Float, y: Float, z: Float, w: Float) =
+            GLES20.glVertexAttrib4f(index, x, y, z, w)
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glVertexAttribDivisor(index: Int, divisor: Int) = GLES30.glVertexAttribDivisor(index, divisor)
+
+    override fun glUniformMatrix4fv(location: Int, count: Int, transpose: Boolean, value: FloatArray, offset: Int) =
+            GLES20.glUniformMatrix4fv(location, count, transpose, value, offset)
+
+    override fun glUniform3f(location: Int, x: Float, y: Float, z: Float) = GLES20.glUniform3f(location, x, y, z)
+
+    override fun glUniform4f(location: Int, x: Float, y: Float, z: Float, w: Float) =
+            GLES20.glUniform4f(location, x, y, z, w)
+
+    override fun glClear(mask: Int) = GLES20.glClear(mask)
+
+    override fun glDrawArrays(mode: Int, first: Int, count: Int) = GLES20.glDrawArrays(mode, first, count)
+
+    override fun glDrawElements(mode: Int, count: Int, type: Int, offset: Int) =
+            GLES20.glDrawElements(mode, count, type, offset)
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glDrawArraysInstanced(mode: Int, first: Int, count: Int, instanceCount: Int) =
+            GLES30.glDrawArraysInstanced(mode, first, count, instanceCount)
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    override fun glDrawElementsInstanced(mode: Int, count: Int, type: Int, offset: Int, instanceCount: Int) =
+            GLES30.glDrawElementsInstanced(mode, count, type, offset, instanceCount)
+}
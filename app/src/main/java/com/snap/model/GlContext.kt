@@ -0,0 +1,44 @@
+package com.snap.model
+
+import android.opengl.GLES20
+
+import com.snap.model.shading.ProgramBinaryCache
+import com.snap.model.shading.ShaderCache
+
+/**
+ * Everything bound to a single GL context: backend receiving the calls and shadow copy of its state.
+ */
+class GlContext(val backend: GlBackend) {
+
+    val state = GlStateCache(backend)
+
+    /**
+     * Native memory for data on its way to GL - staging copies of uploads and client-side arrays.
+     */
+    val bufferPool = NativeBufferPool()
+
+    /**
+     * Shaders and programs shared by everything drawing into this context.
+     */
+    val shaderCache = ShaderCache(this)
+
+    /**
+     * Optional storage of linked program binaries, letting the next start skip shader compilation.
+     */
+    var programBinaryCache: ProgramBinaryCache? = null
+
+    /**
+     * True for OpenGL ES 3.x - what the driver reports, not what EGL was asked for.
+     */
+    val isGles3: Boolean
+        get() = backend.glGetString(GLES20.GL_VERSION).startsWith("OpenGL ES 3")
+
+    companion object {
+
+        /**
+         * Context used by GL objects created without an explicit one. Renderers draw into a single surface.
+         */
+        @JvmStatic
+        var current: GlContext = GlContext(Gles20Backend)
+    }
+}
@@ -3,8 +3,10 @@ package com.snap.model
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.nio.FloatBuffer
+import java.nio.ShortBuffer
 
 const val bytesPerFloat = 4
+const val bytesPerShort = 2
 
 private fun createNativeOrderFloatBuffer(ofArray: FloatArray): FloatBuffer {
     if (ofArray.isEmpty()) {
@@ -18,4 +20,44 @@ private fun createNativeOrderFloatBuffer(ofArray: FloatArray): FloatBuffer {
     return result
 }
 
+private fun createNativeOrderShortBuffer(ofArray: ShortArray): ShortBuffer {
+    if (ofArray.isEmpty()) {
+        throw IllegalArgumentException("Array has to be not empty.")
+    }
+    val tmpBuffer = ByteBuffer.allocateDirect(ofArray.size * bytesPerShort)
+    tmpBuffer.order(ByteOrder.nativeOrder())
+    val result = tmpBuffer.asShortBuffer()
+    result.put(ofArray)
+    result.position(0)
+    return result
+}
+
 fun FloatArray.toNativeOrderBuffer(): FloatBuffer = createNativeOrderFloatBuffer(this)
+
+fun ShortArray.toNativeOrderBuffer(): ShortBuffer = createNativeOrderShortBuffer(this)
+
+/**
+ * Same as [toNativeOrderBuffer], but memory comes from [pool] - release result back to it when done.
+ */
+fun FloatArray.toNativeOrderBuffer(pool: NativeBufferPool): FloatBuffer {
+    if (isEmpty()) {
+        throw IllegalArgumentException("Array has to be not empty.")
+    }
+    val result = pool.acquireFloats(size)
+    result.put(this)
+    result.position(0)
+    return result
+}
+
+/**
+ * Same as [toNativeOrderBuffer], but memory comes from [pool] - release result back to it when done.
+ */
+fun ShortArray.toNativeOrderBuffer(pool: NativeBufferPool): ShortBuffer {
+    if (isEmpty()) {
+        throw IllegalArgumentException("Array has to be not empty.")
+    }
+    val result = pool.acquireShorts(size)
+    result.put(this)
+    result.position(0)
+    return result
+}
@@ -0,0 +1,180 @@
+package com.snap.model
+
+import android.opengl.GLES20
+
+private const val unknown = -1
+private const val disabled = 0
+private const val enabled = 1
+
+private const val initialAttributeSlots = 16
+
+/**
+ * Capabilities whose on/off state is shadowed. Any other capability is passed through as is.
+ */
+private val trackedCapabilities = intArrayOf(
+        GLES20.GL_DEPTH_TEST,
+        GLES20.GL_CULL_FACE,
+        GLES20.GL_BLEND,
+        GLES20.GL_SCISSOR_TEST,
+        GLES20.GL_STENCIL_TEST,
+        GLES20.GL_POLYGON_OFFSET_FILL)
+
+/**
+ * Shadow copy of GL state which drops calls that would not change anything.
+ *
+ * Everything starts as unknown so the first call of each kind always reaches GL. Call [invalidate]
+ * whenever the state may have been changed behind the cache's back - e.g. in onSurfaceCreated after
+ * the EGL context was recreated.
+ */
+class GlStateCache(private val backend: GlBackend) {
+
+    private var boundProgram = unknown
+    private var boundArrayBuffer = unknown
+    private var boundElementArrayBuffer = unknown
+    private var attributeArrayStates = IntArray(initialAttributeSlots) { unknown }
+    private val capabilityStates = IntArray(trackedCapabilities.size) { unknown }
+
+    var issuedCalls: Long = 0
+        private set
+
+    var skippedProgramSwitches: Long = 0
+        private set
+
+    var skippedAttributeArrayToggles: Long = 0
+        private set
+
+    var skippedBufferBinds: Long = 0
+        private set
+
+    var skippedCapabilityToggles: Long = 0
+        private set
+
+    val skippedCalls: Long
+        get() = skippedProgramSwitches + skippedAttributeArrayToggles + skippedBufferBinds + skippedCapabilityToggles
+
+    fun useProgram(program: Int) {
+        if (boundProgram == program) {
+            skippedProgramSwitches++
+            return
+        }
+        boundProgram = program
+        issuedCalls++
+        backend.glUseProgram(program)
+    }
+
+    fun enableVertexAttribArray(index: Int) {
+        if (attributeArrayState(index) == enabled) {
+            skippedAttributeArrayToggles++
+            return
+        }
+        attributeArrayStates[index] = enabled
+        issuedCalls++
+        backend.glEnableVertexAttribArray(index)
+    }
+
+    fun disableVertexAttribArray(index: Int) {
+        if (attributeArrayState(index) == disabled) {
+            skippedAttributeArrayToggles++
+            return
+        }
+        attributeArrayStates[index] = disabled
+        issuedCalls++
+        backend.glDisableVertexAttribArray(index)
+    }
+
+    fun bindBuffer(target: Int, buffer: Int) {
+        when (target) {
+            GLES20.GL_ARRAY_BUFFER -> {
+                if (boundArrayBuffer == buffer) {
+                    skippedBufferBinds++
+                    return
+                }
+                boundArrayBuffer = buffer
+            }
+            GLES20.GL_ELEMENT_ARRAY_BUFFER -> {
+                if (boundElementArrayBuffer == buffer) {
+                    skippedBufferBinds++
+                    return
+                }
+                boundElementArrayBuffer = buffer
+            }
+        }
+        issuedCalls++
+        backend.glBindBuffer(target, buffer)
+    }
+
+    fun enable(capability: Int) {
+        val slot = trackedCapabilities.indexOf(capability)
+        if (slot >= 0) {
+            if (capabilityStates[slot] == enabled) {
+                skippedCapabilityToggles++
+                return
+            }
+            capabilityStates[slot] = enabled
+        }
+        issuedCalls++
+        backend.glEnable(capability)
+    }
+
+    fun disable(capability: Int) {
+        val slot = trackedCapabilities.indexOf(capability)
+        if (slot >= 0) {
+            if (capabilityStates[slot] == disabled) {
+                skippedCapabilityToggles++
+                return
+            }
+            capabilityStates[slot] = disabled
+        }
+        issuedCalls++
+        backend.glDisable(capability)
+    }
+
+    /**
+     * Must be called when program is deleted - GL may hand the same handle out again.
+     */
+    fun onProgramDeleted(program: Int) {
+        if (boundProgram == program) {
+            boundProgram = unknown
+        }
+    }
+
+    /**
+     * Must be called when buffer is deleted - GL unbinds it and may hand the same handle out again.
+     */
+    fun onBufferDeleted(buffer: Int) {
+        if (boundArrayBuffer == buffer) {
+            boundArrayBuffer = unknown
+        }
+        if (boundElementArrayBuffer == buffer) {
+            boundElementArrayBuffer = unknown
+        }
+    }
+
+    /**
+     * Forgets everything known about GL state, so next calls go straight to GL.
+     */
+    fun invalidate() {
+        boundProgram = unknown
+        boundArrayBuffer = unknown
+        boundElementArrayBuffer = unknown
+        attributeArrayStates.fill(unknown)
+        capabilityStates.fill(unknown)
+    }
+
+    fun resetCounters() {
+        issuedCalls = 0
+        skippedProgramSwitches = 0
+        skippedAttributeArrayToggles = 0
+        skippedBufferBinds = 0
+        skippedCapabilityToggles = 0
+    }
+
+    private fun attributeArrayState(index: Int): Int {
+        if (index >= attributeArrayStates.size) {
+            val grown = IntArray(maxOf(index + 1, attributeArrayStates.size * 2)) { unknown }
+            System.arraycopy(attributeArrayStates, 0, grown, 0, attributeArrayStates.size)
+            attributeArrayStates = grown
+        }
+        return attributeArrayStates[index]
+    }
+}
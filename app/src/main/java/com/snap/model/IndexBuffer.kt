@@ -0,0 +1,46 @@
+package com.snap.model
+
+import android.opengl.GLES20
+
+import java.nio.ShortBuffer
+
+/**
+ * Indices of vertices (unsigned shorts, so up to 65536 vertices per draw) kept in GPU memory.
+ */
+class IndexBuffer(usage: BufferUsage = BufferUsage.STATIC,
+                  glContext: GlContext = GlContext.current) :
+        BufferObject(GLES20.GL_ELEMENT_ARRAY_BUFFER, usage, glContext) {
+
+    var indexCount: Int = 0
+        private set
+
+    /**
+     * Uploads remaining indices of [data].
+     */
+    fun upload(data: ShortBuffer) = apply {
+        uploadBytes(data, data.remaining() * bytesPerShort)
+        indexCount = data.remaining()
+    }
+
+    fun update(firstIndex: Int, data: ShortBuffer) {
+        updateBytes(firstIndex * bytesPerShort, data, data.remaining() * bytesPerShort)
+    }
+
+    /**
+     * Draws [count] indices starting from [firstIndex], using currently bound vertex attributes.
+     */
+    fun draw(mode: Int, count: Int = indexCount, firstIndex: Int = 0) {
+        bind()
+        glContext.backend.glDrawElements(mode, count, GLES20.GL_UNSIGNED_SHORT, firstIndex * bytesPerShort)
+    }
+}
+
+fun ShortArray.toIndexBuffer(usage: BufferUsage = BufferUsage.STATIC,
+                             glContext: GlContext = GlContext.current): IndexBuffer {
+    val staging = toNativeOrderBuffer(glContext.bufferPool)
+    try {
+        return IndexBuffer(usage, glContext).upload(staging)
+    } finally {
+        glContext.bufferPool.release(staging)
+    }
+}
@@ -0,0 +1,236 @@
+package com.snap.model
+
+import android.opengl.GLES20
+
+import com.snap.math.Mat4
+import com.snap.model.shading.AttributeBinding
+import com.snap.model.shading.ShadingProgram
+import com.snap.model.shading.UniformBinding
+import com.snap.model.shading.bindVertexFormat
+
+/**
+ * Many copies of the same geometry - e.g. boats of a fleet - each placed by its own matrix, drawn with
+ * a call per [instancesPerDraw] copies instead of a call per copy.
+ *
+ * On GLES 3.0 matrices of all instances are streamed every frame into a [StreamingBuffer] and read as a mat4
+ * attribute advancing once per instance (glVertexAttribDivisor), then everything goes in one
+ * glDrawElementsInstanced. GLES 2.0 has no instancing - geometry is uploaded [instancesPerDraw] times
+ * instead, every copy tagged by its index, and matrices of each batch of instances go into a uniform
+ * array the vertex shader indexes. Shaders switch between the two by [shaderDefines].
+ *
+ * Has to be created and used on the GL thread.
+ */
+class InstancedMesh @JvmOverloads constructor(geometry: StaticBatcher,
+                                              val maxInstanceCount: Int,
+                                              private val glContext: GlContext = GlContext.current) {
+
+    val format = geometry.format
+
+    /**
+     * True when instances are drawn with GLES 3.0 instanced arrays.
+     */
+    val usesInstancedArrays = glContext.isGles3
+
+    /**
+     * Instances going into a single draw call.
+     */
+    val instancesPerDraw: Int
+
+    /**
+     * Matrix of every instance - usually its Model-View-Projection - 16 floats each, written by the
+     * caller before [draw], e.g. by [com.snap.math.TransformBatch.computeModelViewProjection].
+     */
+    val instanceMatrices = FloatArray(maxInstanceCount * Mat4.size)
+
+    /**
+     * Instances drawn by [draw], from the start of [instanceMatrices].
+     */
+    var instanceCount = 0
+        set(value) {
+            if (value !in 0..maxInstanceCount) {
+                throw IllegalArgumentException("Instance count $value is out of 0..$maxInstanceCount.")
+            }
+            field = value
+        }
+
+    private val indicesPerInstance: Int
+    private val vertices: VertexBuffer
+    private val indices: IndexBuffer
+
+    // GLES 3.0 - per instance data, a region of the ring every frame
+    private val instanceStream: StreamingBuffer<VertexBuffer>?
+
+    // GLES 2.0 - index of the copy every vertex belongs to
+    private val instanceIndices: VertexBuffer?
+
+    // bindings of the program drawn with last, looked up again only when the program changes
+    private var boundProgram: ShadingProgram? = null
+    private var programVertexAttributes: List<AttributeBinding> = emptyList()
+    private var programInstanceMatrix: AttributeBinding? = null
+    private var programInstanceMatrices: UniformBinding? = null
+    private var programInstanceIndex: AttributeBinding? = null
+
+    init {
+        if (maxInstanceCount <= 0) {
+            throw IllegalArgumentException("There has to be room for at least one instance, not $maxInstanceCount.")
+        }
+        if (geometry.meshCount == 0) {
+            throw IllegalStateException("Nothing to instance - no meshes were added.")
+        }
+        val vertexCount = geometry.vertexCount
+        val triangleIndices = geometry.triangleIndices()
+        indicesPerInstance = triangleIndices.size
+        instancesPerDraw = if (usesInstancedArrays) {
+            maxInstanceCount
+        } else {
+            Math.min(Math.min(maxInstanceCount, maxPseudoInstancesPerDraw), StaticBatcher.maxVertexCount / vertexCount)
+        }
+        val copies = if (usesInstancedArrays) 1 else instancesPerDraw
+        val attributesData = Array(format.attributes.size) { repeated(geometry.attributeData(it), copies) }
+        val copiedIndices = ShortArray(indicesPerInstance * copies)
+        for (copy in 0 until copies) {
+            for (index in triangleIndices.indices) {
+                val vertex = (triangleIndices[index].toInt() and 0xFFFF) + copy * vertexCount
+                copiedIndices[copy * indicesPerInstance + index] = vertex.toShort()
+            }
+        }
+        val pool = glContext.bufferPool
+        val packed = format.pack(pool, *attributesData)
+        vertices = try {
+            VertexBuffer(BufferUsage.STATIC, glContext).upload(packed)
+        } finally {
+            pool.release(packed)
+        }
+        indices = copiedIndices.toIndexBuffer(BufferUsage.STATIC, glContext)
+        if (usesInstancedArrays) {
+            // a partition holds matrices of all instances
+            val partitionCount = StreamingBuffer.defaultPartitionCount
+            instanceStream = StreamingBuffer.vertices(partitionCount * maxInstanceCount * bytesPerInstance, partitionCount,
+                    glContext)
+            instanceIndices = null
+        } else {
+            instanceStream = null
+            instanceIndices = FloatArray(vertexCount * copies) { (it / vertexCount).toFloat() }
+                    .toVertexBuffer(BufferUsage.STATIC, glContext)
+        }
+    }
+
+    /**
+     * Defines the shaders need - [instancingDefine] with instanced arrays, [instancesPerDrawDefine] always.
+     */
+    val shaderDefines: Map<String, String>
+        get() = if (usesInstancedArrays) {
+            mapOf(instancingDefine to "1", instancesPerDrawDefine to instancesPerDraw.toString())
+        } else {
+            mapOf(instancesPerDrawDefine to instancesPerDraw.toString())
+        }
+
+    /**
+     * Draws [instanceCount] instances with [program], which has to declare attributes of [format] and
+     * instance data under the names in the companion object. Bindings are looked up on the first draw with
+     * [program] and kept, so drawing with the same program every frame allocates nothing.
+     */
+    internal fun draw(program: ShadingProgram) {
+        program.useProgram()
+        if (program !== boundProgram) {
+            programVertexAttributes = format.attributes.map { program.attribute(it.name) }
+            programInstanceMatrix = if (usesInstancedArrays) program.attribute(instanceMatrixAttribute) else null
+            programInstanceMatrices = if (usesInstancedArrays) null else program.uniform(instanceMatricesUniform)
+            programInstanceIndex = if (usesInstancedArrays) null else program.attribute(instanceIndexAttribute)
+            boundProgram = program
+        }
+        draw(programVertexAttributes, programInstanceMatrix, programInstanceMatrices, programInstanceIndex)
+    }
+
+    /**
+     * Draws [instanceCount] instances using the program in use. [vertexAttributes] follow the order of
+     * [format]; [instanceMatrix] is needed with instanced arrays, [instanceMatrices] and [instanceIndex]
+     * without them.
+     */
+    fun draw(vertexAttributes: List<AttributeBinding>,
+             instanceMatrix: AttributeBinding?,
+             instanceMatrices: UniformBinding?,
+             instanceIndex: AttributeBinding?) {
+        if (instanceCount == 0) {
+            return
+        }
+        bindVertexFormat(vertices, format, vertexAttributes)
+        if (usesInstancedArrays) {
+            drawInstanced(instanceMatrix ?: throw IllegalArgumentException("Instanced arrays need instance matrix attribute."))
+        } else {
+            drawPseudoInstanced(
+                    instanceMatrices ?: throw IllegalArgumentException("Pseudo-instancing needs instance matrices uniform."),
+                    instanceIndex ?: throw IllegalArgumentException("Pseudo-instancing needs instance index attribute."))
+        }
+    }
+
+    private fun drawInstanced(instanceMatrix: AttributeBinding) {
+        val instanceStream = instanceStream!!
+        instanceStream.write(instanceCount * bytesPerInstance).asFloatBuffer()
+                .put(instanceMatrices, 0, instanceCount * Mat4.size)
+        val instanceOffset = instanceStream.commit()
+        val gl = glContext.backend
+        val state = glContext.state
+        val firstLocation = instanceMatrix.attributeHandle
+        if (firstLocation < 0) {
+            throw IllegalArgumentException("Instance matrix attribute ${instanceMatrix.attributeName} is not active.")
+        }
+        instanceStream.buffer.bind()
+        // mat4 attribute takes 4 consecutive locations, a column each
+        for (column in 0 until 4) {
+            state.enableVertexAttribArray(firstLocation + column)
+            gl.glVertexAttribPointer(firstLocation + column, 4, GLES20.GL_FLOAT, false, bytesPerInstance,
+                    instanceOffset + column * 4 * bytesPerFloat)
+            gl.glVertexAttribDivisor(firstLocation + column, 1)
+        }
+        indices.bind()
+        gl.glDrawElementsInstanced(GLES20.GL_TRIANGLES, indicesPerInstance, GLES20.GL_UNSIGNED_SHORT, 0, instanceCount)
+        // the locations go back to per vertex data for whatever is drawn next
+        for (column in 0 until 4) {
+            gl.glVertexAttribDivisor(firstLocation + column, 0)
+            state.disableVertexAttribArray(firstLocation + column)
+        }
+        instanceStream.endFrame()
+    }
+
+    private fun drawPseudoInstanced(instanceMatrices: UniformBinding, instanceIndex: AttributeBinding) {
+        instanceIndex.bindVertexBuffer(instanceIndices!!, 1)
+        for (first in 0 until instanceCount step instancesPerDraw) {
+            val count = Math.min(instancesPerDraw, instanceCount - first)
+            instanceMatrices.bindUniformMatrix4fv(this.instanceMatrices, count, first * Mat4.size)
+            indices.draw(GLES20.GL_TRIANGLES, count * indicesPerInstance)
+        }
+    }
+
+    fun release() {
+        vertices.release()
+        indices.release()
+        instanceStream?.release()
+        instanceIndices?.release()
+    }
+
+    companion object {
+
+        /**
+         * 96 of the 128 vec4 uniforms every GLES 2.0 vertex shader gets, the rest is left to other uniforms.
+         */
+        const val maxPseudoInstancesPerDraw = 24
+
+        const val instanceMatrixAttribute = "a_instanceMatrix"
+        const val instanceMatricesUniform = "u_instanceMatrices"
+        const val instanceIndexAttribute = "a_instanceIndex"
+
+        const val instancingDefine = "INSTANCED_ARRAYS"
+        const val instancesPerDrawDefine = "INSTANCES_PER_DRAW"
+
+        private const val bytesPerInstance = Mat4.size * bytesPerFloat
+
+        private fun repeated(data: FloatArray, copies: Int): FloatArray {
+            val result = FloatArray(data.size * copies)
+            for (copy in 0 until copies) {
+                System.arraycopy(data, 0, result, copy * data.size, data.size)
+            }
+            return result
+        }
+    }
+}
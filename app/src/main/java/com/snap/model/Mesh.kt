@@ -0,0 +1,124 @@
+package com.snap.model
+
+import com.snap.math.Bounds
+
+/**
+ * How consecutive vertices (or indices) of a [Mesh] form triangles.
+ *
+ * GL enum values are spelled out so the class does not need android.jar.
+ */
+enum class PrimitiveType(val glMode: Int) {
+
+    /**
+     * Every 3 vertices are a separate triangle.
+     */
+    TRIANGLES(0x0004),
+
+    /**
+     * Every vertex after the first two makes a triangle with the previous two, winding alternates.
+     */
+    TRIANGLE_STRIP(0x0005)
+}
+
+/**
+ * Geometry kept in memory - separate per-attribute arrays in [format] order, [VertexAttribute.componentCount]
+ * values per vertex each, plus optional indices.
+ */
+class Mesh(val format: VertexFormat,
+           val primitiveType: PrimitiveType,
+           attributesData: List<FloatArray>,
+           val indices: ShortArray? = null) {
+
+    val attributesData: List<FloatArray> = attributesData.toList()
+
+    val vertexCount: Int
+
+    init {
+        if (this.attributesData.size != format.attributes.size) {
+            throw IllegalArgumentException("Expected data of ${format.attributes.size} attributes, " +
+                    "got ${this.attributesData.size}.")
+        }
+        vertexCount = this.attributesData[0].size / format.attributes[0].componentCount
+        format.attributes.forEachIndexed { index, attribute ->
+            if (this.attributesData[index].size != vertexCount * attribute.componentCount) {
+                throw IllegalArgumentException("Data of ${attribute.name} has ${this.attributesData[index].size} " +
+                        "values, expected ${vertexCount * attribute.componentCount} for $vertexCount vertices.")
+            }
+        }
+    }
+
+    /**
+     * Number of vertices (or indices, for indexed mesh) in draw order.
+     */
+    val elementCount: Int
+        get() = indices?.size ?: vertexCount
+
+    /**
+     * Vertex indices of the mesh as a list of separate triangles. Strips are unrolled with every other
+     * triangle flipped back to the strip's winding, degenerate triangles (used to stitch strips) are dropped.
+     */
+    fun triangleIndices(): ShortArray {
+        val elementCount = elementCount
+        val indices = indices
+        val vertexOf = { element: Int -> if (indices == null) element else indices[element].toInt() and 0xFFFF }
+        return when (primitiveType) {
+            PrimitiveType.TRIANGLES -> ShortArray(elementCount - elementCount % 3) { vertexOf(it).toShort() }
+            PrimitiveType.TRIANGLE_STRIP -> {
+                val triangles = ShortArray(Math.max(elementCount - 2, 0) * 3)
+                var size = 0
+                for (first in 0 until elementCount - 2) {
+                    val a = vertexOf(first)
+                    val b = vertexOf(first + 1)
+                    val c = vertexOf(first + 2)
+                    if (a == b || b == c || a == c) {
+                        continue
+                    }
+                    val isOdd = first % 2 == 1
+                    triangles[size++] = (if (isOdd) b else a).toShort()
+                    triangles[size++] = (if (isOdd) a else b).toShort()
+                    triangles[size++] = c.toShort()
+                }
+                if (size == triangles.size) triangles else triangles.copyOf(size)
+            }
+        }
+    }
+
+    /**
+     * Bounds of values of [positionAttribute], in model space.
+     */
+    @JvmOverloads
+    fun bounds(positionAttribute: String = format.attributes[0].name): Bounds {
+        val index = format.indexOf(positionAttribute)
+        return Bounds.of(attributesData[index], format.attributes[index].componentCount)
+    }
+
+    override fun toString() = "Mesh($vertexCount vertices, $elementCount elements as $primitiveType)"
+
+    companion object {
+
+        /**
+         * Splits [interleaved] floats - all components of the first vertex, then all of the second... in
+         * [format] order - into a mesh.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun fromInterleaved(format: VertexFormat, primitiveType: PrimitiveType, interleaved: FloatArray,
+                            indices: ShortArray? = null): Mesh {
+            val floatsPerVertex = format.attributes.sumBy { it.componentCount }
+            if (interleaved.size % floatsPerVertex != 0) {
+                throw IllegalArgumentException("${interleaved.size} floats are not whole vertices of $format.")
+            }
+            val vertexCount = interleaved.size / floatsPerVertex
+            val attributesData = format.attributes.map { FloatArray(vertexCount * it.componentCount) }
+            var source = 0
+            for (vertex in 0 until vertexCount) {
+                format.attributes.forEachIndexed { index, attribute ->
+                    System.arraycopy(interleaved, source, attributesData[index],
+                            vertex * attribute.componentCount, attribute.componentCount)
+                    source += attribute.componentCount
+                }
+            }
+            return Mesh(format, primitiveType, attributesData, indices)
+        }
+    }
+}
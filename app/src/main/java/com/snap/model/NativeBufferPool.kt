@@ -0,0 +1,163 @@
+package com.snap.model
+
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import java.nio.ShortBuffer
+import java.util.IdentityHashMap
+
+private const val smallestSizeClassInBytes = 64
+
+/**
+ * Hands out native-order direct buffers carved from large direct blocks.
+ *
+ * [ByteBuffer.allocateDirect] is slow and its memory comes back only after GC finds the buffer object,
+ * so every scene reload or rebuilt piece of geometry used to grow native heap. Here requests are rounded
+ * up to a power of two size class and released slices are reused by later requests of the same class.
+ * Blocks are never returned to the system - pool is meant to live as long as the app does.
+ *
+ * Content of acquired buffer is undefined. Thread safe.
+ */
+class NativeBufferPool(val blockSizeInBytes: Int = 256 * 1024) {
+
+    init {
+        if (blockSizeInBytes < smallestSizeClassInBytes || Integer.bitCount(blockSizeInBytes) != 1) {
+            throw IllegalArgumentException("Block size has to be a power of two, " +
+                    "at least $smallestSizeClassInBytes bytes, not $blockSizeInBytes.")
+        }
+    }
+
+    private class Slice(val bytes: ByteBuffer, val sizeClass: Int)
+
+    /**
+     * Free slices indexed by size class, that is log2 of their capacity.
+     */
+    private val freeSlices = Array(Integer.numberOfTrailingZeros(blockSizeInBytes) + 1) { ArrayList<ByteBuffer>() }
+
+    /**
+     * Every buffer handed out and not released yet, keyed by identity of the object the caller holds.
+     */
+    private val liveSlices = IdentityHashMap<Buffer, Slice>()
+
+    private var currentBlock: ByteBuffer? = null
+
+    /**
+     * Bytes of slices (size class capacity, not requested size) currently in use.
+     */
+    var liveBytes: Long = 0
+        @Synchronized get
+        private set
+
+    /**
+     * Highest [liveBytes] seen since creation or last [resetPeak].
+     */
+    var peakLiveBytes: Long = 0
+        @Synchronized get
+        private set
+
+    /**
+     * Native memory taken from the system so far - blocks plus oversized buffers still in use.
+     */
+    var reservedBytes: Long = 0
+        @Synchronized get
+        private set
+
+    val liveBufferCount: Int
+        @Synchronized get() = liveSlices.size
+
+    /**
+     * Returns buffer with position 0 and limit of [sizeInBytes]. Requests bigger than [blockSizeInBytes]
+     * get dedicated allocation which is dropped on release.
+     */
+    @Synchronized
+    fun acquire(sizeInBytes: Int): ByteBuffer {
+        val bytes = acquireSlice(sizeInBytes)
+        liveSlices[bytes] = Slice(bytes, sizeClassOf(sizeInBytes))
+        return bytes
+    }
+
+    @Synchronized
+    fun acquireFloats(count: Int): FloatBuffer {
+        val bytes = acquireSlice(count * bytesPerFloat)
+        val floats = bytes.asFloatBuffer()
+        liveSlices[floats] = Slice(bytes, sizeClassOf(count * bytesPerFloat))
+        return floats
+    }
+
+    @Synchronized
+    fun acquireShorts(count: Int): ShortBuffer {
+        val bytes = acquireSlice(count * bytesPerShort)
+        val shorts = bytes.asShortBuffer()
+        liveSlices[shorts] = Slice(bytes, sizeClassOf(count * bytesPerShort))
+        return shorts
+    }
+
+    /**
+     * Gives [buffer] back for reuse. It must not be touched afterwards.
+     */
+    @Synchronized
+    fun release(buffer: Buffer) {
+        val slice = liveSlices.remove(buffer)
+                ?: throw IllegalArgumentException("Buffer was not acquired from this pool or is already released.")
+        val capacity = slice.bytes.capacity()
+        liveBytes -= capacity
+        if (slice.sizeClass < freeSlices.size) {
+            freeSlices[slice.sizeClass].add(slice.bytes)
+        } else {
+            reservedBytes -= capacity
+        }
+    }
+
+    @Synchronized
+    fun resetPeak() {
+        peakLiveBytes = liveBytes
+    }
+
+    override fun toString() = "NativeBufferPool(live $liveBytes B in $liveBufferCount buffers, " +
+            "peak $peakLiveBytes B, reserved $reservedBytes B)"
+
+    private fun acquireSlice(sizeInBytes: Int): ByteBuffer {
+        if (sizeInBytes <= 0) {
+            throw IllegalArgumentException("Size has to be positive, not $sizeInBytes.")
+        }
+        val sizeClass = sizeClassOf(sizeInBytes)
+        val bytes = if (sizeClass < freeSlices.size) {
+            val free = freeSlices[sizeClass]
+            if (free.isEmpty()) carveSlice(1 shl sizeClass) else free.removeAt(free.size - 1)
+        } else {
+            reservedBytes += sizeInBytes
+            ByteBuffer.allocateDirect(sizeInBytes)
+        }
+        liveBytes += bytes.capacity()
+        if (liveBytes > peakLiveBytes) {
+            peakLiveBytes = liveBytes
+        }
+        bytes.clear()
+        bytes.limit(sizeInBytes)
+        // slices always start big endian
+        return bytes.order(ByteOrder.nativeOrder())
+    }
+
+    private fun carveSlice(capacity: Int): ByteBuffer {
+        var block = currentBlock
+        if (block == null || block.remaining() < capacity) {
+            block = ByteBuffer.allocateDirect(blockSizeInBytes)
+            reservedBytes += blockSizeInBytes
+            currentBlock = block
+        }
+        val start = block.position()
+        block.limit(start + capacity)
+        val slice = block.slice()
+        block.limit(block.capacity())
+        block.position(start + capacity)
+        return slice
+    }
+
+    private fun sizeClassOf(sizeInBytes: Int): Int {
+        if (sizeInBytes <= smallestSizeClassInBytes) {
+            return Integer.numberOfTrailingZeros(smallestSizeClassInBytes)
+        }
+        return 32 - Integer.numberOfLeadingZeros(sizeInBytes - 1)
+    }
+}
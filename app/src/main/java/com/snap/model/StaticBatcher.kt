@@ -0,0 +1,218 @@
+package com.snap.model
+
+import android.opengl.GLES20
+
+import com.snap.math.Bounds
+import com.snap.math.Mat4
+import com.snap.math.Vec3
+
+/**
+ * What merging meshes into a [StaticBatch] saved.
+ */
+class BatchMetrics(val meshCount: Int,
+                   val vertexCount: Int,
+                   val indexCount: Int,
+                   val stripsConverted: Int) {
+
+    /**
+     * Draw calls needed for the meshes on their own minus the single one of the batch.
+     */
+    val drawCallsSaved: Int
+        get() = Math.max(meshCount - 1, 0)
+
+    /**
+     * Vertices copied from separate meshes into the combined vertex buffer.
+     */
+    val verticesMerged: Int
+        get() = vertexCount
+
+    override fun toString() = "BatchMetrics($meshCount meshes, $drawCallsSaved draw calls saved, " +
+            "$verticesMerged vertices merged, $indexCount indices, $stripsConverted strips converted)"
+}
+
+/**
+ * Merges meshes drawn with the same program and [format] into one vertex and one index buffer, drawn with
+ * a single call.
+ *
+ * Meshes are transformed into the space of the batch as they are added - [positionAttribute] by model
+ * matrix and [normalAttribute], when given, by its normal matrix - so the batch is drawn with one shared
+ * transform. Strips become indexed triangles. Everything is kept on the CPU until [build].
+ */
+class StaticBatcher @JvmOverloads constructor(val format: VertexFormat,
+                                              positionAttribute: String = format.attributes[0].name,
+                                              normalAttribute: String? = null) {
+
+    private val positionIndex = format.indexOf(positionAttribute)
+    private val normalIndex = if (normalAttribute == null) -1 else format.indexOf(normalAttribute)
+
+    private val attributesData = format.attributes.map { FloatArray(initialCapacity * it.componentCount) }
+            .toMutableList()
+    private var indices = ShortArray(initialCapacity * 3)
+
+    private val normalMatrix = FloatArray(9)
+    private val point = FloatArray(Vec3.size)
+
+    var meshCount = 0
+        private set
+
+    var vertexCount = 0
+        private set
+
+    var indexCount = 0
+        private set
+
+    private var stripsConverted = 0
+
+    init {
+        checkComponentCount(positionIndex)
+        if (normalIndex >= 0) {
+            checkComponentCount(normalIndex)
+        }
+    }
+
+    /**
+     * Adds [mesh] transformed by [modelMatrix] (16 floats from [modelMatrixOffset]), or as is when there is none.
+     */
+    @JvmOverloads
+    fun add(mesh: Mesh, modelMatrix: FloatArray? = null, modelMatrixOffset: Int = 0) = apply {
+        if (mesh.format !== format) {
+            throw IllegalArgumentException("Mesh format ${mesh.format} differs from format of the batch $format.")
+        }
+        if (vertexCount + mesh.vertexCount > maxVertexCount) {
+            throw IllegalStateException("Batch is full - $vertexCount vertices plus ${mesh.vertexCount} " +
+                    "exceed $maxVertexCount addressable by short indices.")
+        }
+        val firstVertex = vertexCount
+        appendVertices(mesh, modelMatrix, modelMatrixOffset)
+        appendIndices(mesh.triangleIndices(), firstVertex)
+        if (mesh.primitiveType == PrimitiveType.TRIANGLE_STRIP) {
+            stripsConverted++
+        }
+        meshCount++
+    }
+
+    private fun appendVertices(mesh: Mesh, modelMatrix: FloatArray?, modelMatrixOffset: Int) {
+        val firstVertex = vertexCount
+        vertexCount += mesh.vertexCount
+        format.attributes.forEachIndexed { index, attribute ->
+            val size = vertexCount * attribute.componentCount
+            if (attributesData[index].size < size) {
+                attributesData[index] = attributesData[index].copyOf(Math.max(size, attributesData[index].size * 2))
+            }
+            System.arraycopy(mesh.attributesData[index], 0, attributesData[index],
+                    firstVertex * attribute.componentCount, mesh.vertexCount * attribute.componentCount)
+        }
+        if (modelMatrix == null) {
+            return
+        }
+        val positions = attributesData[positionIndex]
+        for (vertex in firstVertex until vertexCount) {
+            Vec3.transformPoint(positions, vertex * Vec3.size, modelMatrix, modelMatrixOffset,
+                    positions, vertex * Vec3.size)
+        }
+        if (normalIndex >= 0) {
+            if (!Mat4.normalMatrix(normalMatrix, 0, modelMatrix, modelMatrixOffset)) {
+                throw IllegalArgumentException("Model matrix of $mesh is not invertible.")
+            }
+            val normals = attributesData[normalIndex]
+            for (vertex in firstVertex until vertexCount) {
+                transformNormal(normals, vertex * Vec3.size)
+            }
+        }
+    }
+
+    private fun transformNormal(normals: FloatArray, offset: Int) {
+        for (row in 0 until Vec3.size) {
+            point[row] = normalMatrix[row] * normals[offset] +
+                    normalMatrix[3 + row] * normals[offset + 1] +
+                    normalMatrix[6 + row] * normals[offset + 2]
+        }
+        Vec3.normalize(normals, offset, point, 0)
+    }
+
+    private fun appendIndices(triangleIndices: ShortArray, firstVertex: Int) {
+        if (indices.size < indexCount + triangleIndices.size) {
+            indices = indices.copyOf(Math.max(indexCount + triangleIndices.size, indices.size * 2))
+        }
+        for (index in triangleIndices) {
+            indices[indexCount++] = ((index.toInt() and 0xFFFF) + firstVertex).toShort()
+        }
+    }
+
+    /**
+     * Merged data of attribute [attributeIndex], [vertexCount] vertices.
+     */
+    fun attributeData(attributeIndex: Int): FloatArray =
+            attributesData[attributeIndex].copyOf(vertexCount * format.attributes[attributeIndex].componentCount)
+
+    /**
+     * Merged indices of separate triangles.
+     */
+    fun triangleIndices(): ShortArray = indices.copyOf(indexCount)
+
+    val metrics: BatchMetrics
+        get() = BatchMetrics(meshCount, vertexCount, indexCount, stripsConverted)
+
+    /**
+     * Bounds of all merged positions, in the space of the batch.
+     */
+    val bounds: Bounds
+        get() = Bounds.of(attributeData(positionIndex), format.attributes[positionIndex].componentCount)
+
+    /**
+     * Uploads merged geometry to GPU memory. The batcher can be reused (or dropped) afterwards.
+     */
+    @JvmOverloads
+    fun build(usage: BufferUsage = BufferUsage.STATIC, glContext: GlContext = GlContext.current): StaticBatch {
+        if (meshCount == 0) {
+            throw IllegalStateException("Nothing to build - no meshes were added.")
+        }
+        val pool = glContext.bufferPool
+        val packed = format.pack(pool, *Array(format.attributes.size) { attributeData(it) })
+        val vertexBuffer = try {
+            VertexBuffer(usage, glContext).upload(packed)
+        } finally {
+            pool.release(packed)
+        }
+        return StaticBatch(format, vertexBuffer, triangleIndices().toIndexBuffer(usage, glContext), metrics, bounds)
+    }
+
+    private fun checkComponentCount(attributeIndex: Int) {
+        val attribute = format.attributes[attributeIndex]
+        if (attribute.componentCount != Vec3.size) {
+            throw IllegalArgumentException("Only 3 component attributes can be transformed, got $attribute.")
+        }
+    }
+
+    companion object {
+
+        /**
+         * Vertices addressable by unsigned short indices.
+         */
+        const val maxVertexCount = 65536
+
+        private const val initialCapacity = 64
+    }
+}
+
+/**
+ * Geometry merged by [StaticBatcher] - bind [vertices] according to [format], then [draw].
+ */
+class StaticBatch internal constructor(val format: VertexFormat,
+                                       val vertices: VertexBuffer,
+                                       val indices: IndexBuffer,
+                                       val metrics: BatchMetrics,
+                                       val bounds: Bounds) {
+
+    /**
+     * Draws all merged meshes with a single call, using currently bound vertex attributes.
+     */
+    fun draw() {
+        indices.draw(GLES20.GL_TRIANGLES)
+    }
+
+    fun release() {
+        vertices.release()
+        indices.release()
+    }
+}
@@ -0,0 +1,249 @@
+package com.snap.model
+
+import android.opengl.GLES30
+
+import com.snap.model.exception.GlException
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Ring of buffer object memory for data rewritten every frame - animated vertices, per instance data,
+ * generated indices. Every [write] gets the region following the previous one, so the store is never
+ * reallocated and the CPU does not wait for draws still reading older regions.
+ *
+ * On GLES 3.0 the ring is split into [partitionCount] partitions. Regions are mapped unsynchronized and
+ * written in place, [endFrame] fences the partitions written so far, and a partition is written again
+ * only after its fence has passed - each time the GPU was not there yet counts in [stallCount].
+ * GLES 2.0 has neither mapping nor fences: regions are written to native memory and copied by
+ * glBufferSubData, and once the ring is full its store is orphaned - respecified, so draws still pending
+ * keep the old memory while the driver hands out new one.
+ *
+ * Has to be created and used on the GL thread.
+ */
+class StreamingBuffer<out B : BufferObject> internal constructor(val buffer: B,
+                                                                 val ringSizeInBytes: Int,
+                                                                 val partitionCount: Int,
+                                                                 private val glContext: GlContext) {
+
+    /**
+     * True when regions are mapped and partitions guarded by fences (GLES 3.0), false when the store is
+     * orphaned on every wrap-around.
+     */
+    val usesFences = glContext.isGles3
+
+    val partitionSizeInBytes: Int
+
+    /**
+     * Times writing went back to the start of the ring.
+     */
+    var wrapCount = 0
+        private set
+
+    /**
+     * Times a partition was still read by the GPU and [write] had to wait for it.
+     */
+    var stallCount = 0
+        private set
+
+    private val gl = glContext.backend
+
+    /**
+     * Fence of the last frame which wrote into every partition, 0 when there is nothing to wait for.
+     */
+    private val fences = LongArray(partitionCount)
+
+    /**
+     * Partitions written since the last [endFrame] - not fenced yet, so they must not be entered again.
+     */
+    private val unfenced = BooleanArray(partitionCount)
+
+    private var cursor = 0
+    private var currentPartition = noPartition
+
+    private var region: ByteBuffer? = null
+    private var regionOffset = 0
+    private var regionSize = 0
+
+    init {
+        if (partitionCount <= 0 || ringSizeInBytes <= 0 || ringSizeInBytes % (partitionCount * alignment) != 0) {
+            throw IllegalArgumentException("Ring of $ringSizeInBytes bytes does not split into $partitionCount " +
+                    "partitions aligned to $alignment bytes.")
+        }
+        partitionSizeInBytes = ringSizeInBytes / partitionCount
+        buffer.uploadBytes(null, ringSizeInBytes)
+    }
+
+    /**
+     * Returns native order region of [sizeInBytes] bytes to write the data into, from position 0. The data
+     * gets to the buffer by [commit].
+     */
+    fun write(sizeInBytes: Int): ByteBuffer {
+        if (region != null) {
+            throw IllegalStateException("Region at $regionOffset has to be committed before the next write.")
+        }
+        if (sizeInBytes <= 0 || sizeInBytes > ringSizeInBytes) {
+            throw IllegalArgumentException("Region of $sizeInBytes bytes does not fit into ring of " +
+                    "$ringSizeInBytes bytes.")
+        }
+        var offset = align(cursor)
+        if (offset + sizeInBytes > ringSizeInBytes) {
+            offset = 0
+            currentPartition = noPartition
+            wrapCount++
+            if (!usesFences) {
+                // pending draws keep reading the old store
+                buffer.uploadBytes(null, ringSizeInBytes)
+            }
+        }
+        val region = if (usesFences) {
+            val lastPartition = (offset + sizeInBytes - 1) / partitionSizeInBytes
+            for (partition in currentPartition + 1..lastPartition) {
+                enterPartition(partition)
+            }
+            for (partition in offset / partitionSizeInBytes..lastPartition) {
+                unfenced[partition] = true
+            }
+            currentPartition = lastPartition
+            map(offset, sizeInBytes)
+        } else {
+            glContext.bufferPool.acquire(sizeInBytes)
+        }
+        this.region = region
+        regionOffset = offset
+        regionSize = sizeInBytes
+        return region
+    }
+
+    /**
+     * Hands the region of the last [write] over to GL and returns its offset in bytes in [buffer] - the
+     * vertex attribute offset, or 2x the first index of an index buffer.
+     */
+    fun commit(): Int {
+        val region = this.region ?: throw IllegalStateException("Nothing to commit - there was no write.")
+        if (usesFences) {
+            buffer.bind()
+            // false means the store got corrupted, e.g. by a display mode change - the next frame rewrites it
+            gl.glUnmapBuffer(buffer.target)
+        } else {
+            region.position(0)
+            region.limit(regionSize)
+            try {
+                buffer.updateBytes(regionOffset, region, regionSize)
+            } finally {
+                glContext.bufferPool.release(region)
+            }
+        }
+        this.region = null
+        cursor = regionOffset + regionSize
+        return regionOffset
+    }
+
+    /**
+     * Fences partitions written since the last call, once the draws reading them were issued - usually
+     * at the end of the frame.
+     */
+    fun endFrame() {
+        if (region != null) {
+            throw IllegalStateException("Region at $regionOffset has to be committed before the frame ends.")
+        }
+        if (!usesFences) {
+            return
+        }
+        for (partition in 0 until partitionCount) {
+            if (unfenced[partition]) {
+                // the new fence passes after the old one
+                deleteFence(partition)
+                fences[partition] = gl.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0)
+                unfenced[partition] = false
+            }
+        }
+    }
+
+    fun release() {
+        region?.let {
+            if (usesFences) {
+                buffer.bind()
+                gl.glUnmapBuffer(buffer.target)
+            } else {
+                glContext.bufferPool.release(it)
+            }
+        }
+        region = null
+        for (partition in 0 until partitionCount) {
+            deleteFence(partition)
+            unfenced[partition] = false
+        }
+        buffer.release()
+    }
+
+    private fun enterPartition(partition: Int) {
+        if (unfenced[partition]) {
+            throw IllegalStateException("Data written since the last frame ended does not fit into ring of " +
+                    "$ringSizeInBytes bytes.")
+        }
+        val fence = fences[partition]
+        if (fence == 0L) {
+            return
+        }
+        var status = gl.glClientWaitSync(fence, 0, 0)
+        if (status == GLES30.GL_TIMEOUT_EXPIRED) {
+            stallCount++
+            do {
+                status = gl.glClientWaitSync(fence, GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, stallTimeoutNanos)
+            } while (status == GLES30.GL_TIMEOUT_EXPIRED)
+        }
+        if (status == GLES30.GL_WAIT_FAILED) {
+            throw GlException("Waiting for partition $partition of streaming buffer failed.")
+        }
+        deleteFence(partition)
+    }
+
+    private fun map(offset: Int, sizeInBytes: Int): ByteBuffer {
+        buffer.bind()
+        // the fences already made sure nothing reads the range
+        val access = GLES30.GL_MAP_WRITE_BIT or GLES30.GL_MAP_INVALIDATE_RANGE_BIT or GLES30.GL_MAP_UNSYNCHRONIZED_BIT
+        val mapped = gl.glMapBufferRange(buffer.target, offset, sizeInBytes, access) as ByteBuffer?
+                ?: throw GlException("Could not map $sizeInBytes bytes at $offset of streaming buffer.")
+        return mapped.order(ByteOrder.nativeOrder())
+    }
+
+    private fun deleteFence(partition: Int) {
+        if (fences[partition] != 0L) {
+            gl.glDeleteSync(fences[partition])
+            fences[partition] = 0L
+        }
+    }
+
+    companion object {
+
+        /**
+         * Every region starts at a multiple of this many bytes, as vertex attributes have to.
+         */
+        const val alignment = 4
+
+        /**
+         * Partitions used by default - the frame being written, one the GPU is drawing and one queued.
+         */
+        const val defaultPartitionCount = 3
+
+        private const val noPartition = -1
+        private const val stallTimeoutNanos = 1000000000L
+
+        private fun align(offset: Int) = (offset + alignment - 1) / alignment * alignment
+
+        @JvmStatic
+        @JvmOverloads
+        fun vertices(ringSizeInBytes: Int,
+                     partitionCount: Int = defaultPartitionCount,
+                     glContext: GlContext = GlContext.current) =
+                StreamingBuffer(VertexBuffer(BufferUsage.STREAM, glContext), ringSizeInBytes, partitionCount, glContext)
+
+        @JvmStatic
+        @JvmOverloads
+        fun indices(ringSizeInBytes: Int,
+                    partitionCount: Int = defaultPartitionCount,
+                    glContext: GlContext = GlContext.current) =
+                StreamingBuffer(IndexBuffer(BufferUsage.STREAM, glContext), ringSizeInBytes, partitionCount, glContext)
+    }
+}
@@ -0,0 +1,185 @@
+package com.snap.model
+
+import android.opengl.GLES20
+
+import com.snap.model.exception.GlException
+import com.snap.model.texture.CompressedFormat
+import com.snap.model.texture.CompressedImage
+import com.snap.model.texture.Etc1Codec
+
+private const val notDefinedHandle = 0
+
+/**
+ * 2D texture in GPU memory, uploaded from block compressed images - see [com.snap.model.texture].
+ *
+ * Compressed texels stay compressed in GPU memory, a quarter to an eighth of RGBA. Has to be created and
+ * used on the GL thread.
+ */
+class Texture @JvmOverloads constructor(private val glContext: GlContext = GlContext.current) {
+
+    /**
+     * Reference to the texture object. Generated by OpenGL on first upload.
+     */
+    var textureHandle: Int = notDefinedHandle
+        private set
+
+    var width = 0
+        private set
+
+    var height = 0
+        private set
+
+    var levelCount = 0
+        private set
+
+    /**
+     * GPU memory taken by all levels, as uploaded.
+     */
+    var sizeInBytes = 0
+        private set
+
+    val isSetup: Boolean
+        get() = textureHandle != notDefinedHandle
+
+    fun bind() {
+        checkIsSetup()
+        glContext.backend.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle)
+    }
+
+    /**
+     * (Re)creates the texture from [levels] - a single image, or mipmap chain from the biggest level down.
+     * Mipmapping [minFilter] needs the chain to go all the way down to 1x1.
+     *
+     * ETC1 goes to GLES 3.0 without the ETC1 extension as ETC2, which is its superset, and anywhere else
+     * without ETC1 support it is decoded on the CPU and uploaded as RGB. ETC2 needs GLES 3.0.
+     */
+    @JvmOverloads
+    fun upload(levels: List<CompressedImage>,
+               minFilter: Int = if (levels.size > 1) GLES20.GL_LINEAR_MIPMAP_LINEAR else GLES20.GL_LINEAR,
+               magFilter: Int = GLES20.GL_LINEAR) = apply {
+        checkChain(levels, minFilter)
+        val glFormat = uploadFormatOf(levels[0].format)
+        if (!isSetup) {
+            textureHandle = generateTexture()
+        }
+        bind()
+        val gl = glContext.backend
+        var size = 0
+        levels.forEachIndexed { level, image ->
+            if (glFormat == decodedOnCpu) {
+                size += uploadDecoded(level, image)
+            } else {
+                gl.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, glFormat, image.width, image.height, 0,
+                        image.sizeInBytes, image.data)
+                size += image.sizeInBytes
+            }
+        }
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, minFilter)
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, magFilter)
+        // the only wrap mode of non power of two textures in GLES 2.0
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE)
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE)
+        width = levels[0].width
+        height = levels[0].height
+        levelCount = levels.size
+        sizeInBytes = size
+    }
+
+    private fun checkChain(levels: List<CompressedImage>, minFilter: Int) {
+        if (levels.isEmpty()) {
+            throw IllegalArgumentException("Nothing to upload - no levels given.")
+        }
+        val first = levels[0]
+        levels.forEachIndexed { level, image ->
+            val expectedWidth = Math.max(first.width shr level, 1)
+            val expectedHeight = Math.max(first.height shr level, 1)
+            if (image.width != expectedWidth || image.height != expectedHeight || image.format != first.format) {
+                throw IllegalArgumentException("Level $level should be ${expectedWidth}x$expectedHeight ${first.format}, " +
+                        "got $image.")
+            }
+        }
+        val last = levels[levels.size - 1]
+        val isMipmapped = minFilter != GLES20.GL_NEAREST && minFilter != GLES20.GL_LINEAR
+        if (isMipmapped && (last.width != 1 || last.height != 1)) {
+            throw IllegalArgumentException("Mipmapping filter needs levels down to 1x1, the last one is $last.")
+        }
+    }
+
+    /**
+     * Format to give to glCompressedTexImage2D, or [decodedOnCpu].
+     */
+    private fun uploadFormatOf(format: CompressedFormat): Int {
+        val isGles3 = glContext.isGles3
+        return when {
+            format == CompressedFormat.ETC1_RGB8 && hasEtc1Extension(glContext) -> format.glFormat
+            format == CompressedFormat.ETC1_RGB8 && isGles3 -> CompressedFormat.ETC2_RGB8.glFormat
+            format == CompressedFormat.ETC1_RGB8 -> decodedOnCpu
+            isGles3 -> format.glFormat
+            else -> throw IllegalStateException("$format needs OpenGL ES 3.0, context is " +
+                    glContext.backend.glGetString(GLES20.GL_VERSION))
+        }
+    }
+
+    private fun uploadDecoded(level: Int, image: CompressedImage): Int {
+        val pixels = Etc1Codec.decode(image)
+        val size = pixels.size * 3
+        val pool = glContext.bufferPool
+        val rgb = pool.acquire(size)
+        try {
+            for (pixel in pixels) {
+                rgb.put((pixel shr 16).toByte()).put((pixel shr 8).toByte()).put(pixel.toByte())
+            }
+            rgb.flip()
+            val gl = glContext.backend
+            // rows of 3 byte texels are not 4 byte aligned
+            gl.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1)
+            gl.glTexImage2D(GLES20.GL_TEXTURE_2D, level, GLES20.GL_RGB, image.width, image.height, 0,
+                    GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, rgb)
+            gl.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4)
+        } finally {
+            pool.release(rgb)
+        }
+        return size
+    }
+
+    private fun generateTexture(): Int {
+        val handles = IntArray(1)
+        glContext.backend.glGenTextures(1, handles, 0)
+        if (handles[0] == notDefinedHandle) {
+            throw GlException("Could not generate texture object.")
+        }
+        return handles[0]
+    }
+
+    private fun checkIsSetup() {
+        if (!isSetup) {
+            throw IllegalStateException("You have to upload images before using texture.")
+        }
+    }
+
+    fun release() {
+        if (isSetup) {
+            glContext.backend.glDeleteTextures(1, intArrayOf(textureHandle), 0)
+            textureHandle = notDefinedHandle
+            sizeInBytes = 0
+        }
+    }
+
+    companion object {
+
+        private const val decodedOnCpu = 0
+
+        private const val etc1Extension = "GL_OES_compressed_ETC1_RGB8_texture"
+
+        /**
+         * True when [format] can be uploaded without decoding it on the CPU.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun isSupported(format: CompressedFormat, glContext: GlContext = GlContext.current) =
+                glContext.isGles3 || format == CompressedFormat.ETC1_RGB8 && hasEtc1Extension(glContext)
+
+        private fun hasEtc1Extension(glContext: GlContext) =
+                glContext.backend.glGetString(GLES20.GL_EXTENSIONS).split(' ').contains(etc1Extension)
+    }
+}
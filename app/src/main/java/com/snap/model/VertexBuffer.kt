@@ -0,0 +1,55 @@
+package com.snap.model
+
+import android.opengl.GLES20
+
+import java.nio.ByteBuffer
+import java.nio.FloatBuffer
+
+/**
+ * Vertex attributes data kept in GPU memory. Bind it to attributes by byte offset - see
+ * [com.snap.model.shading.AttributeBinding.bindVertexBuffer].
+ */
+class VertexBuffer(usage: BufferUsage = BufferUsage.STATIC,
+                   glContext: GlContext = GlContext.current) :
+        BufferObject(GLES20.GL_ARRAY_BUFFER, usage, glContext) {
+
+    /**
+     * Uploads remaining floats of [data], e.g. result of [toNativeOrderBuffer].
+     */
+    fun upload(data: FloatBuffer) = apply {
+        uploadBytes(data, data.remaining() * bytesPerFloat)
+    }
+
+    /**
+     * Uploads remaining bytes of [data], e.g. interleaved vertices of mixed component types.
+     */
+    fun upload(data: ByteBuffer) = apply {
+        uploadBytes(data, data.remaining())
+    }
+
+    /**
+     * Allocates data store of [sizeInBytes] bytes without initializing it.
+     */
+    fun allocate(sizeInBytes: Int) = apply {
+        uploadBytes(null, sizeInBytes)
+    }
+
+    fun update(offsetInBytes: Int, data: FloatBuffer) {
+        updateBytes(offsetInBytes, data, data.remaining() * bytesPerFloat)
+    }
+
+    fun update(offsetInBytes: Int, data: ByteBuffer) {
+        updateBytes(offsetInBytes, data, data.remaining())
+    }
+}
+
+fun FloatArray.toVertexBuffer(usage: BufferUsage = BufferUsage.STATIC,
+                              glContext: GlContext = GlContext.current): VertexBuffer {
+    // driver copies the data during upload - staging copy can go straight back to the pool
+    val staging = toNativeOrderBuffer(glContext.bufferPool)
+    try {
+        return VertexBuffer(usage, glContext).upload(staging)
+    } finally {
+        glContext.bufferPool.release(staging)
+    }
+}
@@ -0,0 +1,168 @@
+package com.snap.model
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Type of a single vertex attribute component, as understood by glVertexAttribPointer.
+ *
+ * GL enum values are spelled out so the class does not need android.jar.
+ */
+enum class ComponentType(val glType: Int, val sizeInBytes: Int) {
+
+    BYTE(0x1400 /* GL_BYTE */, 1) {
+        override fun put(target: ByteBuffer, index: Int, value: Float, isNormalized: Boolean) {
+            target.put(index, (if (isNormalized) scaled(value, -1f, 127f) else value.toInt()).toByte())
+        }
+    },
+
+    UNSIGNED_BYTE(0x1401 /* GL_UNSIGNED_BYTE */, 1) {
+        override fun put(target: ByteBuffer, index: Int, value: Float, isNormalized: Boolean) {
+            target.put(index, (if (isNormalized) scaled(value, 0f, 255f) else value.toInt()).toByte())
+        }
+    },
+
+    SHORT(0x1402 /* GL_SHORT */, 2) {
+        override fun put(target: ByteBuffer, index: Int, value: Float, isNormalized: Boolean) {
+            target.putShort(index, (if (isNormalized) scaled(value, -1f, 32767f) else value.toInt()).toShort())
+        }
+    },
+
+    UNSIGNED_SHORT(0x1403 /* GL_UNSIGNED_SHORT */, 2) {
+        override fun put(target: ByteBuffer, index: Int, value: Float, isNormalized: Boolean) {
+            target.putShort(index, (if (isNormalized) scaled(value, 0f, 65535f) else value.toInt()).toShort())
+        }
+    },
+
+    FLOAT(0x1406 /* GL_FLOAT */, 4) {
+        override fun put(target: ByteBuffer, index: Int, value: Float, isNormalized: Boolean) {
+            target.putFloat(index, value)
+        }
+    };
+
+    /**
+     * Writes [value] converted to this type at absolute [index] of [target]. Normalized values are
+     * expected in [-1, 1] (signed) or [0, 1] (unsigned) range and get clamped to it.
+     */
+    abstract fun put(target: ByteBuffer, index: Int, value: Float, isNormalized: Boolean)
+
+    protected fun scaled(value: Float, min: Float, scale: Float) = Math.round(value.coerceIn(min, 1f) * scale)
+}
+
+/**
+ * Single attribute of a vertex - e.g. 3 float position, or 4 normalized unsigned byte color.
+ *
+ * [name] has to match name of the attribute declared in vertex shader.
+ */
+class VertexAttribute(val name: String,
+                      val componentCount: Int,
+                      val type: ComponentType = ComponentType.FLOAT,
+                      val isNormalized: Boolean = false) {
+
+    init {
+        if (componentCount !in 1..4) {
+            throw IllegalArgumentException("Attribute $name has to have 1 to 4 components, not $componentCount.")
+        }
+    }
+
+    val sizeInBytes: Int
+        get() = componentCount * type.sizeInBytes
+
+    override fun toString() = "$name: $componentCount x $type${if (isNormalized) " (normalized)" else ""}"
+}
+
+/**
+ * Layout of interleaved vertex - attributes follow each other in declaration order, every one of them
+ * starting at 4 byte boundary (unaligned attributes are slow or unsupported on many GPUs).
+ */
+class VertexFormat(vararg attributes: VertexAttribute) {
+
+    val attributes: List<VertexAttribute> = attributes.toList()
+
+    private val offsets = IntArray(attributes.size)
+
+    /**
+     * Distance in bytes between starts of consecutive vertices.
+     */
+    val stride: Int
+
+    init {
+        if (attributes.isEmpty()) {
+            throw IllegalArgumentException("Vertex format needs at least one attribute.")
+        }
+        if (attributes.map { it.name }.toSet().size != attributes.size) {
+            throw IllegalArgumentException("Attribute names have to be unique: ${this.attributes}.")
+        }
+        var offset = 0
+        attributes.forEachIndexed { index, attribute ->
+            offsets[index] = offset
+            offset += alignedSize(attribute.sizeInBytes)
+        }
+        stride = offset
+    }
+
+    fun offsetOf(attributeIndex: Int) = offsets[attributeIndex]
+
+    fun offsetOf(attributeName: String) = offsets[indexOf(attributeName)]
+
+    fun indexOf(attributeName: String): Int {
+        val index = attributes.indexOfFirst { it.name == attributeName }
+        if (index < 0) {
+            throw IllegalArgumentException("There is no attribute $attributeName in $this.")
+        }
+        return index
+    }
+
+    /**
+     * Interleaves separate per-attribute arrays (given in declaration order, [VertexAttribute.componentCount]
+     * values per vertex each) into a single direct buffer, in native order and ready to upload.
+     */
+    fun pack(vararg attributesData: FloatArray): ByteBuffer {
+        val vertexCount = vertexCountOf(attributesData)
+        return packInto(ByteBuffer.allocateDirect(vertexCount * stride).order(ByteOrder.nativeOrder()),
+                vertexCount, attributesData)
+    }
+
+    /**
+     * Same as [pack], but memory comes from [pool] - release result back to it when done.
+     */
+    fun pack(pool: NativeBufferPool, vararg attributesData: FloatArray): ByteBuffer {
+        val vertexCount = vertexCountOf(attributesData)
+        return packInto(pool.acquire(vertexCount * stride), vertexCount, attributesData)
+    }
+
+    private fun packInto(packed: ByteBuffer, vertexCount: Int, attributesData: Array<out FloatArray>): ByteBuffer {
+        for (vertex in 0 until vertexCount) {
+            val vertexStart = vertex * stride
+            for (attributeIndex in attributes.indices) {
+                val attribute = attributes[attributeIndex]
+                val data = attributesData[attributeIndex]
+                val firstComponent = vertex * attribute.componentCount
+                var index = vertexStart + offsets[attributeIndex]
+                for (component in 0 until attribute.componentCount) {
+                    attribute.type.put(packed, index, data[firstComponent + component], attribute.isNormalized)
+                    index += attribute.type.sizeInBytes
+                }
+            }
+        }
+        return packed
+    }
+
+    private fun vertexCountOf(attributesData: Array<out FloatArray>): Int {
+        if (attributesData.size != attributes.size) {
+            throw IllegalArgumentException("Expected data of ${attributes.size} attributes, got ${attributesData.size}.")
+        }
+        val vertexCount = attributesData[0].size / attributes[0].componentCount
+        attributes.forEachIndexed { index, attribute ->
+            if (attributesData[index].size != vertexCount * attribute.componentCount) {
+                throw IllegalArgumentException("Data of ${attribute.name} has ${attributesData[index].size} " +
+                        "values, expected ${vertexCount * attribute.componentCount} for $vertexCount vertices.")
+            }
+        }
+        return vertexCount
+    }
+
+    override fun toString() = "VertexFormat(stride $stride: ${attributes.joinToString()})"
+
+    private fun alignedSize(sizeInBytes: Int) = (sizeInBytes + 3) and 3.inv()
+}
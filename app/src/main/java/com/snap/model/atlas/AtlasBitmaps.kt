@@ -0,0 +1,33 @@
+package com.snap.model.atlas
+
+import android.content.res.Resources
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.support.annotation.DrawableRes
+
+/**
+ * Pixels of the bitmap as an image to be packed.
+ */
+fun Bitmap.toAtlasImage(name: String): AtlasImage {
+    val pixels = IntArray(width * height)
+    getPixels(pixels, 0, width, 0, 0, width, height)
+    return AtlasImage(name, width, height, pixels)
+}
+
+fun AtlasPage.toBitmap(): Bitmap = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888)
+
+/**
+ * Adds drawable [drawableResId] under its resource name, e.g. "stones". The drawable is decoded unscaled,
+ * as the density variant picked for the device.
+ */
+fun TextureAtlasBuilder.add(resources: Resources, @DrawableRes drawableResId: Int) = apply {
+    val options = BitmapFactory.Options()
+    options.inScaled = false
+    val bitmap = BitmapFactory.decodeResource(resources, drawableResId, options)
+            ?: throw IllegalArgumentException("Drawable $drawableResId is not a bitmap.")
+    try {
+        add(bitmap.toAtlasImage(resources.getResourceEntryName(drawableResId)))
+    } finally {
+        bitmap.recycle()
+    }
+}
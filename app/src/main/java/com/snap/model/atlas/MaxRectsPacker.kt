@@ -0,0 +1,133 @@
+package com.snap.model.atlas
+
+/**
+ * Place of a rectangle on a page, in pixels from the top left corner.
+ */
+class PackedRect(val x: Int, val y: Int, val width: Int, val height: Int) {
+
+    val right: Int
+        get() = x + width
+
+    val bottom: Int
+        get() = y + height
+
+    fun intersects(other: PackedRect) =
+            x < other.right && other.x < right && y < other.bottom && other.y < bottom
+
+    operator fun contains(other: PackedRect) =
+            other.x >= x && other.y >= y && other.right <= right && other.bottom <= bottom
+
+    override fun toString() = "PackedRect($x, $y, ${width}x$height)"
+}
+
+/**
+ * Packs rectangles into a page of [width] x [height] with MaxRects, best short side fit.
+ *
+ * Keeps every maximal free rectangle of the page, possibly overlapping each other. A rectangle goes into
+ * the free one leaving the smallest leftover along its shorter side, then every free rectangle it
+ * overlaps is split into the parts around it and free rectangles inside others are dropped. Rectangles
+ * are never rotated, so texture coordinates stay a plain scale and offset. Pure JVM.
+ */
+class MaxRectsPacker(val width: Int, val height: Int) {
+
+    private val freeRects = ArrayList<PackedRect>()
+
+    /**
+     * Pixels covered by inserted rectangles.
+     */
+    var usedArea = 0L
+        private set
+
+    init {
+        if (width <= 0 || height <= 0) {
+            throw IllegalArgumentException("Page has to have positive size, not ${width}x$height.")
+        }
+        freeRects.add(PackedRect(0, 0, width, height))
+    }
+
+    /**
+     * Share of the page covered by inserted rectangles.
+     */
+    val occupancy: Float
+        get() = usedArea.toFloat() / (width.toLong() * height)
+
+    /**
+     * Places rectangle of [rectWidth] x [rectHeight], returns where, or null when it does not fit anymore.
+     */
+    fun insert(rectWidth: Int, rectHeight: Int): PackedRect? {
+        if (rectWidth <= 0 || rectHeight <= 0) {
+            throw IllegalArgumentException("Rectangle has to have positive size, not ${rectWidth}x$rectHeight.")
+        }
+        var best: PackedRect? = null
+        var bestShortSide = Int.MAX_VALUE
+        var bestLongSide = Int.MAX_VALUE
+        for (free in freeRects) {
+            if (free.width < rectWidth || free.height < rectHeight) {
+                continue
+            }
+            val leftoverWidth = free.width - rectWidth
+            val leftoverHeight = free.height - rectHeight
+            val shortSide = Math.min(leftoverWidth, leftoverHeight)
+            val longSide = Math.max(leftoverWidth, leftoverHeight)
+            if (shortSide < bestShortSide || shortSide == bestShortSide && longSide < bestLongSide) {
+                best = free
+                bestShortSide = shortSide
+                bestLongSide = longSide
+            }
+        }
+        if (best == null) {
+            return null
+        }
+        val placed = PackedRect(best.x, best.y, rectWidth, rectHeight)
+        split(placed)
+        prune()
+        usedArea += rectWidth.toLong() * rectHeight
+        return placed
+    }
+
+    private fun split(placed: PackedRect) {
+        val count = freeRects.size
+        var index = 0
+        var remaining = count
+        while (remaining-- > 0) {
+            val free = freeRects[index]
+            if (!free.intersects(placed)) {
+                index++
+                continue
+            }
+            freeRects.removeAt(index)
+            if (placed.x > free.x) {
+                freeRects.add(PackedRect(free.x, free.y, placed.x - free.x, free.height))
+            }
+            if (placed.right < free.right) {
+                freeRects.add(PackedRect(placed.right, free.y, free.right - placed.right, free.height))
+            }
+            if (placed.y > free.y) {
+                freeRects.add(PackedRect(free.x, free.y, free.width, placed.y - free.y))
+            }
+            if (placed.bottom < free.bottom) {
+                freeRects.add(PackedRect(free.x, placed.bottom, free.width, free.bottom - placed.bottom))
+            }
+        }
+    }
+
+    private fun prune() {
+        var i = 0
+        while (i < freeRects.size) {
+            var isContained = false
+            for (j in freeRects.indices) {
+                if (i != j && freeRects[i] in freeRects[j] && (j < i || freeRects[j] !in freeRects[i])) {
+                    isContained = true
+                    break
+                }
+            }
+            if (isContained) {
+                freeRects.removeAt(i)
+            } else {
+                i++
+            }
+        }
+    }
+
+    override fun toString() = "MaxRectsPacker(${width}x$height, ${freeRects.size} free rects, $occupancy occupied)"
+}
@@ -0,0 +1,213 @@
+package com.snap.model.atlas
+
+import com.snap.model.Mesh
+
+/**
+ * Image to be packed - [pixels] are ARGB colors, row by row from the top left corner.
+ */
+class AtlasImage(val name: String, val width: Int, val height: Int, val pixels: IntArray) {
+
+    init {
+        if (width <= 0 || height <= 0 || pixels.size != width * height) {
+            throw IllegalArgumentException("Image $name of ${width}x$height cannot have ${pixels.size} pixels.")
+        }
+    }
+
+    override fun toString() = "AtlasImage($name, ${width}x$height)"
+}
+
+/**
+ * One texture of an atlas - [pixels] in the same layout as [AtlasImage.pixels].
+ */
+class AtlasPage(val width: Int, val height: Int, val pixels: IntArray) {
+
+    override fun toString() = "AtlasPage(${width}x$height)"
+}
+
+/**
+ * Where image [name] ended up: pixels [x], [y], [width] x [height] of page [page], which is
+ * [u0]..[u1] x [v0]..[v1] in texture coordinates. Texture coordinate v grows downwards, from the first row.
+ */
+class AtlasRegion(val name: String,
+                  val page: Int,
+                  val x: Int,
+                  val y: Int,
+                  val width: Int,
+                  val height: Int,
+                  pageWidth: Int,
+                  pageHeight: Int) {
+
+    val u0 = x.toFloat() / pageWidth
+    val v0 = y.toFloat() / pageHeight
+    val u1 = (x + width).toFloat() / pageWidth
+    val v1 = (y + height).toFloat() / pageHeight
+
+    /**
+     * Rewrites texture coordinates of the original image in place to coordinates within the page.
+     * [vertexCount] pairs from [offset], [stride] floats apart. Coordinates outside 0..1 would sample
+     * neighbouring images, so repeating textures cannot be atlased.
+     */
+    @JvmOverloads
+    fun remap(uvs: FloatArray, offset: Int = 0, vertexCount: Int = (uvs.size - offset) / 2, stride: Int = 2) {
+        for (vertex in 0 until vertexCount) {
+            val index = offset + vertex * stride
+            val u = uvs[index]
+            val v = uvs[index + 1]
+            if (u < -epsilon || u > 1f + epsilon || v < -epsilon || v > 1f + epsilon) {
+                throw IllegalArgumentException("Texture coordinates ($u, $v) of vertex $vertex repeat $name, " +
+                        "which is not possible within an atlas.")
+            }
+            uvs[index] = u0 + u * (u1 - u0)
+            uvs[index + 1] = v0 + v * (v1 - v0)
+        }
+    }
+
+    override fun toString() = "AtlasRegion($name, page $page, $x, $y, ${width}x$height)"
+
+    private companion object {
+        const val epsilon = 1e-4f
+    }
+}
+
+/**
+ * Images packed by [TextureAtlasBuilder] into [pages]. [regions] is the remap table from images to pages.
+ */
+class TextureAtlas(val pages: List<AtlasPage>, val regions: Map<String, AtlasRegion>) {
+
+    fun region(name: String): AtlasRegion =
+            regions[name] ?: throw IllegalArgumentException("There is no image $name in the atlas.")
+
+    /**
+     * Share of page pixels covered by images themselves, without padding.
+     */
+    val efficiency: Float
+        get() {
+            val imageArea = regions.values.fold(0L) { area, region -> area + region.width.toLong() * region.height }
+            val pageArea = pages.fold(0L) { area, page -> area + page.width.toLong() * page.height }
+            return imageArea.toFloat() / pageArea
+        }
+
+    /**
+     * Copy of [mesh] with texture coordinates of attribute [uvAttribute] moved into region of image [name].
+     */
+    fun remap(mesh: Mesh, uvAttribute: String, name: String): Mesh {
+        val region = region(name)
+        val uvIndex = mesh.format.indexOf(uvAttribute)
+        val componentCount = mesh.format.attributes[uvIndex].componentCount
+        if (componentCount < 2) {
+            throw IllegalArgumentException("Attribute $uvAttribute has $componentCount components, not texture coordinates.")
+        }
+        val attributesData = mesh.attributesData.toMutableList()
+        val uvs = attributesData[uvIndex].copyOf()
+        region.remap(uvs, 0, mesh.vertexCount, componentCount)
+        attributesData[uvIndex] = uvs
+        return Mesh(mesh.format, mesh.primitiveType, attributesData, mesh.indices)
+    }
+
+    override fun toString() = "TextureAtlas(${pages.size} pages, ${regions.size} images, $efficiency efficiency)"
+}
+
+/**
+ * Packs images into as few power of two pages of at most [maxPageSize] as possible, with [MaxRectsPacker].
+ *
+ * Every image is surrounded by [padding] pixels. With [bleed] they repeat its edge pixels, so filtering and
+ * mipmaps near the edge sample the image itself rather than its neighbours, otherwise they are transparent.
+ * Pages are shrunk to the smallest power of two holding their images. Pure JVM.
+ */
+class TextureAtlasBuilder @JvmOverloads constructor(val maxPageSize: Int = 2048,
+                                                    val padding: Int = 2,
+                                                    val bleed: Boolean = true) {
+
+    private val images = LinkedHashMap<String, AtlasImage>()
+
+    init {
+        if (maxPageSize <= 0 || Integer.bitCount(maxPageSize) != 1) {
+            throw IllegalArgumentException("Page size has to be a power of two, not $maxPageSize.")
+        }
+        if (padding < 0 || 2 * padding >= maxPageSize) {
+            throw IllegalArgumentException("Padding of $padding does not fit into page of $maxPageSize.")
+        }
+    }
+
+    val imageCount: Int
+        get() = images.size
+
+    fun add(image: AtlasImage) = apply {
+        if (image.width + 2 * padding > maxPageSize || image.height + 2 * padding > maxPageSize) {
+            throw IllegalArgumentException("$image with padding of $padding does not fit into page of $maxPageSize.")
+        }
+        if (images.containsKey(image.name)) {
+            throw IllegalArgumentException("Image ${image.name} is already added.")
+        }
+        images[image.name] = image
+    }
+
+    fun add(name: String, width: Int, height: Int, pixels: IntArray) = add(AtlasImage(name, width, height, pixels))
+
+    fun build(): TextureAtlas {
+        if (images.isEmpty()) {
+            throw IllegalStateException("Nothing to build - no images were added.")
+        }
+        // big images first - small ones fill the gaps left between them
+        val order = images.values.sortedWith(compareByDescending<AtlasImage> { Math.max(it.width, it.height) }
+                .thenByDescending { it.width * it.height })
+        val packers = ArrayList<MaxRectsPacker>()
+        val placements = HashMap<String, Pair<Int, PackedRect>>()
+        for (image in order) {
+            val paddedWidth = image.width + 2 * padding
+            val paddedHeight = image.height + 2 * padding
+            var page = 0
+            var place: PackedRect? = null
+            while (place == null) {
+                if (page == packers.size) {
+                    packers.add(MaxRectsPacker(maxPageSize, maxPageSize))
+                }
+                place = packers[page].insert(paddedWidth, paddedHeight)
+                if (place == null) {
+                    page++
+                }
+            }
+            placements[image.name] = Pair(page, place)
+        }
+
+        val pageWidths = IntArray(packers.size) { 1 }
+        val pageHeights = IntArray(packers.size) { 1 }
+        for ((page, place) in placements.values) {
+            pageWidths[page] = Math.max(pageWidths[page], powerOfTwoAtLeast(place.right))
+            pageHeights[page] = Math.max(pageHeights[page], powerOfTwoAtLeast(place.bottom))
+        }
+        val pages = packers.indices.map { AtlasPage(pageWidths[it], pageHeights[it], IntArray(pageWidths[it] * pageHeights[it])) }
+        val regions = LinkedHashMap<String, AtlasRegion>()
+        for (image in images.values) {
+            val (pageIndex, place) = placements[image.name]!!
+            val page = pages[pageIndex]
+            copy(image, page, place.x + padding, place.y + padding)
+            regions[image.name] = AtlasRegion(image.name, pageIndex, place.x + padding, place.y + padding,
+                    image.width, image.height, page.width, page.height)
+        }
+        return TextureAtlas(pages, regions)
+    }
+
+    /**
+     * Copies [image] to [x], [y] of [page] together with its padding.
+     */
+    private fun copy(image: AtlasImage, page: AtlasPage, x: Int, y: Int) {
+        val border = if (bleed) padding else 0
+        for (row in -border until image.height + border) {
+            val sourceRow = Math.min(Math.max(row, 0), image.height - 1) * image.width
+            val targetRow = (y + row) * page.width + x
+            if (border > 0) {
+                for (column in -border until 0) {
+                    page.pixels[targetRow + column] = image.pixels[sourceRow]
+                    page.pixels[targetRow + image.width - 1 - column] = image.pixels[sourceRow + image.width - 1]
+                }
+            }
+            System.arraycopy(image.pixels, sourceRow, page.pixels, targetRow, image.width)
+        }
+    }
+
+    private fun powerOfTwoAtLeast(value: Int): Int {
+        val highest = Integer.highestOneBit(value)
+        return if (highest == value) value else highest shl 1
+    }
+}
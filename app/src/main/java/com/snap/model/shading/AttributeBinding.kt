@@ -1,6 +1,8 @@
 package com.snap.model.shading
 
 import android.opengl.GLES20
+import com.snap.model.GlContext
+import com.snap.model.VertexBuffer
 
 import java.nio.FloatBuffer
 
@@ -10,23 +12,72 @@ import java.nio.FloatBuffer
  * vertex color;
  * texture coordinates;
  * normal direction;
+ *
+ * Instances are resolved once per program (see [ProgramReflection]) and can be held by renderers.
  */
-class AttributeBinding(programHandle: Int, attributeName: String) {
+class AttributeBinding(val attributeHandle: Int,
+                       val attributeName: String,
+                       val type: Int,
+                       val size: Int,
+                       private val glContext: GlContext = GlContext.current) {
 
-    private val attributeHandle: Int = GLES20.glGetAttribLocation(programHandle, attributeName)
+    /**
+     * False when the linker optimized the attribute out (or it was never declared).
+     */
+    val isActive: Boolean
+        get() = attributeHandle >= 0
 
     fun bindFloatBuffer(
             floatBuffer: FloatBuffer,
             sizePerItem: Int,
             isNormalized: Boolean = false,
             stride: Int = 0) {
-        GLES20.glEnableVertexAttribArray(attributeHandle)
-        GLES20.glVertexAttribPointer(attributeHandle, sizePerItem, GLES20.GL_FLOAT, isNormalized,
+        if (!isActive) {
+            return
+        }
+        // client-side arrays are only read while no buffer object is bound
+        glContext.state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0)
+        glContext.state.enableVertexAttribArray(attributeHandle)
+        glContext.backend.glVertexAttribPointer(attributeHandle, sizePerItem, GLES20.GL_FLOAT, isNormalized,
                 stride, floatBuffer)
     }
 
+    /**
+     * Sources the attribute from GPU resident [vertexBuffer], starting [offsetInBytes] into it.
+     */
+    fun bindVertexBuffer(
+            vertexBuffer: VertexBuffer,
+            sizePerItem: Int,
+            offsetInBytes: Int = 0,
+            stride: Int = 0,
+            isNormalized: Boolean = false,
+            type: Int = GLES20.GL_FLOAT) {
+        if (!isActive) {
+            return
+        }
+        vertexBuffer.bind()
+        glContext.state.enableVertexAttribArray(attributeHandle)
+        glContext.backend.glVertexAttribPointer(attributeHandle, sizePerItem, type, isNormalized,
+                stride, offsetInBytes)
+    }
+
     fun bind4f(first: Float, second: Float, third: Float, fourth: Float) {
-        GLES20.glVertexAttrib4f(attributeHandle, first, second, third, fourth)
+        if (!isActive) {
+            return
+        }
+        glContext.backend.glVertexAttrib4f(attributeHandle, first, second, third, fourth)
     }
 
+    companion object {
+
+        /**
+         * Resolves location of the attribute by asking GL directly. Prefer handles from [ProgramReflection].
+         */
+        fun lookup(programHandle: Int,
+                   attributeName: String,
+                   glContext: GlContext = GlContext.current): AttributeBinding {
+            val attributeHandle = glContext.backend.glGetAttribLocation(programHandle, attributeName)
+            return AttributeBinding(attributeHandle, attributeName, GLES20.GL_NONE, 1, glContext)
+        }
+    }
 }
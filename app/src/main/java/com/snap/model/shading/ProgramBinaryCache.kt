@@ -0,0 +1,244 @@
+package com.snap.model.shading
+
+import android.opengl.GLES20
+import android.opengl.GLES30
+
+import com.snap.model.GlContext
+
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.security.MessageDigest
+import java.util.zip.CRC32
+
+/**
+ * Linked program binaries saved in [directory], so the next start links programs without compiling
+ * shaders from source.
+ *
+ * A binary is valid only for the driver that produced it - entries are keyed by SHA-256 of both shader
+ * sources together with GL vendor, renderer and version, and every file carries a CRC32 of its binary.
+ * Anything unreadable, corrupted or rejected by the driver is deleted and the program is compiled from
+ * source as if there were no cache. Has to be used on the GL thread.
+ */
+class ProgramBinaryCache(val directory: File) {
+
+    /**
+     * Programs linked from a saved binary.
+     */
+    var hits = 0
+        private set
+
+    /**
+     * Programs without a usable saved binary.
+     */
+    var misses = 0
+        private set
+
+    /**
+     * Saved binaries the driver refused to link, e.g. after a driver update with unchanged version.
+     */
+    var rejections = 0
+        private set
+
+    var writes = 0
+        private set
+
+    private val digest = MessageDigest.getInstance("SHA-256")
+    private val header = ByteBuffer.allocate(headerSize).order(ByteOrder.BIG_ENDIAN)
+    private val checksumScratch = ByteArray(4096)
+
+    /**
+     * Creates program from saved binary, returns its handle or 0 when it has to be linked from source.
+     */
+    internal fun load(vertexSourceCode: String, fragmentSourceCode: String, glContext: GlContext): Int {
+        val gl = glContext.backend
+        if (!gl.isProgramBinarySupported()) {
+            return 0
+        }
+        val file = fileOf(vertexSourceCode, fragmentSourceCode, glContext)
+        val binary = read(file, glContext)
+        if (binary == null) {
+            misses++
+            return 0
+        }
+        try {
+            val program = gl.glCreateProgram()
+            if (program == 0) {
+                misses++
+                return 0
+            }
+            gl.glProgramBinary(program, header.getInt(formatOffset), binary, binary.remaining())
+            val linkStatus = IntArray(1)
+            gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0)
+            if (linkStatus[0] != GLES20.GL_TRUE) {
+                gl.glDeleteProgram(program)
+                file.delete()
+                rejections++
+                misses++
+                return 0
+            }
+            hits++
+            return program
+        } finally {
+            glContext.bufferPool.release(binary)
+        }
+    }
+
+    /**
+     * Saves binary of freshly linked [program]. Returns false when the driver or storage could not do it.
+     */
+    internal fun save(program: Int, vertexSourceCode: String, fragmentSourceCode: String, glContext: GlContext): Boolean {
+        val gl = glContext.backend
+        if (!gl.isProgramBinarySupported()) {
+            return false
+        }
+        val lengthParameter = IntArray(1)
+        gl.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, lengthParameter, 0)
+        if (lengthParameter[0] <= 0) {
+            return false
+        }
+        val pool = glContext.bufferPool
+        val binary = pool.acquire(lengthParameter[0])
+        try {
+            val length = IntArray(1)
+            val format = IntArray(1)
+            gl.glGetProgramBinary(program, binary.capacity(), length, 0, format, 0, binary)
+            binary.limit(length[0])
+            return write(fileOf(vertexSourceCode, fragmentSourceCode, glContext), format[0], binary)
+        } finally {
+            pool.release(binary)
+        }
+    }
+
+    /**
+     * Deletes every saved binary.
+     */
+    fun clear() {
+        directory.listFiles()?.forEach { it.delete() }
+    }
+
+    /**
+     * Returns binary positioned at its start with [header] filled in, or null when there is no valid one.
+     */
+    private fun read(file: File, glContext: GlContext): ByteBuffer? {
+        if (!file.isFile) {
+            return null
+        }
+        val pool = glContext.bufferPool
+        try {
+            FileInputStream(file).channel.use { channel ->
+                header.clear()
+                if (!readFully(channel, header) || header.getInt(magicOffset) != magic ||
+                        header.getInt(versionOffset) != fileVersion) {
+                    file.delete()
+                    return null
+                }
+                val length = header.getInt(lengthOffset)
+                if (length <= 0 || headerSize.toLong() + length != channel.size()) {
+                    file.delete()
+                    return null
+                }
+                val binary = pool.acquire(length)
+                val isComplete = readFully(channel, binary)
+                binary.flip()
+                if (!isComplete || checksumOf(binary) != header.getLong(checksumOffset)) {
+                    pool.release(binary)
+                    file.delete()
+                    return null
+                }
+                return binary
+            }
+        } catch (e: IOException) {
+            file.delete()
+            return null
+        }
+    }
+
+    private fun write(file: File, format: Int, binary: ByteBuffer): Boolean {
+        if (!directory.isDirectory && !directory.mkdirs()) {
+            return false
+        }
+        header.clear()
+        header.putInt(magic).putInt(fileVersion).putInt(format).putInt(binary.remaining())
+                .putLong(checksumOf(binary))
+        header.flip()
+        // written aside and renamed, so a crash never leaves a half written entry behind
+        val temporary = File(directory, file.name + ".tmp")
+        try {
+            FileOutputStream(temporary).channel.use { channel ->
+                while (header.hasRemaining() || binary.hasRemaining()) {
+                    channel.write(arrayOf(header, binary))
+                }
+                channel.force(false)
+            }
+        } catch (e: IOException) {
+            temporary.delete()
+            return false
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete()
+            return false
+        }
+        writes++
+        return true
+    }
+
+    private fun readFully(channel: FileChannel, target: ByteBuffer): Boolean {
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * CRC32 of remaining bytes of [data], leaving its position untouched.
+     */
+    private fun checksumOf(data: ByteBuffer): Long {
+        val bytes = data.duplicate()
+        val crc = CRC32()
+        while (bytes.hasRemaining()) {
+            val size = Math.min(bytes.remaining(), checksumScratch.size)
+            bytes.get(checksumScratch, 0, size)
+            crc.update(checksumScratch, 0, size)
+        }
+        return crc.value
+    }
+
+    private fun fileOf(vertexSourceCode: String, fragmentSourceCode: String, glContext: GlContext): File {
+        val gl = glContext.backend
+        digest.reset()
+        for (part in arrayOf(vertexSourceCode, fragmentSourceCode, gl.glGetString(GLES20.GL_VENDOR),
+                gl.glGetString(GLES20.GL_RENDERER), gl.glGetString(GLES20.GL_VERSION))) {
+            digest.update(part.toByteArray(Charsets.UTF_8))
+            digest.update(0)
+        }
+        val name = StringBuilder()
+        for (byte in digest.digest()) {
+            val value = byte.toInt() and 0xFF
+            name.append(hexDigits[value ushr 4]).append(hexDigits[value and 0x0F])
+        }
+        return File(directory, name.append(".bin").toString())
+    }
+
+    override fun toString() = "ProgramBinaryCache($directory: $hits hits, $misses misses, $rejections rejections)"
+
+    private companion object {
+        const val hexDigits = "0123456789abcdef"
+
+        const val magic = 0x534E5042 // SNPB
+        const val fileVersion = 1
+
+        const val magicOffset = 0
+        const val versionOffset = 4
+        const val formatOffset = 8
+        const val lengthOffset = 12
+        const val checksumOffset = 16
+        const val headerSize = 24
+    }
+}
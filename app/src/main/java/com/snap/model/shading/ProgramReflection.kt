@@ -0,0 +1,59 @@
+package com.snap.model.shading
+
+import android.opengl.GLES20
+import com.snap.model.GlContext
+
+private const val arraySuffix = "[0]"
+
+/**
+ * Table of active attributes and uniforms of a linked shading program.
+ *
+ * Built once right after linking, so the frame path never has to ask GL for locations by name.
+ */
+class ProgramReflection private constructor(private val attributes: Map<String, AttributeBinding>,
+                                            private val uniforms: Map<String, UniformBinding>) {
+
+    val attributeNames: Set<String>
+        get() = attributes.keys
+
+    val uniformNames: Set<String>
+        get() = uniforms.keys
+
+    fun findAttribute(attributeName: String): AttributeBinding? = attributes[attributeName]
+
+    fun findUniform(uniformName: String): UniformBinding? = uniforms[uniformName]
+
+    companion object {
+
+        internal val empty = ProgramReflection(emptyMap(), emptyMap())
+
+        /**
+         * Enumerates active attributes and uniforms of the linked program.
+         */
+        internal fun of(programHandle: Int, glContext: GlContext): ProgramReflection {
+            val gl = glContext.backend
+            val count = IntArray(1)
+            val size = IntArray(1)
+            val type = IntArray(1)
+
+            val attributes = HashMap<String, AttributeBinding>()
+            gl.glGetProgramiv(programHandle, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0)
+            for (index in 0 until count[0]) {
+                val name = gl.glGetActiveAttrib(programHandle, index, size, 0, type, 0).removeSuffix(arraySuffix)
+                val location = gl.glGetAttribLocation(programHandle, name)
+                attributes[name] = AttributeBinding(location, name, type[0], size[0], glContext)
+            }
+
+            val uniforms = HashMap<String, UniformBinding>()
+            gl.glGetProgramiv(programHandle, GLES20.GL_ACTIVE_UNIFORMS, count, 0)
+            for (index in 0 until count[0]) {
+                // arrays are reported as "name[0]" but are addressed by plain name as well
+                val name = gl.glGetActiveUniform(programHandle, index, size, 0, type, 0).removeSuffix(arraySuffix)
+                val location = gl.glGetUniformLocation(programHandle, name)
+                uniforms[name] = UniformBinding(location, name, type[0], size[0], glContext)
+            }
+
+            return ProgramReflection(attributes, uniforms)
+        }
+    }
+}
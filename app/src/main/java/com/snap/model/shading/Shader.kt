@@ -3,13 +3,18 @@ package com.snap.model.shading
 import android.opengl.GLES20
 import android.support.annotation.RawRes
 
+import com.snap.model.GlContext
 import com.snap.model.exception.GlException
 import com.snap.model.exception.GlLibException
 
+import java.io.IOException
+
 
 private const val notDefinedHandle = 0
 
-class Shader private constructor(val type: ShaderType, private val shaderSourceCode: String) {
+class Shader private constructor(val type: ShaderType,
+                                 internal val sourceCode: String,
+                                 private val glContext: GlContext) {
 
     val isSetup: Boolean
         get() {
@@ -28,22 +33,23 @@ class Shader private constructor(val type: ShaderType, private val shaderSourceC
         if (isSetup) {
             throw GlLibException("Shader already createAndCompile and available by [$shaderHandle] handle")
         }
-        shaderHandle = createAndCompileShader(type, shaderSourceCode)
+        shaderHandle = createAndCompileShader(type, sourceCode)
     }
 
     /**
      * Returns compiled shader's handle.
      */
     private fun createAndCompileShader(shaderType: ShaderType, sourceCode: String): Int {
-        val shaderId = GLES20.glCreateShader(shaderType.asInt())
-        GLES20.glShaderSource(shaderId, sourceCode)
-        GLES20.glCompileShader(shaderId)
+        val gl = glContext.backend
+        val shaderId = gl.glCreateShader(shaderType.asInt())
+        gl.glShaderSource(shaderId, sourceCode)
+        gl.glCompileShader(shaderId)
 
         val compileStatus = IntArray(1)
-        GLES20.glGetShaderiv(shaderId, GLES20.GL_COMPILE_STATUS, compileStatus, 0)
+        gl.glGetShaderiv(shaderId, GLES20.GL_COMPILE_STATUS, compileStatus, 0)
         if (compileStatus[0] == 0) {
-            val errorMessage = "Failed to compile shader: " + GLES20.glGetShaderInfoLog(shaderId)
-            GLES20.glDeleteShader(shaderId)
+            val errorMessage = "Failed to compile shader: " + gl.glGetShaderInfoLog(shaderId)
+            gl.glDeleteShader(shaderId)
             throw GlException(errorMessage)
         }
         return shaderId
@@ -57,19 +63,50 @@ class Shader private constructor(val type: ShaderType, private val shaderSourceC
 
     fun release() {
         if (isSetup) {
-            GLES20.glDeleteShader(shaderHandle)
+            glContext.backend.glDeleteShader(shaderHandle)
             shaderHandle = notDefinedHandle
         }
     }
 
     companion object {
 
-        fun fromSourceCode(shaderType: ShaderType, shaderSourceCode: String): Shader {
-            return Shader(shaderType, shaderSourceCode)
+        fun fromSourceCode(shaderType: ShaderType,
+                           shaderSourceCode: String,
+                           glContext: GlContext = GlContext.current): Shader {
+            return Shader(shaderType, shaderSourceCode, glContext)
+        }
+
+        /**
+         * Shader of GLSL file [name] of [preprocessor]'s sources, with includes resolved and [defines] applied.
+         * Variants are cached by [preprocessor], which belongs to the caller - keep one per set of sources for as
+         * long as shaders are created from them, as renderers do, and drop it with them.
+         */
+        @JvmStatic
+        @JvmOverloads
+        @Throws(IOException::class)
+        fun fromPreprocessor(shaderType: ShaderType,
+                             preprocessor: ShaderPreprocessor,
+                             name: String,
+                             defines: Map<String, String> = emptyMap(),
+                             glContext: GlContext = GlContext.current): Shader {
+            return Shader(shaderType, preprocessor.preprocess(name, defines), glContext)
         }
 
-        fun fromRawResId(shaderType: ShaderType, @RawRes rawResId: Int): Shader {
-            throw UnsupportedOperationException("Not implemented yet.")
+        /**
+         * Shader of GLSL file in res/raw, read through [preprocessor] of [RawResourceShaderSources] - see
+         * [fromPreprocessor].
+         */
+        @JvmStatic
+        @JvmOverloads
+        @Throws(IOException::class)
+        fun fromRawResId(shaderType: ShaderType,
+                         preprocessor: ShaderPreprocessor,
+                         @RawRes rawResId: Int,
+                         defines: Map<String, String> = emptyMap(),
+                         glContext: GlContext = GlContext.current): Shader {
+            val sources = preprocessor.sources as? RawResourceShaderSources
+                    ?: throw IllegalArgumentException("Raw resource $rawResId can't be read from ${preprocessor.sources}.")
+            return fromPreprocessor(shaderType, preprocessor, sources.nameOf(rawResId), defines, glContext)
         }
     }
 }
@@ -0,0 +1,175 @@
+package com.snap.model.shading
+
+import com.snap.model.GlContext
+import com.snap.model.exception.GlException
+
+import java.security.MessageDigest
+import java.util.IdentityHashMap
+
+/**
+ * Compiled shaders and linked programs of a [GlContext], shared by everyone asking for the same source.
+ *
+ * Shaders are keyed by SHA-256 of their type and source, programs by keys of their vertex and fragment
+ * shader. Each successful lookup takes a reference which has to be given back with [release] - GL objects
+ * are deleted when the last one is. Has to be used on the GL thread.
+ */
+class ShaderCache internal constructor(private val glContext: GlContext) {
+
+    private class Entry<out T>(val key: String, val value: T) {
+        var references = 0
+    }
+
+    private val shaders = HashMap<String, Entry<Shader>>()
+    private val programs = HashMap<String, Entry<ShadingProgram>>()
+    private val shaderEntries = IdentityHashMap<Shader, Entry<Shader>>()
+    private val programEntries = IdentityHashMap<ShadingProgram, Entry<ShadingProgram>>()
+    private val programShaders = IdentityHashMap<ShadingProgram, Pair<Shader, Shader>>()
+
+    private val digest = MessageDigest.getInstance("SHA-256")
+
+    /**
+     * Lookups answered with an already compiled shader or linked program.
+     */
+    var hits = 0
+        private set
+
+    /**
+     * Lookups which had to compile or link.
+     */
+    var misses = 0
+        private set
+
+    val shaderCount: Int
+        get() = shaders.size
+
+    val programCount: Int
+        get() = programs.size
+
+    /**
+     * Returns compiled shader of [type] made of [sourceCode], compiling it on first request.
+     */
+    @Throws(GlException::class)
+    fun shader(type: ShaderType, sourceCode: String): Shader {
+        val shader = reference(type, sourceCode)
+        if (!shader.isSetup) {
+            try {
+                shader.createAndCompile()
+            } catch (e: Exception) {
+                release(shader)
+                throw e
+            }
+        }
+        return shader
+    }
+
+    /**
+     * Takes reference on shared shader without compiling it - program linked from a saved binary does not
+     * need compiled shaders, see [ProgramBinaryCache].
+     */
+    private fun reference(type: ShaderType, sourceCode: String): Shader {
+        val key = shaderKey(type, sourceCode)
+        val cached = shaders[key]
+        if (cached != null) {
+            hits++
+            cached.references++
+            return cached.value
+        }
+        misses++
+        val shader = Shader.fromSourceCode(type, sourceCode, glContext)
+        val entry = Entry(key, shader)
+        entry.references = 1
+        shaders[key] = entry
+        shaderEntries[shader] = entry
+        return shader
+    }
+
+    /**
+     * Returns program linked from given shader sources, reusing compiled shaders where possible. Shaders
+     * are compiled only when the program is not linked from [GlContext.programBinaryCache].
+     */
+    @Throws(GlException::class)
+    internal fun program(vertexSourceCode: String, fragmentSourceCode: String): ShadingProgram {
+        val key = shaderKey(ShaderType.VERTEX, vertexSourceCode) + shaderKey(ShaderType.FRAGMENT, fragmentSourceCode)
+        val cached = programs[key]
+        if (cached != null) {
+            hits++
+            cached.references++
+            return cached.value
+        }
+        misses++
+        val vertexShader = reference(ShaderType.VERTEX, vertexSourceCode)
+        val fragmentShader = reference(ShaderType.FRAGMENT, fragmentSourceCode)
+        val program = try {
+            ShadingProgram(vertexShader, fragmentShader, glContext).compile()
+        } catch (e: Exception) {
+            release(vertexShader)
+            release(fragmentShader)
+            throw e
+        }
+        val entry = Entry(key, program)
+        entry.references = 1
+        programs[key] = entry
+        programEntries[program] = entry
+        programShaders[program] = Pair(vertexShader, fragmentShader)
+        return program
+    }
+
+    /**
+     * Gives back reference taken by [shader]. Shader is deleted when nobody, including programs, uses it.
+     */
+    fun release(shader: Shader) {
+        val entry = shaderEntries[shader]
+                ?: throw IllegalArgumentException("Shader ${shader.shaderHandle} does not come from this cache.")
+        if (--entry.references == 0) {
+            shaders.remove(entry.key)
+            shaderEntries.remove(shader)
+            shader.release()
+        }
+    }
+
+    /**
+     * Gives back reference taken by [program]. Program and its shaders are deleted when nobody uses them.
+     */
+    internal fun release(program: ShadingProgram) {
+        val entry = programEntries[program]
+                ?: throw IllegalArgumentException("Program does not come from this cache.")
+        if (--entry.references == 0) {
+            programs.remove(entry.key)
+            programEntries.remove(program)
+            program.release()
+            val (vertexShader, fragmentShader) = programShaders.remove(program)!!
+            release(vertexShader)
+            release(fragmentShader)
+        }
+    }
+
+    /**
+     * Forgets everything without deleting it - call when EGL context was recreated and old handles are gone.
+     */
+    fun invalidate() {
+        shaders.clear()
+        programs.clear()
+        shaderEntries.clear()
+        programEntries.clear()
+        programShaders.clear()
+    }
+
+    private fun shaderKey(type: ShaderType, sourceCode: String): String {
+        digest.reset()
+        digest.update(type.name.toByteArray(Charsets.UTF_8))
+        digest.update(0)
+        val hash = digest.digest(sourceCode.toByteArray(Charsets.UTF_8))
+        val key = StringBuilder(hash.size * 2)
+        for (byte in hash) {
+            val value = byte.toInt() and 0xFF
+            key.append(hexDigits[value ushr 4]).append(hexDigits[value and 0x0F])
+        }
+        return key.toString()
+    }
+
+    override fun toString() = "ShaderCache($shaderCount shaders, $programCount programs, $hits hits, $misses misses)"
+
+    private companion object {
+        const val hexDigits = "0123456789abcdef"
+    }
+}
@@ -0,0 +1,202 @@
+package com.snap.model.shading
+
+import java.io.IOException
+import java.util.TreeMap
+
+/**
+ * Turns GLSL files of [sources] into ready to compile shader code - a variant per set of defines.
+ *
+ * Resolved here, so that unused code never reaches the driver:
+ *  - `#include "name"` - replaced with the file, each file is included at most once per variant,
+ *  - `#ifdef`, `#ifndef`, `#else`, `#endif` - branches not taken are dropped,
+ *  - `#define` and `#undef` - tracked for the conditionals above and kept in the output.
+ *
+ * Defines given to [preprocess] are prepended as `#define` lines (after `#version`, if any), so their
+ * values can be used in expressions. `#if` and `#elif` blocks are left to the GLSL compiler.
+ * Variants are cached by file name and defines. Pure JVM.
+ */
+class ShaderPreprocessor(val sources: ShaderSources) {
+
+    private class Conditional(val isEvaluated: Boolean, var isTaking: Boolean) {
+        var wasTaken = isTaking
+        var hasElse = false
+    }
+
+    private class Variant(val defines: MutableMap<String, String>) {
+        val output = StringBuilder()
+        val included = HashSet<String>()
+    }
+
+    private val files = HashMap<String, List<String>>()
+    private val variants = HashMap<String, String>()
+
+    val variantCount: Int
+        @Synchronized get() = variants.size
+
+    /**
+     * Returns shader code of file [name] with [defines] applied.
+     */
+    @JvmOverloads
+    @Synchronized
+    @Throws(IOException::class)
+    fun preprocess(name: String, defines: Map<String, String> = emptyMap()): String {
+        val sortedDefines = TreeMap(defines)
+        val key = name + sortedDefines.entries.joinToString(separator = "", prefix = "\u0000") { "${it.key}=${it.value};" }
+        val cached = variants[key]
+        if (cached != null) {
+            return cached
+        }
+        val variant = Variant(HashMap(sortedDefines))
+        val lines = linesOf(name)
+        var firstLine = 0
+        if (lines.isNotEmpty() && lines[0].trim().startsWith("#version")) {
+            variant.output.append(lines[0]).append('\n')
+            firstLine = 1
+        }
+        for ((defineName, value) in sortedDefines) {
+            variant.output.append("#define ").append(defineName)
+            if (value.isNotEmpty()) {
+                variant.output.append(' ').append(value)
+            }
+            variant.output.append('\n')
+        }
+        append(variant, name, lines, firstLine)
+        val code = variant.output.toString()
+        variants[key] = code
+        return code
+    }
+
+    /**
+     * Same as [preprocess], with every define set to 1 - enough for `#ifdef` switches.
+     */
+    @Throws(IOException::class)
+    fun preprocess(name: String, defines: Set<String>): String = preprocess(name, defines.associate { it to "1" })
+
+    /**
+     * Forgets read files and variants, e.g. after sources changed.
+     */
+    @Synchronized
+    fun clear() {
+        files.clear()
+        variants.clear()
+    }
+
+    private fun linesOf(name: String): List<String> {
+        return files.getOrPut(name) {
+            sources.open(name).bufferedReader(Charsets.UTF_8).use { it.readLines() }
+        }
+    }
+
+    private fun append(variant: Variant, name: String, lines: List<String>, firstLine: Int) {
+        variant.included.add(name)
+        val conditionals = ArrayList<Conditional>()
+        for (index in firstLine until lines.size) {
+            val line = lines[index]
+            val isEmitting = conditionals.all { it.isTaking }
+            val directive = directivePattern.matchEntire(line)
+            if (directive == null) {
+                if (isEmitting) {
+                    variant.output.append(line).append('\n')
+                }
+                continue
+            }
+            val keyword = directive.groupValues[1]
+            val argument = directive.groupValues[2].trim()
+            val location = "$name:${index + 1}"
+            when (keyword) {
+                "ifdef", "ifndef" -> {
+                    val isDefined = variant.defines.containsKey(identifierOf(argument, location))
+                    conditionals.add(Conditional(true, isEmitting && isDefined == (keyword == "ifdef")))
+                }
+                "if" -> {
+                    conditionals.add(Conditional(false, isEmitting))
+                    emitIf(variant, line, isEmitting)
+                }
+                "elif" -> {
+                    val conditional = conditionals.lastOrNull() ?: throw unexpected(keyword, location)
+                    if (conditional.isEvaluated) {
+                        throw IllegalArgumentException("$location: #elif after #ifdef is not supported, nest #ifdef instead.")
+                    }
+                    emitIf(variant, line, parentEmits(conditionals))
+                }
+                "else" -> {
+                    val conditional = conditionals.lastOrNull() ?: throw unexpected(keyword, location)
+                    if (conditional.hasElse) {
+                        throw unexpected(keyword, location)
+                    }
+                    conditional.hasElse = true
+                    if (conditional.isEvaluated) {
+                        conditional.isTaking = parentEmits(conditionals) && !conditional.wasTaken
+                    } else {
+                        emitIf(variant, line, parentEmits(conditionals))
+                    }
+                }
+                "endif" -> {
+                    val conditional = conditionals.lastOrNull() ?: throw unexpected(keyword, location)
+                    conditionals.removeAt(conditionals.size - 1)
+                    if (!conditional.isEvaluated) {
+                        emitIf(variant, line, conditionals.all { it.isTaking })
+                    }
+                }
+                "include" -> if (isEmitting) {
+                    val includedName = includedNameOf(argument, location)
+                    if (includedName !in variant.included) {
+                        append(variant, includedName, linesOf(includedName), 0)
+                    }
+                }
+                "define" -> if (isEmitting) {
+                    val definition = argument.split(whitespace, limit = 2)
+                    variant.defines[identifierOf(definition[0], location)] = definition.getOrElse(1) { "" }
+                    variant.output.append(line).append('\n')
+                }
+                "undef" -> if (isEmitting) {
+                    variant.defines.remove(identifierOf(argument, location))
+                    variant.output.append(line).append('\n')
+                }
+                else -> emitIf(variant, line, isEmitting)
+            }
+        }
+        if (conditionals.isNotEmpty()) {
+            throw IllegalArgumentException("$name: ${conditionals.size} conditional blocks are not closed with #endif.")
+        }
+    }
+
+    private fun parentEmits(conditionals: List<Conditional>): Boolean {
+        for (index in 0 until conditionals.size - 1) {
+            if (!conditionals[index].isTaking) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun emitIf(variant: Variant, line: String, isEmitting: Boolean) {
+        if (isEmitting) {
+            variant.output.append(line).append('\n')
+        }
+    }
+
+    private fun identifierOf(argument: String, location: String): String {
+        if (!identifierPattern.matches(argument)) {
+            throw IllegalArgumentException("$location: '$argument' is not a macro name.")
+        }
+        return argument
+    }
+
+    private fun includedNameOf(argument: String, location: String): String {
+        if (argument.length < 3 || !(argument.startsWith('"') && argument.endsWith('"') ||
+                        argument.startsWith('<') && argument.endsWith('>'))) {
+            throw IllegalArgumentException("$location: expected #include \"name\", got '$argument'.")
+        }
+        return argument.substring(1, argument.length - 1)
+    }
+
+    private fun unexpected(keyword: String, location: String) =
+            IllegalArgumentException("$location: unexpected #$keyword.")
+
+    private companion object {
+        val directivePattern = Regex("\\s*#\\s*(\\w+)(.*)")
+        val identifierPattern = Regex("[A-Za-z_]\\w*")
+        val whitespace = Regex("\\s+")
+    }
+}
@@ -0,0 +1,48 @@
+package com.snap.model.shading
+
+import android.content.res.Resources
+import android.support.annotation.RawRes
+
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileNotFoundException
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Where [ShaderPreprocessor] reads GLSL files from - both the shader itself and everything it includes.
+ */
+interface ShaderSources {
+
+    /**
+     * Opens file [name], as written in `#include "name"`. Caller closes the stream.
+     */
+    @Throws(IOException::class)
+    fun open(name: String): InputStream
+}
+
+/**
+ * Shaders kept in res/raw. Name of a file is its resource name - `#include "lighting.glsl"` reads
+ * R.raw.lighting.
+ */
+class RawResourceShaderSources(private val resources: Resources,
+                               private val packageName: String) : ShaderSources {
+
+    override fun open(name: String): InputStream {
+        val rawResId = resources.getIdentifier(name.substringBeforeLast('.'), "raw", packageName)
+        if (rawResId == 0) {
+            throw FileNotFoundException("There is no raw resource $name in $packageName.")
+        }
+        return resources.openRawResource(rawResId)
+    }
+
+    fun nameOf(@RawRes rawResId: Int): String = resources.getResourceEntryName(rawResId)
+}
+
+/**
+ * Shaders kept in plain files under [directory], e.g. res/raw of the project when running on the JVM.
+ */
+class DirectoryShaderSources(val directory: File) : ShaderSources {
+
+    override fun open(name: String): InputStream = FileInputStream(File(directory, name))
+}
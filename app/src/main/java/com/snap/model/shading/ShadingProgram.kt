@@ -1,6 +1,7 @@
 package com.snap.model.shading
 
 import android.opengl.GLES20
+import com.snap.model.GlContext
 
 import com.snap.model.exception.GlException
 import com.snap.model.exception.GlLibException
@@ -11,7 +12,8 @@ private const val notDefinedProgramHandle = 0
  * Represents Pair of shaders - Vertex and Fragment.
  */
 internal class ShadingProgram(private val vertexShader: Shader,
-                              private val fragmentShader: Shader) {
+                              private val fragmentShader: Shader,
+                              private val glContext: GlContext = GlContext.current) {
 
     init {
         if (vertexShader.type !== ShaderType.VERTEX) {
@@ -30,31 +32,57 @@ internal class ShadingProgram(private val vertexShader: Shader,
     val isSetup: Boolean
         get() = programHandle != notDefinedProgramHandle
 
+    /**
+     * Active attributes and uniforms with pre-resolved locations. Filled once by [compile].
+     */
+    var reflection: ProgramReflection = ProgramReflection.empty
+        private set
+
     fun compile() = apply {
         if (isSetup) {
             throw GlLibException("Shading program already createAndCompile.")
         }
-        programHandle = createGlShadingProgram(vertexShader, fragmentShader)
+        val binaryCache = glContext.programBinaryCache
+        if (binaryCache != null) {
+            // shaders are not even compiled when a saved binary links
+            programHandle = binaryCache.load(vertexShader.sourceCode, fragmentShader.sourceCode, glContext)
+        }
+        if (!isSetup) {
+            programHandle = createGlShadingProgram(vertexShader, fragmentShader)
+            binaryCache?.save(programHandle, vertexShader.sourceCode, fragmentShader.sourceCode, glContext)
+        }
+        reflection = ProgramReflection.of(programHandle, glContext)
     }
 
     private fun createGlShadingProgram(vertexShader: Shader, fragmentShader: Shader): Int {
-        val shadingProgramHandle = GLES20.glCreateProgram()
+        val gl = glContext.backend
+        val shadingProgramHandle = gl.glCreateProgram()
         if (shadingProgramHandle == notDefinedProgramHandle) {
             throw GlException("Could not create shading program.")
         }
 
-        vertexShader.createAndCompile()
-        GLES20.glAttachShader(shadingProgramHandle, vertexShader.shaderHandle)
-
-        fragmentShader.createAndCompile()
-        GLES20.glAttachShader(shadingProgramHandle, fragmentShader.shaderHandle)
+        try {
+            // shaders shared through ShaderCache may come already compiled
+            if (!vertexShader.isSetup) {
+                vertexShader.createAndCompile()
+            }
+            gl.glAttachShader(shadingProgramHandle, vertexShader.shaderHandle)
+
+            if (!fragmentShader.isSetup) {
+                fragmentShader.createAndCompile()
+            }
+            gl.glAttachShader(shadingProgramHandle, fragmentShader.shaderHandle)
+        } catch (e: GlLibException) {
+            gl.glDeleteProgram(shadingProgramHandle)
+            throw e
+        }
 
-        GLES20.glLinkProgram(shadingProgramHandle)
+        gl.glLinkProgram(shadingProgramHandle)
         val linkStatus = IntArray(1)
-        GLES20.glGetProgramiv(shadingProgramHandle, GLES20.GL_LINK_STATUS, linkStatus, 0)
+        gl.glGetProgramiv(shadingProgramHandle, GLES20.GL_LINK_STATUS, linkStatus, 0)
         if (linkStatus[0] != GLES20.GL_TRUE) {
-            val errorMessage = GLES20.glGetProgramInfoLog(shadingProgramHandle)
-            GLES20.glDeleteProgram(shadingProgramHandle)
+            val errorMessage = gl.glGetProgramInfoLog(shadingProgramHandle)
+            gl.glDeleteProgram(shadingProgramHandle)
             throw GlException("Could not link shading program. $errorMessage")
         }
 
@@ -63,8 +91,10 @@ internal class ShadingProgram(private val vertexShader: Shader,
 
     fun release() {
         if (isSetup) {
-            GLES20.glDeleteProgram(programHandle)
+            glContext.state.onProgramDeleted(programHandle)
+            glContext.backend.glDeleteProgram(programHandle)
             programHandle = notDefinedProgramHandle
+            reflection = ProgramReflection.empty
         }
     }
 
@@ -72,7 +102,7 @@ internal class ShadingProgram(private val vertexShader: Shader,
         if (!isSetup) {
             throw IllegalStateException("You have to createAndCompile program before using it.")
         }
-        GLES20.glUseProgram(programHandle)
+        glContext.state.useProgram(programHandle)
     }
 
     fun doUsingProgram(block: ShadingProgram.() -> Unit) = apply {
@@ -80,9 +110,21 @@ internal class ShadingProgram(private val vertexShader: Shader,
         block()
     }
 
+    /**
+     * Returns handle resolved at link time, falling back to a GL lookup for names missing in [reflection].
+     */
+    fun attribute(attributeName: String): AttributeBinding =
+            reflection.findAttribute(attributeName) ?: AttributeBinding.lookup(programHandle, attributeName, glContext)
+
+    /**
+     * Returns handle resolved at link time, falling back to a GL lookup for names missing in [reflection].
+     */
+    fun uniform(uniformName: String): UniformBinding =
+            reflection.findUniform(uniformName) ?: UniformBinding.lookup(programHandle, uniformName, glContext)
+
     fun createAttributeBinding(attributeName: String, block: AttributeBinding.() -> Unit = {}) =
-            AttributeBinding(programHandle, attributeName).apply(block)
+            attribute(attributeName).apply(block)
 
     fun createUniformBinding(uniformName: String, block: UniformBinding.() -> Unit = {}) =
-            UniformBinding(programHandle, uniformName).apply(block)
+            uniform(uniformName).apply(block)
 }
@@ -1,20 +1,54 @@
 package com.snap.model.shading
 
 import android.opengl.GLES20
+import com.snap.model.GlContext
 
-class UniformBinding(programHandle: Int, uniformName: String) {
+/**
+ * Uniform value shared by all vertices of a draw call.
+ *
+ * Instances are resolved once per program (see [ProgramReflection]) and can be held by renderers.
+ */
+class UniformBinding(val uniformHandle: Int,
+                     val uniformName: String,
+                     val type: Int,
+                     val size: Int,
+                     private val glContext: GlContext = GlContext.current) {
 
-    private val uniformHandle: Int = GLES20.glGetUniformLocation(programHandle, uniformName)
+    /**
+     * False when the linker optimized the uniform out (or it was never declared).
+     */
+    val isActive: Boolean
+        get() = uniformHandle >= 0
 
     fun bindUniformMatrix4fv(matrix: FloatArray) {
-        GLES20.glUniformMatrix4fv(uniformHandle, 1, false, matrix, 0)
+        glContext.backend.glUniformMatrix4fv(uniformHandle, 1, false, matrix, 0)
+    }
+
+    /**
+     * Sets [count] elements of a mat4 array uniform from 16 floats each of [matrices], starting at [offset].
+     */
+    fun bindUniformMatrix4fv(matrices: FloatArray, count: Int, offset: Int) {
+        glContext.backend.glUniformMatrix4fv(uniformHandle, count, false, matrices, offset)
     }
 
     fun bindUniform3f(first: Float, second: Float, third: Float) {
-        GLES20.glUniform3f(uniformHandle, first, second, third)
+        glContext.backend.glUniform3f(uniformHandle, first, second, third)
     }
 
     fun bindUniform4f(first: Float, second: Float, third: Float, fourth: Float) {
-        GLES20.glUniform4f(uniformHandle, first, second, third, fourth)
+        glContext.backend.glUniform4f(uniformHandle, first, second, third, fourth)
+    }
+
+    companion object {
+
+        /**
+         * Resolves location of the uniform by asking GL directly. Prefer handles from [ProgramReflection].
+         */
+        fun lookup(programHandle: Int,
+                   uniformName: String,
+                   glContext: GlContext = GlContext.current): UniformBinding {
+            val uniformHandle = glContext.backend.glGetUniformLocation(programHandle, uniformName)
+            return UniformBinding(uniformHandle, uniformName, GLES20.GL_NONE, 1, glContext)
+        }
     }
 }
@@ -0,0 +1,49 @@
+@file:JvmName("VertexFormatBindings")
+
+package com.snap.model.shading
+
+import com.snap.model.VertexBuffer
+import com.snap.model.VertexFormat
+
+/**
+ * Points every attribute of [format] at interleaved [vertexBuffer], starting [firstVertex] vertices into it.
+ * Attributes are matched by name with the ones resolved when the program was linked.
+ */
+internal fun ShadingProgram.bindVertexFormat(vertexBuffer: VertexBuffer,
+                                             format: VertexFormat,
+                                             firstVertex: Int = 0) = doUsingProgram {
+    for (index in format.attributes.indices) {
+        bindAttribute(attribute(format.attributes[index].name), vertexBuffer, format, index, firstVertex)
+    }
+}
+
+/**
+ * Same as [ShadingProgram.bindVertexFormat], for code that resolves its own [attributes] - they have
+ * to follow declaration order of [format].
+ */
+@JvmOverloads
+fun bindVertexFormat(vertexBuffer: VertexBuffer,
+                     format: VertexFormat,
+                     attributes: List<AttributeBinding>,
+                     firstVertex: Int = 0) {
+    if (attributes.size != format.attributes.size) {
+        throw IllegalArgumentException("Expected ${format.attributes.size} attribute bindings, got ${attributes.size}.")
+    }
+    for (index in attributes.indices) {
+        bindAttribute(attributes[index], vertexBuffer, format, index, firstVertex)
+    }
+}
+
+private fun bindAttribute(binding: AttributeBinding,
+                          vertexBuffer: VertexBuffer,
+                          format: VertexFormat,
+                          attributeIndex: Int,
+                          firstVertex: Int) {
+    val attribute = format.attributes[attributeIndex]
+    binding.bindVertexBuffer(vertexBuffer,
+            attribute.componentCount,
+            firstVertex * format.stride + format.offsetOf(attributeIndex),
+            format.stride,
+            attribute.isNormalized,
+            attribute.type.glType)
+}
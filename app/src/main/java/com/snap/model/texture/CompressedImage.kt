@@ -0,0 +1,58 @@
+package com.snap.model.texture
+
+import java.nio.ByteBuffer
+
+/**
+ * Block compressed texel formats. Every one encodes blocks of 4x4 texels into [blockSizeInBytes].
+ *
+ * GL enum values are spelled out so the class does not need android.jar.
+ */
+enum class CompressedFormat(val glFormat: Int, val blockSizeInBytes: Int, val hasAlpha: Boolean) {
+
+    /**
+     * OES_compressed_ETC1_RGB8_texture - available on nearly every GLES 2.0 device. Valid [ETC2_RGB8] data too.
+     */
+    ETC1_RGB8(0x8D64, 8, false),
+
+    ETC2_RGB8(0x9274, 8, false),
+
+    /**
+     * Texels are either opaque or fully transparent.
+     */
+    ETC2_RGB8_PUNCHTHROUGH_ALPHA1(0x9276, 8, true),
+
+    ETC2_RGBA8(0x9278, 16, true);
+
+    /**
+     * True for formats core in GLES 3.0 and nothing earlier.
+     */
+    val requiresGles3: Boolean
+        get() = this != ETC1_RGB8
+
+    /**
+     * Bytes taken by image of [width] x [height] texels, partial blocks rounded up.
+     */
+    fun sizeInBytes(width: Int, height: Int) = ((width + 3) / 4) * ((height + 3) / 4) * blockSizeInBytes
+}
+
+/**
+ * Single mipmap level of a compressed texture - blocks row by row from the top left corner, as uploaded
+ * with glCompressedTexImage2D.
+ */
+class CompressedImage(val format: CompressedFormat, val width: Int, val height: Int, val data: ByteBuffer) {
+
+    init {
+        if (width <= 0 || height <= 0) {
+            throw IllegalArgumentException("Image has to have positive size, not ${width}x$height.")
+        }
+        if (data.remaining() != format.sizeInBytes(width, height)) {
+            throw IllegalArgumentException("${width}x$height $format image takes ${format.sizeInBytes(width, height)} " +
+                    "bytes, got ${data.remaining()}.")
+        }
+    }
+
+    val sizeInBytes: Int
+        get() = data.remaining()
+
+    override fun toString() = "CompressedImage($format, ${width}x$height)"
+}
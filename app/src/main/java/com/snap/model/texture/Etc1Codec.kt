@@ -0,0 +1,290 @@
+package com.snap.model.texture
+
+/**
+ * ETC1 blocks: 4x4 texels in 64 bits, as two halves (2x4 side by side, or 4x2 stacked when flipped) each
+ * with a base color and a table of intensity modifiers, plus 2 bits per texel choosing the modifier.
+ *
+ * Base colors are 4 bits per channel each, or, in differential mode, the first one 5 bits per channel
+ * and the second a 3 bit signed difference from it. Blocks are kept as big-endian longs, the way they
+ * are stored in memory and files. Pure JVM.
+ */
+object Etc1Codec {
+
+    /**
+     * Intensity modifiers of the 8 tables, the small and the large one. Texel index 0 adds the small one,
+     * 1 the large one, 2 subtracts the small one, 3 the large one.
+     */
+    private val modifiers = arrayOf(
+            intArrayOf(2, 8),
+            intArrayOf(5, 17),
+            intArrayOf(9, 29),
+            intArrayOf(13, 42),
+            intArrayOf(18, 60),
+            intArrayOf(24, 80),
+            intArrayOf(33, 106),
+            intArrayOf(47, 183))
+
+    private const val tableCount = 8
+
+    /**
+     * Encoder state of one thread - scratch for a block, so blocks are encoded without allocating.
+     */
+    class BlockEncoder {
+
+        private val halfPixels = IntArray(8)
+        private val halfIndices = IntArray(8)
+
+        /**
+         * Quantized base colors of both halves, red, green and blue of the first then of the second.
+         */
+        private val bases = IntArray(6)
+        private val tables = IntArray(2)
+        private val indices = Array(2) { IntArray(8) }
+
+        /**
+         * Encodes 16 ARGB [pixels] (4 rows of 4, alpha ignored) into a block.
+         */
+        fun encode(pixels: IntArray): Long {
+            var bestBlock = 0L
+            var bestError = Long.MAX_VALUE
+            for (flip in 0..1) {
+                for (mode in 0..1) {
+                    val isDifferential = mode == 0
+                    if (!quantizeBases(pixels, flip, isDifferential)) {
+                        continue
+                    }
+                    var error = 0L
+                    for (half in 0..1) {
+                        gatherHalf(pixels, flip, half)
+                        error += chooseTable(half, isDifferential, bestError - error)
+                        if (error >= bestError) {
+                            break
+                        }
+                    }
+                    if (error < bestError) {
+                        bestError = error
+                        bestBlock = pack(flip, isDifferential)
+                    }
+                }
+            }
+            return bestBlock
+        }
+
+        /**
+         * Fills [bases] with averages of both halves, returns false when they are too far apart for
+         * differential mode.
+         */
+        private fun quantizeBases(pixels: IntArray, flip: Int, isDifferential: Boolean): Boolean {
+            val levels = if (isDifferential) 31 else 15
+            for (half in 0..1) {
+                gatherHalf(pixels, flip, half)
+                for (channel in 0..2) {
+                    val shift = 16 - channel * 8
+                    var sum = 0
+                    for (pixel in halfPixels) {
+                        sum += (pixel shr shift) and 0xFF
+                    }
+                    // average of 8 values, scaled to the levels and rounded
+                    bases[half * 3 + channel] = (sum * levels + 255 * 4) / (255 * 8)
+                }
+            }
+            if (isDifferential) {
+                for (channel in 0..2) {
+                    val difference = bases[3 + channel] - bases[channel]
+                    if (difference < -4 || difference > 3) {
+                        return false
+                    }
+                }
+            }
+            return true
+        }
+
+        private fun gatherHalf(pixels: IntArray, flip: Int, half: Int) {
+            for (i in 0 until 8) {
+                halfPixels[i] = pixels[yOf(flip, half, i) * 4 + xOf(flip, half, i)]
+            }
+        }
+
+        /**
+         * Picks table and texel indices of [halfPixels] of [half], returns squared error. Gives up on
+         * tables once their error reaches [errorLimit].
+         */
+        private fun chooseTable(half: Int, isDifferential: Boolean, errorLimit: Long): Long {
+            val red = expand(bases[half * 3], isDifferential)
+            val green = expand(bases[half * 3 + 1], isDifferential)
+            val blue = expand(bases[half * 3 + 2], isDifferential)
+            var bestError = errorLimit
+            for (table in 0 until tableCount) {
+                var error = 0L
+                for (i in 0 until 8) {
+                    val pixel = halfPixels[i]
+                    var bestPixelError = Int.MAX_VALUE
+                    for (index in 0..3) {
+                        val modifier = modifierOf(table, index)
+                        val dr = clamp(red + modifier) - ((pixel shr 16) and 0xFF)
+                        val dg = clamp(green + modifier) - ((pixel shr 8) and 0xFF)
+                        val db = clamp(blue + modifier) - (pixel and 0xFF)
+                        val pixelError = dr * dr + dg * dg + db * db
+                        if (pixelError < bestPixelError) {
+                            bestPixelError = pixelError
+                            halfIndices[i] = index
+                        }
+                    }
+                    error += bestPixelError
+                    if (error >= bestError) {
+                        break
+                    }
+                }
+                if (error < bestError) {
+                    bestError = error
+                    tables[half] = table
+                    System.arraycopy(halfIndices, 0, indices[half], 0, 8)
+                }
+            }
+            return bestError
+        }
+
+        private fun pack(flip: Int, isDifferential: Boolean): Long {
+            var block = 0L
+            for (channel in 0..2) {
+                val shift = 56 - channel * 8
+                val first = bases[channel].toLong()
+                val second = bases[3 + channel].toLong()
+                block = if (isDifferential) {
+                    block or (first shl (shift + 3)) or (((second - first) and 7L) shl shift)
+                } else {
+                    block or (first shl (shift + 4)) or (second shl shift)
+                }
+            }
+            if (isDifferential) {
+                block = block or (1L shl 33)
+            }
+            block = block or (flip.toLong() shl 32) or (tables[0].toLong() shl 37) or (tables[1].toLong() shl 34)
+            for (half in 0..1) {
+                for (i in 0 until 8) {
+                    val bit = xOf(flip, half, i) * 4 + yOf(flip, half, i)
+                    val index = indices[half][i]
+                    block = block or ((index shr 1).toLong() shl (16 + bit)) or ((index and 1).toLong() shl bit)
+                }
+            }
+            return block
+        }
+
+        private fun expand(value: Int, isDifferential: Boolean) =
+                if (isDifferential) expand5(value) else expand4(value)
+
+        /**
+         * Column of texel [i] of [half] - halves are 2 columns wide, or 4 when [flip]ped.
+         */
+        private fun xOf(flip: Int, half: Int, i: Int) = if (flip == 0) half * 2 + i / 4 else i % 4
+
+        private fun yOf(flip: Int, half: Int, i: Int) = if (flip == 0) i % 4 else half * 2 + i / 4
+    }
+
+    /**
+     * Encodes 16 ARGB [pixels] (4 rows of 4, alpha ignored) into a block. Allocates a [BlockEncoder] - keep
+     * one per thread when encoding whole images.
+     */
+    @JvmStatic
+    fun encodeBlock(pixels: IntArray): Long = BlockEncoder().encode(pixels)
+
+    /**
+     * Decodes [block] into 4 rows of 4 opaque ARGB pixels of [pixels], starting at [offset], rows [stride]
+     * pixels apart.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun decodeBlock(block: Long, pixels: IntArray, offset: Int = 0, stride: Int = 4) {
+        val isDifferential = (block ushr 33) and 1L == 1L
+        val flip = ((block ushr 32) and 1L).toInt()
+        val bases = Array(2) { IntArray(3) }
+        for (channel in 0..2) {
+            val shift = 56 - channel * 8
+            if (isDifferential) {
+                val first = ((block ushr (shift + 3)) and 0x1F).toInt()
+                val difference = ((block ushr shift) and 7).toInt().let { if (it >= 4) it - 8 else it }
+                bases[0][channel] = expand5(first)
+                bases[1][channel] = expand5((first + difference) and 0x1F)
+            } else {
+                bases[0][channel] = expand4(((block ushr (shift + 4)) and 0xF).toInt())
+                bases[1][channel] = expand4(((block ushr shift) and 0xF).toInt())
+            }
+        }
+        val tables = intArrayOf(((block ushr 37) and 7).toInt(), ((block ushr 34) and 7).toInt())
+        for (x in 0 until 4) {
+            for (y in 0 until 4) {
+                val bit = x * 4 + y
+                val index = (((block ushr (16 + bit)) and 1).toInt() shl 1) or ((block ushr bit) and 1).toInt()
+                val half = if (flip == 0) x / 2 else y / 2
+                val modifier = modifierOf(tables[half], index)
+                val base = bases[half]
+                pixels[offset + y * stride + x] = (0xFF shl 24) or (clamp(base[0] + modifier) shl 16) or
+                        (clamp(base[1] + modifier) shl 8) or clamp(base[2] + modifier)
+            }
+        }
+    }
+
+    /**
+     * Decodes ETC1 [image] into ARGB pixels, row by row - e.g. for GL without ETC1 support.
+     */
+    @JvmStatic
+    fun decode(image: CompressedImage): IntArray {
+        if (image.format != CompressedFormat.ETC1_RGB8) {
+            throw IllegalArgumentException("Only ETC1 can be decoded, got ${image.format}.")
+        }
+        val width = image.width
+        val height = image.height
+        val blocksPerRow = (width + 3) / 4
+        val blockRows = (height + 3) / 4
+        val padded = IntArray(blocksPerRow * 4 * blockRows * 4)
+        val data = image.data
+        for (blockRow in 0 until blockRows) {
+            for (blockColumn in 0 until blocksPerRow) {
+                val block = data.getLong(data.position() + (blockRow * blocksPerRow + blockColumn) * 8)
+                decodeBlock(block, padded, blockRow * 4 * blocksPerRow * 4 + blockColumn * 4, blocksPerRow * 4)
+            }
+        }
+        if (blocksPerRow * 4 == width) {
+            return if (blockRows * 4 == height) padded else padded.copyOf(width * height)
+        }
+        val pixels = IntArray(width * height)
+        for (y in 0 until height) {
+            System.arraycopy(padded, y * blocksPerRow * 4, pixels, y * width, width)
+        }
+        return pixels
+    }
+
+    /**
+     * Peak signal to noise ratio of RGB channels of [decoded] against [original], in dB. Identical images
+     * give positive infinity.
+     */
+    @JvmStatic
+    fun peakSignalToNoiseRatio(original: IntArray, decoded: IntArray): Double {
+        if (original.size != decoded.size) {
+            throw IllegalArgumentException("Images of ${original.size} and ${decoded.size} pixels cannot be compared.")
+        }
+        var squaredError = 0L
+        for (i in original.indices) {
+            for (shift in intArrayOf(16, 8, 0)) {
+                val difference = ((original[i] shr shift) and 0xFF) - ((decoded[i] shr shift) and 0xFF)
+                squaredError += difference * difference
+            }
+        }
+        if (squaredError == 0L) {
+            return Double.POSITIVE_INFINITY
+        }
+        val meanSquaredError = squaredError.toDouble() / (original.size * 3)
+        return 10 * Math.log10(255.0 * 255.0 / meanSquaredError)
+    }
+
+    private fun modifierOf(table: Int, index: Int): Int {
+        val modifier = modifiers[table][index and 1]
+        return if (index >= 2) -modifier else modifier
+    }
+
+    private fun expand4(value: Int) = (value shl 4) or value
+
+    private fun expand5(value: Int) = (value shl 3) or (value shr 2)
+
+    private fun clamp(value: Int) = if (value < 0) 0 else if (value > 255) 255 else value
+}
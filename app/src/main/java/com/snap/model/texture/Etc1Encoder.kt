@@ -0,0 +1,97 @@
+package com.snap.model.texture
+
+import com.snap.concurrent.ParallelFor
+import com.snap.concurrent.RangeTask
+
+import java.nio.ByteBuffer
+
+/**
+ * Compresses ARGB images (row by row from the top left corner, alpha dropped) to ETC1, e.g. drawables on
+ * first run or at build time. Rows of blocks are split between threads of [parallelFor], when given.
+ * Pure JVM.
+ */
+class Etc1Encoder @JvmOverloads constructor(private val parallelFor: ParallelFor? = null) {
+
+    fun encode(pixels: IntArray, width: Int, height: Int): CompressedImage {
+        if (width <= 0 || height <= 0 || pixels.size != width * height) {
+            throw IllegalArgumentException("Image of ${width}x$height cannot have ${pixels.size} pixels.")
+        }
+        val format = CompressedFormat.ETC1_RGB8
+        val data = ByteBuffer.allocateDirect(format.sizeInBytes(width, height))
+        val blocksPerRow = (width + 3) / 4
+        val task = object : RangeTask {
+            override fun run(from: Int, to: Int) {
+                val encoder = Etc1Codec.BlockEncoder()
+                val block = IntArray(16)
+                for (blockRow in from until to) {
+                    for (blockColumn in 0 until blocksPerRow) {
+                        // texels past the edge of the image repeat the last row and column
+                        for (y in 0 until 4) {
+                            val row = Math.min(blockRow * 4 + y, height - 1) * width
+                            for (x in 0 until 4) {
+                                block[y * 4 + x] = pixels[row + Math.min(blockColumn * 4 + x, width - 1)]
+                            }
+                        }
+                        data.putLong((blockRow * blocksPerRow + blockColumn) * 8, encoder.encode(block))
+                    }
+                }
+            }
+        }
+        val blockRows = (height + 3) / 4
+        val parallelFor = parallelFor
+        if (parallelFor == null) {
+            task.run(0, blockRows)
+        } else {
+            parallelFor.run(blockRows, task)
+        }
+        return CompressedImage(format, width, height, data)
+    }
+
+    /**
+     * Encodes the image and all its mipmap levels down to 1x1, each a box filtered half of the previous one.
+     */
+    fun encodeMipChain(pixels: IntArray, width: Int, height: Int): List<CompressedImage> {
+        val levels = ArrayList<CompressedImage>()
+        var levelPixels = pixels
+        var levelWidth = width
+        var levelHeight = height
+        while (true) {
+            levels.add(encode(levelPixels, levelWidth, levelHeight))
+            if (levelWidth == 1 && levelHeight == 1) {
+                return levels
+            }
+            levelPixels = downsample(levelPixels, levelWidth, levelHeight)
+            levelWidth = Math.max(levelWidth / 2, 1)
+            levelHeight = Math.max(levelHeight / 2, 1)
+        }
+    }
+
+    companion object {
+
+        /**
+         * Next mipmap level of ARGB [pixels] - every texel an average of (up to) 2x2 texels of the image.
+         */
+        @JvmStatic
+        fun downsample(pixels: IntArray, width: Int, height: Int): IntArray {
+            val halfWidth = Math.max(width / 2, 1)
+            val halfHeight = Math.max(height / 2, 1)
+            val result = IntArray(halfWidth * halfHeight)
+            for (y in 0 until halfHeight) {
+                val top = Math.min(y * 2, height - 1) * width
+                val bottom = Math.min(y * 2 + 1, height - 1) * width
+                for (x in 0 until halfWidth) {
+                    val left = Math.min(x * 2, width - 1)
+                    val right = Math.min(x * 2 + 1, width - 1)
+                    var color = 0
+                    for (shift in 0..24 step 8) {
+                        val sum = ((pixels[top + left] ushr shift) and 0xFF) + ((pixels[top + right] ushr shift) and 0xFF) +
+                                ((pixels[bottom + left] ushr shift) and 0xFF) + ((pixels[bottom + right] ushr shift) and 0xFF)
+                        color = color or (((sum + 2) / 4) shl shift)
+                    }
+                    result[y * halfWidth + x] = color
+                }
+            }
+            return result
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.snap.model.texture
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+
+/**
+ * PKM files, as written by etc1tool and etcpack: 16 byte big-endian header - "PKM ", version "10" (ETC1)
+ * or "20" (ETC2), format, size rounded up to blocks, actual size - followed by the blocks.
+ *
+ * A mipmap chain is kept as one PKM per level, concatenated from the biggest one.
+ */
+object PkmFile {
+
+    private const val magic = 0x504B4D20 // "PKM "
+    private const val version1 = 0x3130 // "10"
+    private const val version2 = 0x3230 // "20"
+
+    /**
+     * Format codes of the header, index of each is its code.
+     */
+    private val formatCodes = listOf(
+            CompressedFormat.ETC1_RGB8,
+            CompressedFormat.ETC2_RGB8,
+            null, // ETC2 RGBA with old alpha layout, never written by etcpack
+            CompressedFormat.ETC2_RGBA8,
+            CompressedFormat.ETC2_RGB8_PUNCHTHROUGH_ALPHA1)
+
+    /**
+     * Reads every level of [input] up to its end. Caller closes the stream.
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun read(input: InputStream): List<CompressedImage> {
+        val data = DataInputStream(input)
+        val levels = ArrayList<CompressedImage>()
+        while (true) {
+            val header = try {
+                data.readInt()
+            } catch (e: EOFException) {
+                if (levels.isEmpty()) {
+                    throw IOException("There is no PKM image in the stream.")
+                }
+                return levels
+            }
+            levels.add(readLevel(data, header, levels.size))
+        }
+    }
+
+    private fun readLevel(data: DataInputStream, header: Int, level: Int): CompressedImage {
+        if (header != magic) {
+            throw IOException("Level $level is not a PKM image.")
+        }
+        val version = data.readUnsignedShort()
+        val formatCode = data.readUnsignedShort()
+        if (version != version1 && version != version2) {
+            throw IOException("Unknown PKM version ${Integer.toHexString(version)} of level $level.")
+        }
+        val format = (if (version == version1 && formatCode != 0) null else formatCodes.getOrNull(formatCode))
+                ?: throw IOException("Unknown PKM format $formatCode of level $level.")
+        val paddedWidth = data.readUnsignedShort()
+        val paddedHeight = data.readUnsignedShort()
+        val width = data.readUnsignedShort()
+        val height = data.readUnsignedShort()
+        if (width == 0 || height == 0 || paddedWidth != (width + 3) / 4 * 4 || paddedHeight != (height + 3) / 4 * 4) {
+            throw IOException("Level $level has inconsistent size ${width}x$height, padded ${paddedWidth}x$paddedHeight.")
+        }
+        val bytes = ByteArray(format.sizeInBytes(width, height))
+        data.readFully(bytes)
+        val blocks = ByteBuffer.allocateDirect(bytes.size)
+        blocks.put(bytes).flip()
+        return CompressedImage(format, width, height, blocks)
+    }
+
+    /**
+     * Writes [levels] one after another. Caller closes the stream.
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun write(levels: List<CompressedImage>, output: OutputStream) {
+        val data = DataOutputStream(output)
+        for (level in levels) {
+            data.writeInt(magic)
+            data.writeShort(if (level.format == CompressedFormat.ETC1_RGB8) version1 else version2)
+            data.writeShort(formatCodes.indexOf(level.format))
+            data.writeShort((level.width + 3) / 4 * 4)
+            data.writeShort((level.height + 3) / 4 * 4)
+            data.writeShort(level.width)
+            data.writeShort(level.height)
+            val blocks = level.data.duplicate()
+            val bytes = ByteArray(blocks.remaining())
+            blocks.get(bytes)
+            data.write(bytes)
+        }
+        data.flush()
+    }
+}
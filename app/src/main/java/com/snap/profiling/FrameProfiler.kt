@@ -0,0 +1,240 @@
+package com.snap.profiling
+
+import java.util.Locale
+import java.util.concurrent.TimeUnit
+
+/**
+ * Source of monotonic time in nanoseconds. An interface rather than a function type, so reading it does not
+ * box the result.
+ */
+interface NanoClock {
+
+    fun nanoTime(): Long
+
+    companion object {
+
+        @JvmField
+        val system: NanoClock = object : NanoClock {
+            override fun nanoTime() = System.nanoTime()
+        }
+    }
+}
+
+/**
+ * Percentiles of one timing series, in nanoseconds.
+ */
+class TimingSummary(val name: String,
+                    val count: Long,
+                    val p50: Long,
+                    val p95: Long,
+                    val p99: Long,
+                    val max: Long) {
+
+    constructor(name: String, histogram: LogHistogram) : this(name, histogram.count,
+            histogram.valueAtPercentile(50.0), histogram.valueAtPercentile(95.0), histogram.valueAtPercentile(99.0),
+            histogram.max)
+
+    override fun toString() = "$name: p50 ${millis(p50)} ms, p95 ${millis(p95)} ms, p99 ${millis(p99)} ms, " +
+            "max ${millis(max)} ms of $count"
+
+    private fun millis(nanos: Long) = String.format(Locale.US, "%.2f", nanos / 1e6)
+}
+
+/**
+ * CPU time of frames and of named phases within them (update, cull, submit, ...), recorded into
+ * [LogHistogram]s - for the whole lifetime and for the last [windowCount] windows of [windowFrames] frames.
+ *
+ * A frame runs from [beginFrame] to [endFrame], usually the whole onDrawFrame. The time from [endFrame]
+ * to the next [beginFrame] is recorded as [swapPhase] - the buffer swap and waiting for the display,
+ * which happen after onDrawFrame returns. Frames whose begin is more than [jankThresholdNanos] after the
+ * previous begin count as jank - a display refresh was missed, as intervals of a frame that made it vary by
+ * vsync jitter and by panels running a little slower than [frameBudgetNanos], e.g. at 59.94 Hz.
+ *
+ * Everything is allocated up front - recording a frame allocates nothing. Has to be used from a single
+ * thread, usually the GL thread.
+ */
+class FrameProfiler @JvmOverloads constructor(phases: List<String>,
+                                              val frameBudgetNanos: Long = defaultFrameBudgetNanos,
+                                              val windowFrames: Int = 120,
+                                              val windowCount: Int = 5,
+                                              private val clock: NanoClock = NanoClock.system) {
+
+    init {
+        if (windowFrames <= 0 || windowCount <= 0) {
+            throw IllegalArgumentException("Windows of $windowFrames frames, $windowCount of them, record nothing.")
+        }
+    }
+
+    /**
+     * Time between frame begins past which a frame counts as jank - one and a half of [frameBudgetNanos],
+     * so a frame started anywhere past the next refresh counts.
+     */
+    val jankThresholdNanos = frameBudgetNanos + frameBudgetNanos / 2
+
+    /**
+     * Caller's phases, indexed as given, then [swapPhase].
+     */
+    val phaseNames: List<String> = phases + swapPhaseName
+
+    /**
+     * Index of the phase between the end of a frame and the begin of the next one.
+     */
+    val swapPhase = phases.size
+
+    private val series = phaseNames.size + 1
+    private val frameSeries = phaseNames.size
+
+    private val lifetime = Array(series) { LogHistogram() }
+    private val windows = Array(windowCount) { Array(series) { LogHistogram() } }
+    private val windowJankCounts = LongArray(windowCount)
+    private val recent = Array(series) { LogHistogram() }
+
+    private val phaseStarts = LongArray(phaseNames.size) { notStarted }
+    private var frameStart = notStarted
+    private var previousFrameStart = notStarted
+    private var frameEnd = notStarted
+    private var currentWindow = 0
+    private var framesInWindow = 0
+
+    /**
+     * Frames recorded so far.
+     */
+    var frameCount = 0L
+        private set
+
+    /**
+     * Frames started later than [jankThresholdNanos] after the previous one.
+     */
+    var jankCount = 0L
+        private set
+
+    fun beginFrame() {
+        if (frameStart != notStarted) {
+            throw IllegalStateException("Frame started at $frameStart has not ended.")
+        }
+        val now = clock.nanoTime()
+        if (frameEnd != notStarted) {
+            record(swapPhase, now - frameEnd)
+        }
+        if (previousFrameStart != notStarted && now - previousFrameStart > jankThresholdNanos) {
+            jankCount++
+            windowJankCounts[currentWindow]++
+        }
+        frameStart = now
+    }
+
+    fun beginPhase(phase: Int) {
+        checkPhase(phase)
+        phaseStarts[phase] = clock.nanoTime()
+    }
+
+    fun endPhase(phase: Int) {
+        checkPhase(phase)
+        if (phaseStarts[phase] == notStarted) {
+            throw IllegalStateException("Phase ${phaseNames[phase]} has not begun.")
+        }
+        record(phase, clock.nanoTime() - phaseStarts[phase])
+        phaseStarts[phase] = notStarted
+    }
+
+    fun endFrame() {
+        if (frameStart == notStarted) {
+            throw IllegalStateException("Nothing to end - no frame has begun.")
+        }
+        val now = clock.nanoTime()
+        record(frameSeries, now - frameStart)
+        previousFrameStart = frameStart
+        frameStart = notStarted
+        frameEnd = now
+        frameCount++
+        if (++framesInWindow == windowFrames) {
+            // the oldest window makes room for the next one
+            currentWindow = (currentWindow + 1) % windowCount
+            for (histogram in windows[currentWindow]) {
+                histogram.reset()
+            }
+            windowJankCounts[currentWindow] = 0L
+            framesInWindow = 0
+        }
+    }
+
+    /**
+     * CPU time of whole frames over the lifetime. Read only.
+     */
+    val frames: LogHistogram
+        get() = lifetime[frameSeries]
+
+    /**
+     * Times of [phase] over the lifetime. Read only.
+     */
+    fun phase(phase: Int): LogHistogram {
+        checkPhase(phase)
+        return lifetime[phase]
+    }
+
+    /**
+     * CPU time of whole frames over the last windows - up to [windowCount] x [windowFrames] latest frames.
+     * Merged on every call into a histogram owned by the profiler. Read only.
+     */
+    val recentFrames: LogHistogram
+        get() = recent(frameSeries)
+
+    fun recentPhase(phase: Int): LogHistogram {
+        checkPhase(phase)
+        return recent(phase)
+    }
+
+    /**
+     * Jank of the last windows.
+     */
+    val recentJankCount: Long
+        get() = windowJankCounts.sum()
+
+    /**
+     * Percentiles of the recent frames and phases, then the lifetime jank. Allocates - for logs and
+     * debug overlays, not for every frame.
+     */
+    fun report(): String {
+        val lines = ArrayList<String>()
+        lines.add(TimingSummary("frame", recentFrames).toString())
+        for (phase in phaseNames.indices) {
+            lines.add(TimingSummary(phaseNames[phase], recentPhase(phase)).toString())
+        }
+        lines.add("jank: $recentJankCount recent, $jankCount of $frameCount frames over " +
+                "${String.format(Locale.US, "%.1f", jankThresholdNanos / 1e6)} ms")
+        return lines.joinToString("\n")
+    }
+
+    private fun record(series: Int, nanos: Long) {
+        lifetime[series].record(nanos)
+        windows[currentWindow][series].record(nanos)
+    }
+
+    private fun recent(series: Int): LogHistogram {
+        val merged = recent[series]
+        merged.reset()
+        for (window in windows) {
+            merged.add(window[series])
+        }
+        return merged
+    }
+
+    private fun checkPhase(phase: Int) {
+        if (phase < 0 || phase >= phaseNames.size) {
+            throw IndexOutOfBoundsException("Phase $phase of ${phaseNames.size}.")
+        }
+    }
+
+    companion object {
+
+        /**
+         * A frame at 60 Hz.
+         */
+        @JvmField
+        val defaultFrameBudgetNanos = TimeUnit.SECONDS.toNanos(1) / 60
+
+        const val swapPhaseName = "swap"
+
+        private const val notStarted = Long.MIN_VALUE
+    }
+}
@@ -0,0 +1,152 @@
+package com.snap.profiling
+
+/**
+ * Counts of non-negative values - e.g. durations in nanoseconds - in buckets growing with the value, so a
+ * fixed array covers [0, [maxValue]] with relative error of at most 1 / 2^[subBucketBits].
+ *
+ * Values below 2^[subBucketBits] get a bucket each; every following power of two range is split into
+ * 2^[subBucketBits] equal buckets. Bigger values than [maxValue] are counted in the last bucket, [max]
+ * stays exact. Recording never allocates.
+ *
+ * Not thread safe.
+ */
+class LogHistogram @JvmOverloads constructor(val maxValue: Long = defaultMaxValue,
+                                             val subBucketBits: Int = defaultSubBucketBits) {
+
+    private val subBucketCount = 1 shl subBucketBits
+
+    init {
+        if (subBucketBits !in 1..16 || maxValue < subBucketCount) {
+            throw IllegalArgumentException("Histogram up to $maxValue with $subBucketBits sub-bucket bits " +
+                    "has no log buckets.")
+        }
+    }
+
+    private val counts = LongArray(bucketIndex(maxValue) + 1)
+
+    val bucketCount: Int
+        get() = counts.size
+
+    var count = 0L
+        private set
+
+    var min = 0L
+        private set
+
+    var max = 0L
+        private set
+
+    var sum = 0L
+        private set
+
+    val mean: Double
+        get() = if (count == 0L) 0.0 else sum.toDouble() / count
+
+    fun record(value: Long) {
+        val clamped = Math.max(value, 0L)
+        counts[Math.min(bucketIndex(clamped), counts.size - 1)]++
+        if (count == 0L || clamped < min) {
+            min = clamped
+        }
+        if (clamped > max) {
+            max = clamped
+        }
+        count++
+        sum += clamped
+    }
+
+    /**
+     * Smallest value at least [percentile] % of recorded values are equal to or below, up to the bucket
+     * width - highest value of its bucket, never above [max]. 0 when empty.
+     */
+    fun valueAtPercentile(percentile: Double): Long {
+        if (percentile !in 0.0..100.0) {
+            throw IllegalArgumentException("Percentile $percentile is out of 0..100.")
+        }
+        if (count == 0L) {
+            return 0L
+        }
+        val rank = Math.max(Math.ceil(percentile / 100.0 * count).toLong(), 1L)
+        var seen = 0L
+        for (index in counts.indices) {
+            seen += counts[index]
+            if (seen >= rank) {
+                // the last bucket holds anything bigger, too
+                return if (index == counts.size - 1) max else Math.min(Math.max(bucketUpperBound(index), min), max)
+            }
+        }
+        return max
+    }
+
+    /**
+     * Number of recorded values above [threshold], up to the width of the bucket holding it.
+     */
+    fun countAbove(threshold: Long): Long {
+        var above = 0L
+        for (index in bucketIndex(Math.max(threshold, 0L)) + 1 until counts.size) {
+            above += counts[index]
+        }
+        return above
+    }
+
+    /**
+     * Adds all values of [other], which has to have the same buckets.
+     */
+    fun add(other: LogHistogram) {
+        if (other.maxValue != maxValue || other.subBucketBits != subBucketBits) {
+            throw IllegalArgumentException("Histograms of different buckets can't be added.")
+        }
+        if (other.count == 0L) {
+            return
+        }
+        for (index in counts.indices) {
+            counts[index] += other.counts[index]
+        }
+        min = if (count == 0L) other.min else Math.min(min, other.min)
+        max = Math.max(max, other.max)
+        count += other.count
+        sum += other.sum
+    }
+
+    fun reset() {
+        counts.fill(0L)
+        count = 0L
+        min = 0L
+        max = 0L
+        sum = 0L
+    }
+
+    private fun bucketIndex(value: Long): Int {
+        if (value < subBucketCount) {
+            return value.toInt()
+        }
+        val shift = 63 - java.lang.Long.numberOfLeadingZeros(value) - subBucketBits
+        val subBucket = (value ushr shift).toInt() - subBucketCount
+        return subBucketCount + shift * subBucketCount + subBucket
+    }
+
+    private fun bucketUpperBound(index: Int): Long {
+        if (index < subBucketCount) {
+            return index.toLong()
+        }
+        val shift = (index - subBucketCount) / subBucketCount
+        val subBucket = (index - subBucketCount) % subBucketCount
+        return ((subBucketCount + subBucket + 1).toLong() shl shift) - 1
+    }
+
+    override fun toString() = "LogHistogram($count values, p50 ${valueAtPercentile(50.0)}, " +
+            "p99 ${valueAtPercentile(99.0)}, max $max)"
+
+    companion object {
+
+        /**
+         * A minute in nanoseconds - no frame or phase takes longer.
+         */
+        const val defaultMaxValue = 60_000_000_000L
+
+        /**
+         * 16 buckets per power of two - at most 6.25 % off.
+         */
+        const val defaultSubBucketBits = 4
+    }
+}
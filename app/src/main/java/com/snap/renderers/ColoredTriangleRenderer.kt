@@ -2,8 +2,6 @@ package com.snap.renderers
 
 import android.opengl.GLSurfaceView
 
-import com.snap.model.exception.GlLibException
-import com.snap.model.shading.Shader
 import com.snap.model.shading.ShadingProgram
 
 import java.nio.FloatBuffer
@@ -14,20 +12,20 @@ import javax.microedition.khronos.opengles.GL10
 
 import android.opengl.GLES20.GL_COLOR_BUFFER_BIT
 import android.opengl.GLES20.GL_TRIANGLES
-import android.opengl.GLES20.glClear
-import android.opengl.GLES20.glClearColor
-import android.opengl.GLES20.glDrawArrays
-import android.opengl.GLES20.glViewport
-import com.snap.model.shading.ShaderType
+import com.snap.model.GlContext
 import com.snap.model.toNativeOrderBuffer
 
-class ColoredTriangleRenderer : GLSurfaceView.Renderer {
+class ColoredTriangleRenderer(private val glContext: GlContext = GlContext.current) : GLSurfaceView.Renderer {
+
+    private val gl = glContext.backend
 
     private val triangles = ArrayList<FloatBuffer>()
     private lateinit var shadingProgram: ShadingProgram
 
     override fun onSurfaceCreated(ignore: GL10, config: EGLConfig) {
-        glClearColor(0f, 0f, 0f, 1f)
+        gl.glClearColor(0f, 0f, 0f, 1f)
+        glContext.state.invalidate()
+        glContext.shaderCache.invalidate()
         setupVertices()
         setupShadingProgram()
     }
@@ -40,15 +38,7 @@ class ColoredTriangleRenderer : GLSurfaceView.Renderer {
     }
 
     private fun setupShadingProgram() {
-        val vertexShader = Shader.fromSourceCode(ShaderType.VERTEX, vertexShaderCode)
-        val fragmentShader = Shader.fromSourceCode(ShaderType.FRAGMENT, fragmentShaderCode)
-        shadingProgram = ShadingProgram(vertexShader, fragmentShader)
-        try {
-            shadingProgram.compile()
-        } catch (e: GlLibException) {
-            throw RuntimeException("Unable to createAndCompile shading program", e)
-        }
-
+        shadingProgram = glContext.shaderCache.program(vertexShaderCode, fragmentShaderCode)
     }
 
     private fun bindData(triangleVertices: FloatBuffer) {
@@ -63,18 +53,18 @@ class ColoredTriangleRenderer : GLSurfaceView.Renderer {
     }
 
     override fun onSurfaceChanged(ignore: GL10, width: Int, height: Int) {
-        glViewport(0, 0, width, height)
+        gl.glViewport(0, 0, width, height)
     }
 
     override fun onDrawFrame(ignore: GL10) {
-        glClear(GL_COLOR_BUFFER_BIT)
+        gl.glClear(GL_COLOR_BUFFER_BIT)
         triangles.forEach { drawTriangle(it) }
 
     }
 
     private fun drawTriangle(triangleVertices: FloatBuffer) {
         bindData(triangleVertices)
-        glDrawArrays(GL_TRIANGLES, 0, 3)
+        gl.glDrawArrays(GL_TRIANGLES, 0, 3)
     }
 }
 
@@ -0,0 +1,133 @@
+package com.snap.renderers
+
+import android.content.Context
+import android.opengl.GLES20
+import android.opengl.GLSurfaceView
+import android.os.SystemClock
+
+import javax.microedition.khronos.egl.EGLConfig
+import javax.microedition.khronos.opengles.GL10
+
+import com.snap.math.TransformBatch
+import com.snap.model.ComponentType
+import com.snap.model.GlContext
+import com.snap.model.InstancedMesh
+import com.snap.model.Mesh
+import com.snap.model.PrimitiveType
+import com.snap.model.StaticBatcher
+import com.snap.model.VertexAttribute
+import com.snap.model.VertexFormat
+import com.snap.model.shading.RawResourceShaderSources
+import com.snap.model.shading.ShaderPreprocessor
+import com.snap.model.shading.ShaderSources
+import com.snap.model.shading.ShadingProgram
+import com.snap.scene.Camera
+
+/**
+ * Fleet of identical boats rocking on the sea - one instanced draw (a few on GLES 2.0) instead of a draw
+ * per boat.
+ */
+class FleetRenderer internal constructor(shaderSources: ShaderSources,
+                                         private val glContext: GlContext = GlContext.current,
+                                         private val uptimeMillis: () -> Long = { SystemClock.uptimeMillis() }) :
+        GLSurfaceView.Renderer {
+
+    @JvmOverloads
+    constructor(context: Context, glContext: GlContext = GlContext.current) :
+            this(RawResourceShaderSources(context.resources, context.packageName), glContext)
+
+    private val shaderPreprocessor = ShaderPreprocessor(shaderSources)
+
+    private val gl = glContext.backend
+
+    private val camera = Camera().lookAt(0f, 6f, 9f, 0f, 0f, 0f, 0f, 1f, 0f)
+
+    private val boats = TransformBatch(boatCount)
+
+    private lateinit var fleet: InstancedMesh
+    private lateinit var program: ShadingProgram
+
+    init {
+        for (row in 0 until rows) {
+            for (column in 0 until boatCount / rows) {
+                val index = boats.add()
+                boats.setPosition(index, (column - boatCount / rows / 2) * spacing, 0f, (row - rows / 2) * spacing)
+                boats.setScale(index, 0.5f, 0.5f, 0.5f)
+            }
+        }
+    }
+
+    override fun onSurfaceCreated(unused: GL10, config: EGLConfig) {
+        glContext.state.apply {
+            invalidate()
+            enable(GLES20.GL_DEPTH_TEST)
+        }
+        // programs of the previous context are gone with it
+        glContext.shaderCache.invalidate()
+        gl.glClearColor(0.5f, 0.5f, 0.7f, 1.0f)
+
+        // buffers of the previous context are gone as well
+        fleet = InstancedMesh(boat(), boatCount, glContext)
+        fleet.instanceCount = boatCount
+        program = glContext.shaderCache.program(
+                shaderPreprocessor.preprocess("fleet_vertex.glsl", fleet.shaderDefines),
+                shaderPreprocessor.preprocess("fleet_fragment.glsl", fleet.shaderDefines))
+    }
+
+    override fun onSurfaceChanged(unused: GL10, width: Int, height: Int) {
+        gl.glViewport(0, 0, width, height)
+        camera.perspective(45f, width.toFloat() / height, 1f, 30f)
+    }
+
+    override fun onDrawFrame(unused: GL10) {
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT or GLES20.GL_DEPTH_BUFFER_BIT)
+
+        // every boat rocks with its own phase
+        val time = (uptimeMillis() % rockingPeriod) / rockingPeriod.toFloat()
+        for (index in 0 until boats.count) {
+            val phase = 2 * Math.PI * (time + index * 0.37)
+            boats.setRotationAxisAngle(index, 8f * Math.sin(phase).toFloat(), 1f, 0f, 0f)
+        }
+        boats.computeModelViewProjection(camera.viewProjectionMatrix, 0, fleet.instanceMatrices)
+
+        fleet.draw(program)
+    }
+
+    private fun boat(): StaticBatcher {
+        val sailColors = floatArrayOf(
+                1f, 0.1f, 0.1f, 1f,
+                1f, 1f, 1f, 1f,
+                1f, 0.1f, 0.1f, 1f)
+        val mainSail = Mesh(vertexFormat, PrimitiveType.TRIANGLES, listOf(floatArrayOf(
+                -0.5f, 0.05f, 0f,
+                0.0f, 0.05f, 0f,
+                0.0f, 1.0f, 0f), sailColors))
+        val jibSail = Mesh(vertexFormat, PrimitiveType.TRIANGLES, listOf(floatArrayOf(
+                0.05f, 0.05f, 0f,
+                0.22f, 0f, 0f,
+                0.0f, 0.75f, 0f), sailColors))
+        val hull = Mesh(vertexFormat, PrimitiveType.TRIANGLE_STRIP, listOf(floatArrayOf(
+                -0.5f, 0f, 0f,
+                -0.5f, -0.1f, 0f,
+                0.22f, 0f, 0f,
+                0.18f, -0.1f, 0f), floatArrayOf(
+                0.7f, 0.3f, 0.4f, 1f,
+                0.4f, 0.2f, 0.2f, 1f,
+                0.7f, 0.3f, 0.4f, 1f,
+                0.4f, 0.2f, 0.2f, 1f)))
+        return StaticBatcher(vertexFormat).add(mainSail).add(jibSail).add(hull)
+    }
+
+    companion object {
+
+        const val boatCount = 240
+
+        private const val rows = 12
+        private const val spacing = 1.2f
+        private const val rockingPeriod = 3000
+
+        val vertexFormat = VertexFormat(
+                VertexAttribute("a_Position", 3, ComponentType.FLOAT, false),
+                VertexAttribute("a_Color", 4, ComponentType.FLOAT, false))
+    }
+}
@@ -4,11 +4,33 @@ package com.snap.renderers;
 import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import com.snap.concurrent.FixedStepSimulation;
+import com.snap.concurrent.Simulation;
+import com.snap.concurrent.Snapshots;
+import com.snap.math.Frustum;
+import com.snap.math.Mat4;
+import com.snap.model.BufferUsage;
+import com.snap.model.ComponentType;
+import com.snap.model.GlBackend;
+import com.snap.model.GlContext;
+import com.snap.model.Mesh;
+import com.snap.model.PrimitiveType;
+import com.snap.model.StaticBatch;
+import com.snap.model.StaticBatcher;
+import com.snap.model.VertexAttribute;
+import com.snap.model.VertexFormat;
+import com.snap.model.shading.AttributeBinding;
+import com.snap.model.shading.VertexFormatBindings;
+import com.snap.profiling.FrameProfiler;
+import com.snap.scene.Camera;
+import com.snap.scene.CullingSet;
+import com.snap.scene.RenderCommands;
+import com.snap.scene.RenderQueue;
+import com.snap.scene.SceneNode;
+
+import java.util.Arrays;
+import java.util.List;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -16,41 +38,53 @@ import javax.microedition.khronos.opengles.GL10;
 /**
  * This class implements our custom renderer. Note that the GL10 parameter passed in is unused for OpenGL ES 2.0
  * renderers -- the static class GLES20 is used instead.
+ * <p>
+ * The boat is moved by a simulation thread of its own, which GLSurfaceView knows nothing about - the host
+ * must call {@link #onResume()} and {@link #onPause()} from its own onResume and onPause, or the boat stays
+ * where it is.
  */
 public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
 
     /**
-     * Store the model matrix. This matrix is used to move models from object space (where each model can be thought
-     * of being located at the center of the universe) to world space.
+     * Root of the scene. Each batch is a node moved from object space (where it can be thought of being
+     * located at the center of the universe) to world space by its own and its ancestors' transforms.
      */
-    private final float[] mModelMatrix = new float[16];
+    private final SceneNode mScene = new SceneNode("scene");
 
     /**
-     * Store the view matrix. This can be thought of as our camera. This matrix transforms world space to eye space;
-     * it positions things relative to our eye.
+     * Node of every batch, indexed by BOAT and SEA. Sails and hull are merged into the boat batch, so
+     * moving the boat moves all of them.
      */
-    private final float[] mViewMatrix = new float[16];
+    private final SceneNode[] mBatchNodes = new SceneNode[BATCH_COUNT];
 
     /**
-     * Store the projection matrix. This is used to project the scene onto a 2D viewport.
+     * Store the view matrix (this can be thought of as our camera - it positions things relative to our eye)
+     * and the projection matrix, used to project the scene onto a 2D viewport. Their product is computed
+     * only when one of them changes.
      */
-    private final float[] mProjectionMatrix = new float[16];
+    private final Camera mCamera = new Camera();
 
     /**
-     * Allocate storage for the final combined matrix. This will be passed into the shader program.
+     * Allocate storage for the final combined matrices, 16 floats per batch. These will be passed into the
+     * shader program.
      */
-    private final float[] mMVPMatrix = new float[16];
+    private final float[] mMVPMatrices = new float[BATCH_COUNT * 16];
 
     /**
-     * Store our model data in a float buffer.
+     * Store our model data, interleaved according to {@link #VERTEX_FORMAT}.
      */
-    private final FloatBuffer mainSailTriangleVerticesBuffer;
-    private final FloatBuffer jibSailTriangleVerticesBuffer;
-    private final FloatBuffer seaTriangleOneVerticesBuffer;
-    private final FloatBuffer seaTriangleTwoVerticesBuffer;
-    private final FloatBuffer boardTriangleOneVerticesBuffer;
-    private final FloatBuffer boardTriangleTwoVerticesBuffer;
+    private final float[] mainSailTriangle;
+    private final float[] jibSailTriangle;
+    private final float[] seaTriangleOne;
+    private final float[] seaTriangleTwo;
+    private final float[] boardTriangleOne;
+    private final float[] boardTriangleTwo;
 
+    /**
+     * Model data merged and uploaded to GPU memory, indexed by BOAT and SEA. Buffer objects die with EGL
+     * context, so these are recreated in {@link #onSurfaceCreated(GL10, EGLConfig)}.
+     */
+    private final StaticBatch[] mBatches = new StaticBatch[BATCH_COUNT];
 
     /**
      * This will be used to pass in the transformation matrix.
@@ -58,29 +92,93 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
     private int mMVPMatrixHandle;
 
     /**
-     * This will be used to pass in model position information.
+     * The only program of the scene, as a render queue program id.
+     */
+    private int mProgramHandle;
+
+    /**
+     * Draws of the frame, sorted before they are issued.
+     */
+    private final RenderQueue mRenderQueue = new RenderQueue();
+
+    /**
+     * World space bounds of the batches, and the volume the camera sees. The boat sails out of the view
+     * every now and then - it is not drawn then.
      */
-    private int mPositionHandle;
+    private final CullingSet mCullingSet = new CullingSet(BATCH_COUNT);
+    private final Frustum mFrustum = new Frustum();
+
+    private final RenderCommands mDrawBatch = new RenderCommands() {
+        @Override
+        public void draw(int command) {
+            drawBatch(command);
+        }
+    };
+
+    /**
+     * Phases of {@link #onDrawFrame(GL10)} timed by {@link #mProfiler}.
+     */
+    private static final int UPDATE_PHASE = 0;
+    private static final int CULL_PHASE = 1;
+    private static final int SUBMIT_PHASE = 2;
+
+    private final FrameProfiler mProfiler = new FrameProfiler(Arrays.asList("update", "cull", "submit"));
 
     /**
-     * This will be used to pass in model color information.
+     * These will be used to pass in model position and color information, in {@link #VERTEX_FORMAT} order.
      */
-    private int mColorHandle;
+    private List<AttributeBinding> mVertexAttributes;
 
     /**
-     * How many bytes per float.
+     * Indices of batches in {@link #mBatches} and {@link #mBatchNodes}.
      */
-    private static final int BYTES_PER_FLOAT = 4;
+    private static final int BOAT = 0;
+    private static final int SEA = 1;
+    private static final int BATCH_COUNT = 2;
 
     /**
-     * How many elements per vertex.
+     * Render queue layers - the flat sea is the background everything else is drawn over.
      */
-    private static final int ELEMENTS_PER_VERTEX = 7 * BYTES_PER_FLOAT;
+    private static final int BACKGROUND_LAYER = 0;
+    private static final int SCENE_LAYER = 1;
 
-    private float boatPositionX;
+    /**
+     * Jib sail stands this far from the main sail, relative to the boat.
+     */
+    private static final float JIB_SAIL_OFFSET_X = 0.3f;
+
+    /**
+     * Every vertex is X, Y, Z followed by R, G, B, A.
+     */
+    private static final VertexFormat VERTEX_FORMAT = new VertexFormat(
+            new VertexAttribute("a_Position", 3, ComponentType.FLOAT, false),
+            new VertexAttribute("a_Color", 4, ComponentType.FLOAT, false));
+
+    /**
+     * The boat sails this far per second along X, then starts over from 0 once it is BOAT_RANGE away.
+     */
+    private static final float BOAT_SPEED = 0.06f;
+    private static final float BOAT_RANGE = 1.0f;
+
+    /**
+     * Sails the boat at a fixed rate on its own thread, so its speed does not depend on the frame rate.
+     * The state is the boat's position along X.
+     */
+    private final FixedStepSimulation<Float> mBoatSimulation =
+            new FixedStepSimulation<Float>(new Simulation<Float>() {
+                @Override
+                public Float step(Float positionX, float stepSeconds) {
+                    final float next = positionX + BOAT_SPEED * stepSeconds;
+                    return next < BOAT_RANGE ? next : next - BOAT_RANGE;
+                }
+            }, 0.0f);
 
     private final Context context;
 
+    private final GlContext glContext = GlContext.getCurrent();
+
+    private final GlBackend gl = glContext.getBackend();
+
 
     /**
      * Initialize the model data.
@@ -88,9 +186,14 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
     public MovingColorerShipRenderer(Context context) {
         this.context = context;
 
+        mBatchNodes[BOAT] = new SceneNode("boat");
+        mBatchNodes[SEA] = new SceneNode("sea");
+        mScene.addChild(mBatchNodes[BOAT])
+                .addChild(mBatchNodes[SEA]);
+
         // This triangle is white_blue.First sail is mainsail
         // triangle1VerticesData
-        final float[] mainSailTriangle = {
+        mainSailTriangle = new float[]{
                 // X, Y, Z,
                 // R, G, B, A
                 -0.5f, -0.25f, 0.0f,
@@ -104,7 +207,7 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
 
         // This triangle is white_blue..The second is called the jib sail
         // triangle2VerticesData
-        final float[] jibSailTriangle = {
+        jibSailTriangle = new float[]{
                 // X, Y, Z,
                 // R, G, B, A
                 -0.25f, -0.25f, 0.0f,
@@ -118,7 +221,7 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
 
         // This triangle3 is blue.
         // triangle3VerticesData
-        final float[] seaTriangleOne = {
+        seaTriangleOne = new float[]{
                 // X, Y, Z,
                 // R, G, B, A
                 -1.0f, -1.5f, 0.0f,
@@ -133,7 +236,7 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
 
         // This triangle4 is blue.
         // triangle4VerticesData
-        final float[] seaTriangleTwo = {
+        seaTriangleTwo = new float[]{
                 // X, Y, Z,
                 // R, G, B, A
                 -1.0f, -1.5f, 0.0f,
@@ -146,7 +249,7 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
                 0.0f, 0.0f, 1.0f, 1.0f};
 
         // This triangle5VerticesData is brown.
-        final float[] boardTriangleOne = {
+        boardTriangleOne = new float[]{
                 // X, Y, Z,
                 // R, G, B, A
                 -0.4f, -0.3f, 0.0f,
@@ -159,7 +262,7 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
                 0.7f, 0.3f, 0.4f, 1.0f};
 
         // This triangle6VerticesData is brown.
-        final float[] boardTriangleTwo = {
+        boardTriangleTwo = new float[]{
                 // X, Y, Z,
                 // R, G, B, A
                 -0.4f, -0.4f, 0.0f,
@@ -170,36 +273,15 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
 
                 0.3f, -0.3f, 0.0f,
                 0.7f, 0.3f, 0.4f, 1.0f};
-
-
-        // Initialize the buffers.
-        mainSailTriangleVerticesBuffer = ByteBuffer.allocateDirect(mainSailTriangle.length * BYTES_PER_FLOAT)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-        jibSailTriangleVerticesBuffer = ByteBuffer.allocateDirect(jibSailTriangle.length * BYTES_PER_FLOAT)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-        seaTriangleOneVerticesBuffer = ByteBuffer.allocateDirect(seaTriangleOne.length * BYTES_PER_FLOAT)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-        seaTriangleTwoVerticesBuffer = ByteBuffer.allocateDirect(seaTriangleTwo.length * BYTES_PER_FLOAT)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-        boardTriangleOneVerticesBuffer = ByteBuffer.allocateDirect(boardTriangleOne.length * BYTES_PER_FLOAT)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-        boardTriangleTwoVerticesBuffer = ByteBuffer.allocateDirect(boardTriangleTwo.length * BYTES_PER_FLOAT)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-
-
-        mainSailTriangleVerticesBuffer.put(mainSailTriangle).position(0);
-        jibSailTriangleVerticesBuffer.put(jibSailTriangle).position(0);
-        seaTriangleOneVerticesBuffer.put(seaTriangleOne).position(0);
-
-        seaTriangleTwoVerticesBuffer.put(seaTriangleTwo).position(0);
-        boardTriangleOneVerticesBuffer.put(boardTriangleOne).position(0);
-        boardTriangleTwoVerticesBuffer.put(boardTriangleTwo).position(0);
     }
 
     @Override
     public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
+        // Fresh EGL context - nothing known about its state yet.
+        glContext.getState().invalidate();
+
         // Set the background clear color to gray.
-        GLES20.glClearColor(0.5f, 0.5f, 0.7f, 1.0f);
+        gl.glClearColor(0.5f, 0.5f, 0.7f, 1.0f);
         initCameraViewMatrix();
 
         // Load in the vertex shader.
@@ -209,14 +291,54 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
         // Create shading program based on compiled shaders -> output of vertex shader will be an
         // input of fragment shader
         final int programHandle = compileShadingProgram(vertexShaderHandle, fragmentShaderHandle);
+        mProgramHandle = programHandle;
 
         // Set program handles. These will later be used to pass in values to the program.
-        mMVPMatrixHandle = GLES20.glGetUniformLocation(programHandle, "u_MVPMatrix");
-        mPositionHandle = GLES20.glGetAttribLocation(programHandle, "a_Position");
-        mColorHandle = GLES20.glGetAttribLocation(programHandle, "a_Color");
+        mMVPMatrixHandle = gl.glGetUniformLocation(programHandle, "u_MVPMatrix");
+        mVertexAttributes = Arrays.asList(
+                AttributeBinding.Companion.lookup(programHandle, "a_Position", glContext),
+                AttributeBinding.Companion.lookup(programHandle, "a_Color", glContext));
+
+        // Initialize the buffers. Triangles moving together are merged, so each batch is a single draw call.
+        final float[] jibSailMatrix = Mat4.create();
+        Mat4.translate(jibSailMatrix, 0, JIB_SAIL_OFFSET_X, 0.0f, 0.0f);
+        mBatches[BOAT] = new StaticBatcher(VERTEX_FORMAT)
+                .add(triangle(mainSailTriangle))
+                .add(triangle(jibSailTriangle), jibSailMatrix)
+                .add(triangle(boardTriangleOne))
+                .add(triangle(boardTriangleTwo))
+                .build(BufferUsage.STATIC, glContext);
+        mBatches[SEA] = new StaticBatcher(VERTEX_FORMAT)
+                .add(triangle(seaTriangleOne))
+                .add(triangle(seaTriangleTwo))
+                .build(BufferUsage.STATIC, glContext);
+
+        mCullingSet.clear();
+        for (int batch = 0; batch < BATCH_COUNT; batch++) {
+            mCullingSet.add(mBatches[batch].getBounds());
+        }
 
         // Tell OpenGL to use this program when rendering.
-        GLES20.glUseProgram(programHandle);
+        glContext.getState().useProgram(programHandle);
+    }
+
+    /**
+     * Starts or resumes sailing - call from the activity's onResume, next to GLSurfaceView.onResume(). The
+     * simulation thread is started only here, so it never outlives a paused host.
+     */
+    public void onResume() {
+        mBoatSimulation.start();
+    }
+
+    /**
+     * Stops the simulation thread while the surface is not drawn - call from the activity's onPause.
+     */
+    public void onPause() {
+        mBoatSimulation.stop();
+    }
+
+    private static Mesh triangle(float[] vertices) {
+        return Mesh.fromInterleaved(VERTEX_FORMAT, PrimitiveType.TRIANGLES, vertices);
     }
 
     private void initCameraViewMatrix() {
@@ -238,7 +360,7 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
         // Set the view matrix. This matrix can be said to represent the camera position.
         // NOTE: In OpenGL 1, a ModelView matrix is used, which is a combination of a model and
         // view matrix. In OpenGL 2, we can keep track of these matrices separately if we choose.
-        Matrix.setLookAtM(mViewMatrix, 0, eyeX, eyeY, eyeZ, lookX, lookY, lookZ, upX, upY, upZ);
+        mCamera.lookAt(eyeX, eyeY, eyeZ, lookX, lookY, lookZ, upX, upY, upZ);
     }
 
     private int compileVertexShader() {
@@ -258,19 +380,19 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
                         + "               * a_Position;   \n"     // Multiply the vertex by the matrix to get the final point in
                         + "}                              \n";    // normalized screen coordinates.
 
-        int vertexShaderHandle = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
+        int vertexShaderHandle = gl.glCreateShader(GLES20.GL_VERTEX_SHADER);
         if (vertexShaderHandle != 0) {
             // Pass in the shader source.
-            GLES20.glShaderSource(vertexShaderHandle, vertexShader);
+            gl.glShaderSource(vertexShaderHandle, vertexShader);
             // Compile the shader.
-            GLES20.glCompileShader(vertexShaderHandle);
+            gl.glCompileShader(vertexShaderHandle);
             // Get the compilation status.
             final int[] compileStatus = new int[1];
-            GLES20.glGetShaderiv(vertexShaderHandle, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+            gl.glGetShaderiv(vertexShaderHandle, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
 
             // If the compilation failed, delete the shader.
             if (compileStatus[0] == 0) {
-                GLES20.glDeleteShader(vertexShaderHandle);
+                gl.glDeleteShader(vertexShaderHandle);
                 vertexShaderHandle = 0;
             }
         }
@@ -292,22 +414,22 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
                         + "}                              \n";
 
         // Load in the fragment shader shader.
-        int fragmentShaderHandle = GLES20.glCreateShader(GLES20.GL_FRAGMENT_SHADER);
+        int fragmentShaderHandle = gl.glCreateShader(GLES20.GL_FRAGMENT_SHADER);
 
         if (fragmentShaderHandle != 0) {
             // Pass in the shader source.
-            GLES20.glShaderSource(fragmentShaderHandle, fragmentShader);
+            gl.glShaderSource(fragmentShaderHandle, fragmentShader);
 
             // Compile the shader.
-            GLES20.glCompileShader(fragmentShaderHandle);
+            gl.glCompileShader(fragmentShaderHandle);
 
             // Get the compilation status.
             final int[] compileStatus = new int[1];
-            GLES20.glGetShaderiv(fragmentShaderHandle, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+            gl.glGetShaderiv(fragmentShaderHandle, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
 
             // If the compilation failed, delete the shader.
             if (compileStatus[0] == 0) {
-                GLES20.glDeleteShader(fragmentShaderHandle);
+                gl.glDeleteShader(fragmentShaderHandle);
                 fragmentShaderHandle = 0;
             }
         }
@@ -319,27 +441,27 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
 
     private int compileShadingProgram(int vertexShaderHandle, int fragmentShaderHandle) {
         // Create a program object and store the handle to it.
-        int programHandle = GLES20.glCreateProgram();
+        int programHandle = gl.glCreateProgram();
         if (programHandle != 0) {
             // Bind the vertex shader to the program.
-            GLES20.glAttachShader(programHandle, vertexShaderHandle);
+            gl.glAttachShader(programHandle, vertexShaderHandle);
             // Bind the fragment shader to the program.
-            GLES20.glAttachShader(programHandle, fragmentShaderHandle);
+            gl.glAttachShader(programHandle, fragmentShaderHandle);
 
             // Bind attributes
-            GLES20.glBindAttribLocation(programHandle, 0, "a_Position");
-            GLES20.glBindAttribLocation(programHandle, 1, "a_Color");
+            gl.glBindAttribLocation(programHandle, 0, "a_Position");
+            gl.glBindAttribLocation(programHandle, 1, "a_Color");
 
             // Link the two shaders together into a program.
-            GLES20.glLinkProgram(programHandle);
+            gl.glLinkProgram(programHandle);
 
             // Get the link status.
             final int[] linkStatus = new int[1];
-            GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+            gl.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
 
             // If the link failed, delete the program.
             if (linkStatus[0] == 0) {
-                GLES20.glDeleteProgram(programHandle);
+                gl.glDeleteProgram(programHandle);
                 programHandle = 0;
             }
         }
@@ -352,7 +474,7 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
     @Override
     public void onSurfaceChanged(GL10 glUnused, int width, int height) {
         // Set the OpenGL viewport to the same size as the surface.
-        GLES20.glViewport(0, 0, width, height);
+        gl.glViewport(0, 0, width, height);
         initProjectionMatrix(width, height);
     }
 
@@ -367,75 +489,98 @@ public class MovingColorerShipRenderer implements GLSurfaceView.Renderer {
         final float near = 1.0f;
         final float far = 10.0f;
 
-        Matrix.frustumM(mProjectionMatrix, 0, left, right, bottom, top, near, far);
+        mCamera.frustum(left, right, bottom, top, near, far);
     }
 
     @Override
     public void onDrawFrame(GL10 glUnused) {
-        GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
-
-        Matrix.setIdentityM(mModelMatrix, 0);
-        Matrix.translateM(mModelMatrix, 0, boatPositionX, 0.0f, 0.0f);
-        drawTriangle(mainSailTriangleVerticesBuffer);
-
-        Matrix.setIdentityM(mModelMatrix, 0);
-        Matrix.translateM(mModelMatrix, 0, boatPositionX + 0.3f, 0.0f, 0.0f);
-        drawTriangle(jibSailTriangleVerticesBuffer);
-        if (boatPositionX <= 1) {
-            boatPositionX = (float) (boatPositionX + 0.001);
-        } else {
-            boatPositionX = 0;
+        mProfiler.beginFrame();
+        gl.glClear(GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
+
+        mProfiler.beginPhase(UPDATE_PHASE);
+        // Only the boat moves - world matrix of the sea stays cached.
+        mBatchNodes[BOAT].setPosition(boatPositionX(System.nanoTime()), 0.0f, 0.0f);
+//        mBatchNodes[BOAT].setRotation(0, 0.0f, 0.0f, 1.0f);
+        mScene.updateWorldTransforms();
+
+        // This multiplies the view-projection matrix by the world matrix of each batch. MVP matrices of all
+        // batches end up one after another in mMVPMatrices.
+        for (int batch = 0; batch < BATCH_COUNT; batch++) {
+            mCamera.modelViewProjection(mBatchNodes[batch], mMVPMatrices, batch * 16);
         }
+        mProfiler.endPhase(UPDATE_PHASE);
 
-        Matrix.setIdentityM(mModelMatrix, 0);
-        drawTriangle(seaTriangleOneVerticesBuffer);
+        mProfiler.beginPhase(CULL_PHASE);
+        // Batches are culled by their bounds moved to where their nodes are.
+        for (int batch = 0; batch < BATCH_COUNT; batch++) {
+            mCullingSet.setTransformed(batch, mBatches[batch].getBounds(), mBatchNodes[batch].getWorldMatrix(), 0);
+        }
+        mCullingSet.cull(mFrustum.set(mCamera.getViewProjectionMatrix(), 0));
+        mProfiler.endPhase(CULL_PHASE);
+
+        mProfiler.beginPhase(SUBMIT_PHASE);
+        mRenderQueue.clear();
+        submitBatch(SEA, BACKGROUND_LAYER);
+        submitBatch(BOAT, SCENE_LAYER);
+        mRenderQueue.replay(mDrawBatch);
+        mProfiler.endPhase(SUBMIT_PHASE);
+        mProfiler.endFrame();
+    }
 
-        Matrix.setIdentityM(mModelMatrix, 0);
-        drawTriangle(seaTriangleTwoVerticesBuffer);
+    /**
+     * Timing of frames drawn so far - read it on the GL thread, e.g. {@link FrameProfiler#report()} now
+     * and then.
+     */
+    public FrameProfiler getFrameProfiler() {
+        return mProfiler;
+    }
 
-        Matrix.setIdentityM(mModelMatrix, 0);
-        Matrix.translateM(mModelMatrix, 0, boatPositionX, 0.0f, 0.0f);
-//        Matrix.rotateM(mModelMatrix, 0, 0, 0.0f, 0.0f, 1.0f);
-        drawTriangle(boardTriangleOneVerticesBuffer);
+    /**
+     * Position of the boat between its two latest simulated positions, as far as the frame time is between
+     * them. When it started over in between, it keeps sailing forward across the wrap-around.
+     */
+    private float boatPositionX(final long nowNanos) {
+        final Snapshots<Float> boat = mBoatSimulation.getSnapshots();
+        float distance = boat.getLatest() - boat.getPrevious();
+        if (distance < 0) {
+            distance += BOAT_RANGE;
+        }
+        final float positionX = boat.getPrevious() + distance * boat.alpha(nowNanos);
+        return positionX < BOAT_RANGE ? positionX : positionX - BOAT_RANGE;
+    }
 
-        Matrix.setIdentityM(mModelMatrix, 0);
-        Matrix.translateM(mModelMatrix, 0, boatPositionX, 0.0f, 0.0f);
-//        Matrix.rotateM(mModelMatrix, 0, 0, 0.0f, 0.0f, 1.0f);
-        drawTriangle(boardTriangleTwoVerticesBuffer);
+    /**
+     * Queues the opaque, untextured batch at its distance from the camera, unless it is out of view.
+     */
+    private void submitBatch(final int batch, final int layer) {
+        if (!mCullingSet.isVisible(batch)) {
+            return;
+        }
+        mRenderQueue.submit(layer, false, mProgramHandle, 0, mCamera.viewDepth(mBatchNodes[batch]), batch);
+    }
 
+    /**
+     * Batches drawn in the last frame.
+     */
+    public int getVisibleBatchCount() {
+        return mCullingSet.getVisibleCount();
     }
 
     /**
-     * Draws a triangle from the given vertex data.
+     * Batches skipped in the last frame as out of view.
      */
-    private void drawTriangle(final FloatBuffer triangleVerticesBuffer) {
-        // Pass in the position information
-        triangleVerticesBuffer.position(0);
-        // Size of the position data in elements.
-        final int positionDataSize = 3;
-        GLES20.glVertexAttribPointer(mPositionHandle, positionDataSize, GLES20.GL_FLOAT, false,
-                ELEMENTS_PER_VERTEX, triangleVerticesBuffer);
-
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
-
-        // Pass in the color information
-        triangleVerticesBuffer.position(3);
-        // Size of the color data in elements.
-        final int colorDataSize = 4;
-        GLES20.glVertexAttribPointer(mColorHandle, colorDataSize, GLES20.GL_FLOAT, false,
-                ELEMENTS_PER_VERTEX, triangleVerticesBuffer);
-
-        GLES20.glEnableVertexAttribArray(mColorHandle);
-
-        // This multiplies the view matrix by the model matrix, and stores the result in the MVP matrix
-        // (which currently contains model * view).
-        Matrix.multiplyMM(mMVPMatrix, 0, mViewMatrix, 0, mModelMatrix, 0);
-
-        // This multiplies the modelview matrix by the projection matrix, and stores the result in the MVP matrix
-        // (which now contains model * view * projection).
-        Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mMVPMatrix, 0);
-
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3);
+    public int getCulledBatchCount() {
+        return mCullingSet.getCulledCount();
+    }
+
+    /**
+     * Draws all triangles of the given batch with one call.
+     */
+    private void drawBatch(final int batch) {
+        // Pass in the position and color information
+        VertexFormatBindings.bindVertexFormat(mBatches[batch].getVertices(), VERTEX_FORMAT, mVertexAttributes);
+
+        gl.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrices, batch * 16);
+        mBatches[batch].draw();
     }
 }
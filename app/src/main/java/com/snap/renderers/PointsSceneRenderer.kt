@@ -1,14 +1,9 @@
 package com.snap.renderers
 
 import android.opengl.GLSurfaceView
-import android.opengl.Matrix
 
-import com.snap.model.exception.GlLibException
-import com.snap.model.shading.Shader
 import com.snap.model.shading.ShadingProgram
 
-import java.nio.FloatBuffer
-
 import javax.microedition.khronos.egl.EGLConfig
 import javax.microedition.khronos.opengles.GL10
 
@@ -16,27 +11,31 @@ import android.opengl.GLES20.GL_COLOR_BUFFER_BIT
 import android.opengl.GLES20.GL_DEPTH_BUFFER_BIT
 import android.opengl.GLES20.GL_DEPTH_TEST
 import android.opengl.GLES20.GL_TRIANGLES
-import android.opengl.GLES20.glClear
-import android.opengl.GLES20.glClearColor
-import android.opengl.GLES20.glDrawArrays
-import android.opengl.GLES20.glEnable
-import android.opengl.GLES20.glViewport
-import com.snap.model.shading.ShaderType
-import com.snap.model.toNativeOrderBuffer
+import com.snap.math.Mat4
+import com.snap.model.GlContext
+import com.snap.model.VertexBuffer
+import com.snap.model.toVertexBuffer
+
+class PointsSceneRenderer(private val glContext: GlContext = GlContext.current) : GLSurfaceView.Renderer {
 
-class PointsSceneRenderer : GLSurfaceView.Renderer {
+    private val gl = glContext.backend
 
     private lateinit var shadingProgram: ShadingProgram
 
-    private lateinit var verticesBuffer: FloatBuffer
-    private lateinit var colorsBuffer: FloatBuffer
+    private lateinit var verticesBuffer: VertexBuffer
+    private lateinit var colorsBuffer: VertexBuffer
 
     private val mProjectionMatrix = FloatArray(16)
 
 
-    override fun onSurfaceCreated(gl: GL10, config: EGLConfig) {
-        glClearColor(0f, 0f, 0f, 1f)
-        glEnable(GL_DEPTH_TEST)
+    override fun onSurfaceCreated(unused: GL10, config: EGLConfig) {
+        gl.glClearColor(0f, 0f, 0f, 1f)
+        glContext.state.apply {
+            invalidate()
+            enable(GL_DEPTH_TEST)
+        }
+        // programs of the previous context are gone with it
+        glContext.shaderCache.invalidate()
         setupShadingProgram()
         setupVerticesBuffer()
         setupColorsBuffer()
@@ -48,7 +47,7 @@ class PointsSceneRenderer : GLSurfaceView.Renderer {
 
         verticesBuffer = floatArrayOf(-0.7f, -0.5f, z1, 0.3f, -0.5f, z1, -0.2f, 0.3f, z1,
                 -0.3f, -0.4f, z2, 0.7f, -0.4f, z2, 0.2f, 0.4f, z2
-        ).toNativeOrderBuffer()
+        ).toVertexBuffer(glContext = glContext)
     }
 
     private fun setupColorsBuffer() {
@@ -56,46 +55,38 @@ class PointsSceneRenderer : GLSurfaceView.Renderer {
                 // R G B A
                 0.0f, 1.0f, 0.0f, 1f, 0.0f, 1.0f, 0.0f, 1f, 0.0f, 1.0f, 0.0f, 1f,
                 0.0f, 0.0f, 1.0f, 1f, 0.0f, 0.0f, 1.0f, 1f, 0.0f, 0.0f, 1.0f, 1f
-        ).toNativeOrderBuffer()
+        ).toVertexBuffer(glContext = glContext)
     }
 
     private fun setupShadingProgram() {
-        val vertexShader = Shader.fromSourceCode(ShaderType.VERTEX, VERTEX_SHADER_CODE)
-        val fragmentShader = Shader.fromSourceCode(ShaderType.FRAGMENT, FRAGMENT_SHADER_CODE)
-        shadingProgram = ShadingProgram(vertexShader, fragmentShader)
-        try {
-            shadingProgram.compile()
-        } catch (e: GlLibException) {
-            throw RuntimeException("Unable to createAndCompile shading program", e)
-        }
-
+        shadingProgram = glContext.shaderCache.program(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE)
     }
 
-    override fun onSurfaceChanged(gl: GL10, width: Int, height: Int) {
-        glViewport(0, 0, width, height)
+    override fun onSurfaceChanged(unused: GL10, width: Int, height: Int) {
+        gl.glViewport(0, 0, width, height)
         bindProjectionMatrix(width.toFloat(), height.toFloat())
     }
 
-    override fun onDrawFrame(gl: GL10) {
-        glClear(GL_COLOR_BUFFER_BIT or GL_DEPTH_BUFFER_BIT)
+    override fun onDrawFrame(unused: GL10) {
+        gl.glClear(GL_COLOR_BUFFER_BIT or GL_DEPTH_BUFFER_BIT)
         bindVertices(verticesBuffer)
         bindColors(colorsBuffer)
 
-        glDrawArrays(GL_TRIANGLES, 0, 6)
+        gl.glDrawArrays(GL_TRIANGLES, 0, 6)
     }
 
-    private fun bindVertices(verticesData: FloatBuffer) {
+    private fun bindVertices(verticesData: VertexBuffer) {
         shadingProgram.doUsingProgram {
             createAttributeBinding("a_Position") {
-                bindFloatBuffer(verticesData, 3)
+                bindVertexBuffer(verticesData, 3)
             }
         }
     }
 
-    private fun bindColors(colorsBuffer: FloatBuffer) {
+    private fun bindColors(colorsBuffer: VertexBuffer) {
         shadingProgram.doUsingProgram {
             createAttributeBinding("a_Color") {
-                bindFloatBuffer(colorsBuffer, 4)
+                bindVertexBuffer(colorsBuffer, 4)
             }
         }
     }
@@ -119,7 +110,7 @@ class PointsSceneRenderer : GLSurfaceView.Renderer {
             top *= screenRatio
         }
 
-        Matrix.frustumM(mProjectionMatrix, 0, left, right, bottom, top, near, far)
+        Mat4.frustum(mProjectionMatrix, 0, left, right, bottom, top, near, far)
 
         shadingProgram.doUsingProgram {
             createUniformBinding("u_Matrix") {
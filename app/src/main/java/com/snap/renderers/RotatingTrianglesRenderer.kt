@@ -2,33 +2,60 @@ package com.snap.renderers
 
 import android.opengl.GLES20.*
 import android.opengl.GLSurfaceView
-import android.opengl.Matrix
 import android.os.SystemClock
-import com.snap.identityMatrix
-import com.snap.model.shading.Shader
-import com.snap.model.shading.ShaderType
+import com.snap.math.Bounds
+import com.snap.math.FrameArena
+import com.snap.math.Frustum
+import com.snap.math.Mat4
+import com.snap.model.GlContext
 import com.snap.model.shading.ShadingProgram
 import com.snap.model.toNativeOrderBuffer
+import com.snap.scene.CullingSet
 import java.nio.FloatBuffer
 import javax.microedition.khronos.egl.EGLConfig
 import javax.microedition.khronos.opengles.GL10
 
-internal class RotatingTrianglesRenderer : GLSurfaceView.Renderer {
+internal class RotatingTrianglesRenderer(private val glContext: GlContext = GlContext.current) : GLSurfaceView.Renderer {
+
+    private val gl = glContext.backend
 
     private lateinit var verticesBuffer: FloatBuffer
     private lateinit var shadingProgram: ShadingProgram
 
-    private var projectionMatrix = identityMatrix()
-    private val modelViewProjectionMatrix = identityMatrix()
+    private val projectionMatrix = Mat4.create()
+    private val modelViewProjectionMatrix = Mat4.create()
+
+    private val frameArena = FrameArena()
+
+    // every triangle and axis is culled on its own
+    private val frustum = Frustum()
+    private val cullingSet = CullingSet(drawCount)
 
-    override fun onSurfaceCreated(gl: GL10?, config: EGLConfig?) {
-        glEnable(GL_DEPTH_TEST)
+    /**
+     * Triangles and axes drawn in the last frame.
+     */
+    val visibleDrawCount: Int
+        get() = cullingSet.visibleCount
+
+    /**
+     * Triangles and axes skipped in the last frame as out of view.
+     */
+    val culledDrawCount: Int
+        get() = cullingSet.culledCount
+
+    override fun onSurfaceCreated(unused: GL10?, config: EGLConfig?) {
+        glContext.state.apply {
+            invalidate()
+            enable(GL_DEPTH_TEST)
+        }
+        // programs of the previous context are gone with it
+        glContext.shaderCache.invalidate()
 
         val s = 0.4f
         val d = 0.9f
         val l = 3f
 
-        verticesBuffer = floatArrayOf(
+        val vertices = floatArrayOf(
                 // red
                 -2 * s, -s, d,
                 2 * s, -s, d,
@@ -60,12 +87,16 @@ internal class RotatingTrianglesRenderer : GLSurfaceView.Renderer {
                 // Z axis
                 0f, 0f, -l,
                 0f, 0f, l
-        ).toNativeOrderBuffer()
+        )
+        verticesBuffer = vertices.toNativeOrderBuffer()
 
-        shadingProgram = ShadingProgram(
-                Shader.fromSourceCode(ShaderType.VERTEX, vertexShaderCode),
-                Shader.fromSourceCode(ShaderType.FRAGMENT, fragmentShaderCode)
-        ).compile()
+        cullingSet.clear()
+        for (draw in 0 until drawCount) {
+            val first = drawFirstVertices[draw] * 3
+            cullingSet.add(Bounds.of(vertices.copyOfRange(first, first + drawVertexCounts[draw] * 3)))
+        }
+
+        shadingProgram = glContext.shaderCache.program(vertexShaderCode, fragmentShaderCode)
 
         shadingProgram.doUsingProgram {
             createAttributeBinding("a_vertex") {
@@ -74,9 +105,9 @@ internal class RotatingTrianglesRenderer : GLSurfaceView.Renderer {
         }
     }
 
-    override fun onSurfaceChanged(gl: GL10?, width: Int, height: Int) {
-        glViewport(0, 0, width, height)
-        projectionMatrix = defineProjectionMatrix(width, height)
+    override fun onSurfaceChanged(unused: GL10?, width: Int, height: Int) {
+        gl.glViewport(0, 0, width, height)
+        defineProjectionMatrix(width, height)
 
 //        computeStaticMvpMatrix()
 //        bindMvpMatrix()
@@ -91,15 +122,13 @@ internal class RotatingTrianglesRenderer : GLSurfaceView.Renderer {
     }
 
     private fun computeStaticMvpMatrix() {
-        val viewMatrix = defineViewMatrix()
-        val modelMatrix = defineModelMatrix()
+        val viewMatrix = defineViewMatrix(frameArena.mat4())
+        val modelMatrix = defineModelMatrix(frameArena.mat4())
 
         // computing final Model-View-Projection matrix
-        val modelViewMatrix = FloatArray(16).apply {
-            Matrix.setIdentityM(this, 0)
-            Matrix.multiplyMM(this, 0, modelMatrix, 0, viewMatrix, 0)
-        }
-        Matrix.multiplyMM(modelViewProjectionMatrix, 0, projectionMatrix, 0, modelViewMatrix, 0)
+        val modelViewMatrix = frameArena.mat4()
+        Mat4.multiply(modelViewMatrix, 0, modelMatrix, 0, viewMatrix, 0)
+        Mat4.multiply(modelViewProjectionMatrix, 0, projectionMatrix, 0, modelViewMatrix, 0)
     }
 
     private fun computeDynamicMvpMatrix() {
@@ -122,27 +151,25 @@ internal class RotatingTrianglesRenderer : GLSurfaceView.Renderer {
         val upY = 1f
         val upZ = 0f
 
-        val viewMatrix = identityMatrix().apply {
-            Matrix.setLookAtM(this, 0,
-                    eyeX, eyeY, eyeZ,
-                    centerX, centerY, centerZ,
-                    upX, upY, upZ)
-        }
+        val viewMatrix = frameArena.mat4()
+        Mat4.lookAt(viewMatrix, 0,
+                eyeX, eyeY, eyeZ,
+                centerX, centerY, centerZ,
+                upX, upY, upZ)
 
-        Matrix.multiplyMM(modelViewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0)
+        Mat4.multiply(modelViewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0)
+        frustum.set(modelViewProjectionMatrix, 0)
     }
 
-    private fun defineModelMatrix(): FloatArray {
-        return identityMatrix()
-
-//        return FloatArray(16).apply {
-//            Matrix.setIdentityM(this, 0)
-////            Matrix.scaleM(this, 0, 1.0f, 1.0f, 1.0f)
-//            Matrix.rotateM(this, 0, 0f, 0f, 1.0f, 0f)
-//        }
+    private fun defineModelMatrix(modelMatrix: FloatArray): FloatArray {
+        return modelMatrix.apply {
+            Mat4.setIdentity(this, 0)
+//            Mat4.scale(this, 0, 1.0f, 1.0f, 1.0f)
+//            Mat4.rotate(this, 0, 0f, 0f, 1.0f, 0f)
+        }
     }
 
-    private fun defineViewMatrix(): FloatArray {
+    private fun defineViewMatrix(viewMatrix: FloatArray): FloatArray {
         // camera position
         val eyeX = 0f
         val eyeY = 0f
@@ -158,15 +185,15 @@ internal class RotatingTrianglesRenderer : GLSurfaceView.Renderer {
         val upY = 1f
         val upZ = 0f
 
-        return identityMatrix().apply {
-            Matrix.setLookAtM(this, 0,
+        return viewMatrix.apply {
+            Mat4.lookAt(this, 0,
                     eyeX, eyeY, eyeZ,
                     centerX, centerY, centerZ,
                     upX, upY, upZ)
         }
     }
 
-    private fun defineProjectionMatrix(width: Int, height: Int): FloatArray {
+    private fun defineProjectionMatrix(width: Int, height: Int) {
         var left = -1.0f
         var right = 1.0f
         var bottom = -1f
@@ -183,53 +210,59 @@ internal class RotatingTrianglesRenderer : GLSurfaceView.Renderer {
 //            top *= ratio
 //        }
 
-        return FloatArray(16).apply {
-            Matrix.setIdentityM(this, 0)
-            Matrix.frustumM(this, 0, left, right, bottom, top, near, far)
-        }
+        Mat4.frustum(projectionMatrix, 0, left, right, bottom, top, near, far)
     }
 
-    override fun onDrawFrame(gl: GL10?) {
-        glClear(GL_COLOR_BUFFER_BIT or GL_DEPTH_BUFFER_BIT)
+    override fun onDrawFrame(unused: GL10?) {
+        gl.glClear(GL_COLOR_BUFFER_BIT or GL_DEPTH_BUFFER_BIT)
+        frameArena.reset()
 
         computeDynamicMvpMatrix()
         bindMvpMatrix()
+        cullingSet.cull(frustum)
 
         drawTrianglesAndAxes()
     }
 
     private fun drawTrianglesAndAxes() {
         // draw red triangle
-        shadingProgram.setColor(red = 1.0f)
-        glDrawArrays(GL_TRIANGLES, 0, 3)
+        drawIfVisible(0, GL_TRIANGLES) { shadingProgram.setColor(red = 1.0f) }
 
         // draw green triangle
-        shadingProgram.setColor(green = 1.0f)
-        glDrawArrays(GL_TRIANGLES, 3, 3)
+        drawIfVisible(1, GL_TRIANGLES) { shadingProgram.setColor(green = 1.0f) }
 
         // draw blue triangle
-        shadingProgram.setColor(blue = 1.0f)
-        glDrawArrays(GL_TRIANGLES, 6, 3)
+        drawIfVisible(2, GL_TRIANGLES) { shadingProgram.setColor(blue = 1.0f) }
 
         // draw yellow triangle
-        shadingProgram.setColor(red = 1.0f, green = 1.0f)
-        glDrawArrays(GL_TRIANGLES, 9, 3)
+        drawIfVisible(3, GL_TRIANGLES) { shadingProgram.setColor(red = 1.0f, green = 1.0f) }
 
 
         // draw X axis
-        shadingProgram.setColor(blue = 1.0f, green = 1.0f)
-        glDrawArrays(GL_LINES, 12, 2)
+        drawIfVisible(4, GL_LINES) { shadingProgram.setColor(blue = 1.0f, green = 1.0f) }
 
         // draw Y axis
-        shadingProgram.setColor(blue = 1.0f, red = 1.0f)
-        glDrawArrays(GL_LINES, 14, 2)
+        drawIfVisible(5, GL_LINES) { shadingProgram.setColor(blue = 1.0f, red = 1.0f) }
 
         // draw Z axis
-        shadingProgram.setColor(blue = 1.0f, red = 1.0f)
-        glDrawArrays(GL_LINES, 16, 2)
+        drawIfVisible(6, GL_LINES) { shadingProgram.setColor(blue = 1.0f, red = 1.0f) }
+    }
+
+    private inline fun drawIfVisible(draw: Int, mode: Int, setColor: () -> Unit) {
+        if (cullingSet.isVisible(draw)) {
+            setColor()
+            gl.glDrawArrays(mode, drawFirstVertices[draw], drawVertexCounts[draw])
+        }
     }
 }
 
+/**
+ * Vertex ranges of the 4 triangles and 3 axes, in drawing order.
+ */
+private val drawFirstVertices = intArrayOf(0, 3, 6, 9, 12, 14, 16)
+private val drawVertexCounts = intArrayOf(3, 3, 3, 3, 2, 2, 2)
+private val drawCount = drawFirstVertices.size
+
 private fun ShadingProgram.setColor(red: Float = 0.0f,
                                     green: Float = 0.0f,
                                     blue: Float = 0.0f,
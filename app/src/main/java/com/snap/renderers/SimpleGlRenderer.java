@@ -6,14 +6,33 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 import android.util.Log;
 
 import com.snap.R;
+import com.snap.concurrent.AssetUpload;
+import com.snap.concurrent.AsyncAssetLoader;
+import com.snap.concurrent.ParallelFor;
+import com.snap.model.GlContext;
+import com.snap.model.GlHelpersKt;
+import com.snap.model.NativeBufferPool;
+import com.snap.model.Texture;
+import com.snap.model.texture.CompressedImage;
+import com.snap.model.texture.Etc1Encoder;
+import com.snap.model.texture.PkmFile;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.FloatBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;;
@@ -28,10 +47,35 @@ class SimpleGlRenderer implements GLSurfaceView.Renderer {
 
     private static final int VERTEX_SIZE_IN_BYTES = (2 + 2) * 4;
 
+    /**
+     * ETC1 blocks of lnx.png, encoded on the first run and read by the next ones.
+     */
+    private static final String COMPRESSED_TEXTURE_FILE = "lnx.etc1.pkm";
+
     private final Context context;
 
+    private final NativeBufferPool bufferPool = GlContext.getCurrent().getBufferPool();
+
+    /**
+     * Client-side array - read by GL on every draw, so it is held until the surface is recreated.
+     */
     private FloatBuffer triangleVertices;
 
+    /**
+     * Reads or encodes the texture on a worker, so the first frame does not wait for it.
+     */
+    private final AsyncAssetLoader assetLoader = new AsyncAssetLoader();
+
+    /**
+     * Texture being loaded, done once uploaded or failed.
+     */
+    private Future<Texture> texture;
+
+    /**
+     * Texture drawn with, null until it is loaded.
+     */
+    private Texture boundTexture;
+
     SimpleGlRenderer(Context context) {
         this.context = context;
     }
@@ -39,15 +83,16 @@ class SimpleGlRenderer implements GLSurfaceView.Renderer {
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig eglConfig) {
         Log.i(TAG, "onSurfaceCreated: ");
+        if (triangleVertices != null) {
+            bufferPool.release(triangleVertices);
+        }
         triangleVertices = createTriangleVerticesWithTextureCoords();
 
         setupGlState(gl);
+        loadTexture();
     }
 
     private void setupGlState(GL10 gl) {
-        final int glTextureName = createGlTexture(gl);
-        loadImageInsideTexture(gl, glTextureName, createTextureBitmap());
-
         gl.glClearColor(0.1f, 0.0f, 0.0f, 1f);
         gl.glMatrixMode(GL10.GL_PROJECTION);
         // set identity matrix for projection - we are starting composing projection from the scratch
@@ -58,7 +103,6 @@ class SimpleGlRenderer implements GLSurfaceView.Renderer {
         gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
 
         gl.glEnable(GL10.GL_TEXTURE_2D);
-        gl.glBindTexture(GL10.GL_TEXTURE_2D, glTextureName);
 
         triangleVertices.position(0);
         gl.glVertexPointer(2, GL10.GL_FLOAT, VERTEX_SIZE_IN_BYTES, triangleVertices);
@@ -66,36 +110,104 @@ class SimpleGlRenderer implements GLSurfaceView.Renderer {
         gl.glTexCoordPointer(2, GL10.GL_FLOAT, VERTEX_SIZE_IN_BYTES, triangleVertices);
     }
 
-    private void loadImageInsideTexture(GL10 gl, int textureName, Bitmap textureBitmap) {
-        // sets active texture that we are going to work with
-        gl.glBindTexture(GL10.GL_TEXTURE_2D, textureName);
-        GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, textureBitmap, 0);
-        gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_NEAREST);
-        gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_NEAREST);
-        gl.glBindTexture(GL10.GL_TEXTURE_2D, 0);
-    }
+    private void loadTexture() {
+        if (texture != null) {
+            // texture of the previous context, if any, went away with it
+            texture.cancel(false);
+        }
+        boundTexture = null;
+        final File cached = new File(context.getCacheDir(), COMPRESSED_TEXTURE_FILE);
+        // encoded by an older install, the drawable may have changed since
+        final long installTime = new File(context.getApplicationInfo().sourceDir).lastModified();
+        texture = assetLoader.load(new Callable<List<CompressedImage>>() {
+            @Override
+            public List<CompressedImage> call() {
+                if (cached.lastModified() >= installTime) {
+                    try {
+                        return readCompressedTexture(cached);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Encoding texture again, could not read " + cached, e);
+                    }
+                }
+                final List<CompressedImage> levels = Collections.singletonList(compress(createTextureBitmap()));
+                writeCompressedTexture(levels, cached);
+                return levels;
+            }
+        }, new AssetUpload<List<CompressedImage>, Texture>() {
+            @Override
+            public int sizeInBytes(List<CompressedImage> levels) {
+                return levels.get(0).getSizeInBytes();
+            }
 
-    private FloatBuffer createTriangleVerticesWithTextureCoords() {
-        // x, y, RGBA - 1 float for each letter * 4 - bytes representing float
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(3 * VERTEX_SIZE_IN_BYTES);
-        byteBuffer.order(ByteOrder.nativeOrder());
-        FloatBuffer result = byteBuffer.asFloatBuffer();
-        result.put(new float[]{
-                0.0f, 0.0f, 0.0f, 1.0f,
-                319.0f, 0.0f, 1.0f, 1.0f,
-                160.0f, 479.0f, 0.5f, 0.0f
+            @Override
+            public Texture upload(List<CompressedImage> levels) {
+                // ETC1 takes 4 bits per texel of GPU memory instead of 32, the image is not blended anyway
+                final Texture texture = new Texture().upload(levels, GL10.GL_NEAREST, GL10.GL_NEAREST);
+                texture.bind();
+                return texture;
+            }
         });
-        result.flip();
-        return result;
     }
 
     /**
-     * Returns ID of the generated Texture object.
+     * Single level only - the image is not a power of two, which rules mipmaps out. The bitmap is recycled.
      */
-    private int createGlTexture(GL10 gl) {
-        final int[] ids = new int[1];
-        gl.glGenTextures(1, ids, 0);
-        return ids[0];
+    private static CompressedImage compress(Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int[] pixels = new int[width * height];
+        try {
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        } finally {
+            bitmap.recycle();
+        }
+        // happens once per install, as fast as all cores allow
+        final ParallelFor parallelFor = new ParallelFor();
+        try {
+            return new Etc1Encoder(parallelFor).encode(pixels, width, height);
+        } finally {
+            parallelFor.shutdown();
+        }
+    }
+
+    private static List<CompressedImage> readCompressedTexture(File file) throws IOException {
+        final InputStream input = new FileInputStream(file);
+        try {
+            return PkmFile.read(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Written next to the final file and renamed, so a run killed halfway does not leave half of it behind.
+     * Failing to write only costs encoding on the next run.
+     */
+    private static void writeCompressedTexture(List<CompressedImage> levels, File file) {
+        final File written = new File(file.getPath() + ".tmp");
+        try {
+            final OutputStream output = new FileOutputStream(written);
+            try {
+                PkmFile.write(levels, output);
+            } finally {
+                output.close();
+            }
+            if (!written.renameTo(file)) {
+                throw new IOException("Could not rename " + written + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save encoded texture", e);
+            written.delete();
+        }
+    }
+
+    private FloatBuffer createTriangleVerticesWithTextureCoords() {
+        // x, y, u, v - 1 float for each letter
+        return GlHelpersKt.toNativeOrderBuffer(new float[]{
+                0.0f, 0.0f, 0.0f, 1.0f,
+                319.0f, 0.0f, 1.0f, 1.0f,
+                160.0f, 479.0f, 0.5f, 0.0f
+        }, bufferPool);
     }
 
     @Override
@@ -108,7 +220,52 @@ class SimpleGlRenderer implements GLSurfaceView.Renderer {
     @Override
     public void onDrawFrame(GL10 gl) {
         gl.glClear(GL_COLOR_BUFFER_BIT);
-        gl.glDrawArrays(GL10.GL_TRIANGLES, 0, 3);
+        assetLoader.uploadReady();
+        showLoadedTexture();
+        if (boundTexture != null) {
+            gl.glDrawArrays(GL10.GL_TRIANGLES, 0, 3);
+        }
+    }
+
+    /**
+     * Releases the texture and the vertices and stops the worker loading the texture, on the GL thread - e.g.
+     * queued by the activity's onDestroy. The renderer can't be used afterwards.
+     */
+    public void release() {
+        assetLoader.shutdown();
+        if (texture != null) {
+            texture.cancel(false);
+            texture = null;
+        }
+        if (boundTexture != null) {
+            boundTexture.release();
+            boundTexture = null;
+        }
+        if (triangleVertices != null) {
+            bufferPool.release(triangleVertices);
+            triangleVertices = null;
+        }
+    }
+
+    /**
+     * Draws with the texture once it is uploaded. When loading fails nothing is drawn - the error is logged.
+     */
+    private void showLoadedTexture() {
+        if (texture == null || !texture.isDone()) {
+            return;
+        }
+        final Future<Texture> loaded = texture;
+        texture = null;
+        try {
+            boundTexture = loaded.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Could not load texture", e.getCause());
+        } catch (CancellationException e) {
+            Log.e(TAG, "Texture loading was cancelled", e);
+        } catch (InterruptedException e) {
+            // done already, so get() does not wait - keep the flag for whoever looks at it
+            Thread.currentThread().interrupt();
+        }
     }
 
     private Bitmap createTextureBitmap() {
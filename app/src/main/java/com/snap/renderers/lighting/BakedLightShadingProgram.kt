@@ -0,0 +1,80 @@
+package com.snap.renderers.lighting
+
+import com.snap.model.ComponentType
+import com.snap.model.GlContext
+import com.snap.model.VertexAttribute
+import com.snap.model.VertexBuffer
+import com.snap.model.VertexFormat
+import com.snap.model.exception.GlLibException
+import com.snap.model.shading.AttributeBinding
+import com.snap.model.shading.ShaderPreprocessor
+import com.snap.model.shading.ShadingProgram
+import com.snap.model.shading.UniformBinding
+import com.snap.model.shading.bindVertexFormat
+
+import java.io.IOException
+
+/**
+ * Draws static geometry lit ahead of time by [LightingBaker] - colors of vertices are passed through as they
+ * are, nothing is computed per fragment.
+ */
+internal class BakedLightShadingProgram private constructor(private val vertexShaderCode: String,
+                                                             private val fragmentShaderCode: String,
+                                                             private val glContext: GlContext) {
+
+    private lateinit var shadingProgram: ShadingProgram
+
+    private lateinit var vertexAttributes: List<AttributeBinding>
+
+    private lateinit var modelViewProjectionUniform: UniformBinding
+
+    @Throws(GlLibException::class)
+    fun setup() {
+        if (::shadingProgram.isInitialized) {
+            throw GlLibException("Baked light shading program is already set up.")
+        }
+        shadingProgram = glContext.shaderCache.program(vertexShaderCode, fragmentShaderCode)
+
+        vertexAttributes = vertexFormat.attributes.map { shadingProgram.attribute(it.name) }
+
+        modelViewProjectionUniform = shadingProgram.uniform("u_modelViewProjectionMatrix")
+    }
+
+    /**
+     * Gives shared program back to the cache, deleting it when nobody else uses it.
+     */
+    fun release() {
+        glContext.shaderCache.release(shadingProgram)
+    }
+
+    /**
+     * Links position and baked color of vertices interleaved according to [vertexFormat].
+     */
+    fun linkVertices(vertexBuffer: VertexBuffer) {
+        shadingProgram.doUsingProgram {
+            bindVertexFormat(vertexBuffer, vertexFormat, vertexAttributes)
+        }
+    }
+
+    fun linkModelViewProjectionMatrix(modelViewProjectionMatrix: FloatArray) {
+        shadingProgram.doUsingProgram {
+            modelViewProjectionUniform.bindUniformMatrix4fv(modelViewProjectionMatrix)
+        }
+    }
+
+    companion object {
+
+        val vertexFormat = VertexFormat(
+                VertexAttribute("a_vertex", 3),
+                VertexAttribute("a_color", 4, ComponentType.UNSIGNED_BYTE, isNormalized = true))
+
+        @Throws(IOException::class)
+        fun newInstance(preprocessor: ShaderPreprocessor,
+                        glContext: GlContext = GlContext.current): BakedLightShadingProgram {
+            return BakedLightShadingProgram(
+                    preprocessor.preprocess("light_scene_baked_vertex.glsl"),
+                    preprocessor.preprocess("light_scene_baked_fragment.glsl"),
+                    glContext)
+        }
+    }
+}
@@ -1,18 +1,44 @@
 package com.snap.renderers.lighting
 
+import android.content.Context
 import android.opengl.GLES20
 import android.opengl.GLSurfaceView
-import android.opengl.Matrix
+import android.util.Log
 
 
-import java.nio.FloatBuffer
-
 import javax.microedition.khronos.egl.EGLConfig
 import javax.microedition.khronos.opengles.GL10
 
-import com.snap.model.toNativeOrderBuffer
-
-class LightSceneRenderer : GLSurfaceView.Renderer {
+import com.snap.concurrent.AssetUpload
+import com.snap.concurrent.AsyncAssetLoader
+import com.snap.math.Frustum
+import com.snap.math.Mat4
+import com.snap.model.GlContext
+import com.snap.model.Mesh
+import com.snap.model.PrimitiveType
+import com.snap.model.StaticBatch
+import com.snap.model.StaticBatcher
+import com.snap.model.VertexBuffer
+import com.snap.model.shading.RawResourceShaderSources
+import com.snap.model.shading.ShaderPreprocessor
+import com.snap.model.shading.ShaderSources
+import com.snap.scene.CullingSet
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+
+class LightSceneRenderer internal constructor(shaderSources: ShaderSources,
+                                              private val glContext: GlContext = GlContext.current) :
+        GLSurfaceView.Renderer {
+
+    @JvmOverloads
+    constructor(context: Context, glContext: GlContext = GlContext.current) :
+            this(RawResourceShaderSources(context.resources, context.packageName), glContext)
+
+    private val shaderPreprocessor = ShaderPreprocessor(shaderSources)
+
+    private val gl = glContext.backend
 
     private var xСameraPosition: Float = 0.toFloat()
     private var yCameraPosition: Float = 0.toFloat()
@@ -28,24 +54,47 @@ class LightSceneRenderer : GLSurfaceView.Renderer {
     private val projectionMatrix = FloatArray(16)
     private val modelViewProjectionMatrix = FloatArray(16)
 
-    private lateinit var seaVerticesBuffer: FloatBuffer
-    private lateinit var skyVerticesBuffer: FloatBuffer
-    private lateinit var mainSailVerticesBuffer: FloatBuffer
-    private lateinit var smallSailVerticesBuffer: FloatBuffer
-    private lateinit var boatVerticesBuffer: FloatBuffer
+    // geometry is built on a worker and uploaded between frames, so the first frame does not wait for it
+    private val assetLoader = AsyncAssetLoader()
+
+    // sea, sky, sails and boat share the shader - merged into one batch, drawn with one call
+    private var scene: Future<StaticBatch>? = null
+    private var batch: StaticBatch? = null
 
-    private lateinit var verticesNormalsBuffer: FloatBuffer
+    // light, camera and geometry stay still - light is computed per vertex once, not per fragment every frame
+    private val lightingBaker = LightingBaker(LightingModel(LightSceneShadingProgram.diffuseLight))
+    private var bakedLightPosition: FloatArray? = null
+    private var bakedCamera: FloatArray? = null
 
-    private lateinit var seaVerticesColorsBuffer: FloatBuffer
-    private lateinit var skyVerticesColorsBuffer: FloatBuffer
-    private lateinit var anySailVerticesColorsBuffer: FloatBuffer
-    private lateinit var boatVerticesColorsBuffer: FloatBuffer
+    private lateinit var shader: BakedLightShadingProgram
+
+    // sea, sky, sails and boat are merged, so the whole batch is tested at once by its model space bounds
+    // against the frustum of Model-View-Projection matrix - it is drawn or skipped as a whole, nothing in it
+    // is culled on its own
+    private val frustum = Frustum()
+    private val cullingSet = CullingSet(1)
+
+    /**
+     * Batches drawn in the last frame - 0 while the scene loads or when it is out of view.
+     */
+    val visibleBatchCount: Int
+        get() = cullingSet.visibleCount
 
-    private lateinit var seaShader: LightSceneShadingProgram
-    private lateinit var skyShader: LightSceneShadingProgram
-    private lateinit var mainSailShader: LightSceneShadingProgram
-    private lateinit var smallSailShader: LightSceneShadingProgram
-    private lateinit var boatShader: LightSceneShadingProgram
+    /**
+     * Batches skipped in the last frame as out of view.
+     */
+    val culledBatchCount: Int
+        get() = cullingSet.culledCount
+
+    /**
+     * Moves the point source of light, on the GL thread. Light is baked again on a worker only when the position
+     * actually changes - until then the scene is drawn with the old one.
+     */
+    fun setLightPosition(x: Float, y: Float, z: Float) {
+        xLightPosition = x
+        yLightPosition = y
+        zLightPosition = z
+    }
 
     init {
         setup()
@@ -54,9 +103,6 @@ class LightSceneRenderer : GLSurfaceView.Renderer {
     private fun setup() {
         setupLightSource()
         setupModelViewMatrix()
-        setupVertexBuffers()
-        setupNormalsBuffer()
-        setupVerticesColorBuffers()
     }
 
     /**
@@ -70,7 +116,7 @@ class LightSceneRenderer : GLSurfaceView.Renderer {
 
     private fun setupModelViewMatrix() {
         //мы не будем двигать объекты поэтому сбрасываем модельную матрицу на единичную
-        Matrix.setIdentityM(modelMatrix, 0)
+        Mat4.setIdentity(modelMatrix, 0)
 
         //координаты камеры
         xСameraPosition = 0.0f
@@ -80,85 +126,148 @@ class LightSceneRenderer : GLSurfaceView.Renderer {
         // пусть камера смотрит на начало координат
         // и верх у камеры будет вдоль оси Y
         // зная координаты камеры получаем матрицу вида
-        Matrix.setLookAtM(
+        Mat4.lookAt(
                 viewMatrix, 0, xСameraPosition, yCameraPosition, zCameraPosition,
                 0f, 0f, 0f, 0f, 1f, 0f)
         // умножая матрицу вида на матрицу модели
         // получаем матрицу модели-вида
-        Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelMatrix, 0)
+        Mat4.multiply(modelViewMatrix, 0, viewMatrix, 0, modelMatrix, 0)
+    }
+
+    private fun loadScene() {
+        scene?.cancel(false)
+        // positions as they are now - the worker does not see later moves
+        val lightPosition = floatArrayOf(xLightPosition, yLightPosition, zLightPosition)
+        val camera = floatArrayOf(xСameraPosition, yCameraPosition, zCameraPosition)
+        bakedLightPosition = lightPosition
+        bakedCamera = camera
+        val decode = Callable { buildScene(lightPosition, camera) }
+        scene = assetLoader.load(decode, object : AssetUpload<StaticBatcher, StaticBatch> {
+            override fun sizeInBytes(data: StaticBatcher) =
+                    data.vertexCount * data.format.stride + data.indexCount * 2
+
+            override fun upload(data: StaticBatcher) = data.build(glContext = glContext)
+        })
     }
 
-    private fun setupVertexBuffers() {
+    private fun isBakedForCurrentPositions(): Boolean {
+        val lightPosition = bakedLightPosition ?: return false
+        val camera = bakedCamera ?: return false
+        return lightPosition[0] == xLightPosition && lightPosition[1] == yLightPosition &&
+                lightPosition[2] == zLightPosition && camera[0] == xСameraPosition && camera[1] == yCameraPosition &&
+                camera[2] == zCameraPosition
+    }
+
+    private fun buildScene(lightPosition: FloatArray, camera: FloatArray): StaticBatcher {
         val zEnvironment = 0.0f
 
         val zShip = 0.4f
 
-        seaVerticesBuffer = floatArrayOf(
-                -1.0f, -0.35f, zEnvironment,
-                -1.0f, -1.5f, zEnvironment,
-                1.0f, -0.35f, zEnvironment,
-                1.0f, -1.5f, zEnvironment).toNativeOrderBuffer()
-
-        skyVerticesBuffer = floatArrayOf(
-                -1.0f, 1.5f, zEnvironment,
-                -1.0f, -0.35f, zEnvironment,
-                1.0f, 1.5f, zEnvironment,
-                1.0f, -0.35f, zEnvironment).toNativeOrderBuffer()
-
-        mainSailVerticesBuffer = floatArrayOf(
-                -0.5f, -0.45f, zShip,
-                0.0f, -0.45f, zShip,
-                0.0f, 0.5f, zShip).toNativeOrderBuffer()
-
-        smallSailVerticesBuffer = floatArrayOf(
-                0.05f, -0.45f, zShip,
-                0.22f, -0.5f, zShip,
-                0.0f, 0.25f, zShip).toNativeOrderBuffer()
-
-        boatVerticesBuffer = floatArrayOf(
-                -0.5f, -0.5f, zShip,
-                -0.5f, -0.6f, zShip,
-                0.22f, -0.5f, zShip,
-                0.18f, -0.6f, zShip).toNativeOrderBuffer()
+        // R-G-B-A
+        val sea = grid(-1.0f, -1.5f, 1.0f, -0.35f, zEnvironment,
+                floatArrayOf(0f, 0f, 1f, 1f),
+                floatArrayOf(0f, 1f, 1f, 1f))
+
+        val sky = grid(-1.0f, -0.35f, 1.0f, 1.5f, zEnvironment,
+                floatArrayOf(0.5f, 0.5f, 1f, 1f),
+                floatArrayOf(0.2f, 0.2f, 0.8f, 1f))
+
+        val anySailColors = floatArrayOf(
+                1f, 0.1f, 0.1f, 1f,
+                1f, 1f, 1f, 1f,
+                1f, 0.1f, 0.1f, 1f)
+
+        val mainSail = mesh(PrimitiveType.TRIANGLES,
+                floatArrayOf(
+                        -0.5f, -0.45f, zShip,
+                        0.0f, -0.45f, zShip,
+                        0.0f, 0.5f, zShip),
+                anySailColors)
+
+        val smallSail = mesh(PrimitiveType.TRIANGLES,
+                floatArrayOf(
+                        0.05f, -0.45f, zShip,
+                        0.22f, -0.5f, zShip,
+                        0.0f, 0.25f, zShip),
+                anySailColors)
+
+        val boat = mesh(PrimitiveType.TRIANGLE_STRIP,
+                floatArrayOf(
+                        -0.5f, -0.5f, zShip,
+                        -0.5f, -0.6f, zShip,
+                        0.22f, -0.5f, zShip,
+                        0.18f, -0.6f, zShip),
+                floatArrayOf(
+                        1f, 1f, 1f, 1f,
+                        0.2f, 0.2f, 0.2f, 1f,
+                        1f, 1f, 1f, 1f,
+                        0.2f, 0.2f, 0.2f, 1f))
+
+        // objects do not move - model matrix is the identity, so geometry goes into the batch as is
+        val batcher = StaticBatcher(BakedLightShadingProgram.vertexFormat, "a_vertex")
+        for (mesh in listOf(sea, sky, mainSail, smallSail, boat)) {
+            batcher.add(lightingBaker.bake(mesh, lightPosition, camera))
+        }
+        return batcher
     }
 
-    private fun setupNormalsBuffer() {
+    /**
+     * Rectangle at [z] facing the camera, split into cells so light baked per vertex still changes across it.
+     * Color goes from [bottomColor] to [topColor] over its height.
+     */
+    private fun grid(left: Float, bottom: Float, right: Float, top: Float, z: Float,
+                     bottomColor: FloatArray, topColor: FloatArray): Mesh {
+        val vertexCount = (gridColumns + 1) * (gridRows + 1)
+        val positions = FloatArray(vertexCount * 3)
+        val colors = FloatArray(vertexCount * 4)
+        for (row in 0..gridRows) {
+            val share = row.toFloat() / gridRows
+            for (column in 0..gridColumns) {
+                val vertex = row * (gridColumns + 1) + column
+                positions[vertex * 3] = left + (right - left) * column / gridColumns
+                positions[vertex * 3 + 1] = bottom + (top - bottom) * share
+                positions[vertex * 3 + 2] = z
+                for (channel in 0 until 4) {
+                    val from = bottomColor[channel]
+                    colors[vertex * 4 + channel] = from + (topColor[channel] - from) * share
+                }
+            }
+        }
+        val indices = ShortArray(gridColumns * gridRows * 6)
+        var index = 0
+        for (row in 0 until gridRows) {
+            for (column in 0 until gridColumns) {
+                val bottomLeft = row * (gridColumns + 1) + column
+                val topLeft = bottomLeft + gridColumns + 1
+                // both triangles counter-clockwise, as culling wants them
+                for (vertex in intArrayOf(bottomLeft, bottomLeft + 1, topLeft, topLeft, bottomLeft + 1, topLeft + 1)) {
+                    indices[index++] = vertex.toShort()
+                }
+            }
+        }
+        return Mesh(LightSceneShadingProgram.vertexFormat, PrimitiveType.TRIANGLES,
+                listOf(positions, normals(vertexCount), colors), indices)
+    }
+
+    private fun mesh(primitiveType: PrimitiveType, positions: FloatArray, colors: FloatArray) =
+            Mesh(LightSceneShadingProgram.vertexFormat, primitiveType,
+                    listOf(positions, normals(positions.size / 3), colors))
+
+    private fun normals(vertexCount: Int): FloatArray {
         //вектор нормали перпендикулярен плоскости квадрата
         //и направлен вдоль оси Z
         val nx = 0f
         val ny = 0f
         val nz = 1f
-        //нормаль одинакова для всех вершин квадрата,
-        //поэтому переписываем координаты вектора нормали в массив 4 раза
-        verticesNormalsBuffer = floatArrayOf(
-                nx, ny, nz,
-                nx, ny, nz,
-                nx, ny, nz,
-                nx, ny, nz
-        ).toNativeOrderBuffer()
-    }
-
-    private fun setupVerticesColorBuffers() {
-        // R-G-B-A
-        seaVerticesColorsBuffer = floatArrayOf(
-                0f, 1f, 1f, 1f,
-                0f, 0f, 1f, 1f,
-                0f, 1f, 1f, 1f,
-                0f, 0f, 1f, 1f).toNativeOrderBuffer()
-        skyVerticesColorsBuffer = floatArrayOf(
-                0.2f, 0.2f, 0.8f, 1f,
-                0.5f, 0.5f, 1f, 1f,
-                0.2f, 0.2f, 0.8f, 1f,
-                0.5f, 0.5f, 1f, 1f).toNativeOrderBuffer()
-        anySailVerticesColorsBuffer = floatArrayOf(
-                1f, 0.1f, 0.1f, 1f,
-                1f, 1f, 1f, 1f,
-                1f, 0.1f, 0.1f, 1f).toNativeOrderBuffer()
-        boatVerticesColorsBuffer = floatArrayOf(
-                1f, 1f, 1f, 1f,
-                0.2f, 0.2f, 0.2f, 1f,
-                1f, 1f, 1f, 1f,
-                0.2f, 0.2f, 0.2f, 1f).toNativeOrderBuffer()
+        //нормаль одинакова для всех вершин,
+        //поэтому переписываем координаты вектора нормали в массив для каждой вершины
+        val normals = FloatArray(vertexCount * 3)
+        for (vertex in 0 until vertexCount) {
+            normals[vertex * 3] = nx
+            normals[vertex * 3 + 1] = ny
+            normals[vertex * 3 + 2] = nz
+        }
+        return normals
     }
 
     /**
@@ -166,7 +275,7 @@ class LightSceneRenderer : GLSurfaceView.Renderer {
      */
     override fun onSurfaceChanged(unused: GL10, width: Int, height: Int) {
         // устанавливаем glViewport
-        GLES20.glViewport(0, 0, width, height)
+        gl.glViewport(0, 0, width, height)
 
         val ratio = width.toFloat() / height
         val k = 0.047f
@@ -176,28 +285,33 @@ class LightSceneRenderer : GLSurfaceView.Renderer {
         val near = 0.1f
         val far = 10.0f
 
-        Matrix.frustumM(projectionMatrix, 0, left, right, bottom, k, near, far)
-        Matrix.multiplyMM(modelViewProjectionMatrix,
+        Mat4.frustum(projectionMatrix, 0, left, right, bottom, k, near, far)
+        Mat4.multiply(modelViewProjectionMatrix,
                 0, projectionMatrix,
                 0, modelViewMatrix,
                 0)
+        frustum.set(modelViewProjectionMatrix, 0)
     }
 
     override fun onSurfaceCreated(unused: GL10, config: EGLConfig) {
+        // fresh EGL context - nothing known about its state yet
+        val glState = glContext.state
+        glState.invalidate()
+        glContext.shaderCache.invalidate()
         //включаем тест глубины
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST)
+        glState.enable(GLES20.GL_DEPTH_TEST)
         //включаем отсечение невидимых граней
-        GLES20.glEnable(GLES20.GL_CULL_FACE)
+        glState.enable(GLES20.GL_CULL_FACE)
         //включаем сглаживание текстур, это пригодится в будущем
-        GLES20.glHint(GLES20.GL_GENERATE_MIPMAP_HINT, GLES20.GL_NICEST)
+        gl.glHint(GLES20.GL_GENERATE_MIPMAP_HINT, GLES20.GL_NICEST)
 
-        seaShader = LightSceneShadingProgram.newInstance()
-        skyShader = LightSceneShadingProgram.newInstance()
-        mainSailShader = LightSceneShadingProgram.newInstance()
-        smallSailShader = LightSceneShadingProgram.newInstance()
-        boatShader = LightSceneShadingProgram.newInstance()
+        // buffer objects live as long as the context does - upload static geometry once per context
+        batch = null
+        cullingSet.clear()
+        loadScene()
 
-        listOf(seaShader, skyShader, mainSailShader, smallSailShader, boatShader).forEach { it.setup() }
+        shader = BakedLightShadingProgram.newInstance(shaderPreprocessor, glContext = glContext)
+        shader.setup()
     }
 
     /**
@@ -205,56 +319,73 @@ class LightSceneRenderer : GLSurfaceView.Renderer {
      */
     override fun onDrawFrame(unused: GL10) {
         // clean frame
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT or GLES20.GL_DEPTH_BUFFER_BIT)
-
-        // Render Sea
-        linkAttributesAndUniforms(seaShader,
-                seaVerticesBuffer,
-                verticesNormalsBuffer,
-                seaVerticesColorsBuffer)
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
-
-        // Render Sky
-        linkAttributesAndUniforms(skyShader,
-                skyVerticesBuffer,
-                verticesNormalsBuffer,
-                skyVerticesColorsBuffer)
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
-
-        // Render MainSail
-        linkAttributesAndUniforms(mainSailShader,
-                mainSailVerticesBuffer,
-                verticesNormalsBuffer,
-                anySailVerticesColorsBuffer)
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3)
-
-        // Render SmallSail
-        linkAttributesAndUniforms(smallSailShader,
-                smallSailVerticesBuffer,
-                verticesNormalsBuffer,
-                anySailVerticesColorsBuffer)
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3)
-
-        // Render Boat
-        linkAttributesAndUniforms(boatShader,
-                boatVerticesBuffer,
-                verticesNormalsBuffer,
-                boatVerticesColorsBuffer)
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT or GLES20.GL_DEPTH_BUFFER_BIT)
+
+        if (!isBakedForCurrentPositions()) {
+            loadScene()
+        }
+        assetLoader.uploadReady()
+        showLoadedScene()
+        // Render sea, sky, sails and boat
+        val batch = batch ?: return
+        if (cullingSet.cull(frustum) == 0) {
+            return
+        }
+        linkAttributesAndUniforms(shader, batch.vertices)
+        batch.draw()
     }
 
-    private fun linkAttributesAndUniforms(shadingProgram: LightSceneShadingProgram,
-                                          verticesBuffer: FloatBuffer,
-                                          verticesNormalsBuffer: FloatBuffer,
-                                          verticesColorsBuffer: FloatBuffer) {
+    /**
+     * Releases the scene and the shader and stops the worker that bakes the scene, on the GL thread - e.g. queued
+     * by the activity's onDestroy. The renderer can't be used afterwards.
+     */
+    fun release() {
+        assetLoader.shutdown()
+        scene?.cancel(false)
+        scene = null
+        batch?.release()
+        batch = null
+        cullingSet.clear()
+        if (::shader.isInitialized) {
+            shader.release()
+        }
+    }
 
-        shadingProgram.linkVertexBuffer(verticesBuffer)
-        shadingProgram.linkNormalBuffer(verticesNormalsBuffer)
-        shadingProgram.linkColorBuffer(verticesColorsBuffer)
+    /**
+     * Swaps the drawn batch for the newly baked one once it is uploaded. When baking fails the previous batch
+     * stays on screen, until the light moves and the scene is baked again.
+     */
+    private fun showLoadedScene() {
+        val scene = scene
+        if (scene == null || !scene.isDone) {
+            return
+        }
+        this.scene = null
+        val loaded = try {
+            scene.get()
+        } catch (e: ExecutionException) {
+            Log.e(tag, "Could not bake the scene, drawing the previous one", e.cause)
+            return
+        }
+        batch?.release()
+        batch = loaded
+        cullingSet.clear()
+        cullingSet.add(loaded.bounds)
+    }
 
+    private fun linkAttributesAndUniforms(shadingProgram: BakedLightShadingProgram, vertices: VertexBuffer) {
+        shadingProgram.linkVertices(vertices)
+
+        // camera and light are already in the baked colors
         shadingProgram.linkModelViewProjectionMatrix(modelViewProjectionMatrix)
-        shadingProgram.linkCamera(xСameraPosition, yCameraPosition, zCameraPosition)
-        shadingProgram.linkLightSource(xLightPosition, yLightPosition, zLightPosition)
+    }
+
+    private companion object {
+
+        const val tag = "LightSceneRenderer"
+
+        const val gridColumns = 32
+        const val gridRows = 16
     }
 
 }
\ No newline at end of file
@@ -1,116 +1,103 @@
 package com.snap.renderers.lighting
 
+import com.snap.model.GlContext
+import com.snap.model.ComponentType
+import com.snap.model.VertexAttribute
+import com.snap.model.VertexBuffer
+import com.snap.model.VertexFormat
 import com.snap.model.exception.GlLibException
-import com.snap.model.shading.Shader
-import com.snap.model.shading.ShaderType
+import com.snap.model.shading.AttributeBinding
+import com.snap.model.shading.ShaderPreprocessor
 import com.snap.model.shading.ShadingProgram
+import com.snap.model.shading.UniformBinding
+import com.snap.model.shading.bindVertexFormat
 
-import java.nio.FloatBuffer
+import java.io.IOException
 
-internal class LightSceneShadingProgram private constructor(private val shadingProgram: ShadingProgram) {
+internal class LightSceneShadingProgram private constructor(private val vertexShaderCode: String,
+                                                             private val fragmentShaderCode: String,
+                                                             private val glContext: GlContext) {
+
+    private lateinit var shadingProgram: ShadingProgram
+
+    private lateinit var vertexAttributes: List<AttributeBinding>
+
+    private lateinit var modelViewProjectionUniform: UniformBinding
+    private lateinit var cameraUniform: UniformBinding
+    private lateinit var lightPositionUniform: UniformBinding
 
     @Throws(GlLibException::class)
     fun setup() {
-        shadingProgram.compile()
-    }
-
-    fun linkVertexBuffer(vertexBuffer: FloatBuffer) {
-        shadingProgram.doUsingProgram {
-            createAttributeBinding("a_vertex") {
-                bindFloatBuffer(vertexBuffer, 3)
-            }
+        if (::shadingProgram.isInitialized) {
+            throw GlLibException("Light scene shading program is already set up.")
         }
+        // every instance shares program compiled from the same source
+        shadingProgram = glContext.shaderCache.program(vertexShaderCode, fragmentShaderCode)
+
+        vertexAttributes = vertexFormat.attributes.map { shadingProgram.attribute(it.name) }
+
+        modelViewProjectionUniform = shadingProgram.uniform("u_modelViewProjectionMatrix")
+        cameraUniform = shadingProgram.uniform("u_camera")
+        lightPositionUniform = shadingProgram.uniform("u_lightPosition")
     }
 
-    fun linkNormalBuffer(normalBuffer: FloatBuffer) {
-        shadingProgram.doUsingProgram {
-            createAttributeBinding("a_normal") {
-                bindFloatBuffer(normalBuffer, 3)
-            }
-        }
+    /**
+     * Gives shared program back to the cache, deleting it when nobody else uses it.
+     */
+    fun release() {
+        glContext.shaderCache.release(shadingProgram)
     }
 
-    fun linkColorBuffer(colorBuffer: FloatBuffer) {
+    /**
+     * Links position, normal and color of vertices interleaved according to [vertexFormat].
+     */
+    fun linkVertices(vertexBuffer: VertexBuffer) {
         shadingProgram.doUsingProgram {
-            createAttributeBinding("a_color") {
-                bindFloatBuffer(colorBuffer, 4)
-            }
+            bindVertexFormat(vertexBuffer, vertexFormat, vertexAttributes)
         }
     }
 
     fun linkModelViewProjectionMatrix(modelViewProjectionMatrix: FloatArray) {
         shadingProgram.doUsingProgram {
-            createUniformBinding("u_modelViewProjectionMatrix") {
-                bindUniformMatrix4fv(modelViewProjectionMatrix)
-            }
+            modelViewProjectionUniform.bindUniformMatrix4fv(modelViewProjectionMatrix)
         }
     }
 
     fun linkCamera(xCamera: Float, yCamera: Float, zCamera: Float) {
         shadingProgram.doUsingProgram {
-            createUniformBinding("u_camera") {
-                bindUniform3f(xCamera, yCamera, zCamera)
-            }
+            cameraUniform.bindUniform3f(xCamera, yCamera, zCamera)
         }
     }
 
     fun linkLightSource(xLightPosition: Float, yLightPosition: Float, zLightPosition: Float) {
         shadingProgram.doUsingProgram {
-            createUniformBinding("u_lightPosition") {
-                bindUniform3f(xLightPosition, yLightPosition, zLightPosition)
-            }
+            lightPositionUniform.bindUniform3f(xLightPosition, yLightPosition, zLightPosition)
         }
     }
 
     companion object {
 
-        fun newInstance(): LightSceneShadingProgram {
-            return LightSceneShadingProgram(ShadingProgram(
-                    Shader.fromSourceCode(ShaderType.VERTEX, vertexShaderCode),
-                    Shader.fromSourceCode(ShaderType.FRAGMENT, fragmentShaderCode)))
+        val vertexFormat = VertexFormat(
+                VertexAttribute("a_vertex", 3),
+                VertexAttribute("a_normal", 3),
+                VertexAttribute("a_color", 4, ComponentType.UNSIGNED_BYTE, isNormalized = true))
+
+        /**
+         * Terms of the light computed per fragment, see res/raw/lighting.glsl.
+         */
+        val diffuseLight = mapOf("DIFFUSE" to "1.0")
+
+        /**
+         * Shaders are read from res/raw with [lightTerms] switched on - everything else compiles away.
+         */
+        @Throws(IOException::class)
+        fun newInstance(preprocessor: ShaderPreprocessor,
+                        lightTerms: Map<String, String> = diffuseLight,
+                        glContext: GlContext = GlContext.current): LightSceneShadingProgram {
+            return LightSceneShadingProgram(
+                    preprocessor.preprocess("light_scene_vertex.glsl", lightTerms),
+                    preprocessor.preprocess("light_scene_fragment.glsl", lightTerms),
+                    glContext)
         }
     }
 }
-
-private const val vertexShaderCode = "uniform mat4 u_modelViewProjectionMatrix;" +
-
-        "attribute vec3 a_vertex;" +
-        "attribute vec3 a_normal;" +
-        "attribute vec4 a_color;" +
-
-        "varying vec3 v_vertex;" +
-        "varying vec3 v_normal;" +
-        "varying vec4 v_color;" +
-
-        "void main() {" +
-        "v_vertex = a_vertex;" +
-        "v_normal = normalize(a_normal);;" +
-        "v_color = a_color;" +
-        "gl_Position = u_modelViewProjectionMatrix * vec4(a_vertex, 1.0);" +
-        "}"
-
-private const val fragmentShaderCode = "precision mediump float;" +
-
-        "uniform vec3 u_camera;" +
-        "uniform vec3 u_lightPosition;" +
-
-        "varying vec3 v_vertex;" +
-        "varying vec3 v_normal;" +
-        "varying vec4 v_color;" +
-
-        "void main() {" +
-        "vec3 n_normal = normalize(v_normal);" +
-        "vec3 lightvector = normalize(u_lightPosition - v_vertex);" +
-        "vec3 lookvector = normalize(u_camera - v_vertex);" +
-        "float ambient = 0.0; /*0.2*/" +
-        "float k_diffuse = 1.0; /*0.3*/" +
-        "float k_specular = 0.0; /*0.5*/" +
-        "float diffuse = k_diffuse * max(dot(n_normal, lightvector), 0.0);" +
-        "vec3 reflectvector = reflect(-lightvector, n_normal);" +
-        "float lookReflectDiff = max(dot(lookvector, reflectvector), 0.0);" +
-        "float k_shine = 40.0;" +
-        "float specular = k_specular * pow(lookReflectDiff, k_shine);" +
-        "vec4 one = vec4(1.0, 1.0, 1.0, 1.0);" +
-        "vec4 lightColor = (ambient + diffuse + specular)*one;" +
-        "gl_FragColor = mix(lightColor, v_color, 0.0);" +
-        "}"
@@ -0,0 +1,33 @@
+package com.snap.renderers.lighting
+
+import com.snap.model.Mesh
+
+/**
+ * Lights static meshes ahead of time - [lightingModel] is evaluated once per vertex, for a light and a camera
+ * that stay where they are, and the result is kept as the color of the vertex, to be drawn by
+ * [BakedLightShadingProgram] as it is.
+ *
+ * Light is interpolated between vertices rather than computed per fragment, so large faces, where it changes
+ * a lot, should be split into smaller ones before baking.
+ */
+internal class LightingBaker(private val lightingModel: LightingModel) {
+
+    /**
+     * Mesh of [BakedLightShadingProgram.vertexFormat] with the positions, primitives and indices of [mesh] and
+     * its colors lit. [mesh] has a_vertex, a_normal and a_color attributes, as [LightSceneShadingProgram.vertexFormat]
+     * does; [lightPosition] and [camera] are 3 values each.
+     */
+    fun bake(mesh: Mesh, lightPosition: FloatArray, camera: FloatArray): Mesh {
+        val format = mesh.format
+        val positions = mesh.attributesData[format.indexOf("a_vertex")]
+        val normals = mesh.attributesData[format.indexOf("a_normal")]
+        val colors = mesh.attributesData[format.indexOf("a_color")]
+        val bakedColors = FloatArray(mesh.vertexCount * 4)
+        for (vertex in 0 until mesh.vertexCount) {
+            val intensity = lightingModel.intensity(positions, vertex * 3, normals, vertex * 3, lightPosition, camera)
+            lightingModel.color(intensity, colors, vertex * 4, bakedColors, vertex * 4)
+        }
+        return Mesh(BakedLightShadingProgram.vertexFormat, mesh.primitiveType, listOf(positions, bakedColors),
+                mesh.indices)
+    }
+}
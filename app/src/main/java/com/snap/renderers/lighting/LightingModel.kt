@@ -0,0 +1,73 @@
+package com.snap.renderers.lighting
+
+/**
+ * res/raw/lighting.glsl and the vertex color mix of light_scene_fragment.glsl on the CPU, for the same
+ * [lightTerms] the shaders are preprocessed with - numbers, as the defines are plain float literals.
+ *
+ * Stateless, so one model serves any number of threads.
+ */
+internal class LightingModel(lightTerms: Map<String, String>) {
+
+    private val ambient = lightTerms["AMBIENT"]?.toFloat()
+    private val diffuse = lightTerms["DIFFUSE"]?.toFloat()
+    private val specular = lightTerms["SPECULAR"]?.toFloat()
+    private val shininess = lightTerms["SHININESS"]?.toFloat() ?: 0f
+    private val vertexColor = lightTerms["VERTEX_COLOR"]?.toFloat()
+
+    /**
+     * lightIntensity() of lighting.glsl at point [vertex] with [normal] - normalized here, as the fragment
+     * shader does with the interpolated one. [lightPosition] and [camera] are 3 values each.
+     */
+    fun intensity(vertex: FloatArray, vertexOffset: Int, normal: FloatArray, normalOffset: Int,
+                  lightPosition: FloatArray, camera: FloatArray): Float {
+        val normalLength = length(normal[normalOffset], normal[normalOffset + 1], normal[normalOffset + 2])
+        val normalX = normal[normalOffset] / normalLength
+        val normalY = normal[normalOffset + 1] / normalLength
+        val normalZ = normal[normalOffset + 2] / normalLength
+        val toLightX = lightPosition[0] - vertex[vertexOffset]
+        val toLightY = lightPosition[1] - vertex[vertexOffset + 1]
+        val toLightZ = lightPosition[2] - vertex[vertexOffset + 2]
+        val lightLength = length(toLightX, toLightY, toLightZ)
+        val lightX = toLightX / lightLength
+        val lightY = toLightY / lightLength
+        val lightZ = toLightZ / lightLength
+        val normalDotLight = normalX * lightX + normalY * lightY + normalZ * lightZ
+        var intensity = 0f
+        if (ambient != null) {
+            intensity += ambient
+        }
+        if (diffuse != null) {
+            intensity += diffuse * Math.max(normalDotLight, 0f)
+        }
+        if (specular != null) {
+            val toCameraX = camera[0] - vertex[vertexOffset]
+            val toCameraY = camera[1] - vertex[vertexOffset + 1]
+            val toCameraZ = camera[2] - vertex[vertexOffset + 2]
+            // reflect(-light, normal) = 2 * dot(normal, light) * normal - light
+            val lookDotReflect = (toCameraX * (2 * normalDotLight * normalX - lightX) +
+                    toCameraY * (2 * normalDotLight * normalY - lightY) +
+                    toCameraZ * (2 * normalDotLight * normalZ - lightZ)) / length(toCameraX, toCameraY, toCameraZ)
+            intensity += specular * Math.pow(Math.max(lookDotReflect, 0f).toDouble(), shininess.toDouble()).toFloat()
+        }
+        return intensity
+    }
+
+    /**
+     * Writes 4 components of white light of [intensity] mixed with [vertexColor] the way the fragment shader does.
+     */
+    fun color(intensity: Float, vertexColor: FloatArray, vertexColorOffset: Int, color: FloatArray, colorOffset: Int) {
+        val share = this.vertexColor
+        for (channel in 0 until 4) {
+            color[colorOffset + channel] = if (share != null) {
+                intensity + (vertexColor[vertexColorOffset + channel] - intensity) * share
+            } else {
+                intensity
+            }
+        }
+    }
+
+    private companion object {
+
+        fun length(x: Float, y: Float, z: Float) = Math.sqrt((x * x + y * y + z * z).toDouble()).toFloat()
+    }
+}
@@ -0,0 +1,75 @@
+package com.snap.scene
+
+import com.snap.math.Mat4
+
+/**
+ * View and projection of the scene. Their product, shared by everything drawn in a frame, is recomputed
+ * only after one of them changes.
+ */
+class Camera {
+
+    /**
+     * Read only.
+     */
+    val viewMatrix = Mat4.create()
+
+    /**
+     * Read only.
+     */
+    val projectionMatrix = Mat4.create()
+
+    private val viewProjection = Mat4.create()
+    private var isViewProjectionDirty = false
+
+    fun lookAt(eyeX: Float, eyeY: Float, eyeZ: Float,
+               centerX: Float, centerY: Float, centerZ: Float,
+               upX: Float, upY: Float, upZ: Float) = apply {
+        Mat4.lookAt(viewMatrix, 0, eyeX, eyeY, eyeZ, centerX, centerY, centerZ, upX, upY, upZ)
+        isViewProjectionDirty = true
+    }
+
+    fun frustum(left: Float, right: Float, bottom: Float, top: Float, near: Float, far: Float) = apply {
+        Mat4.frustum(projectionMatrix, 0, left, right, bottom, top, near, far)
+        isViewProjectionDirty = true
+    }
+
+    fun perspective(fovYInDegrees: Float, aspect: Float, near: Float, far: Float) = apply {
+        Mat4.perspective(projectionMatrix, 0, fovYInDegrees, aspect, near, far)
+        isViewProjectionDirty = true
+    }
+
+    fun ortho(left: Float, right: Float, bottom: Float, top: Float, near: Float, far: Float) = apply {
+        Mat4.ortho(projectionMatrix, 0, left, right, bottom, top, near, far)
+        isViewProjectionDirty = true
+    }
+
+    /**
+     * Projection x view. Read only.
+     */
+    val viewProjectionMatrix: FloatArray
+        get() {
+            if (isViewProjectionDirty) {
+                Mat4.multiply(viewProjection, 0, projectionMatrix, 0, viewMatrix, 0)
+                isViewProjectionDirty = false
+            }
+            return viewProjection
+        }
+
+    /**
+     * Writes Model-View-Projection matrix of [node] into [result] at [resultOffset].
+     */
+    fun modelViewProjection(node: SceneNode, result: FloatArray, resultOffset: Int) {
+        Mat4.multiply(result, resultOffset, viewProjectionMatrix, 0, node.worldMatrix, 0)
+    }
+
+    /**
+     * Distance of the origin of [node] from the eye along the view direction, e.g. to sort draws by.
+     * Negative behind the camera.
+     */
+    fun viewDepth(node: SceneNode): Float {
+        val world = node.worldMatrix
+        val view = viewMatrix
+        val viewZ = view[2] * world[12] + view[6] * world[13] + view[10] * world[14] + view[14]
+        return -viewZ
+    }
+}
@@ -0,0 +1,173 @@
+package com.snap.scene
+
+import com.snap.math.Bounds
+import com.snap.math.Frustum
+
+/**
+ * World space bounds of many objects kept as structure of arrays, tested against a [Frustum] in one
+ * sequential pass - draws of objects which end up outside are skipped.
+ *
+ * Every object is tested by its sphere first, which rejects most of the invisible ones with a dot product
+ * per plane, and only spheres crossing a plane are tested by the tighter box.
+ */
+class CullingSet(val capacity: Int) {
+
+    val centerX = FloatArray(capacity)
+    val centerY = FloatArray(capacity)
+    val centerZ = FloatArray(capacity)
+
+    /**
+     * Half sizes of the world space box.
+     */
+    val extentX = FloatArray(capacity)
+    val extentY = FloatArray(capacity)
+    val extentZ = FloatArray(capacity)
+
+    val radius = FloatArray(capacity)
+
+    /**
+     * Number of objects in use - [0, count) indices are valid.
+     */
+    var count = 0
+        private set
+
+    private val visible = BooleanArray(capacity)
+    private val visibleIndices = IntArray(capacity)
+
+    /**
+     * Objects found inside by the last [cull].
+     */
+    var visibleCount = 0
+        private set
+
+    /**
+     * Objects skipped by the last [cull].
+     */
+    val culledCount: Int
+        get() = count - visibleCount
+
+    /**
+     * Adds object with [bounds] as they are in world space, returns its index.
+     */
+    fun add(bounds: Bounds): Int {
+        if (count == capacity) {
+            throw IllegalStateException("Culling set is full - all $capacity objects are in use.")
+        }
+        val index = count++
+        set(index, bounds)
+        return index
+    }
+
+    /**
+     * Drops all objects, e.g. when their geometry is recreated.
+     */
+    fun clear() {
+        count = 0
+        visibleCount = 0
+    }
+
+    fun set(index: Int, bounds: Bounds) {
+        checkIndex(index)
+        centerX[index] = bounds.centerX
+        centerY[index] = bounds.centerY
+        centerZ[index] = bounds.centerZ
+        extentX[index] = bounds.extentX
+        extentY[index] = bounds.extentY
+        extentZ[index] = bounds.extentZ
+        radius[index] = bounds.radius
+    }
+
+    /**
+     * Moves object [index] to world space - its model space [bounds] transformed by affine [worldMatrix] at
+     * [offset], e.g. [SceneNode.worldMatrix]. The box stays axis aligned, so it grows with rotation.
+     */
+    fun setTransformed(index: Int, bounds: Bounds, worldMatrix: FloatArray, offset: Int) {
+        checkIndex(index)
+        val m = worldMatrix
+        val x = bounds.centerX
+        val y = bounds.centerY
+        val z = bounds.centerZ
+        centerX[index] = m[offset] * x + m[offset + 4] * y + m[offset + 8] * z + m[offset + 12]
+        centerY[index] = m[offset + 1] * x + m[offset + 5] * y + m[offset + 9] * z + m[offset + 13]
+        centerZ[index] = m[offset + 2] * x + m[offset + 6] * y + m[offset + 10] * z + m[offset + 14]
+        // every world axis extent is reached by the box's corner matching signs of the matrix row
+        val ex = bounds.extentX
+        val ey = bounds.extentY
+        val ez = bounds.extentZ
+        extentX[index] = Math.abs(m[offset]) * ex + Math.abs(m[offset + 4]) * ey + Math.abs(m[offset + 8]) * ez
+        extentY[index] = Math.abs(m[offset + 1]) * ex + Math.abs(m[offset + 5]) * ey + Math.abs(m[offset + 9]) * ez
+        extentZ[index] = Math.abs(m[offset + 2]) * ex + Math.abs(m[offset + 6]) * ey + Math.abs(m[offset + 10]) * ez
+        radius[index] = bounds.radius * maxColumnLength(m, offset)
+    }
+
+    /**
+     * Tests every object against [frustum]. Results hold until the next call.
+     */
+    fun cull(frustum: Frustum): Int {
+        val planes = frustum.planes
+        var visibleCount = 0
+        for (index in 0 until count) {
+            val x = centerX[index]
+            val y = centerY[index]
+            val z = centerZ[index]
+            val r = radius[index]
+            var isVisible = true
+            var plane = 0
+            while (isVisible && plane < planes.size) {
+                val a = planes[plane]
+                val b = planes[plane + 1]
+                val c = planes[plane + 2]
+                val distance = a * x + b * y + c * z + planes[plane + 3]
+                if (distance < -r) {
+                    isVisible = false
+                } else if (distance < r) {
+                    val reach = Math.abs(a) * extentX[index] + Math.abs(b) * extentY[index] + Math.abs(c) * extentZ[index]
+                    isVisible = distance + reach >= 0f
+                }
+                plane += 4
+            }
+            visible[index] = isVisible
+            if (isVisible) {
+                visibleIndices[visibleCount++] = index
+            }
+        }
+        this.visibleCount = visibleCount
+        return visibleCount
+    }
+
+    fun isVisible(index: Int): Boolean {
+        checkIndex(index)
+        return visible[index]
+    }
+
+    /**
+     * Index of the [i]th visible object, i in [0, visibleCount).
+     */
+    fun visibleIndex(i: Int): Int {
+        if (i !in 0 until visibleCount) {
+            throw IndexOutOfBoundsException("Visible object $i of $visibleCount.")
+        }
+        return visibleIndices[i]
+    }
+
+    private fun checkIndex(index: Int) {
+        if (index !in 0 until count) {
+            throw IndexOutOfBoundsException("Object $index of $count.")
+        }
+    }
+
+    companion object {
+
+        /**
+         * Largest scale of the upper 3x3 part of the matrix.
+         */
+        private fun maxColumnLength(m: FloatArray, offset: Int): Float {
+            var max = 0f
+            for (column in 0 until 3) {
+                val i = offset + column * 4
+                max = Math.max(max, m[i] * m[i] + m[i + 1] * m[i + 1] + m[i + 2] * m[i + 2])
+            }
+            return Math.sqrt(max.toDouble()).toFloat()
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.snap.scene
+
+private const val initialCapacity = 64
+
+private const val layerShift = 56
+private const val translucentBit = 1L shl 55
+private const val maxId = 0xFFFF
+private const val depthMask = (1L shl 23) - 1
+
+// opaque - program, texture, depth front to back
+private const val opaqueProgramShift = 39
+private const val opaqueTextureShift = 23
+
+// translucent - depth back to front, program, texture
+private const val translucentDepthShift = 32
+private const val translucentProgramShift = 16
+
+private const val radixBits = 8
+private const val radixBuckets = 1 shl radixBits
+
+/**
+ * Replays sorted draws, see [RenderQueue.replay].
+ */
+interface RenderCommands {
+
+    /**
+     * Issues [command] as given to [RenderQueue.submit] - e.g. index of a batch to draw.
+     */
+    fun draw(command: Int)
+}
+
+/**
+ * Draws of a frame, ordered to switch program and texture as rarely as possible instead of in the order
+ * they were written.
+ *
+ * Every draw is encoded as a 64 bit key, from the most significant bits: layer (8 bits), translucency (1),
+ * then program (16), texture (16) and depth (23) for opaque draws, which go front to back to benefit from
+ * early depth test, and inverted depth, program and texture for translucent ones, which have to blend back
+ * to front. Keys and commands live in primitive arrays and are radix sorted - no allocation once the queue
+ * grew to the size of the frame.
+ */
+class RenderQueue {
+
+    private var keys = LongArray(initialCapacity)
+    private var commands = IntArray(initialCapacity)
+    private var scratchKeys = LongArray(initialCapacity)
+    private var scratchCommands = IntArray(initialCapacity)
+    private val bucketOffsets = IntArray(radixBuckets)
+
+    var size = 0
+        private set
+
+    /**
+     * Program and texture switches the queue would cause in submission order, counted by [sort].
+     */
+    var unsortedStateChanges = 0
+        private set
+
+    /**
+     * Program and texture switches after [sort].
+     */
+    var sortedStateChanges = 0
+        private set
+
+    /**
+     * Starts a new frame.
+     */
+    fun clear() {
+        size = 0
+        unsortedStateChanges = 0
+        sortedStateChanges = 0
+    }
+
+    /**
+     * Adds a draw of [command] using [programId] and [textureId] (0 for none), both at most 65535.
+     * [depth] is the view space distance from the camera - anything behind it is treated as 0.
+     */
+    fun submit(layer: Int, isTranslucent: Boolean, programId: Int, textureId: Int, depth: Float, command: Int) {
+        if (layer !in 0..0xFF) {
+            throw IllegalArgumentException("Layer $layer is out of 0..255.")
+        }
+        if (programId !in 0..maxId || textureId !in 0..maxId) {
+            throw IllegalArgumentException("Program $programId and texture $textureId have to be in 0..$maxId.")
+        }
+        if (size == keys.size) {
+            grow()
+        }
+        keys[size] = keyOf(layer, isTranslucent, programId, textureId, depthBits(depth))
+        commands[size] = command
+        size++
+    }
+
+    /**
+     * Orders the draws submitted since [clear]. Equal keys keep their submission order.
+     */
+    fun sort() {
+        unsortedStateChanges = countStateChanges()
+        for (shift in 0 until Long.SIZE_BITS step radixBits) {
+            sortByDigit(shift)
+        }
+        sortedStateChanges = countStateChanges()
+    }
+
+    /**
+     * Command at [index] of the order given by the last [sort].
+     */
+    fun sortedCommand(index: Int): Int {
+        if (index !in 0 until size) {
+            throw IndexOutOfBoundsException("Command $index of $size.")
+        }
+        return commands[index]
+    }
+
+    /**
+     * Sorts and hands every command to [commands] in order.
+     */
+    fun replay(commands: RenderCommands) {
+        sort()
+        for (index in 0 until size) {
+            commands.draw(this.commands[index])
+        }
+    }
+
+    /**
+     * One stable counting pass over the 8 bit digit at [shift]. Skipped when all keys share the digit,
+     * which is what most of the high digits do in a frame.
+     */
+    private fun sortByDigit(shift: Int) {
+        val offsets = bucketOffsets
+        offsets.fill(0)
+        for (index in 0 until size) {
+            offsets[digit(keys[index], shift)]++
+        }
+        if (size == 0 || offsets[digit(keys[0], shift)] == size) {
+            return
+        }
+        var offset = 0
+        for (bucket in 0 until radixBuckets) {
+            val count = offsets[bucket]
+            offsets[bucket] = offset
+            offset += count
+        }
+        for (index in 0 until size) {
+            val key = keys[index]
+            val target = offsets[digit(key, shift)]++
+            scratchKeys[target] = key
+            scratchCommands[target] = commands[index]
+        }
+        val sortedKeys = scratchKeys
+        scratchKeys = keys
+        keys = sortedKeys
+        val sortedCommands = scratchCommands
+        scratchCommands = commands
+        commands = sortedCommands
+    }
+
+    private fun countStateChanges(): Int {
+        var changes = 0
+        var program = -1
+        var texture = -1
+        for (index in 0 until size) {
+            val key = keys[index]
+            val keyProgram = programOf(key)
+            val keyTexture = textureOf(key)
+            if (keyProgram != program) {
+                changes++
+                program = keyProgram
+            }
+            if (keyTexture != texture) {
+                changes++
+                texture = keyTexture
+            }
+        }
+        return changes
+    }
+
+    private fun grow() {
+        val capacity = keys.size * 2
+        keys = keys.copyOf(capacity)
+        commands = commands.copyOf(capacity)
+        scratchKeys = LongArray(capacity)
+        scratchCommands = IntArray(capacity)
+    }
+
+    companion object {
+
+        private fun keyOf(layer: Int, isTranslucent: Boolean, programId: Int, textureId: Int, depth: Long): Long {
+            val layerBits = layer.toLong() shl layerShift
+            return if (isTranslucent) {
+                layerBits or translucentBit or
+                        ((depthMask - depth) shl translucentDepthShift) or
+                        (programId.toLong() shl translucentProgramShift) or
+                        textureId.toLong()
+            } else {
+                layerBits or
+                        (programId.toLong() shl opaqueProgramShift) or
+                        (textureId.toLong() shl opaqueTextureShift) or
+                        depth
+            }
+        }
+
+        /**
+         * Top 23 bits of a non-negative float - the same order as the float itself.
+         */
+        private fun depthBits(depth: Float): Long {
+            val clamped = if (depth > 0f) depth else 0f
+            return (java.lang.Float.floatToRawIntBits(clamped) ushr 8).toLong() and depthMask
+        }
+
+        private fun programOf(key: Long) = if (key and translucentBit != 0L) {
+            (key ushr translucentProgramShift).toInt() and maxId
+        } else {
+            (key ushr opaqueProgramShift).toInt() and maxId
+        }
+
+        private fun textureOf(key: Long) = if (key and translucentBit != 0L) {
+            key.toInt() and maxId
+        } else {
+            (key ushr opaqueTextureShift).toInt() and maxId
+        }
+
+        private fun digit(key: Long, shift: Int) = (key ushr shift).toInt() and (radixBuckets - 1)
+    }
+}
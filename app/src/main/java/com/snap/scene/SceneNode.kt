@@ -0,0 +1,158 @@
+package com.snap.scene
+
+import com.snap.math.Mat4
+import com.snap.math.Quat
+
+/**
+ * Node of a transform hierarchy - e.g. boat with sails and hull as children, which move together with it.
+ *
+ * Position, rotation and scale are relative to the parent. Local and world matrices are cached and
+ * recomputed by [updateWorldTransforms] only when the node itself or any of its ancestors changed since
+ * the previous update.
+ */
+class SceneNode(val name: String = "") {
+
+    var parent: SceneNode? = null
+        private set
+
+    private val children = ArrayList<SceneNode>()
+
+    private val position = FloatArray(3)
+    private val rotation = FloatArray(Quat.size).also { Quat.setIdentity(it, 0) }
+    private val scale = floatArrayOf(1f, 1f, 1f)
+
+    /**
+     * Translation x rotation x scale of this node. Read only.
+     */
+    val localMatrix = Mat4.create()
+
+    /**
+     * Parent's world matrix x [localMatrix], valid after [updateWorldTransforms]. Read only.
+     */
+    val worldMatrix = Mat4.create()
+
+    private var isLocalDirty = false
+    private var isWorldDirty = false
+
+    val childCount: Int
+        get() = children.size
+
+    fun child(index: Int) = children[index]
+
+    fun addChild(child: SceneNode) = apply {
+        if (child.parent != null) {
+            throw IllegalArgumentException("Node ${child.name} already has parent ${child.parent?.name}.")
+        }
+        var ancestor: SceneNode? = this
+        while (ancestor != null) {
+            if (ancestor === child) {
+                throw IllegalArgumentException("Node ${child.name} can not become its own descendant.")
+            }
+            ancestor = ancestor.parent
+        }
+        children.add(child)
+        child.parent = this
+        child.isWorldDirty = true
+    }
+
+    fun removeChild(child: SceneNode) {
+        if (children.remove(child)) {
+            child.parent = null
+            child.isWorldDirty = true
+        }
+    }
+
+    fun setPosition(x: Float, y: Float, z: Float) = apply {
+        if (position[0] != x || position[1] != y || position[2] != z) {
+            position[0] = x
+            position[1] = y
+            position[2] = z
+            isLocalDirty = true
+        }
+    }
+
+    /**
+     * Rotation of [angleInDegrees] around axis ([x], [y], [z]).
+     */
+    fun setRotation(angleInDegrees: Float, x: Float, y: Float, z: Float) = apply {
+        Quat.setAxisAngle(rotation, 0, angleInDegrees, x, y, z)
+        isLocalDirty = true
+    }
+
+    /**
+     * Rotation given as unit quaternion.
+     */
+    fun setRotation(quaternion: FloatArray, quaternionOffset: Int) = apply {
+        System.arraycopy(quaternion, quaternionOffset, rotation, 0, Quat.size)
+        isLocalDirty = true
+    }
+
+    fun setScale(x: Float, y: Float, z: Float) = apply {
+        if (scale[0] != x || scale[1] != y || scale[2] != z) {
+            scale[0] = x
+            scale[1] = y
+            scale[2] = z
+            isLocalDirty = true
+        }
+    }
+
+    /**
+     * Brings world matrices of this node and all its descendants up to date. Meant to be called on the
+     * root once per frame, before anything reads [worldMatrix]. Returns number of recomputed world matrices.
+     */
+    fun updateWorldTransforms(): Int {
+        val parentNode = parent
+        if (parentNode != null && parentNode.hasDirtyAncestorOrSelf()) {
+            // a subtree updated on its own has to pick up changes of ancestors above it first
+            return parentNode.updateWorldTransforms()
+        }
+        return update(false)
+    }
+
+    private fun hasDirtyAncestorOrSelf(): Boolean {
+        var node: SceneNode? = this
+        while (node != null) {
+            if (node.isLocalDirty || node.isWorldDirty) {
+                return true
+            }
+            node = node.parent
+        }
+        return false
+    }
+
+    private fun update(parentWorldChanged: Boolean): Int {
+        if (isLocalDirty) {
+            computeLocalMatrix()
+            isLocalDirty = false
+            isWorldDirty = true
+        }
+        var recomputed = 0
+        val worldChanged = parentWorldChanged || isWorldDirty
+        if (worldChanged) {
+            val parentNode = parent
+            if (parentNode == null) {
+                Mat4.copy(worldMatrix, 0, localMatrix, 0)
+            } else {
+                Mat4.multiply(worldMatrix, 0, parentNode.worldMatrix, 0, localMatrix, 0)
+            }
+            isWorldDirty = false
+            recomputed++
+        }
+        for (i in children.indices) {
+            recomputed += children[i].update(worldChanged)
+        }
+        return recomputed
+    }
+
+    private fun computeLocalMatrix() {
+        Quat.toMat4(localMatrix, 0, rotation, 0)
+        for (row in 0 until 3) {
+            localMatrix[row] *= scale[0]
+            localMatrix[4 + row] *= scale[1]
+            localMatrix[8 + row] *= scale[2]
+            localMatrix[12 + row] = position[row]
+        }
+    }
+
+    override fun toString() = "SceneNode($name, $childCount children)"
+}
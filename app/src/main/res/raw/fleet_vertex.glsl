@@ -0,0 +1,25 @@
+// Boats of a fleet, every one placed by its own Model-View-Projection matrix - see InstancedMesh.
+
+attribute vec3 a_Position;
+attribute vec4 a_Color;
+
+#ifdef INSTANCED_ARRAYS
+// advances once per instance
+attribute mat4 a_instanceMatrix;
+#else
+// geometry is repeated INSTANCES_PER_DRAW times, every copy tagged by its index
+uniform mat4 u_instanceMatrices[INSTANCES_PER_DRAW];
+attribute float a_instanceIndex;
+#endif
+
+varying vec4 v_Color;
+
+void main() {
+#ifdef INSTANCED_ARRAYS
+    mat4 modelViewProjection = a_instanceMatrix;
+#else
+    mat4 modelViewProjection = u_instanceMatrices[int(a_instanceIndex)];
+#endif
+    v_Color = a_Color;
+    gl_Position = modelViewProjection * vec4(a_Position, 1.0);
+}
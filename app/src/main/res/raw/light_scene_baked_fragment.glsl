@@ -0,0 +1,8 @@
+precision mediump float;
+
+// light is already in the color - baked per vertex by LightingBaker
+varying vec4 v_color;
+
+void main() {
+    gl_FragColor = v_color;
+}
@@ -0,0 +1,11 @@
+uniform mat4 u_modelViewProjectionMatrix;
+
+attribute vec3 a_vertex;
+attribute vec4 a_color;
+
+varying vec4 v_color;
+
+void main() {
+    v_color = a_color;
+    gl_Position = u_modelViewProjectionMatrix * vec4(a_vertex, 1.0);
+}
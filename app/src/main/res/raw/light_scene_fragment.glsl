@@ -0,0 +1,20 @@
+precision mediump float;
+
+#include "lighting.glsl"
+
+uniform vec3 u_camera;
+uniform vec3 u_lightPosition;
+
+varying vec3 v_vertex;
+varying vec3 v_normal;
+varying vec4 v_color;
+
+void main() {
+    vec4 lightColor = vec4(lightIntensity(normalize(v_normal), v_vertex, u_lightPosition, u_camera));
+#ifdef VERTEX_COLOR
+    // share of vertex color mixed into the light
+    gl_FragColor = mix(lightColor, v_color, VERTEX_COLOR);
+#else
+    gl_FragColor = lightColor;
+#endif
+}
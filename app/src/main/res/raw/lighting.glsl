@@ -0,0 +1,18 @@
+// Intensity of white point light - sum of the terms switched on by defines, each one set to its weight:
+// AMBIENT, DIFFUSE, and SPECULAR with SHININESS exponent. Terms not defined are not computed at all.
+float lightIntensity(vec3 normal, vec3 vertex, vec3 lightPosition, vec3 camera) {
+    float intensity = 0.0;
+#ifdef AMBIENT
+    intensity += AMBIENT;
+#endif
+    vec3 lightVector = normalize(lightPosition - vertex);
+#ifdef DIFFUSE
+    intensity += DIFFUSE * max(dot(normal, lightVector), 0.0);
+#endif
+#ifdef SPECULAR
+    vec3 lookVector = normalize(camera - vertex);
+    vec3 reflectVector = reflect(-lightVector, normal);
+    intensity += SPECULAR * pow(max(dot(lookVector, reflectVector), 0.0), SHININESS);
+#endif
+    return intensity;
+}
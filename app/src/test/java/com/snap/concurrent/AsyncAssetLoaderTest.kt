@@ -0,0 +1,144 @@
+package com.snap.concurrent
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+class AsyncAssetLoaderTest {
+
+    private val loader = AsyncAssetLoader(frameTimeBudgetNanos = TimeUnit.SECONDS.toNanos(10), frameByteBudget = 250,
+            workers = ParallelFor.newWorkerPool(2, "asset-loader-test"))
+
+    private val glThreadUploads = ArrayList<String>()
+
+    private val upload = object : AssetUpload<String, Int> {
+        override fun sizeInBytes(data: String) = 100
+
+        override fun upload(data: String): Int {
+            glThreadUploads.add(data)
+            return data.length
+        }
+    }
+
+    @After
+    fun tearDown() {
+        loader.shutdown()
+    }
+
+    @Test
+    fun nothingIsUploadedOutsideUploadReady() {
+        val future = loader.load(Callable { "texture" }, upload)
+        awaitReady(1)
+
+        assertFalse(future.isDone)
+        assertTrue(glThreadUploads.isEmpty())
+        assertEquals(1, loader.pendingCount)
+
+        assertEquals(1, loader.uploadReady())
+        assertEquals(7, future.get().toInt())
+        assertEquals(listOf("texture"), glThreadUploads)
+        assertEquals(0, loader.pendingCount)
+    }
+
+    @Test
+    fun uploadsAreSpreadOverFramesByByteBudget() {
+        val futures = (0 until 5).map { loader.load(Callable { "asset $it" }, upload) }
+        awaitReady(5)
+
+        assertEquals(2, loader.uploadReady())
+        assertEquals(2, loader.uploadReady())
+        assertEquals(1, loader.uploadReady())
+        assertEquals(0, loader.uploadReady())
+        assertTrue(futures.all { it.isDone })
+        assertEquals(500L, loader.uploadedBytes)
+    }
+
+    @Test
+    fun assetBiggerThanBudgetStillGoesThrough() {
+        val future = loader.load(Callable { "huge" }, object : AssetUpload<String, String> {
+            override fun sizeInBytes(data: String) = 1000
+
+            override fun upload(data: String) = data
+        })
+        // two workers could decode the small one first
+        awaitReady(1)
+        loader.load(Callable { "small" }, upload)
+        awaitReady(2)
+
+        assertEquals(1, loader.uploadReady())
+        assertEquals("huge", future.get())
+        assertEquals(1, loader.uploadReady())
+    }
+
+    @Test
+    fun exhaustedTimeBudgetLeavesOneUploadPerFrame() {
+        val slowLoader = AsyncAssetLoader(frameTimeBudgetNanos = 0, workers = ParallelFor.newWorkerPool(1))
+        try {
+            repeat(3) { slowLoader.load(Callable { "asset" }, upload) }
+            while (slowLoader.readyCount < 3) {
+                Thread.sleep(1)
+            }
+
+            assertEquals(1, slowLoader.uploadReady())
+            assertEquals(1, slowLoader.uploadReady())
+            assertEquals(1, slowLoader.uploadReady())
+        } finally {
+            slowLoader.shutdown()
+        }
+    }
+
+    @Test
+    fun decodingFailureReachesTheFuture() {
+        val failure = IllegalStateException("corrupted")
+        val future = loader.load(Callable<String> { throw failure }, upload)
+        awaitReady(1)
+
+        assertEquals(1, loader.uploadReady())
+        try {
+            future.get()
+            fail()
+        } catch (e: ExecutionException) {
+            assertSame(failure, e.cause)
+        }
+        assertTrue(glThreadUploads.isEmpty())
+        assertEquals(0L, loader.uploadedBytes)
+    }
+
+    @Test
+    fun cancelledAssetIsNotUploaded() {
+        val decodingStarted = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val future = loader.load(Callable {
+            decodingStarted.countDown()
+            release.await()
+            "late"
+        }, upload)
+        decodingStarted.await()
+
+        assertTrue(future.cancel(false))
+        release.countDown()
+        awaitReady(1)
+        loader.uploadReady()
+
+        assertTrue(glThreadUploads.isEmpty())
+        assertEquals(0, loader.pendingCount)
+    }
+
+    private fun awaitReady(count: Int) {
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (loader.readyCount < count) {
+            if (System.nanoTime() > deadline) {
+                fail("Only ${loader.readyCount} of $count assets were decoded.")
+            }
+            Thread.sleep(1)
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.snap.concurrent
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class FixedStepSimulationTest {
+
+    private var now = 0L
+
+    private val counter = object : Simulation<Int> {
+        override fun step(state: Int, stepSeconds: Float) = state + 1
+    }
+
+    private fun simulation(maxStepsPerUpdate: Int = 5) =
+            FixedStepSimulation(counter, 0, stepNanos, maxStepsPerUpdate) { now }
+
+    @Test
+    fun stepsFollowTimeNotCallCount() {
+        val simulation = simulation()
+
+        now = stepNanos * 3 + 10
+        assertEquals(3, simulation.advanceTo(now))
+        assertEquals(0, simulation.advanceTo(now))
+        assertEquals(0, simulation.advanceTo(now))
+
+        val snapshots = simulation.snapshots
+        assertEquals(3L, snapshots.tick)
+        assertEquals(2, snapshots.previous)
+        assertEquals(3, snapshots.latest)
+        assertEquals(stepNanos * 3, snapshots.latestTimeNanos)
+    }
+
+    @Test
+    fun alphaMovesFromPreviousToLatestWithinStep() {
+        val simulation = simulation()
+        simulation.advanceTo(stepNanos)
+        val snapshots = simulation.snapshots
+
+        assertEquals(0f, snapshots.alpha(stepNanos), 0f)
+        assertEquals(0.25f, snapshots.alpha(stepNanos + stepNanos / 4), 1e-6f)
+        // a late frame shows the latest state, never extrapolates
+        assertEquals(1f, snapshots.alpha(stepNanos * 5), 0f)
+    }
+
+    @Test
+    fun publishedSnapshotsStayUnchanged() {
+        val simulation = simulation()
+        simulation.advanceTo(stepNanos)
+        val taken = simulation.snapshots
+
+        simulation.advanceTo(stepNanos * 4)
+
+        assertEquals(1, taken.latest)
+        assertEquals(0, taken.previous)
+        assertEquals(4, simulation.snapshots.latest)
+    }
+
+    @Test
+    fun timeBeyondCatchUpLimitIsDropped() {
+        val simulation = simulation(maxStepsPerUpdate = 4)
+
+        now = stepNanos * 10
+        assertEquals(4, simulation.advanceTo(now))
+
+        assertEquals(6L, simulation.droppedStepCount)
+        assertEquals(4, simulation.snapshots.latest)
+        // the simulation goes on from now at its own rate
+        assertEquals(1, simulation.advanceTo(now + stepNanos))
+        assertEquals(4, simulation.snapshots.previous)
+        assertEquals(5, simulation.snapshots.latest)
+    }
+
+    @Test
+    fun threadAdvancesSimulationWhileRendererReads() {
+        val simulation = FixedStepSimulation(counter, 0, TimeUnit.MILLISECONDS.toNanos(1))
+        val initial = simulation.snapshots
+
+        simulation.start()
+        try {
+            assertTrue(simulation.isRunning)
+            val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+            var last = initial
+            while (simulation.snapshots.tick < 20 && System.nanoTime() < deadline) {
+                val snapshots = simulation.snapshots
+                // states of a pair are a step apart, ticks never go back
+                assertTrue(snapshots.latest - snapshots.previous in 0..1)
+                assertTrue(snapshots.tick >= last.tick)
+                last = snapshots
+                Thread.sleep(1)
+            }
+        } finally {
+            simulation.stop()
+        }
+
+        assertFalse(simulation.isRunning)
+        assertTrue(simulation.snapshots.tick >= 20)
+        val stopped = simulation.snapshots
+        Thread.sleep(20)
+        assertSame(stopped, simulation.snapshots)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun stepHasToBePositive() {
+        FixedStepSimulation(counter, 0, 0L)
+    }
+
+    private companion object {
+        val stepNanos = TimeUnit.MILLISECONDS.toNanos(16)
+    }
+}
@@ -0,0 +1,60 @@
+package com.snap.concurrent
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicIntegerArray
+
+class ParallelForTest {
+
+    private val parallelFor = ParallelFor(3)
+
+    @After
+    fun tearDown() {
+        parallelFor.shutdown()
+    }
+
+    @Test
+    fun everyIndexIsVisitedExactlyOnce() {
+        val visits = AtomicIntegerArray(1001)
+
+        parallelFor.run(1001, object : RangeTask {
+            override fun run(from: Int, to: Int) {
+                for (i in from until to) {
+                    visits.incrementAndGet(i)
+                }
+            }
+        })
+
+        for (i in 0 until visits.length()) {
+            assertEquals(1, visits.get(i))
+        }
+    }
+
+    @Test
+    fun fewerItemsThanThreadsStillWork() {
+        val visits = AtomicIntegerArray(2)
+
+        parallelFor.run(2, object : RangeTask {
+            override fun run(from: Int, to: Int) {
+                for (i in from until to) {
+                    visits.incrementAndGet(i)
+                }
+            }
+        })
+
+        assertEquals(1, visits.get(0))
+        assertEquals(1, visits.get(1))
+    }
+
+    @Test(expected = RuntimeException::class)
+    fun failureOfWorkerChunkIsRethrown() {
+        parallelFor.run(300, object : RangeTask {
+            override fun run(from: Int, to: Int) {
+                if (from > 0) {
+                    throw IllegalStateException("chunk $from failed")
+                }
+            }
+        })
+    }
+}
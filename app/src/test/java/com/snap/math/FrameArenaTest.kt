@@ -0,0 +1,45 @@
+package com.snap.math
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class FrameArenaTest {
+
+    private val arena = FrameArena()
+
+    private fun frame() {
+        arena.reset()
+        val view = arena.mat4()
+        val mvp = arena.mat4()
+        Mat4.lookAt(view, 0, 0f, 0f, 3f, 0f, 0f, 0f, 0f, 1f, 0f)
+        Mat4.multiply(mvp, 0, view, 0, view, 0)
+        arena.vec3()
+        arena.quat()
+    }
+
+    @Test
+    fun steadyStateFramesDoNotAllocate() {
+        frame()
+        val afterFirstFrame = arena.allocatedArrays
+
+        repeat(100) { frame() }
+
+        assertEquals(4, afterFirstFrame)
+        assertEquals(afterFirstFrame, arena.allocatedArrays)
+    }
+
+    @Test
+    fun arraysAreReusedAndResetAfterReset() {
+        val first = arena.mat4()
+        first[0] = 5f
+        arena.reset()
+
+        val second = arena.mat4()
+
+        assertSame(first, second)
+        assertArrayEquals(Mat4.create(), second, 0f)
+        assertEquals(1, arena.usedArrays)
+    }
+}
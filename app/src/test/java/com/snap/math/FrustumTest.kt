@@ -0,0 +1,82 @@
+package com.snap.math
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class FrustumTest {
+
+    // camera at z = 5 looking down -Z, sees -1..1 at the near plane z = 4 and -10..10 at the far one z = -5
+    private val viewProjection: FloatArray = Mat4.create().also {
+        val view = FloatArray(Mat4.size)
+        Mat4.frustum(it, 0, -1f, 1f, -1f, 1f, 1f, 10f)
+        Mat4.lookAt(view, 0, 0f, 0f, 5f, 0f, 0f, 0f, 0f, 1f, 0f)
+        Mat4.multiply(it, 0, it, 0, view, 0)
+    }
+
+    private val frustum = Frustum().set(viewProjection, 0)
+
+    @Test
+    fun orthographicPlanesAreBoxSides() {
+        val projection = Mat4.create()
+        Mat4.ortho(projection, 0, -2f, 2f, -1f, 1f, 1f, 3f)
+
+        val planes = Frustum().set(projection, 0).planes
+
+        assertArrayEquals(floatArrayOf(
+                1f, 0f, 0f, 2f,
+                -1f, 0f, 0f, 2f,
+                0f, 1f, 0f, 1f,
+                0f, -1f, 0f, 1f,
+                0f, 0f, -1f, -1f,
+                0f, 0f, 1f, 3f), planes, 1e-5f)
+    }
+
+    @Test
+    fun spheresInsideAndOutside() {
+        assertTrue(frustum.intersectsSphere(0f, 0f, 0f, 0.1f))
+        assertTrue(frustum.intersectsSphere(0f, 0f, 6f, 2.5f))
+        assertFalse(frustum.intersectsSphere(0f, 0f, 6f, 0.5f))
+        assertFalse(frustum.intersectsSphere(0f, 0f, -6f, 0.5f))
+        assertFalse(frustum.intersectsSphere(8f, 0f, 0f, 1f))
+        assertTrue(frustum.intersectsSphere(5.5f, 0f, 0f, 1f))
+    }
+
+    @Test
+    fun boxesInsideAndOutside() {
+        assertTrue(frustum.intersectsBox(0f, 0f, 0f, 0.1f, 0.1f, 0.1f))
+        assertFalse(frustum.intersectsBox(0f, 20f, 0f, 1f, 1f, 1f))
+        assertTrue(frustum.intersectsBox(0f, 20f, 0f, 1f, 19f, 1f))
+    }
+
+    @Test
+    fun boundsOfPoints() {
+        val bounds = Bounds.of(floatArrayOf(
+                -1f, 0f, 2f,
+                3f, -2f, 2f,
+                1f, 2f, 4f))
+
+        assertEquals(-1f, bounds.minX, 0f)
+        assertEquals(4f, bounds.maxZ, 0f)
+        assertEquals(1f, bounds.centerX, 0f)
+        assertEquals(2f, bounds.extentY, 0f)
+        // the farthest points are (-1, 0, 2) and (3, -2, 2) from center (1, 0, 3)
+        assertEquals(Math.sqrt(9.0).toFloat(), bounds.radius, 1e-6f)
+    }
+
+    @Test
+    fun boundsOf2dPointsAreFlat() {
+        val bounds = Bounds.of(floatArrayOf(0f, 0f, 2f, 2f), 2)
+
+        assertEquals(0f, bounds.extentZ, 0f)
+        assertEquals(Math.sqrt(2.0).toFloat(), bounds.radius, 1e-6f)
+        assertTrue(frustum.intersects(bounds))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun noPointsHaveNoBounds() {
+        Bounds.of(FloatArray(0))
+    }
+}
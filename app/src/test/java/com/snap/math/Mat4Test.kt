@@ -0,0 +1,198 @@
+package com.snap.math
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class Mat4Test {
+
+    private val random = Random(7)
+
+    private fun randomMatrix() = FloatArray(Mat4.size) { random.nextFloat() * 4f - 2f }
+
+    /**
+     * Straightforward column-major product, the definition android.opengl.Matrix.multiplyMM follows.
+     */
+    private fun referenceProduct(lhs: FloatArray, rhs: FloatArray) = FloatArray(Mat4.size) { index ->
+        val row = index % 4
+        val column = index / 4
+        (0 until 4).fold(0f) { sum, k -> sum + lhs[row + 4 * k] * rhs[k + 4 * column] }
+    }
+
+    @Test
+    fun multiplyMatchesColumnMajorDefinition() {
+        val lhs = randomMatrix()
+        val rhs = randomMatrix()
+        val result = FloatArray(Mat4.size)
+
+        Mat4.multiply(result, 0, lhs, 0, rhs, 0)
+
+        assertArrayEquals(referenceProduct(lhs, rhs), result, 1e-6f)
+    }
+
+    @Test
+    fun multiplyMayWriteIntoItsInputs() {
+        val lhs = randomMatrix()
+        val rhs = randomMatrix()
+        val expected = referenceProduct(lhs, rhs)
+        val intoLhs = lhs.copyOf()
+        val intoRhs = rhs.copyOf()
+
+        Mat4.multiply(intoLhs, 0, intoLhs, 0, rhs, 0)
+        Mat4.multiply(intoRhs, 0, lhs, 0, intoRhs, 0)
+
+        assertArrayEquals(expected, intoLhs, 1e-6f)
+        assertArrayEquals(expected, intoRhs, 1e-6f)
+    }
+
+    @Test
+    fun offsetsAreRespected() {
+        val storage = FloatArray(3 * Mat4.size)
+        val lhs = randomMatrix()
+        val rhs = randomMatrix()
+        System.arraycopy(lhs, 0, storage, 16, 16)
+        System.arraycopy(rhs, 0, storage, 32, 16)
+
+        Mat4.multiply(storage, 0, storage, 16, storage, 32)
+
+        assertArrayEquals(referenceProduct(lhs, rhs), storage.copyOfRange(0, 16), 1e-6f)
+    }
+
+    @Test
+    fun lookAtMatchesAndroidMatrix() {
+        val view = FloatArray(Mat4.size)
+
+        Mat4.lookAt(view, 0, 0f, 0f, 3f, 0f, 0f, 0f, 0f, 1f, 0f)
+
+        // values android.opengl.Matrix.setLookAtM produces for the same camera
+        assertArrayEquals(floatArrayOf(
+                1f, 0f, 0f, 0f,
+                0f, 1f, 0f, 0f,
+                0f, 0f, 1f, 0f,
+                0f, 0f, -3f, 1f), view, 0f)
+    }
+
+    @Test
+    fun lookAtMovesEyeToOriginAndCenterOntoNegativeZ() {
+        val view = FloatArray(Mat4.size)
+        val eye = floatArrayOf(4f, 1f, -2f)
+        val center = floatArrayOf(0.5f, 0f, 1f)
+        val transformed = FloatArray(3)
+
+        Mat4.lookAt(view, 0, eye[0], eye[1], eye[2], center[0], center[1], center[2], 0f, 1f, 0f)
+
+        Vec3.transformPoint(transformed, 0, view, 0, eye, 0)
+        assertArrayEquals(floatArrayOf(0f, 0f, 0f), transformed, 1e-5f)
+        Vec3.transformPoint(transformed, 0, view, 0, center, 0)
+        assertEquals(0f, transformed[0], 1e-5f)
+        assertEquals(0f, transformed[1], 1e-5f)
+        assertTrue(transformed[2] < 0f)
+    }
+
+    @Test
+    fun frustumMatchesAndroidMatrix() {
+        val projection = FloatArray(Mat4.size)
+
+        Mat4.frustum(projection, 0, -1f, 1f, -1f, 1f, 1f, 10f)
+
+        assertArrayEquals(floatArrayOf(
+                1f, 0f, 0f, 0f,
+                0f, 1f, 0f, 0f,
+                0f, 0f, -11f / 9f, -1f,
+                0f, 0f, -20f / 9f, 0f), projection, 1e-6f)
+    }
+
+    @Test
+    fun perspectiveMapsNearAndFarPlanesToClipBounds() {
+        val projection = FloatArray(Mat4.size)
+        val point = FloatArray(3)
+
+        Mat4.perspective(projection, 0, 90f, 1f, 1f, 10f)
+
+        Vec3.transformPoint(point, 0, projection, 0, floatArrayOf(1f, 1f, -1f), 0)
+        assertArrayEquals(floatArrayOf(1f, 1f, -1f), point, 1e-5f)
+        Vec3.transformPoint(point, 0, projection, 0, floatArrayOf(0f, 0f, -10f), 0)
+        assertEquals(1f, point[2], 1e-5f)
+    }
+
+    @Test
+    fun orthoMapsBoxOntoClipCube() {
+        val projection = FloatArray(Mat4.size)
+        val point = FloatArray(3)
+
+        Mat4.ortho(projection, 0, 0f, 320f, 0f, 480f, -1f, 1f)
+
+        Vec3.transformPoint(point, 0, projection, 0, floatArrayOf(320f, 0f, 1f), 0)
+        assertArrayEquals(floatArrayOf(1f, -1f, -1f), point, 1e-6f)
+    }
+
+    @Test
+    fun invertedMatrixGivesIdentityProduct() {
+        val m = Mat4.create()
+        Mat4.translate(m, 0, 1f, -2f, 3f)
+        Mat4.rotate(m, 0, 33f, 1f, 1f, 0f)
+        Mat4.scale(m, 0, 2f, 0.5f, 1f)
+        val inverse = FloatArray(Mat4.size)
+        val product = FloatArray(Mat4.size)
+
+        assertTrue(Mat4.invert(inverse, 0, m, 0))
+        Mat4.multiply(product, 0, m, 0, inverse, 0)
+
+        assertArrayEquals(Mat4.create(), product, 1e-5f)
+    }
+
+    @Test
+    fun singularMatrixIsNotInverted() {
+        val result = FloatArray(Mat4.size) { 42f }
+
+        assertFalse(Mat4.invert(result, 0, FloatArray(Mat4.size), 0))
+        assertEquals(42f, result[0], 0f)
+    }
+
+    @Test
+    fun transposeMayWriteIntoItsInput() {
+        val m = randomMatrix()
+        val transposed = m.copyOf()
+
+        Mat4.transpose(transposed, 0, transposed, 0)
+
+        for (row in 0 until 4) {
+            for (column in 0 until 4) {
+                assertEquals(m[column * 4 + row], transposed[row * 4 + column], 0f)
+            }
+        }
+    }
+
+    @Test
+    fun normalMatrixKeepsNormalsPerpendicularUnderNonUniformScale() {
+        val modelView = Mat4.create()
+        Mat4.scale(modelView, 0, 4f, 1f, 1f)
+        val normalMatrix = FloatArray(9)
+        // surface along (1, 1, 0) has normal (1, -1, 0)
+        val tangent = floatArrayOf(1f, 1f, 0f)
+        val normal = floatArrayOf(1f, -1f, 0f)
+
+        assertTrue(Mat4.normalMatrix(normalMatrix, 0, modelView, 0))
+
+        Vec3.transformDirection(tangent, 0, modelView, 0, tangent, 0)
+        val transformedNormal = FloatArray(3)
+        for (row in 0 until 3) {
+            transformedNormal[row] = (0 until 3).fold(0f) { sum, k -> sum + normalMatrix[row + 3 * k] * normal[k] }
+        }
+        assertEquals(0f, Vec3.dot(tangent, 0, transformedNormal, 0), 1e-6f)
+    }
+
+    @Test
+    fun rotateTurnsXAxisIntoYAxis() {
+        val m = Mat4.create()
+        val axis = floatArrayOf(1f, 0f, 0f)
+
+        Mat4.rotate(m, 0, 90f, 0f, 0f, 2f)
+        Vec3.transformDirection(axis, 0, m, 0, axis, 0)
+
+        assertArrayEquals(floatArrayOf(0f, 1f, 0f), axis, 1e-6f)
+    }
+}
@@ -0,0 +1,69 @@
+package com.snap.math
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Test
+
+class QuatTest {
+
+    @Test
+    fun matrixOfQuaternionRotatesLikeMat4Rotate() {
+        val q = FloatArray(Quat.size)
+        val fromQuat = FloatArray(Mat4.size)
+        val fromMat4 = Mat4.create()
+
+        Quat.setAxisAngle(q, 0, 70f, 1f, 2f, -1f)
+        Quat.toMat4(fromQuat, 0, q, 0)
+        Mat4.rotate(fromMat4, 0, 70f, 1f, 2f, -1f)
+
+        assertArrayEquals(fromMat4, fromQuat, 1e-6f)
+    }
+
+    @Test
+    fun productAppliesRightRotationFirst() {
+        val aroundZ = FloatArray(Quat.size)
+        val aroundX = FloatArray(Quat.size)
+        Quat.setAxisAngle(aroundZ, 0, 90f, 0f, 0f, 1f)
+        Quat.setAxisAngle(aroundX, 0, 90f, 1f, 0f, 0f)
+        val v = floatArrayOf(1f, 0f, 0f)
+
+        // x goes to y around Z, then y goes to z around X
+        Quat.multiply(aroundX, 0, aroundX, 0, aroundZ, 0)
+        Quat.rotateVec3(v, 0, aroundX, 0, v, 0)
+
+        assertArrayEquals(floatArrayOf(0f, 0f, 1f), v, 1e-6f)
+    }
+
+    @Test
+    fun slerpHalfwayIsHalfTheAngle() {
+        val start = FloatArray(Quat.size)
+        val end = FloatArray(Quat.size)
+        val halfway = FloatArray(Quat.size)
+        val expected = FloatArray(Quat.size)
+        Quat.setIdentity(start, 0)
+        Quat.setAxisAngle(end, 0, 120f, 0f, 1f, 0f)
+        Quat.setAxisAngle(expected, 0, 60f, 0f, 1f, 0f)
+
+        Quat.slerp(halfway, 0, start, 0, end, 0, 0.5f)
+
+        assertArrayEquals(expected, halfway, 1e-6f)
+    }
+
+    @Test
+    fun slerpTakesShorterArc() {
+        val start = FloatArray(Quat.size)
+        val end = FloatArray(Quat.size)
+        val halfway = FloatArray(Quat.size)
+        val expected = FloatArray(Quat.size)
+        Quat.setIdentity(start, 0)
+        Quat.setAxisAngle(end, 0, 90f, 0f, 0f, 1f)
+        Quat.setAxisAngle(expected, 0, 45f, 0f, 0f, 1f)
+        // same rotation, opposite sign
+        for (i in 0 until Quat.size) {
+            end[i] = -end[i]
+        }
+
+        Quat.slerp(halfway, 0, start, 0, end, 0, 0.5f)
+
+        assertArrayEquals(expected, halfway, 1e-6f)
+    }
+}
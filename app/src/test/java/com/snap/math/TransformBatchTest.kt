@@ -0,0 +1,82 @@
+package com.snap.math
+
+import com.snap.concurrent.ParallelFor
+import org.junit.Assert.assertArrayEquals
+import org.junit.Test
+import java.util.Random
+
+class TransformBatchTest {
+
+    private val random = Random(11)
+
+    private val viewProjection = Mat4.create().also {
+        val view = FloatArray(Mat4.size)
+        Mat4.frustum(it, 0, -1f, 1f, -1f, 1f, 1f, 10f)
+        Mat4.lookAt(view, 0, 1f, 2f, 4f, 0f, 0f, 0f, 0f, 1f, 0f)
+        Mat4.multiply(it, 0, it, 0, view, 0)
+    }
+
+    private fun randomBatch(count: Int) = TransformBatch(count).apply {
+        repeat(count) {
+            val index = add()
+            setPosition(index, random.nextFloat() * 10f - 5f, random.nextFloat(), -random.nextFloat() * 5f)
+            setRotationAxisAngle(index, random.nextFloat() * 360f, random.nextFloat(), random.nextFloat(), 0.5f)
+            setScale(index, 0.5f + random.nextFloat(), 1f, 2f)
+        }
+    }
+
+    /**
+     * What renderers used to do - model matrix per object, then multiply by view-projection.
+     */
+    private fun perObjectMvp(batch: TransformBatch, index: Int): FloatArray {
+        val rotation = floatArrayOf(batch.rotationX[index], batch.rotationY[index],
+                batch.rotationZ[index], batch.rotationW[index])
+        val model = FloatArray(Mat4.size)
+        val rotationMatrix = FloatArray(Mat4.size)
+        Mat4.setIdentity(model, 0)
+        Mat4.translate(model, 0, batch.positionX[index], batch.positionY[index], batch.positionZ[index])
+        Quat.toMat4(rotationMatrix, 0, rotation, 0)
+        Mat4.multiply(model, 0, model, 0, rotationMatrix, 0)
+        Mat4.scale(model, 0, batch.scaleX[index], batch.scaleY[index], batch.scaleZ[index])
+        val mvp = FloatArray(Mat4.size)
+        Mat4.multiply(mvp, 0, viewProjection, 0, model, 0)
+        return mvp
+    }
+
+    @Test
+    fun batchMatchesPerObjectMultiplication() {
+        val batch = randomBatch(50)
+        val result = FloatArray(50 * Mat4.size)
+
+        batch.computeModelViewProjection(viewProjection, 0, result)
+
+        for (index in 0 until batch.count) {
+            assertArrayEquals(perObjectMvp(batch, index),
+                    result.copyOfRange(index * Mat4.size, (index + 1) * Mat4.size), 1e-4f)
+        }
+    }
+
+    @Test
+    fun parallelPathGivesSameResult() {
+        val batch = randomBatch(1000)
+        val serial = FloatArray(1000 * Mat4.size)
+        val parallel = FloatArray(1000 * Mat4.size)
+        val parallelFor = ParallelFor(4)
+
+        batch.computeModelViewProjection(viewProjection, 0, serial)
+        batch.computeModelViewProjection(viewProjection, 0, parallel, 0, parallelFor, parallelThreshold = 1)
+        parallelFor.shutdown()
+
+        assertArrayEquals(serial, parallel, 0f)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun addingBeyondCapacityIsRejected() {
+        randomBatch(2).add()
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun tooSmallResultIsRejected() {
+        randomBatch(2).computeModelViewProjection(viewProjection, 0, FloatArray(31))
+    }
+}
@@ -0,0 +1,67 @@
+package com.snap.model
+
+import android.opengl.GLES20
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Test
+import java.nio.FloatBuffer
+
+class BufferObjectTest {
+
+    private val backend = RecordingGlBackend()
+    private val glContext = GlContext(backend)
+
+    @Test
+    fun uploadsDataStoreOnce() {
+        val buffer = FloatArray(9).toVertexBuffer(glContext = glContext)
+
+        repeat(10) { buffer.bind() }
+
+        assertEquals(36, buffer.sizeInBytes)
+        assertEquals(36, backend.bufferSize(buffer.bufferHandle))
+        assertEquals(1, backend.callCount("glBufferData"))
+        assertEquals(1, backend.callCount("glBindBuffer"))
+    }
+
+    @Test
+    fun updateKeepsDataStore() {
+        val buffer = VertexBuffer(BufferUsage.DYNAMIC, glContext).allocate(64)
+
+        buffer.update(16, FloatBuffer.wrap(FloatArray(4)))
+
+        assertEquals(1, backend.callCount("glBufferData"))
+        assertEquals(1, backend.callCount("glBufferSubData"))
+    }
+
+    @Test(expected = IndexOutOfBoundsException::class)
+    fun updateOutsideOfDataStoreIsRejected() {
+        val buffer = VertexBuffer(BufferUsage.DYNAMIC, glContext).allocate(16)
+
+        buffer.update(8, FloatBuffer.wrap(FloatArray(4)))
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun bindingBeforeUploadIsRejected() {
+        VertexBuffer(glContext = glContext).bind()
+    }
+
+    @Test
+    fun indexBufferDrawsAllIndicesByDefault() {
+        val indices = shortArrayOf(0, 1, 2, 2, 1, 3).toIndexBuffer(glContext = glContext)
+
+        indices.draw(GLES20.GL_TRIANGLES)
+
+        assertEquals(6, indices.indexCount)
+        assertEquals(1, backend.callCount("glDrawElements"))
+    }
+
+    @Test
+    fun releaseDeletesBufferAndForgetsBinding() {
+        val buffer = FloatArray(3).toVertexBuffer(glContext = glContext)
+
+        buffer.release()
+
+        assertFalse(buffer.isSetup)
+        assertEquals(0, backend.liveBufferCount)
+    }
+}
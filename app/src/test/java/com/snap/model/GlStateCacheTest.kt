@@ -0,0 +1,110 @@
+package com.snap.model
+
+import android.opengl.GLES20
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class GlStateCacheTest {
+
+    private val backend = RecordingGlBackend()
+    private val state = GlStateCache(backend)
+
+    @Test
+    fun repeatedProgramSwitchReachesGlOnce() {
+        repeat(18) { state.useProgram(7) }
+
+        assertEquals(1, backend.callCount("glUseProgram"))
+        assertEquals(17, state.skippedProgramSwitches)
+    }
+
+    @Test
+    fun switchingBetweenProgramsIsNotSkipped() {
+        state.useProgram(1)
+        state.useProgram(2)
+        state.useProgram(1)
+
+        assertEquals(3, backend.callCount("glUseProgram"))
+        assertEquals(0, state.skippedCalls)
+    }
+
+    @Test
+    fun attributeArrayIsEnabledOnlyOnce() {
+        repeat(5) {
+            state.enableVertexAttribArray(0)
+            state.enableVertexAttribArray(1)
+        }
+        state.disableVertexAttribArray(1)
+        state.disableVertexAttribArray(1)
+
+        assertEquals(2, backend.callCount("glEnableVertexAttribArray"))
+        assertEquals(1, backend.callCount("glDisableVertexAttribArray"))
+        assertEquals(9, state.skippedAttributeArrayToggles)
+    }
+
+    @Test
+    fun attributeSlotsGrowBeyondInitialCapacity() {
+        state.enableVertexAttribArray(40)
+        state.enableVertexAttribArray(40)
+
+        assertEquals(1, backend.callCount("glEnableVertexAttribArray"))
+    }
+
+    @Test
+    fun bufferBindingsAreTrackedPerTarget() {
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 3)
+        state.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 3)
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 3)
+        state.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 3)
+
+        assertEquals(2, backend.callCount("glBindBuffer"))
+        assertEquals(2, state.skippedBufferBinds)
+    }
+
+    @Test
+    fun deletedBufferIsForgotten() {
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 3)
+        state.onBufferDeleted(3)
+        state.bindBuffer(GLES20.GL_ARRAY_BUFFER, 3)
+
+        assertEquals(2, backend.callCount("glBindBuffer"))
+    }
+
+    @Test
+    fun trackedCapabilitiesAreToggledOnlyOnChange() {
+        state.enable(GLES20.GL_DEPTH_TEST)
+        state.enable(GLES20.GL_DEPTH_TEST)
+        state.enable(GLES20.GL_CULL_FACE)
+        state.disable(GLES20.GL_CULL_FACE)
+        state.disable(GLES20.GL_CULL_FACE)
+
+        assertEquals(2, backend.callCount("glEnable"))
+        assertEquals(1, backend.callCount("glDisable"))
+        assertEquals(2, state.skippedCapabilityToggles)
+    }
+
+    @Test
+    fun untrackedCapabilitiesArePassedThrough() {
+        state.enable(GLES20.GL_DITHER)
+        state.enable(GLES20.GL_DITHER)
+
+        assertEquals(2, backend.callCount("glEnable"))
+    }
+
+    @Test
+    fun invalidateForcesNextCallsThrough() {
+        state.useProgram(1)
+        state.enableVertexAttribArray(0)
+        state.enable(GLES20.GL_DEPTH_TEST)
+
+        state.invalidate()
+
+        state.useProgram(1)
+        state.enableVertexAttribArray(0)
+        state.enable(GLES20.GL_DEPTH_TEST)
+
+        assertEquals(2, backend.callCount("glUseProgram"))
+        assertEquals(2, backend.callCount("glEnableVertexAttribArray"))
+        assertEquals(2, backend.callCount("glEnable"))
+        assertEquals(6, state.issuedCalls)
+    }
+}
@@ -0,0 +1,145 @@
+package com.snap.model
+
+import android.opengl.GLES20
+import com.snap.model.shading.DirectoryShaderSources
+import com.snap.model.shading.ShaderPreprocessor
+import com.snap.model.shading.ShadingProgram
+import com.snap.renderers.FleetRenderer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+
+class InstancedMeshTest {
+
+    private val backend = RecordingGlBackend()
+    private val glContext = GlContext(backend)
+
+    private val preprocessor = ShaderPreprocessor(DirectoryShaderSources(
+            listOf(File("src/main/res/raw"), File("app/src/main/res/raw")).first { it.isDirectory }))
+
+    private val format = FleetRenderer.vertexFormat
+
+    // a quad - 4 vertices, 6 indices
+    private val geometry = StaticBatcher(format).add(Mesh(format, PrimitiveType.TRIANGLE_STRIP, listOf(
+            floatArrayOf(0f, 0f, 0f, 0f, 1f, 0f, 1f, 0f, 0f, 1f, 1f, 0f),
+            FloatArray(16) { 1f })))
+
+    private fun programFor(mesh: InstancedMesh): ShadingProgram = glContext.shaderCache.program(
+            preprocessor.preprocess("fleet_vertex.glsl", mesh.shaderDefines),
+            preprocessor.preprocess("fleet_fragment.glsl", mesh.shaderDefines))
+
+    @Test
+    fun gles3DrawsAllInstancesAtOnce() {
+        val mesh = InstancedMesh(geometry, 100, glContext)
+        val program = programFor(mesh)
+        mesh.instanceCount = 70
+
+        backend.beginFrame()
+        mesh.draw(program)
+        val frame = backend.endFrame()
+
+        assertTrue(mesh.usesInstancedArrays)
+        assertEquals(1, frame.drawCalls)
+        val draw = backend.commands.single { it.name == "glDrawElementsInstanced" }
+        assertEquals(listOf<Any?>(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_SHORT, 0, 70), draw.arguments)
+        // only matrices of drawn instances are written into the streaming ring, nothing is reallocated
+        assertEquals(0, frame.callCount("glBufferData"))
+        assertEquals(70 * 64, backend.commands.single { it.name == "glMapBufferRange" }.arguments[2])
+        assertEquals(1, frame.callCount("glFenceSync"))
+        val divisors = backend.commands.filter { it.name == "glVertexAttribDivisor" }.map { it.arguments[1] }
+        assertEquals(listOf(1, 1, 1, 1, 0, 0, 0, 0), divisors)
+    }
+
+    @Test
+    fun gles2DrawsBatchesOfInstancesFromUniformArray() {
+        backend.driverVersion = "OpenGL ES 2.0 Recording"
+        val mesh = InstancedMesh(geometry, 100, glContext)
+        val program = programFor(mesh)
+        mesh.instanceCount = 50
+
+        backend.beginFrame()
+        mesh.draw(program)
+
+        assertFalse(mesh.usesInstancedArrays)
+        assertEquals(InstancedMesh.maxPseudoInstancesPerDraw, mesh.instancesPerDraw)
+        val draws = backend.commands.filter { it.name == "glDrawElements" }.map { it.arguments[1] }
+        assertEquals(listOf(24 * 6, 24 * 6, 2 * 6), draws)
+        val uniformCounts = backend.commands.filter { it.name == "glUniformMatrix4fv" }.map { it.arguments[1] to it.arguments[4] }
+        assertEquals(listOf(24 to 0, 24 to 24 * 16, 2 to 48 * 16), uniformCounts)
+        assertEquals(0, backend.callCount("glVertexAttribDivisor"))
+    }
+
+    @Test
+    fun gles2GeometryIsRepeatedPerInstanceOfDraw() {
+        backend.driverVersion = "OpenGL ES 2.0 Recording"
+
+        InstancedMesh(geometry, 10, glContext)
+
+        val sizes = backend.commands.filter { it.name == "glBufferData" }.map { it.arguments[1] }
+        // vertices, indices and instance indices of 10 copies
+        assertEquals(listOf(10 * 4 * format.stride, 10 * 6 * 2, 10 * 4 * 4), sizes)
+    }
+
+    @Test
+    fun shaderVariantDeclaresInstanceData() {
+        val instanced = preprocessor.preprocess("fleet_vertex.glsl",
+                mapOf(InstancedMesh.instancingDefine to "1", InstancedMesh.instancesPerDrawDefine to "8"))
+        val pseudo = preprocessor.preprocess("fleet_vertex.glsl", mapOf(InstancedMesh.instancesPerDrawDefine to "8"))
+
+        assertTrue(instanced, instanced.contains("attribute mat4 ${InstancedMesh.instanceMatrixAttribute};"))
+        assertFalse(instanced, instanced.contains(InstancedMesh.instanceMatricesUniform))
+        assertTrue(pseudo, pseudo.contains("${InstancedMesh.instanceMatricesUniform}[INSTANCES_PER_DRAW]"))
+        assertTrue(pseudo, pseudo.contains(InstancedMesh.instanceIndexAttribute))
+    }
+
+    @Test
+    fun nothingIsDrawnWithoutInstances() {
+        val mesh = InstancedMesh(geometry, 4, glContext)
+
+        backend.beginFrame()
+        mesh.draw(programFor(mesh))
+
+        assertEquals(0, backend.endFrame().drawCalls)
+    }
+
+    @Test
+    fun bindingsOfProgramAreLookedUpOnce() {
+        val backend = RecordingGlBackend(recordCommands = false)
+        backend.driverVersion = "OpenGL ES 2.0 Recording"
+        val glContext = GlContext(backend)
+        val mesh = InstancedMesh(geometry, 100, glContext)
+        val program = glContext.shaderCache.program(
+                preprocessor.preprocess("fleet_vertex.glsl", mesh.shaderDefines),
+                preprocessor.preprocess("fleet_fragment.glsl", mesh.shaderDefines))
+        mesh.instanceCount = 50
+        val vertexAttributes = format.attributes.map { program.attribute(it.name) }
+        val instanceMatrices = program.uniform(InstancedMesh.instanceMatricesUniform)
+        val instanceIndex = program.attribute(InstancedMesh.instanceIndexAttribute)
+        repeat(100) { mesh.draw(program) }
+        val threads = java.lang.management.ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+                ?: return
+        val threadId = Thread.currentThread().id
+
+        var before = threads.getThreadAllocatedBytes(threadId)
+        repeat(1000) {
+            program.useProgram()
+            mesh.draw(vertexAttributes, null, instanceMatrices, instanceIndex)
+        }
+        val withBindings = threads.getThreadAllocatedBytes(threadId) - before
+        before = threads.getThreadAllocatedBytes(threadId)
+        repeat(1000) { mesh.draw(program) }
+        val withProgram = threads.getThreadAllocatedBytes(threadId) - before
+
+        // the recording backend allocates for every call, the same for both - looking bindings up every frame
+        // would add a list and more per draw
+        assertTrue("$withProgram bytes with program, $withBindings with bindings",
+                withProgram < withBindings + 10_000)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun instanceCountIsLimited() {
+        InstancedMesh(geometry, 4, glContext).instanceCount = 5
+    }
+}
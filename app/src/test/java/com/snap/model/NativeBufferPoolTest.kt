@@ -0,0 +1,84 @@
+package com.snap.model
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteOrder
+
+class NativeBufferPoolTest {
+
+    private val pool = NativeBufferPool(blockSizeInBytes = 4096)
+
+    @Test
+    fun buffersAreNativeOrderedAndRoundedUpToSizeClass() {
+        val bytes = pool.acquire(100)
+
+        assertEquals(ByteOrder.nativeOrder(), bytes.order())
+        assertEquals(100, bytes.limit())
+        assertEquals(128, bytes.capacity())
+        assertEquals(128L, pool.liveBytes)
+    }
+
+    @Test
+    fun releasedSliceIsReused() {
+        val first = pool.acquireFloats(20)
+        pool.release(first)
+        val second = pool.acquireFloats(30)
+
+        assertNotSame(first, second)
+        assertEquals(4096L, pool.reservedBytes)
+        assertEquals(128L, pool.peakLiveBytes)
+        assertEquals(1, pool.liveBufferCount)
+    }
+
+    @Test
+    fun slicesDoNotOverlap() {
+        val first = pool.acquireFloats(16)
+        val second = pool.acquireFloats(16)
+        for (i in 0 until 16) {
+            first.put(i, 1f)
+            second.put(i, 2f)
+        }
+
+        assertTrue((0 until 16).all { first.get(it) == 1f })
+    }
+
+    @Test
+    fun newBlockIsReservedWhenCurrentOneIsFull() {
+        repeat(3) { pool.acquire(2048) }
+
+        assertEquals(2 * 4096L, pool.reservedBytes)
+        assertEquals(3 * 2048L, pool.liveBytes)
+    }
+
+    @Test
+    fun oversizedBuffersAreDroppedOnRelease() {
+        val big = pool.acquire(10000)
+        assertEquals(10000L, pool.reservedBytes)
+
+        pool.release(big)
+
+        assertEquals(0L, pool.reservedBytes)
+        assertEquals(0L, pool.liveBytes)
+        assertEquals(10000L, pool.peakLiveBytes)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun doubleReleaseIsRejected() {
+        val shorts = pool.acquireShorts(8)
+        pool.release(shorts)
+        pool.release(shorts)
+    }
+
+    @Test
+    fun arrayCopyComesFromPool() {
+        val floats = floatArrayOf(1f, 2f, 3f).toNativeOrderBuffer(pool)
+
+        assertEquals(0, floats.position())
+        assertEquals(3, floats.remaining())
+        assertEquals(3f, floats.get(2), 0f)
+        pool.release(floats)
+        assertEquals(0L, pool.liveBytes)
+    }
+}
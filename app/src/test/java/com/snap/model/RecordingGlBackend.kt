@@ -0,0 +1,592 @@
+package com.snap.model
+
+import android.opengl.GLES20
+import android.opengl.GLES30
+
+import java.nio.Buffer
+import java.nio.ByteBuffer
+
+/**
+ * Pure JVM backend: nothing is rendered, every call is counted (and optionally recorded) per frame.
+ *
+ * Shaders always compile and programs always link, unless source contains [failingSourceMarker].
+ * Attributes and uniforms declared in the attached shaders are reported as active, in declaration
+ * order, so reflection works the same way it does on a device. Program binaries are the sources of
+ * linked shaders, accepted back unless [rejectsProgramBinaries].
+ */
+open class RecordingGlBackend(private val recordCommands: Boolean = true) : GlBackend {
+
+    class Command(val name: String, val arguments: List<Any?>) {
+
+        override fun toString() = "$name(${arguments.joinToString()})"
+    }
+
+    /**
+     * Counters of a single frame, see [beginFrame] and [endFrame].
+     */
+    class FrameStats(val frameIndex: Int, val callsByName: Map<String, Int>) {
+
+        val totalCalls: Int
+            get() = callsByName.values.sum()
+
+        val drawCalls: Int
+            get() = countOf(drawCallNames)
+
+        val stateChanges: Int
+            get() = countOf(stateChangeNames)
+
+        val uniformUpdates: Int
+            get() = countOf(uniformUpdateNames)
+
+        fun callCount(name: String) = callsByName[name] ?: 0
+
+        private fun countOf(names: Set<String>) = names.sumBy { callCount(it) }
+
+        override fun toString() = "Frame #$frameIndex: $totalCalls calls, $drawCalls draws, " +
+                "$stateChanges state changes, $uniformUpdates uniform updates"
+    }
+
+    /**
+     * Source of any shader containing this text fails to compile.
+     */
+    var failingSourceMarker: String? = null
+
+    var supportsProgramBinaries = true
+
+    /**
+     * Makes glProgramBinary fail to link, as after a driver update.
+     */
+    var rejectsProgramBinaries = false
+
+    /**
+     * Reported as GL_VERSION - part of the key of program binaries.
+     */
+    var driverVersion = "OpenGL ES 3.0 Recording"
+
+    /**
+     * Reported as GL_EXTENSIONS.
+     */
+    var extensions = "GL_OES_compressed_ETC1_RGB8_texture"
+
+    /**
+     * Fences the GPU is behind by - a fence signals once this many newer fences were created. 0 signals
+     * every fence right away.
+     */
+    var fenceLatency = 0
+
+    private val recordedCommands = ArrayList<Command>()
+    private val frameCounts = HashMap<String, Int>()
+    private val totalCounts = HashMap<String, Int>()
+
+    var frameIndex: Int = 0
+        private set
+
+    val commands: List<Command>
+        get() = recordedCommands
+
+    private var nextHandle = 1
+    private val shaders = HashMap<Int, FakeShader>()
+    private val programs = HashMap<Int, FakeProgram>()
+    private val bufferSizes = HashMap<Int, Int>()
+    private val textureLevelSizes = HashMap<Int, HashMap<Int, Int>>()
+    private var boundTexture = 0
+    private var boundArrayBuffer = 0
+    private var boundElementArrayBuffer = 0
+    private val syncs = HashMap<Long, Int>()
+    private var createdSyncCount = 0
+
+    fun beginFrame() {
+        frameCounts.clear()
+        recordedCommands.clear()
+    }
+
+    fun endFrame(): FrameStats {
+        val stats = FrameStats(frameIndex, HashMap(frameCounts))
+        frameIndex++
+        return stats
+    }
+
+    /**
+     * Number of calls of [name] since last [beginFrame].
+     */
+    fun callCount(name: String) = frameCounts[name] ?: 0
+
+    /**
+     * Number of calls of [name] during the whole backend lifetime.
+     */
+    fun totalCallCount(name: String) = totalCounts[name] ?: 0
+
+    protected fun record(name: String, vararg arguments: Any?) {
+        frameCounts[name] = (frameCounts[name] ?: 0) + 1
+        totalCounts[name] = (totalCounts[name] ?: 0) + 1
+        if (recordCommands) {
+            recordedCommands.add(Command(name, arguments.toList()))
+        }
+    }
+
+    protected fun newHandle() = nextHandle++
+
+    /**
+     * Size in bytes of the data store of buffer object, as allocated by the last glBufferData.
+     */
+    fun bufferSize(buffer: Int) = bufferSizes[buffer] ?: 0
+
+    /**
+     * Number of buffer objects generated and not deleted yet.
+     */
+    val liveBufferCount: Int
+        get() = bufferSizes.size
+
+    /**
+     * Number of sync objects created and not deleted yet.
+     */
+    val liveSyncCount: Int
+        get() = syncs.size
+
+    /**
+     * Bytes of all levels of texture, as specified by the last glTexImage2D or glCompressedTexImage2D of each.
+     */
+    fun textureSize(texture: Int) = textureLevelSizes[texture]?.values?.sum() ?: 0
+
+    /**
+     * Number of textures generated and not deleted yet.
+     */
+    val liveTextureCount: Int
+        get() = textureLevelSizes.size
+
+    /**
+     * Attributes of [program] as reported to reflection, in the order of their locations - empty until it links.
+     */
+    protected fun attributesOf(program: Int): List<FakeVariable> =
+            programs[program]?.takeIf { it.isLinked }?.attributes ?: emptyList()
+
+    /**
+     * Uniforms of [program] as reported to reflection, in the order of their locations - empty until it links.
+     */
+    protected fun uniformsOf(program: Int): List<FakeVariable> =
+            programs[program]?.takeIf { it.isLinked }?.uniforms ?: emptyList()
+
+    protected fun boundBuffer(target: Int) =
+            if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) boundElementArrayBuffer else boundArrayBuffer
+
+    // state
+
+    override fun glUseProgram(program: Int) = record("glUseProgram", program)
+
+    override fun glEnableVertexAttribArray(index: Int) = record("glEnableVertexAttribArray", index)
+
+    override fun glDisableVertexAttribArray(index: Int) = record("glDisableVertexAttribArray", index)
+
+    override fun glBindBuffer(target: Int, buffer: Int) {
+        record("glBindBuffer", target, buffer)
+        when (target) {
+            GLES20.GL_ARRAY_BUFFER -> boundArrayBuffer = buffer
+            GLES20.GL_ELEMENT_ARRAY_BUFFER -> boundElementArrayBuffer = buffer
+        }
+    }
+
+    override fun glEnable(capability: Int) = record("glEnable", capability)
+
+    override fun glDisable(capability: Int) = record("glDisable", capability)
+
+    override fun glHint(target: Int, mode: Int) = record("glHint", target, mode)
+
+    override fun glViewport(x: Int, y: Int, width: Int, height: Int) = record("glViewport", x, y, width, height)
+
+    override fun glClearColor(red: Float, green: Float, blue: Float, alpha: Float) =
+            record("glClearColor", red, green, blue, alpha)
+
+    override fun glGetString(name: Int): String {
+        record("glGetString", name)
+        return when (name) {
+            GLES20.GL_VENDOR -> "Snap"
+            GLES20.GL_RENDERER -> "RecordingGlBackend"
+            GLES20.GL_VERSION -> driverVersion
+            GLES20.GL_EXTENSIONS -> extensions
+            else -> ""
+        }
+    }
+
+    // shaders and programs
+
+    override fun glCreateShader(type: Int): Int {
+        record("glCreateShader", type)
+        val handle = newHandle()
+        shaders[handle] = FakeShader(type)
+        return handle
+    }
+
+    override fun glShaderSource(shader: Int, source: String) {
+        record("glShaderSource", shader, source)
+        shaders[shader]?.source = source
+    }
+
+    override fun glCompileShader(shader: Int) {
+        record("glCompileShader", shader)
+        val fakeShader = shaders[shader] ?: return
+        val marker = failingSourceMarker
+        fakeShader.isCompiled = fakeShader.source.isNotBlank() && (marker == null || !fakeShader.source.contains(marker))
+    }
+
+    override fun glGetShaderiv(shader: Int, parameterName: Int, params: IntArray, offset: Int) {
+        record("glGetShaderiv", shader, parameterName)
+        val fakeShader = shaders[shader]
+        params[offset] = when (parameterName) {
+            GLES20.GL_COMPILE_STATUS -> if (fakeShader?.isCompiled == true) GLES20.GL_TRUE else GLES20.GL_FALSE
+            else -> 0
+        }
+    }
+
+    override fun glGetShaderInfoLog(shader: Int): String {
+        record("glGetShaderInfoLog", shader)
+        return if (shaders[shader]?.isCompiled == true) "" else "compilation failed"
+    }
+
+    override fun glDeleteShader(shader: Int) {
+        record("glDeleteShader", shader)
+        shaders.remove(shader)
+    }
+
+    override fun glCreateProgram(): Int {
+        record("glCreateProgram")
+        val handle = newHandle()
+        programs[handle] = FakeProgram()
+        return handle
+    }
+
+    override fun glAttachShader(program: Int, shader: Int) {
+        record("glAttachShader", program, shader)
+        programs[program]?.shaders?.add(shader)
+    }
+
+    override fun glBindAttribLocation(program: Int, index: Int, name: String) =
+            record("glBindAttribLocation", program, index, name)
+
+    override fun glLinkProgram(program: Int) {
+        record("glLinkProgram", program)
+        val fakeProgram = programs[program] ?: return
+        val attachedShaders = fakeProgram.shaders.mapNotNull { shaders[it] }
+        fakeProgram.isLinked = attachedShaders.size == 2 && attachedShaders.all { it.isCompiled }
+        if (fakeProgram.isLinked) {
+            fakeProgram.link(attachedShaders.map { it.source })
+        }
+    }
+
+    override fun glGetProgramiv(program: Int, parameterName: Int, params: IntArray, offset: Int) {
+        record("glGetProgramiv", program, parameterName)
+        val fakeProgram = programs[program]
+        params[offset] = when (parameterName) {
+            GLES20.GL_LINK_STATUS -> if (fakeProgram?.isLinked == true) GLES20.GL_TRUE else GLES20.GL_FALSE
+            GLES20.GL_ACTIVE_ATTRIBUTES -> fakeProgram?.attributes?.size ?: 0
+            GLES20.GL_ACTIVE_UNIFORMS -> fakeProgram?.uniforms?.size ?: 0
+            GLES30.GL_PROGRAM_BINARY_LENGTH -> if (fakeProgram?.isLinked == true) fakeProgram.binary().size else 0
+            else -> 0
+        }
+    }
+
+    override fun glGetProgramInfoLog(program: Int): String {
+        record("glGetProgramInfoLog", program)
+        return if (programs[program]?.isLinked == true) "" else "link failed"
+    }
+
+    override fun glDeleteProgram(program: Int) {
+        record("glDeleteProgram", program)
+        programs.remove(program)
+    }
+
+    override fun glGetActiveAttrib(program: Int, index: Int,
+                                   size: IntArray, sizeOffset: Int,
+                                   type: IntArray, typeOffset: Int): String {
+        record("glGetActiveAttrib", program, index)
+        val attribute = programs.getValue(program).attributes[index]
+        size[sizeOffset] = attribute.size
+        type[typeOffset] = attribute.type
+        return attribute.name
+    }
+
+    override fun glGetActiveUniform(program: Int, index: Int,
+                                    size: IntArray, sizeOffset: Int,
+                                    type: IntArray, typeOffset: Int): String {
+        record("glGetActiveUniform", program, index)
+        val uniform = programs.getValue(program).uniforms[index]
+        size[sizeOffset] = uniform.size
+        type[typeOffset] = uniform.type
+        return if (uniform.size > 1) uniform.name + "[0]" else uniform.name
+    }
+
+    override fun glGetAttribLocation(program: Int, name: String): Int {
+        record("glGetAttribLocation", program, name)
+        return programs[program]?.attributes?.indexOfFirst { it.name == name } ?: -1
+    }
+
+    override fun glGetUniformLocation(program: Int, name: String): Int {
+        record("glGetUniformLocation", program, name)
+        return programs[program]?.uniforms?.indexOfFirst { it.name == name } ?: -1
+    }
+
+    // program binaries
+
+    override fun isProgramBinarySupported() = supportsProgramBinaries
+
+    override fun glGetProgramBinary(program: Int, bufferSize: Int,
+                                    length: IntArray, lengthOffset: Int,
+                                    binaryFormat: IntArray, binaryFormatOffset: Int,
+                                    binary: Buffer) {
+        record("glGetProgramBinary", program, bufferSize)
+        val bytes = programs[program]?.takeIf { it.isLinked }?.binary() ?: ByteArray(0)
+        val target = binary as ByteBuffer
+        val size = Math.min(bytes.size, bufferSize)
+        for (index in 0 until size) {
+            target.put(target.position() + index, bytes[index])
+        }
+        length[lengthOffset] = size
+        binaryFormat[binaryFormatOffset] = fakeBinaryFormat
+    }
+
+    override fun glProgramBinary(program: Int, binaryFormat: Int, binary: Buffer, length: Int) {
+        record("glProgramBinary", program, binaryFormat, length)
+        val fakeProgram = programs[program] ?: return
+        fakeProgram.isLinked = supportsProgramBinaries && !rejectsProgramBinaries && binaryFormat == fakeBinaryFormat
+        if (fakeProgram.isLinked) {
+            val source = binary as ByteBuffer
+            val bytes = ByteArray(length) { source.get(source.position() + it) }
+            fakeProgram.link(String(bytes, Charsets.UTF_8).split(binarySeparator))
+        }
+    }
+
+    // buffer objects
+
+    override fun glGenBuffers(count: Int, buffers: IntArray, offset: Int) {
+        record("glGenBuffers", count)
+        for (index in 0 until count) {
+            val handle = newHandle()
+            bufferSizes[handle] = 0
+            buffers[offset + index] = handle
+        }
+    }
+
+    override fun glBufferData(target: Int, size: Int, data: Buffer?, usage: Int) {
+        record("glBufferData", target, size, usage)
+        val buffer = boundBuffer(target)
+        if (buffer != 0) {
+            bufferSizes[buffer] = size
+        }
+    }
+
+    override fun glBufferSubData(target: Int, offset: Int, size: Int, data: Buffer) {
+        record("glBufferSubData", target, offset, size)
+        if (offset + size > bufferSize(boundBuffer(target))) {
+            throw IndexOutOfBoundsException("glBufferSubData out of buffer bounds: offset $offset, size $size")
+        }
+    }
+
+    override fun glDeleteBuffers(count: Int, buffers: IntArray, offset: Int) {
+        record("glDeleteBuffers", count)
+        for (index in 0 until count) {
+            val buffer = buffers[offset + index]
+            bufferSizes.remove(buffer)
+            if (boundArrayBuffer == buffer) {
+                boundArrayBuffer = 0
+            }
+            if (boundElementArrayBuffer == buffer) {
+                boundElementArrayBuffer = 0
+            }
+        }
+    }
+
+    override fun glMapBufferRange(target: Int, offset: Int, length: Int, access: Int): Buffer? {
+        record("glMapBufferRange", target, offset, length, access)
+        if (offset < 0 || offset + length > bufferSize(boundBuffer(target))) {
+            throw IndexOutOfBoundsException("glMapBufferRange out of buffer bounds: offset $offset, length $length")
+        }
+        return ByteBuffer.allocateDirect(length)
+    }
+
+    override fun glUnmapBuffer(target: Int): Boolean {
+        record("glUnmapBuffer", target)
+        return true
+    }
+
+    // sync objects
+
+    override fun glFenceSync(condition: Int, flags: Int): Long {
+        record("glFenceSync", condition, flags)
+        val sync = newHandle().toLong()
+        syncs[sync] = createdSyncCount++
+        return sync
+    }
+
+    override fun glClientWaitSync(sync: Long, flags: Int, timeout: Long): Int {
+        record("glClientWaitSync", sync, flags, timeout)
+        val index = syncs[sync] ?: return GLES30.GL_WAIT_FAILED
+        return when {
+            createdSyncCount - 1 - index >= fenceLatency -> GLES30.GL_ALREADY_SIGNALED
+            timeout == 0L -> GLES30.GL_TIMEOUT_EXPIRED
+            else -> {
+                // waiting lets the GPU catch up with the fence
+                syncs[sync] = createdSyncCount - 1 - fenceLatency
+                GLES30.GL_CONDITION_SATISFIED
+            }
+        }
+    }
+
+    override fun glDeleteSync(sync: Long) {
+        record("glDeleteSync", sync)
+        syncs.remove(sync)
+    }
+
+    // textures
+
+    override fun glGenTextures(count: Int, textures: IntArray, offset: Int) {
+        record("glGenTextures", count)
+        for (index in 0 until count) {
+            val handle = newHandle()
+            textureLevelSizes[handle] = HashMap()
+            textures[offset + index] = handle
+        }
+    }
+
+    override fun glBindTexture(target: Int, texture: Int) {
+        record("glBindTexture", target, texture)
+        boundTexture = texture
+    }
+
+    override fun glTexParameteri(target: Int, parameterName: Int, value: Int) =
+            record("glTexParameteri", target, parameterName, value)
+
+    override fun glPixelStorei(parameterName: Int, value: Int) = record("glPixelStorei", parameterName, value)
+
+    override fun glTexImage2D(target: Int, level: Int, internalFormat: Int, width: Int, height: Int, border: Int,
+                              format: Int, type: Int, pixels: Buffer?) {
+        record("glTexImage2D", target, level, internalFormat, width, height, format, type)
+        val bytesPerTexel = if (format == GLES20.GL_RGBA) 4 else 3
+        if (pixels != null && pixels.remaining() < width * height * bytesPerTexel) {
+            throw IndexOutOfBoundsException("glTexImage2D of ${width}x$height needs ${width * height * bytesPerTexel} " +
+                    "bytes, got ${pixels.remaining()}")
+        }
+        textureLevelSizes[boundTexture]?.put(level, width * height * bytesPerTexel)
+    }
+
+    override fun glCompressedTexImage2D(target: Int, level: Int, internalFormat: Int, width: Int, height: Int,
+                                        border: Int, imageSize: Int, data: Buffer) {
+        record("glCompressedTexImage2D", target, level, internalFormat, width, height, imageSize)
+        if (data.remaining() < imageSize) {
+            throw IndexOutOfBoundsException("glCompressedTexImage2D of $imageSize bytes, got ${data.remaining()}")
+        }
+        textureLevelSizes[boundTexture]?.put(level, imageSize)
+    }
+
+    override fun glDeleteTextures(count: Int, textures: IntArray, offset: Int) {
+        record("glDeleteTextures", count)
+        for (index in 0 until count) {
+            val texture = textures[offset + index]
+            textureLevelSizes.remove(texture)
+            if (boundTexture == texture) {
+                boundTexture = 0
+            }
+        }
+    }
+
+    // vertex data and uniforms
+
+    override fun glVertexAttribPointer(index: Int, size: Int, type: Int, normalized: Boolean, stride: Int, data: Buffer) =
+            record("glVertexAttribPointer", index, size, type, normalized, stride, data)
+
+    override fun glVertexAttribPointer(index: Int, size: Int, type: Int, normalized: Boolean, stride: Int, offset: Int) =
+            record("glVertexAttribPointer", index, size, type, normalized, stride, offset)
+
+    override fun glVertexAttrib4f(index: Int, x: Float, y: Float, z: Float, w: Float) =
+            record("glVertexAttrib4f", index, x, y, z, w)
+
+    override fun glVertexAttribDivisor(index: Int, divisor: Int) = record("glVertexAttribDivisor", index, divisor)
+
+    override fun glUniformMatrix4fv(location: Int, count: Int, transpose: Boolean, value: FloatArray, offset: Int) =
+            record("glUniformMatrix4fv", location, count, transpose, value, offset)
+
+    override fun glUniform3f(location: Int, x: Float, y: Float, z: Float) = record("glUniform3f", location, x, y, z)
+
+    override fun glUniform4f(location: Int, x: Float, y: Float, z: Float, w: Float) =
+            record("glUniform4f", location, x, y, z, w)
+
+    // drawing
+
+    override fun glClear(mask: Int) = record("glClear", mask)
+
+    override fun glDrawArrays(mode: Int, first: Int, count: Int) = record("glDrawArrays", mode, first, count)
+
+    override fun glDrawElements(mode: Int, count: Int, type: Int, offset: Int) =
+            record("glDrawElements", mode, count, type, offset)
+
+    override fun glDrawArraysInstanced(mode: Int, first: Int, count: Int, instanceCount: Int) =
+            record("glDrawArraysInstanced", mode, first, count, instanceCount)
+
+    override fun glDrawElementsInstanced(mode: Int, count: Int, type: Int, offset: Int, instanceCount: Int) =
+            record("glDrawElementsInstanced", mode, count, type, offset, instanceCount)
+
+    private class FakeShader(val type: Int) {
+        var source = ""
+        var isCompiled = false
+    }
+
+    private class FakeProgram {
+        val shaders = ArrayList<Int>()
+        var isLinked = false
+        var sources: List<String> = emptyList()
+        var attributes: List<FakeVariable> = emptyList()
+        var uniforms: List<FakeVariable> = emptyList()
+
+        fun link(sources: List<String>) {
+            this.sources = sources
+            attributes = sources.flatMap { declarationsOf(it, "attribute") }.distinctBy { it.name }
+            uniforms = sources.flatMap { declarationsOf(it, "uniform") }.distinctBy { it.name }
+        }
+
+        fun binary() = sources.joinToString(binarySeparator).toByteArray(Charsets.UTF_8)
+    }
+
+    protected class FakeVariable(val name: String, val type: Int, val size: Int)
+
+    companion object {
+
+        /**
+         * Format reported for program binaries, glProgramBinary rejects any other.
+         */
+        const val fakeBinaryFormat = 0x5A4E
+
+        private const val binarySeparator = "\u0000"
+
+        private val drawCallNames = setOf("glDrawArrays", "glDrawElements", "glDrawArraysInstanced",
+                "glDrawElementsInstanced")
+
+        private val stateChangeNames = setOf("glUseProgram", "glEnableVertexAttribArray", "glDisableVertexAttribArray",
+                "glBindBuffer", "glBindTexture", "glEnable", "glDisable", "glVertexAttribPointer", "glVertexAttribDivisor")
+
+        private val uniformUpdateNames = setOf("glUniformMatrix4fv", "glUniform3f", "glUniform4f")
+
+        private val declarationPattern = Regex(
+                "\\b(attribute|uniform)\\s+(?:(?:lowp|mediump|highp)\\s+)?(\\w+)\\s+(\\w+)\\s*(?:\\[\\s*(\\w+)\\s*])?\\s*;")
+
+        private val glslTypes = mapOf(
+                "float" to GLES20.GL_FLOAT,
+                "vec2" to GLES20.GL_FLOAT_VEC2,
+                "vec3" to GLES20.GL_FLOAT_VEC3,
+                "vec4" to GLES20.GL_FLOAT_VEC4,
+                "int" to GLES20.GL_INT,
+                "bool" to GLES20.GL_BOOL,
+                "mat2" to GLES20.GL_FLOAT_MAT2,
+                "mat3" to GLES20.GL_FLOAT_MAT3,
+                "mat4" to GLES20.GL_FLOAT_MAT4,
+                "sampler2D" to GLES20.GL_SAMPLER_2D,
+                "samplerCube" to GLES20.GL_SAMPLER_CUBE)
+
+        private fun declarationsOf(source: String, qualifier: String): List<FakeVariable> {
+            return declarationPattern.findAll(source)
+                    .filter { it.groupValues[1] == qualifier }
+                    .map {
+                        val arraySize = it.groupValues[4].toIntOrNull() ?: 1
+                        FakeVariable(it.groupValues[3], glslTypes[it.groupValues[2]] ?: GLES20.GL_NONE, arraySize)
+                    }
+                    .toList()
+        }
+    }
+}
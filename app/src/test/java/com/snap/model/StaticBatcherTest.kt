@@ -0,0 +1,103 @@
+package com.snap.model
+
+import com.snap.math.Mat4
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class StaticBatcherTest {
+
+    private val backend = RecordingGlBackend()
+    private val glContext = GlContext(backend)
+
+    private val format = VertexFormat(
+            VertexAttribute("a_position", 3),
+            VertexAttribute("a_normal", 3),
+            VertexAttribute("a_color", 4, ComponentType.UNSIGNED_BYTE, isNormalized = true))
+
+    private fun quad(primitiveType: PrimitiveType, x: Float) = Mesh(format, primitiveType, listOf(
+            floatArrayOf(x, 0f, 0f, x, 1f, 0f, x + 1f, 0f, 0f, x + 1f, 1f, 0f),
+            floatArrayOf(0f, 0f, 1f, 0f, 0f, 1f, 0f, 0f, 1f, 0f, 0f, 1f),
+            FloatArray(16) { 1f }))
+
+    @Test
+    fun stripBecomesTrianglesOfSameWinding() {
+        val strip = quad(PrimitiveType.TRIANGLE_STRIP, 0f)
+
+        assertArrayEquals(shortArrayOf(0, 1, 2, 2, 1, 3), strip.triangleIndices())
+    }
+
+    @Test
+    fun degenerateStripTrianglesAreDropped() {
+        val stitched = Mesh(format, PrimitiveType.TRIANGLE_STRIP,
+                listOf(FloatArray(8 * 3), FloatArray(8 * 3), FloatArray(8 * 4)),
+                shortArrayOf(0, 1, 2, 3, 3, 4, 4, 5, 6, 7))
+
+        assertArrayEquals(shortArrayOf(0, 1, 2, 2, 1, 3, 4, 5, 6, 6, 5, 7), stitched.triangleIndices())
+    }
+
+    @Test
+    fun meshesAreMergedWithRebasedIndices() {
+        val batcher = StaticBatcher(format)
+                .add(quad(PrimitiveType.TRIANGLE_STRIP, 0f))
+                .add(quad(PrimitiveType.TRIANGLES, 2f))
+
+        assertEquals(8, batcher.vertexCount)
+        assertArrayEquals(shortArrayOf(0, 1, 2, 2, 1, 3, 4, 5, 6), batcher.triangleIndices())
+
+        val metrics = batcher.metrics
+        assertEquals(2, metrics.meshCount)
+        assertEquals(1, metrics.drawCallsSaved)
+        assertEquals(8, metrics.verticesMerged)
+        assertEquals(1, metrics.stripsConverted)
+    }
+
+    @Test
+    fun positionsAndNormalsArePreTransformed() {
+        val model = Mat4.create()
+        Mat4.translate(model, 0, 5f, 0f, 0f)
+        Mat4.rotate(model, 0, 90f, 0f, 1f, 0f)
+        Mat4.scale(model, 0, 2f, 2f, 2f)
+
+        val batcher = StaticBatcher(format, "a_position", "a_normal")
+                .add(quad(PrimitiveType.TRIANGLE_STRIP, 0f), model)
+
+        val positions = batcher.attributeData(0)
+        assertArrayEquals(floatArrayOf(5f, 2f, 0f), positions.copyOfRange(3, 6), 1e-5f)
+        assertArrayEquals(floatArrayOf(5f, 0f, -2f), positions.copyOfRange(6, 9), 1e-5f)
+        assertArrayEquals(floatArrayOf(1f, 0f, 0f), batcher.attributeData(1).copyOfRange(0, 3), 1e-5f)
+    }
+
+    @Test
+    fun batchIsDrawnWithOneCall() {
+        val batch = StaticBatcher(format)
+                .add(quad(PrimitiveType.TRIANGLE_STRIP, 0f))
+                .add(quad(PrimitiveType.TRIANGLE_STRIP, 2f))
+                .add(quad(PrimitiveType.TRIANGLES, 4f))
+                .build(glContext = glContext)
+
+        backend.beginFrame()
+        batch.draw()
+        val frame = backend.endFrame()
+
+        assertEquals(1, frame.drawCalls)
+        assertEquals(12 * format.stride, backend.bufferSize(batch.vertices.bufferHandle))
+        assertEquals(15, batch.indices.indexCount)
+        assertEquals(0, glContext.bufferPool.liveBufferCount)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun meshOfOtherFormatIsRejected() {
+        StaticBatcher(format).add(Mesh.fromInterleaved(VertexFormat(VertexAttribute("a_position", 3)),
+                PrimitiveType.TRIANGLES, FloatArray(9)))
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun tooManyVerticesAreRejected() {
+        val vertexCount = StaticBatcher.maxVertexCount / 2 + 1
+        val big = Mesh(format, PrimitiveType.TRIANGLES,
+                listOf(FloatArray(vertexCount * 3), FloatArray(vertexCount * 3), FloatArray(vertexCount * 4)))
+
+        StaticBatcher(format).add(big).add(big)
+    }
+}
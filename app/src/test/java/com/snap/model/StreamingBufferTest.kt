@@ -0,0 +1,138 @@
+package com.snap.model
+
+import android.opengl.GLES20
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class StreamingBufferTest {
+
+    private val backend = RecordingGlBackend()
+    private val glContext = GlContext(backend)
+
+    private fun writeFrame(stream: StreamingBuffer<*>, sizeInBytes: Int): Int {
+        stream.write(sizeInBytes).putFloat(0, 1f)
+        val offset = stream.commit()
+        stream.endFrame()
+        return offset
+    }
+
+    @Test
+    fun regionsFollowEachOtherAligned() {
+        val stream = StreamingBuffer.vertices(300, 3, glContext)
+
+        val offsets = listOf(writeFrame(stream, 30), writeFrame(stream, 16), writeFrame(stream, 8))
+
+        assertEquals(listOf(0, 32, 48), offsets)
+        assertEquals(1, backend.totalCallCount("glBufferData"))
+        assertEquals(0, stream.wrapCount)
+    }
+
+    @Test
+    fun gles3MapsRegionsAndFencesPartitions() {
+        val stream = StreamingBuffer.vertices(300, 3, glContext)
+
+        backend.beginFrame()
+        writeFrame(stream, 120)
+
+        assertTrue(stream.usesFences)
+        val map = backend.commands.single { it.name == "glMapBufferRange" }
+        assertEquals(listOf<Any?>(GLES20.GL_ARRAY_BUFFER, 0, 120), map.arguments.subList(0, 3))
+        assertEquals(1, backend.callCount("glUnmapBuffer"))
+        assertEquals(0, backend.callCount("glBufferSubData"))
+        // the region reaches into the second partition
+        assertEquals(2, backend.callCount("glFenceSync"))
+    }
+
+    @Test
+    fun gles3WrapsWithoutStallsWhileGpuKeepsUp() {
+        backend.fenceLatency = 2
+        val stream = StreamingBuffer.vertices(300, 3, glContext)
+
+        repeat(30) { writeFrame(stream, 100) }
+
+        assertEquals(9, stream.wrapCount)
+        assertEquals(0, stream.stallCount)
+        assertEquals(1, backend.totalCallCount("glBufferData"))
+        assertEquals(3, backend.liveSyncCount)
+    }
+
+    @Test
+    fun gles3WaitsForPartitionStillInUse() {
+        backend.fenceLatency = 3
+        val stream = StreamingBuffer.vertices(300, 3, glContext)
+
+        repeat(6) { writeFrame(stream, 100) }
+
+        // every reuse of a partition found the GPU a frame behind
+        assertEquals(3, stream.stallCount)
+        // a poll and a wait per stall
+        assertEquals(6, backend.totalCallCount("glClientWaitSync"))
+    }
+
+    @Test
+    fun gles2OrphansStoreOnWrapAround() {
+        backend.driverVersion = "OpenGL ES 2.0 Recording"
+        val stream = StreamingBuffer.vertices(256, 1, glContext)
+
+        val offsets = (0 until 5).map { writeFrame(stream, 100) }
+
+        assertFalse(stream.usesFences)
+        assertEquals(listOf(0, 100, 0, 100, 0), offsets)
+        assertEquals(2, stream.wrapCount)
+        assertEquals(0, stream.stallCount)
+        // allocation plus an orphaning per wrap-around
+        assertEquals(3, backend.totalCallCount("glBufferData"))
+        assertEquals(5, backend.totalCallCount("glBufferSubData"))
+        assertEquals(0, backend.totalCallCount("glFenceSync"))
+        assertEquals(0, glContext.bufferPool.liveBufferCount)
+    }
+
+    @Test
+    fun streamedIndicesAreDrawnFromTheirOffset() {
+        val stream = StreamingBuffer.indices(96, 3, glContext)
+        writeFrame(stream, 12)
+
+        stream.write(6).asShortBuffer().put(shortArrayOf(0, 1, 2))
+        val offset = stream.commit()
+        stream.buffer.draw(GLES20.GL_TRIANGLES, 3, offset / 2)
+
+        assertEquals(12, offset)
+        assertEquals(listOf<Any?>(GLES20.GL_TRIANGLES, 3, GLES20.GL_UNSIGNED_SHORT, 12),
+                backend.commands.last().arguments)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun frameBiggerThanRingIsRejected() {
+        val stream = StreamingBuffer.vertices(300, 3, glContext)
+
+        stream.write(200)
+        stream.commit()
+        stream.write(200)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun writeNeedsCommitOfPreviousRegion() {
+        val stream = StreamingBuffer.vertices(300, 3, glContext)
+
+        stream.write(8)
+        stream.write(8)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun ringHasToSplitIntoAlignedPartitions() {
+        StreamingBuffer.vertices(100, 3, glContext)
+    }
+
+    @Test
+    fun releaseDeletesFencesAndBuffer() {
+        val stream = StreamingBuffer.vertices(300, 3, glContext)
+        repeat(4) { writeFrame(stream, 100) }
+
+        stream.release()
+
+        assertEquals(0, backend.liveSyncCount)
+        assertEquals(0, backend.liveBufferCount)
+    }
+}
@@ -0,0 +1,95 @@
+package com.snap.model
+
+import android.opengl.GLES20
+import com.snap.model.texture.CompressedFormat
+import com.snap.model.texture.CompressedImage
+import com.snap.model.texture.Etc1Encoder
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class TextureTest {
+
+    private val backend = RecordingGlBackend()
+    private val glContext = GlContext(backend)
+
+    private val mipChain = Etc1Encoder().encodeMipChain(IntArray(8 * 8) { 0xFF204080.toInt() }, 8, 8)
+
+    @Test
+    fun etc1IsUploadedCompressedWithEveryLevel() {
+        backend.driverVersion = "OpenGL ES 2.0 Recording"
+
+        val texture = Texture(glContext).upload(mipChain)
+
+        val uploads = backend.commands.filter { it.name == "glCompressedTexImage2D" }
+        assertEquals(4, uploads.size)
+        assertTrue(uploads.all { it.arguments[2] == CompressedFormat.ETC1_RGB8.glFormat })
+        assertEquals(listOf(0, 1, 2, 3), uploads.map { it.arguments[1] })
+        assertEquals(32 + 8 + 8 + 8, texture.sizeInBytes)
+        assertEquals(texture.sizeInBytes, backend.textureSize(texture.textureHandle))
+        assertEquals(4, texture.levelCount)
+    }
+
+    @Test
+    fun etc1GoesAsEtc2ToGles3WithoutExtension() {
+        backend.extensions = ""
+
+        Texture(glContext).upload(mipChain)
+
+        val uploads = backend.commands.filter { it.name == "glCompressedTexImage2D" }
+        assertTrue(uploads.all { it.arguments[2] == CompressedFormat.ETC2_RGB8.glFormat })
+        assertTrue(Texture.isSupported(CompressedFormat.ETC1_RGB8, glContext))
+    }
+
+    @Test
+    fun etc1IsDecodedWhereGlCannotSampleIt() {
+        backend.driverVersion = "OpenGL ES 2.0 Recording"
+        backend.extensions = ""
+
+        val texture = Texture(glContext).upload(mipChain.subList(0, 1))
+
+        assertFalse(Texture.isSupported(CompressedFormat.ETC1_RGB8, glContext))
+        assertEquals(0, backend.callCount("glCompressedTexImage2D"))
+        assertEquals(1, backend.callCount("glTexImage2D"))
+        assertEquals(8 * 8 * 3, texture.sizeInBytes)
+        assertEquals(0, glContext.bufferPool.liveBufferCount)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun etc2NeedsGles3() {
+        backend.driverVersion = "OpenGL ES 2.0 Recording"
+
+        Texture(glContext).upload(listOf(CompressedImage(CompressedFormat.ETC2_RGBA8, 4, 4, ByteBuffer.allocateDirect(16))))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun brokenMipChainIsRejected() {
+        Texture(glContext).upload(listOf(mipChain[0], mipChain[2]))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun mipmappingFilterNeedsCompleteChain() {
+        Texture(glContext).upload(mipChain.subList(0, 2), GLES20.GL_LINEAR_MIPMAP_LINEAR)
+    }
+
+    @Test
+    fun singleLevelIsNotMipmapped() {
+        Texture(glContext).upload(mipChain.subList(0, 1))
+
+        assertTrue(backend.commands.any {
+            it.name == "glTexParameteri" && it.arguments[1] == GLES20.GL_TEXTURE_MIN_FILTER && it.arguments[2] == GLES20.GL_LINEAR
+        })
+    }
+
+    @Test
+    fun releaseDeletesTexture() {
+        val texture = Texture(glContext).upload(mipChain)
+
+        texture.release()
+
+        assertFalse(texture.isSetup)
+        assertEquals(0, backend.liveTextureCount)
+    }
+}
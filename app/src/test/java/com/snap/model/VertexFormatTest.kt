@@ -0,0 +1,82 @@
+package com.snap.model
+
+import android.opengl.GLES20
+import com.snap.model.shading.Shader
+import com.snap.model.shading.ShaderType
+import com.snap.model.shading.ShadingProgram
+import com.snap.model.shading.bindVertexFormat
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class VertexFormatTest {
+
+    private val format = VertexFormat(
+            VertexAttribute("a_Position", 3),
+            VertexAttribute("a_Normal", 3),
+            VertexAttribute("a_Color", 4, ComponentType.UNSIGNED_BYTE, isNormalized = true),
+            VertexAttribute("a_Weight", 1, ComponentType.SHORT))
+
+    @Test
+    fun offsetsAreAlignedToFourBytes() {
+        assertEquals(0, format.offsetOf("a_Position"))
+        assertEquals(12, format.offsetOf("a_Normal"))
+        assertEquals(24, format.offsetOf("a_Color"))
+        assertEquals(28, format.offsetOf("a_Weight"))
+        assertEquals(32, format.stride)
+    }
+
+    @Test
+    fun packInterleavesAttributes() {
+        val packed = format.pack(
+                floatArrayOf(1f, 2f, 3f, 4f, 5f, 6f),
+                floatArrayOf(0f, 0f, 1f, 0f, 1f, 0f),
+                floatArrayOf(1f, 0f, 0.5f, 2f, 0f, 0f, 0f, 0f),
+                floatArrayOf(7f, -8f))
+
+        assertEquals(2 * format.stride, packed.capacity())
+        assertEquals(4f, packed.getFloat(format.stride), 0f)
+        assertEquals(1f, packed.getFloat(format.stride + 16), 0f)
+        assertEquals(255, packed.get(24).toInt() and 0xff)
+        assertEquals(128, packed.get(26).toInt() and 0xff)
+        assertEquals("normalized values are clamped", 255, packed.get(27).toInt() and 0xff)
+        assertEquals(-8, packed.getShort(format.stride + 28).toInt())
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun packRejectsMismatchedVertexCounts() {
+        format.pack(FloatArray(6), FloatArray(6), FloatArray(4), FloatArray(2))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun duplicatedAttributeNamesAreRejected() {
+        VertexFormat(VertexAttribute("a_Position", 3), VertexAttribute("a_Position", 2))
+    }
+
+    @Test
+    fun programBindsEveryAttributeOfFormatAtItsOffset() {
+        val backend = RecordingGlBackend()
+        val glContext = GlContext(backend)
+        val program = ShadingProgram(
+                Shader.fromSourceCode(ShaderType.VERTEX, vertexShaderCode, glContext),
+                Shader.fromSourceCode(ShaderType.FRAGMENT, "void main() {}", glContext),
+                glContext).compile()
+        val vertices = VertexBuffer(glContext = glContext).upload(format.pack(
+                FloatArray(9), FloatArray(9), FloatArray(12), FloatArray(3)))
+        backend.beginFrame()
+
+        program.bindVertexFormat(vertices, format, firstVertex = 1)
+
+        val pointers = backend.commands.filter { it.name == "glVertexAttribPointer" }
+        assertEquals(4, pointers.size)
+        assertEquals(listOf(32, 44, 56, 60), pointers.map { it.arguments[5] })
+        assertEquals(GLES20.GL_UNSIGNED_BYTE, pointers[2].arguments[2])
+        assertEquals(true, pointers[2].arguments[3])
+        assertEquals("still bound since upload", 0, backend.callCount("glBindBuffer"))
+    }
+}
+
+private const val vertexShaderCode = "attribute vec3 a_Position;\n" +
+        "attribute vec3 a_Normal;\n" +
+        "attribute vec4 a_Color;\n" +
+        "attribute float a_Weight;\n" +
+        "void main() {}"
@@ -0,0 +1,155 @@
+package com.snap.model.atlas
+
+import com.snap.model.Mesh
+import com.snap.model.PrimitiveType
+import com.snap.model.VertexAttribute
+import com.snap.model.VertexFormat
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class TextureAtlasTest {
+
+    @Test
+    fun packerFillsPageExactly() {
+        val packer = MaxRectsPacker(128, 128)
+
+        val rects = (0 until 4).map { packer.insert(64, 64) }
+
+        assertTrue(rects.all { it != null })
+        assertEquals(1f, packer.occupancy, 0f)
+        assertNull(packer.insert(1, 1))
+    }
+
+    @Test
+    fun packedRectsNeitherOverlapNorLeaveThePage() {
+        val packer = MaxRectsPacker(512, 512)
+        val random = Random(7)
+        val rects = ArrayList<PackedRect>()
+
+        while (true) {
+            rects.add(packer.insert(8 + random.nextInt(56), 8 + random.nextInt(56)) ?: break)
+        }
+
+        for (i in rects.indices) {
+            assertTrue(rects[i].toString(), rects[i] in PackedRect(0, 0, 512, 512))
+            for (j in 0 until i) {
+                assertFalse("${rects[i]} overlaps ${rects[j]}", rects[i].intersects(rects[j]))
+            }
+        }
+        assertTrue("occupancy ${packer.occupancy}", packer.occupancy > 0.8f)
+    }
+
+    @Test
+    fun pagesArePowersOfTwoShrunkToContent() {
+        val atlas = TextureAtlasBuilder(maxPageSize = 256, padding = 1)
+                .add(solid("a", 30, 10, 1))
+                .add(solid("b", 20, 20, 2))
+                .build()
+
+        assertEquals(1, atlas.pages.size)
+        val page = atlas.pages[0]
+        assertEquals(1, Integer.bitCount(page.width))
+        assertEquals(1, Integer.bitCount(page.height))
+        assertTrue(page.width <= 64 && page.height <= 64)
+        assertTrue("efficiency ${atlas.efficiency}", atlas.efficiency > 0.2f)
+    }
+
+    @Test
+    fun pixelsAreCopiedWithEdgesBleedingIntoPadding() {
+        val image = AtlasImage("gradient", 3, 2, intArrayOf(1, 2, 3, 4, 5, 6))
+        val atlas = TextureAtlasBuilder(maxPageSize = 16, padding = 2).add(image).build()
+
+        val region = atlas.region("gradient")
+        val page = atlas.pages[region.page]
+        val pixel = { x: Int, y: Int -> page.pixels[(region.y + y) * page.width + region.x + x] }
+        assertEquals(1, pixel(0, 0))
+        assertEquals(6, pixel(2, 1))
+        assertEquals(1, pixel(-2, -2))
+        assertEquals(3, pixel(4, -1))
+        assertEquals(4, pixel(-1, 3))
+        assertEquals(6, pixel(4, 3))
+    }
+
+    @Test
+    fun paddingIsTransparentWithoutBleed() {
+        val atlas = TextureAtlasBuilder(maxPageSize = 16, padding = 1, bleed = false).add(solid("a", 2, 2, 9)).build()
+
+        val region = atlas.region("a")
+        val page = atlas.pages[0]
+        assertEquals(0, page.pixels[(region.y - 1) * page.width + region.x])
+        assertEquals(9, page.pixels[region.y * page.width + region.x])
+    }
+
+    @Test
+    fun imagesSpillToNextPage() {
+        val builder = TextureAtlasBuilder(maxPageSize = 64, padding = 0)
+        repeat(5) { builder.add(solid("image $it", 32, 32, it)) }
+
+        val atlas = builder.build()
+
+        assertEquals(2, atlas.pages.size)
+        assertEquals(4, atlas.regions.values.count { it.page == 0 })
+        assertEquals(32, atlas.pages[1].width)
+        assertEquals(64, atlas.pages[0].width)
+        assertEquals(64, atlas.pages[0].height)
+    }
+
+    @Test
+    fun texturesCoordinatesAreRemappedIntoRegion() {
+        val atlas = TextureAtlasBuilder(maxPageSize = 64, padding = 2)
+                .add(solid("big", 40, 40, 1))
+                .add(solid("small", 8, 4, 2))
+                .build()
+        val region = atlas.region("small")
+        val uvs = floatArrayOf(0f, 0f, 1f, 1f, 0.5f, 0.25f)
+
+        region.remap(uvs)
+
+        assertArrayEquals(floatArrayOf(region.u0, region.v0, region.u1, region.v1,
+                (region.u0 + region.u1) / 2, region.v0 + (region.v1 - region.v0) / 4), uvs, 1e-6f)
+        val page = atlas.pages[region.page]
+        assertEquals(region.x, Math.round(region.u0 * page.width))
+        assertEquals(region.y + 4, Math.round(region.v1 * page.height))
+    }
+
+    @Test
+    fun meshIsRemappedLeavingOtherAttributes() {
+        val format = VertexFormat(VertexAttribute("a_position", 2), VertexAttribute("a_uv", 2))
+        val positions = floatArrayOf(0f, 0f, 1f, 0f, 0f, 1f)
+        val mesh = Mesh(format, PrimitiveType.TRIANGLES, listOf(positions, floatArrayOf(0f, 0f, 1f, 0f, 0f, 1f)))
+        val atlas = TextureAtlasBuilder(maxPageSize = 64).add(solid("a", 16, 16, 1)).build()
+        val region = atlas.region("a")
+
+        val remapped = atlas.remap(mesh, "a_uv", "a")
+
+        assertArrayEquals(positions, remapped.attributesData[0], 0f)
+        assertArrayEquals(floatArrayOf(region.u0, region.v0, region.u1, region.v0, region.u0, region.v1),
+                remapped.attributesData[1], 1e-6f)
+        assertArrayEquals(floatArrayOf(0f, 0f, 1f, 0f, 0f, 1f), mesh.attributesData[1], 0f)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun repeatingCoordinatesAreRejected() {
+        val atlas = TextureAtlasBuilder(maxPageSize = 64).add(solid("a", 16, 16, 1)).build()
+
+        atlas.region("a").remap(floatArrayOf(0f, 0f, 2f, 1f))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun imageBiggerThanPageIsRejected() {
+        TextureAtlasBuilder(maxPageSize = 64, padding = 2).add(solid("a", 62, 8, 1))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun duplicateNameIsRejected() {
+        TextureAtlasBuilder().add(solid("a", 4, 4, 1)).add(solid("a", 8, 8, 1))
+    }
+
+    private fun solid(name: String, width: Int, height: Int, color: Int) =
+            AtlasImage(name, width, height, IntArray(width * height) { color })
+}
@@ -0,0 +1,57 @@
+package com.snap.model.raster
+
+import com.snap.math.Mat4
+
+/**
+ * Twin of the simplest shaders there are - position transformed by a Model-View-Projection matrix uniform,
+ * color of every vertex passed on to the fragments as it is:
+ *
+ *     gl_Position = matrixUniform * positionAttribute;
+ *     v_color = colorAttribute;
+ *     ...
+ *     gl_FragColor = v_color;
+ */
+class VertexColorShader @JvmOverloads constructor(matrixUniform: String,
+                                                  positionAttribute: String,
+                                                  colorAttribute: String,
+                                                  override val pointSize: Float = 1f) : SoftwareShader {
+
+    override val attributes = listOf(positionAttribute, colorAttribute)
+
+    override val uniforms = listOf(matrixUniform)
+
+    override val varyingCount = 4
+
+    override fun vertex(attributes: FloatArray, uniforms: Array<FloatArray>, position: FloatArray, varyings: FloatArray) {
+        Mat4.multiplyVec4(position, 0, uniforms[0], 0, attributes, 0)
+        System.arraycopy(attributes, 4, varyings, 0, 4)
+    }
+
+    override fun fragment(varyings: FloatArray, uniforms: Array<FloatArray>, color: FloatArray) {
+        System.arraycopy(varyings, 0, color, 0, 4)
+    }
+}
+
+/**
+ * Twin of shaders drawing positions given in clip space with a single color:
+ *
+ *     gl_Position = positionAttribute;
+ *     ...
+ *     gl_FragColor = colorUniform;
+ */
+class UniformColorShader(positionAttribute: String, colorUniform: String) : SoftwareShader {
+
+    override val attributes = listOf(positionAttribute)
+
+    override val uniforms = listOf(colorUniform)
+
+    override val varyingCount = 0
+
+    override fun vertex(attributes: FloatArray, uniforms: Array<FloatArray>, position: FloatArray, varyings: FloatArray) {
+        System.arraycopy(attributes, 0, position, 0, 4)
+    }
+
+    override fun fragment(varyings: FloatArray, uniforms: Array<FloatArray>, color: FloatArray) {
+        System.arraycopy(uniforms[0], 0, color, 0, 4)
+    }
+}
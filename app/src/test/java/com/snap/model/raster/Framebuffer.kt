@@ -0,0 +1,125 @@
+package com.snap.model.raster
+
+import java.util.Arrays
+
+/**
+ * Color and depth buffers [SoftwareGlBackend] draws into, also the image [PngFile] reads and writes.
+ *
+ * Pixels are kept row by row from the bottom one up, as in GL window coordinates and glReadPixels.
+ * Without [hasAlpha] - as with the default EGL config of GLSurfaceView - alpha always reads as 1.
+ */
+class Framebuffer @JvmOverloads constructor(val width: Int,
+                                            val height: Int,
+                                            val hasAlpha: Boolean = false) {
+
+    init {
+        if (width <= 0 || height <= 0) {
+            throw IllegalArgumentException("Framebuffer of ${width}x$height has no pixels.")
+        }
+    }
+
+    /**
+     * Colors as ARGB, 8 bits per channel - the layout of android.graphics.Color.
+     */
+    val colors = IntArray(width * height)
+
+    /**
+     * Window depth of every pixel, from 0 at the near plane to 1 at the far one.
+     */
+    val depths = FloatArray(width * height)
+
+    init {
+        clearColor(0)
+        clearDepth(1f)
+    }
+
+    fun color(x: Int, y: Int): Int {
+        checkPixel(x, y)
+        return colors[y * width + x]
+    }
+
+    fun depth(x: Int, y: Int): Float {
+        checkPixel(x, y)
+        return depths[y * width + x]
+    }
+
+    fun clearColor(argb: Int) {
+        Arrays.fill(colors, if (hasAlpha) argb else argb or opaque)
+    }
+
+    fun clearDepth(depth: Float) {
+        Arrays.fill(depths, depth)
+    }
+
+    /**
+     * Packs color with components in [0, 1] - clamped when out of it - the way it is stored.
+     */
+    fun pack(red: Float, green: Float, blue: Float, alpha: Float): Int =
+            (if (hasAlpha) channel(alpha) shl 24 else opaque) or
+                    (channel(red) shl 16) or (channel(green) shl 8) or channel(blue)
+
+    /**
+     * Number of pixels with any channel more than [tolerance] away from the same pixel of [other].
+     */
+    @JvmOverloads
+    fun differingPixelCount(other: Framebuffer, tolerance: Int = 0): Int {
+        checkSameSize(other)
+        var count = 0
+        for (pixel in colors.indices) {
+            if (!isClose(colors[pixel], other.colors[pixel], tolerance)) {
+                count++
+            }
+        }
+        return count
+    }
+
+    /**
+     * Image of differences from [other] - pixels differing as counted by [differingPixelCount] in red, the rest
+     * of this image faded to gray.
+     */
+    @JvmOverloads
+    fun difference(other: Framebuffer, tolerance: Int = 0): Framebuffer {
+        checkSameSize(other)
+        val difference = Framebuffer(width, height)
+        for (pixel in colors.indices) {
+            val color = colors[pixel]
+            difference.colors[pixel] = if (isClose(color, other.colors[pixel], tolerance)) {
+                val gray = 160 + (((color shr 16 and 0xFF) + (color shr 8 and 0xFF) + (color and 0xFF)) / 3) * 95 / 255
+                opaque or (gray shl 16) or (gray shl 8) or gray
+            } else {
+                differenceColor
+            }
+        }
+        return difference
+    }
+
+    private fun checkPixel(x: Int, y: Int) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw IndexOutOfBoundsException("Pixel ($x, $y) is out of ${width}x$height framebuffer.")
+        }
+    }
+
+    private fun checkSameSize(other: Framebuffer) {
+        if (other.width != width || other.height != height) {
+            throw IllegalArgumentException("Framebuffers of ${width}x$height and ${other.width}x${other.height} " +
+                    "do not compare.")
+        }
+    }
+
+    private companion object {
+
+        const val opaque = 0xFF shl 24
+        const val differenceColor = opaque or 0xFF0000
+
+        fun channel(value: Float) = Math.round(Math.min(Math.max(value, 0f), 1f) * 255f)
+
+        fun isClose(first: Int, second: Int, tolerance: Int): Boolean {
+            for (shift in 0..24 step 8) {
+                if (Math.abs((first shr shift and 0xFF) - (second shr shift and 0xFF)) > tolerance) {
+                    return false
+                }
+            }
+            return true
+        }
+    }
+}
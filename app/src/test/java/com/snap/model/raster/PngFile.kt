@@ -0,0 +1,234 @@
+package com.snap.model.raster
+
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.zip.CRC32
+import java.util.zip.DataFormatException
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * PNG files of [Framebuffer]s - 8 bits per channel, RGB or RGBA by [Framebuffer.hasAlpha], not interlaced.
+ * That is what [write] produces and all [read] accepts, enough for golden images without android.graphics.
+ */
+object PngFile {
+
+    private val signature = byteArrayOf(137.toByte(), 'P'.toByte(), 'N'.toByte(), 'G'.toByte(), 13, 10, 26, 10)
+
+    private const val headerChunk = 0x49484452 // "IHDR"
+    private const val dataChunk = 0x49444154 // "IDAT"
+    private const val endChunk = 0x49454E44 // "IEND"
+
+    private const val colorTypeRgb = 2
+    private const val colorTypeRgba = 6
+
+    private const val filterNone = 0
+    private const val filterSub = 1
+    private const val filterUp = 2
+    private const val filterAverage = 3
+    private const val filterPaeth = 4
+
+    /**
+     * Reads an image up to its IEND chunk. Caller closes the stream.
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun read(input: InputStream): Framebuffer {
+        val data = DataInputStream(input)
+        val fileSignature = ByteArray(signature.size)
+        data.readFully(fileSignature)
+        if (!fileSignature.contentEquals(signature)) {
+            throw IOException("Stream is not a PNG image.")
+        }
+        var header: ByteArray? = null
+        val compressed = ByteArrayOutputStream()
+        while (true) {
+            val length = data.readInt()
+            val type = data.readInt()
+            if (length < 0) {
+                throw IOException("Chunk ${chunkName(type)} has negative length.")
+            }
+            val chunk = ByteArray(length)
+            data.readFully(chunk)
+            if (data.readInt() != crcOf(type, chunk).toInt()) {
+                throw IOException("Chunk ${chunkName(type)} is corrupted.")
+            }
+            when (type) {
+                headerChunk -> header = chunk
+                dataChunk -> compressed.write(chunk)
+                endChunk -> return decode(header ?: throw IOException("PNG image has no header."),
+                        compressed.toByteArray())
+            }
+        }
+    }
+
+    /**
+     * Writes [framebuffer], top row first as PNG wants it. Caller closes the stream.
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun write(framebuffer: Framebuffer, output: OutputStream) {
+        val data = DataOutputStream(output)
+        data.write(signature)
+        val header = ByteArrayOutputStream()
+        DataOutputStream(header).apply {
+            writeInt(framebuffer.width)
+            writeInt(framebuffer.height)
+            writeByte(8)
+            writeByte(if (framebuffer.hasAlpha) colorTypeRgba else colorTypeRgb)
+            writeByte(0) // deflate
+            writeByte(0) // adaptive filtering
+            writeByte(0) // not interlaced
+        }
+        writeChunk(data, headerChunk, header.toByteArray())
+        writeChunk(data, dataChunk, encode(framebuffer))
+        writeChunk(data, endChunk, ByteArray(0))
+        data.flush()
+    }
+
+    private fun decode(header: ByteArray, compressed: ByteArray): Framebuffer {
+        val fields = DataInputStream(header.inputStream())
+        val width = fields.readInt()
+        val height = fields.readInt()
+        val bitDepth = fields.readUnsignedByte()
+        val colorType = fields.readUnsignedByte()
+        fields.readUnsignedByte()
+        fields.readUnsignedByte()
+        val interlace = fields.readUnsignedByte()
+        if (bitDepth != 8 || (colorType != colorTypeRgb && colorType != colorTypeRgba) || interlace != 0) {
+            throw IOException("PNG image of bit depth $bitDepth, color type $colorType, interlace $interlace " +
+                    "is not supported.")
+        }
+        if (width <= 0 || height <= 0) {
+            throw IOException("PNG image has inconsistent size ${width}x$height.")
+        }
+        val hasAlpha = colorType == colorTypeRgba
+        val bytesPerPixel = if (hasAlpha) 4 else 3
+        val rowSize = width * bytesPerPixel
+        val rows = inflate(compressed, (rowSize + 1) * height)
+        val framebuffer = Framebuffer(width, height, hasAlpha)
+        var previous = ByteArray(rowSize)
+        var current = ByteArray(rowSize)
+        for (row in 0 until height) {
+            val start = row * (rowSize + 1)
+            System.arraycopy(rows, start + 1, current, 0, rowSize)
+            unfilter(rows[start].toInt(), current, previous, bytesPerPixel)
+            val pixels = (height - 1 - row) * width
+            for (x in 0 until width) {
+                val pixel = x * bytesPerPixel
+                val alpha = if (hasAlpha) current[pixel + 3].toInt() and 0xFF else 0xFF
+                framebuffer.colors[pixels + x] = (alpha shl 24) or ((current[pixel].toInt() and 0xFF) shl 16) or
+                        ((current[pixel + 1].toInt() and 0xFF) shl 8) or (current[pixel + 2].toInt() and 0xFF)
+            }
+            val swap = previous
+            previous = current
+            current = swap
+        }
+        return framebuffer
+    }
+
+    private fun encode(framebuffer: Framebuffer): ByteArray {
+        val bytesPerPixel = if (framebuffer.hasAlpha) 4 else 3
+        val rowSize = framebuffer.width * bytesPerPixel
+        val rows = ByteArray((rowSize + 1) * framebuffer.height)
+        for (row in 0 until framebuffer.height) {
+            var offset = row * (rowSize + 1)
+            rows[offset++] = filterNone.toByte()
+            val pixels = (framebuffer.height - 1 - row) * framebuffer.width
+            for (x in 0 until framebuffer.width) {
+                val color = framebuffer.colors[pixels + x]
+                rows[offset++] = (color shr 16).toByte()
+                rows[offset++] = (color shr 8).toByte()
+                rows[offset++] = color.toByte()
+                if (framebuffer.hasAlpha) {
+                    rows[offset++] = (color ushr 24).toByte()
+                }
+            }
+        }
+        val deflater = Deflater(Deflater.BEST_COMPRESSION)
+        try {
+            deflater.setInput(rows)
+            deflater.finish()
+            val compressed = ByteArrayOutputStream()
+            val chunk = ByteArray(8192)
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk))
+            }
+            return compressed.toByteArray()
+        } finally {
+            deflater.end()
+        }
+    }
+
+    private fun inflate(compressed: ByteArray, size: Int): ByteArray {
+        val inflater = Inflater()
+        try {
+            inflater.setInput(compressed)
+            val rows = ByteArray(size)
+            var inflated = 0
+            while (inflated < size) {
+                val count = inflater.inflate(rows, inflated, size - inflated)
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw IOException("PNG image data ends after $inflated of $size bytes.")
+                }
+                inflated += count
+            }
+            return rows
+        } catch (e: DataFormatException) {
+            throw IOException("PNG image data is corrupted.", e)
+        } finally {
+            inflater.end()
+        }
+    }
+
+    private fun unfilter(filter: Int, row: ByteArray, previous: ByteArray, bytesPerPixel: Int) {
+        for (index in row.indices) {
+            val left = if (index >= bytesPerPixel) row[index - bytesPerPixel].toInt() and 0xFF else 0
+            val up = previous[index].toInt() and 0xFF
+            val upLeft = if (index >= bytesPerPixel) previous[index - bytesPerPixel].toInt() and 0xFF else 0
+            val predictor = when (filter) {
+                filterNone -> 0
+                filterSub -> left
+                filterUp -> up
+                filterAverage -> (left + up) / 2
+                filterPaeth -> paeth(left, up, upLeft)
+                else -> throw IOException("Unknown PNG row filter $filter.")
+            }
+            row[index] = (row[index] + predictor).toByte()
+        }
+    }
+
+    private fun paeth(left: Int, up: Int, upLeft: Int): Int {
+        val estimate = left + up - upLeft
+        val toLeft = Math.abs(estimate - left)
+        val toUp = Math.abs(estimate - up)
+        val toUpLeft = Math.abs(estimate - upLeft)
+        return when {
+            toLeft <= toUp && toLeft <= toUpLeft -> left
+            toUp <= toUpLeft -> up
+            else -> upLeft
+        }
+    }
+
+    private fun writeChunk(data: DataOutputStream, type: Int, chunk: ByteArray) {
+        data.writeInt(chunk.size)
+        data.writeInt(type)
+        data.write(chunk)
+        data.writeInt(crcOf(type, chunk).toInt())
+    }
+
+    private fun crcOf(type: Int, chunk: ByteArray): Long {
+        val crc = CRC32()
+        for (shift in 24 downTo 0 step 8) {
+            crc.update(type shr shift and 0xFF)
+        }
+        crc.update(chunk)
+        return crc.value
+    }
+
+    private fun chunkName(type: Int) = String(ByteArray(4) { (type shr (24 - it * 8)).toByte() }, Charsets.US_ASCII)
+}
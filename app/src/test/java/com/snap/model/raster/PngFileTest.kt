@@ -0,0 +1,76 @@
+package com.snap.model.raster
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+
+class PngFileTest {
+
+    private fun roundTrip(framebuffer: Framebuffer): Framebuffer {
+        val output = ByteArrayOutputStream()
+        PngFile.write(framebuffer, output)
+        return PngFile.read(output.toByteArray().inputStream())
+    }
+
+    private fun gradient(hasAlpha: Boolean) = Framebuffer(37, 21, hasAlpha).apply {
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                colors[y * width + x] = pack(x / 36f, y / 20f, (x + y) % 3 / 2f, if (hasAlpha) y / 20f else 1f)
+            }
+        }
+    }
+
+    @Test
+    fun rgbImageReadsBackAsWritten() {
+        val image = gradient(false)
+
+        val read = roundTrip(image)
+
+        assertFalse(read.hasAlpha)
+        assertEquals(37, read.width)
+        assertEquals(21, read.height)
+        assertArrayEquals(image.colors, read.colors)
+    }
+
+    @Test
+    fun rgbaImageKeepsAlpha() {
+        val image = gradient(true)
+
+        val read = roundTrip(image)
+
+        assertTrue(read.hasAlpha)
+        assertArrayEquals(image.colors, read.colors)
+        assertEquals(0, read.color(5, 0) ushr 24)
+    }
+
+    @Test
+    fun firstRowWrittenIsTopOne() {
+        val image = Framebuffer(2, 2)
+        image.colors[2] = 0xFFFF0000.toInt()
+        val output = ByteArrayOutputStream()
+
+        PngFile.write(image, output)
+
+        assertEquals(0xFFFF0000.toInt(), PngFile.read(output.toByteArray().inputStream()).color(0, 1))
+    }
+
+    @Test(expected = IOException::class)
+    fun otherFilesAreRejected() {
+        PngFile.read("GIF89a and some more bytes".toByteArray().inputStream())
+    }
+
+    @Test(expected = IOException::class)
+    fun corruptedChunkIsRejected() {
+        val output = ByteArrayOutputStream()
+        PngFile.write(gradient(false), output)
+        val bytes = output.toByteArray()
+        // first byte of the IDAT data, after signature, IHDR chunk and IDAT length and type
+        bytes[8 + 25 + 8] = (bytes[8 + 25 + 8] + 1).toByte()
+
+        PngFile.read(bytes.inputStream())
+    }
+}
@@ -0,0 +1,717 @@
+package com.snap.model.raster
+
+import android.opengl.GLES20
+
+import com.snap.concurrent.ParallelFor
+import com.snap.concurrent.RangeTask
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Turns shaded vertices of a draw call into fragments of [framebuffer].
+ *
+ * Primitives are assembled, clipped and set up on the calling thread, then binned into tiles of [tileSize]
+ * pixels. Tiles are rasterized in parallel - every worker takes the next tile with primitives until none is
+ * left - and within a tile primitives go in the order they were drawn. Every pixel belongs to one tile,
+ * so the image does not depend on the number of threads.
+ *
+ * Triangles are rasterized with edge functions in fixed point of [subpixelBits] bits, pixels on an edge
+ * belong to the triangle on its top or left side only, so triangles sharing an edge neither overlap nor leave
+ * gaps. Lines are a pixel wide, with the pixel of their end point left out. Points are squares of
+ * [SoftwareShader.pointSize] pixels.
+ */
+internal class Rasterizer(private val framebuffer: Framebuffer, private val parallelFor: ParallelFor) {
+
+    var viewportX = 0
+    var viewportY = 0
+    var viewportWidth = framebuffer.width
+    var viewportHeight = framebuffer.height
+
+    var depthTest = false
+
+    /**
+     * Whether clockwise triangles - back faces with the default glFrontFace - are dropped.
+     */
+    var cullBackFaces = false
+
+    private val tileColumns = (framebuffer.width + tileSize - 1) / tileSize
+    private val tileRows = (framebuffer.height + tileSize - 1) / tileSize
+
+    private val bins = Array(tileColumns * tileRows) { IntArray(initialBinSize) }
+    private val binSizes = IntArray(bins.size)
+    private val binnedTiles = IntArray(bins.size)
+    private var binnedTileCount = 0
+
+    // primitives of the draw being rasterized - a vertex is window x, y, z, 1/w, then varyings multiplied by 1/w
+    private var kind = triangles
+    private var varyingCount = 0
+    private var vertexStride = 0
+    private var drawnPrimitiveCount = 0
+    private var primitiveFloats = FloatArray(0)
+    private var primitiveInts = IntArray(0)
+    private var pointSize = 1f
+
+    // clipping - polygons of clip space x, y, z, w and varyings per vertex
+    private var clipStride = 0
+    private var polygon = FloatArray(0)
+    private var clipped = FloatArray(0)
+
+    private val shadedFragments = AtomicLong()
+    private val occludedFragments = AtomicLong()
+    private var rasterizedPrimitives = 0L
+    private var culledTriangles = 0L
+
+    /**
+     * Fragments which passed the depth test and were shaded - the fill cost.
+     */
+    val fragmentCount: Long
+        get() = shadedFragments.get()
+
+    /**
+     * Fragments behind what was drawn before them, dropped before shading.
+     */
+    val occludedFragmentCount: Long
+        get() = occludedFragments.get()
+
+    /**
+     * Triangles, lines and points which made it through clipping and culling, after clipping split them.
+     */
+    val primitiveCount: Long
+        get() = rasterizedPrimitives
+
+    val culledTriangleCount: Long
+        get() = culledTriangles
+
+    fun resetCounters() {
+        shadedFragments.set(0)
+        occludedFragments.set(0)
+        rasterizedPrimitives = 0
+        culledTriangles = 0
+    }
+
+    /**
+     * Draws [instanceCount] runs of [verticesPerInstance] vertices in [mode]. Every vertex has 4 floats of clip
+     * space position in [positions] and [SoftwareShader.varyingCount] floats in [varyings].
+     */
+    fun draw(mode: Int,
+             positions: FloatArray,
+             varyings: FloatArray,
+             verticesPerInstance: Int,
+             instanceCount: Int,
+             shader: SoftwareShader,
+             uniforms: Array<FloatArray>) {
+        kind = when (mode) {
+            GLES20.GL_POINTS -> points
+            GLES20.GL_LINES, GLES20.GL_LINE_STRIP, GLES20.GL_LINE_LOOP -> lines
+            GLES20.GL_TRIANGLES, GLES20.GL_TRIANGLE_STRIP, GLES20.GL_TRIANGLE_FAN -> triangles
+            else -> throw IllegalArgumentException("Primitive mode 0x${Integer.toHexString(mode)} is not supported.")
+        }
+        varyingCount = shader.varyingCount
+        vertexStride = 4 + varyingCount
+        pointSize = shader.pointSize
+        clipStride = 4 + varyingCount
+        if (polygon.size < maxPolygonVertices * clipStride) {
+            polygon = FloatArray(maxPolygonVertices * clipStride)
+            clipped = FloatArray(maxPolygonVertices * clipStride)
+        }
+        drawnPrimitiveCount = 0
+        for (instance in 0 until instanceCount) {
+            assemble(mode, positions, varyings, instance * verticesPerInstance, verticesPerInstance)
+        }
+        rasterizedPrimitives += drawnPrimitiveCount
+        if (drawnPrimitiveCount > 0) {
+            bin()
+            rasterizeBinnedTiles(shader, uniforms)
+        }
+    }
+
+    private fun assemble(mode: Int, positions: FloatArray, varyings: FloatArray, first: Int, count: Int) {
+        when (mode) {
+            GLES20.GL_POINTS -> for (vertex in first until first + count) {
+                addPoint(positions, varyings, vertex)
+            }
+            GLES20.GL_LINES -> for (vertex in first until first + count / 2 * 2 step 2) {
+                addLine(positions, varyings, vertex, vertex + 1)
+            }
+            GLES20.GL_LINE_STRIP, GLES20.GL_LINE_LOOP -> {
+                for (vertex in first until first + count - 1) {
+                    addLine(positions, varyings, vertex, vertex + 1)
+                }
+                if (mode == GLES20.GL_LINE_LOOP && count > 1) {
+                    addLine(positions, varyings, first + count - 1, first)
+                }
+            }
+            GLES20.GL_TRIANGLES -> for (vertex in first until first + count / 3 * 3 step 3) {
+                addTriangle(positions, varyings, vertex, vertex + 1, vertex + 2)
+            }
+            GLES20.GL_TRIANGLE_STRIP -> for (index in 0 until count - 2) {
+                // every other triangle is flipped, so all of them keep the winding of the first one
+                val vertex = first + index
+                if (index % 2 == 0) {
+                    addTriangle(positions, varyings, vertex, vertex + 1, vertex + 2)
+                } else {
+                    addTriangle(positions, varyings, vertex + 1, vertex, vertex + 2)
+                }
+            }
+            GLES20.GL_TRIANGLE_FAN -> for (vertex in first + 1 until first + count - 1) {
+                addTriangle(positions, varyings, first, vertex, vertex + 1)
+            }
+        }
+    }
+
+    // setup
+
+    private fun addTriangle(positions: FloatArray, varyings: FloatArray, first: Int, second: Int, third: Int) {
+        copyToPolygon(0, positions, varyings, first)
+        copyToPolygon(1, positions, varyings, second)
+        copyToPolygon(2, positions, varyings, third)
+        // orientation in homogeneous coordinates is that of the visible part, whatever clipping leaves of it
+        val p = polygon
+        val s = clipStride
+        val orientation = determinant(p[0], p[1], p[3], p[s], p[s + 1], p[s + 3], p[2 * s], p[2 * s + 1], p[2 * s + 3])
+        if (orientation == 0.0) {
+            return
+        }
+        if (orientation < 0 && cullBackFaces) {
+            culledTriangles++
+            return
+        }
+        val vertexCount = clipPolygon(3)
+        for (vertex in 1 until vertexCount - 1) {
+            setupTriangle(0, vertex, vertex + 1)
+        }
+    }
+
+    private fun setupTriangle(first: Int, second: Int, third: Int) {
+        val index = beginPrimitive()
+        val floats = index * 3 * vertexStride
+        val ints = index * intsPerPrimitive
+        writeWindowVertex(first, floats)
+        writeWindowVertex(second, floats + vertexStride)
+        writeWindowVertex(third, floats + 2 * vertexStride)
+        val f = primitiveFloats
+        var x0 = toFixed(f[floats])
+        var y0 = toFixed(f[floats + 1])
+        var x1 = toFixed(f[floats + vertexStride])
+        var y1 = toFixed(f[floats + vertexStride + 1])
+        val x2 = toFixed(f[floats + 2 * vertexStride])
+        val y2 = toFixed(f[floats + 2 * vertexStride + 1])
+        val area = (x2 - x1).toLong() * (y0 - y1) - (y2 - y1).toLong() * (x0 - x1)
+        if (area == 0L) {
+            drawnPrimitiveCount--
+            return
+        }
+        if (area < 0) {
+            // rasterized counter-clockwise - the first two vertices swap along with their attributes
+            swapVertices(floats, floats + vertexStride)
+            var swap = x0
+            x0 = x1
+            x1 = swap
+            swap = y0
+            y0 = y1
+            y1 = swap
+        }
+        val i = primitiveInts
+        i[ints] = x0
+        i[ints + 1] = y0
+        i[ints + 2] = x1
+        i[ints + 3] = y1
+        i[ints + 4] = x2
+        i[ints + 5] = y2
+        if (!setBounds(ints, Math.min(x0, Math.min(x1, x2)) shr subpixelBits,
+                        Math.min(y0, Math.min(y1, y2)) shr subpixelBits,
+                        Math.max(x0, Math.max(x1, x2)) shr subpixelBits,
+                        Math.max(y0, Math.max(y1, y2)) shr subpixelBits)) {
+            drawnPrimitiveCount--
+        }
+    }
+
+    private fun addLine(positions: FloatArray, varyings: FloatArray, first: Int, second: Int) {
+        copyToPolygon(0, positions, varyings, first)
+        copyToPolygon(1, positions, varyings, second)
+        if (!clipLine()) {
+            return
+        }
+        val index = beginPrimitive()
+        val floats = index * 3 * vertexStride
+        writeWindowVertex(0, floats)
+        writeWindowVertex(1, floats + vertexStride)
+        val f = primitiveFloats
+        val x0 = f[floats]
+        val y0 = f[floats + 1]
+        val x1 = f[floats + vertexStride]
+        val y1 = f[floats + vertexStride + 1]
+        if ((x0 == x1 && y0 == y1) || !setBounds(index * intsPerPrimitive,
+                        Math.floor(Math.min(x0, x1).toDouble()).toInt(), Math.floor(Math.min(y0, y1).toDouble()).toInt(),
+                        Math.floor(Math.max(x0, x1).toDouble()).toInt(), Math.floor(Math.max(y0, y1).toDouble()).toInt())) {
+            drawnPrimitiveCount--
+        }
+    }
+
+    private fun addPoint(positions: FloatArray, varyings: FloatArray, vertex: Int) {
+        val position = vertex * 4
+        val w = positions[position + 3]
+        // points are clipped by their centers
+        for (axis in 0 until 3) {
+            val value = positions[position + axis]
+            if (!(value >= -w && value <= w) || w <= 0f) {
+                return
+            }
+        }
+        copyToPolygon(0, positions, varyings, vertex)
+        val index = beginPrimitive()
+        val floats = index * 3 * vertexStride
+        writeWindowVertex(0, floats)
+        // nothing to interpolate over a point - varyings are taken as they are
+        primitiveFloats[floats + 3] = 1f
+        System.arraycopy(polygon, 4, primitiveFloats, floats + 4, varyingCount)
+        val halfSize = pointSize / 2
+        val x = primitiveFloats[floats]
+        val y = primitiveFloats[floats + 1]
+        if (!setBounds(index * intsPerPrimitive, firstCenterFrom(x - halfSize), firstCenterFrom(y - halfSize),
+                        firstCenterFrom(x + halfSize) - 1, firstCenterFrom(y + halfSize) - 1)) {
+            drawnPrimitiveCount--
+        }
+    }
+
+    private fun beginPrimitive(): Int {
+        val index = drawnPrimitiveCount++
+        if (primitiveFloats.size < (index + 1) * 3 * vertexStride) {
+            primitiveFloats = primitiveFloats.copyOf(Math.max((index + 1) * 3 * vertexStride, primitiveFloats.size * 2))
+        }
+        if (primitiveInts.size < (index + 1) * intsPerPrimitive) {
+            primitiveInts = primitiveInts.copyOf(Math.max((index + 1) * intsPerPrimitive, primitiveInts.size * 2))
+        }
+        return index
+    }
+
+    /**
+     * Sets pixel bounds of the primitive clamped to viewport and framebuffer, false when nothing is left.
+     */
+    private fun setBounds(ints: Int, minX: Int, minY: Int, maxX: Int, maxY: Int): Boolean {
+        val left = Math.max(minX, Math.max(viewportX, 0))
+        val bottom = Math.max(minY, Math.max(viewportY, 0))
+        val right = Math.min(maxX, Math.min(viewportX + viewportWidth, framebuffer.width) - 1)
+        val top = Math.min(maxY, Math.min(viewportY + viewportHeight, framebuffer.height) - 1)
+        primitiveInts[ints + 6] = left
+        primitiveInts[ints + 7] = bottom
+        primitiveInts[ints + 8] = right
+        primitiveInts[ints + 9] = top
+        return left <= right && bottom <= top
+    }
+
+    private fun copyToPolygon(slot: Int, positions: FloatArray, varyings: FloatArray, vertex: Int) {
+        System.arraycopy(positions, vertex * 4, polygon, slot * clipStride, 4)
+        System.arraycopy(varyings, vertex * varyingCount, polygon, slot * clipStride + 4, varyingCount)
+    }
+
+    /**
+     * Viewport transform of polygon vertex [slot] into primitive floats at [offset].
+     */
+    private fun writeWindowVertex(slot: Int, offset: Int) {
+        val source = slot * clipStride
+        val inverseW = 1f / polygon[source + 3]
+        val f = primitiveFloats
+        f[offset] = viewportX + (polygon[source] * inverseW + 1f) * viewportWidth / 2
+        f[offset + 1] = viewportY + (polygon[source + 1] * inverseW + 1f) * viewportHeight / 2
+        f[offset + 2] = (polygon[source + 2] * inverseW + 1f) / 2
+        f[offset + 3] = inverseW
+        for (varying in 0 until varyingCount) {
+            f[offset + 4 + varying] = polygon[source + 4 + varying] * inverseW
+        }
+    }
+
+    private fun swapVertices(first: Int, second: Int) {
+        val f = primitiveFloats
+        for (component in 0 until vertexStride) {
+            val swap = f[first + component]
+            f[first + component] = f[second + component]
+            f[second + component] = swap
+        }
+    }
+
+    // clipping
+
+    /**
+     * Clips convex polygon of [vertexCount] vertices against the near and far planes and the guard band,
+     * returns the vertices left - 0 when nothing is.
+     */
+    private fun clipPolygon(vertexCount: Int): Int {
+        var count = vertexCount
+        for (plane in 0 until clipPlaneCount) {
+            var allInside = true
+            for (vertex in 0 until count) {
+                if (distance(plane, polygon, vertex * clipStride) < 0f) {
+                    allInside = false
+                    break
+                }
+            }
+            if (allInside) {
+                continue
+            }
+            var clippedCount = 0
+            for (vertex in 0 until count) {
+                val next = (vertex + 1) % count
+                val distance = distance(plane, polygon, vertex * clipStride)
+                val nextDistance = distance(plane, polygon, next * clipStride)
+                if (distance >= 0f) {
+                    System.arraycopy(polygon, vertex * clipStride, clipped, clippedCount++ * clipStride, clipStride)
+                }
+                if ((distance >= 0f) != (nextDistance >= 0f)) {
+                    interpolate(clipped, clippedCount++ * clipStride, polygon, vertex * clipStride, next * clipStride,
+                            distance / (distance - nextDistance))
+                }
+            }
+            val swap = polygon
+            polygon = clipped
+            clipped = swap
+            count = clippedCount
+            if (count < 3) {
+                return 0
+            }
+        }
+        return count
+    }
+
+    /**
+     * Clips the line of the first two polygon vertices, false when nothing is left of it.
+     */
+    private fun clipLine(): Boolean {
+        var start = 0f
+        var end = 1f
+        for (plane in 0 until clipPlaneCount) {
+            val first = distance(plane, polygon, 0)
+            val second = distance(plane, polygon, clipStride)
+            if (first < 0f && second < 0f) {
+                return false
+            }
+            if (first < 0f) {
+                start = Math.max(start, first / (first - second))
+            } else if (second < 0f) {
+                end = Math.min(end, first / (first - second))
+            }
+        }
+        if (start >= end) {
+            return false
+        }
+        if (start > 0f || end < 1f) {
+            interpolate(clipped, 0, polygon, 0, clipStride, start)
+            interpolate(clipped, clipStride, polygon, 0, clipStride, end)
+            System.arraycopy(clipped, 0, polygon, 0, 2 * clipStride)
+        }
+        return true
+    }
+
+    private fun interpolate(target: FloatArray, targetOffset: Int, source: FloatArray, from: Int, to: Int, t: Float) {
+        for (component in 0 until clipStride) {
+            target[targetOffset + component] = source[from + component] +
+                    (source[to + component] - source[from + component]) * t
+        }
+    }
+
+    // binning
+
+    private fun bin() {
+        binnedTileCount = 0
+        for (primitive in 0 until drawnPrimitiveCount) {
+            val ints = primitive * intsPerPrimitive
+            val i = primitiveInts
+            for (row in i[ints + 7] / tileSize..i[ints + 9] / tileSize) {
+                for (column in i[ints + 6] / tileSize..i[ints + 8] / tileSize) {
+                    if (kind != triangles || overlapsTile(ints, column, row)) {
+                        addToBin(row * tileColumns + column, primitive)
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * False when every pixel center of the tile is outside one of the triangle edges.
+     */
+    private fun overlapsTile(ints: Int, column: Int, row: Int): Boolean {
+        val left = center(column * tileSize)
+        val bottom = center(row * tileSize)
+        val right = center(Math.min((column + 1) * tileSize, framebuffer.width) - 1)
+        val top = center(Math.min((row + 1) * tileSize, framebuffer.height) - 1)
+        val i = primitiveInts
+        for (edge in 0 until 3) {
+            val from = ints + 2 * ((edge + 1) % 3)
+            val to = ints + 2 * ((edge + 2) % 3)
+            val xa = i[from]
+            val ya = i[from + 1]
+            val xb = i[to]
+            val yb = i[to + 1]
+            val bias = edgeBias(xa, ya, xb, yb)
+            if (edgeValue(xa, ya, xb, yb, left, bottom) + bias < 0 && edgeValue(xa, ya, xb, yb, right, bottom) + bias < 0 &&
+                    edgeValue(xa, ya, xb, yb, left, top) + bias < 0 && edgeValue(xa, ya, xb, yb, right, top) + bias < 0) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun addToBin(tile: Int, primitive: Int) {
+        val size = binSizes[tile]
+        if (size == 0) {
+            binnedTiles[binnedTileCount++] = tile
+        }
+        if (size == bins[tile].size) {
+            bins[tile] = bins[tile].copyOf(size * 2)
+        }
+        bins[tile][size] = primitive
+        binSizes[tile] = size + 1
+    }
+
+    // rasterization
+
+    private fun rasterizeBinnedTiles(shader: SoftwareShader, uniforms: Array<FloatArray>) {
+        val nextTile = AtomicInteger()
+        parallelFor.run(Math.min(parallelFor.parallelism, binnedTileCount), object : RangeTask {
+            override fun run(from: Int, to: Int) {
+                val worker = TileWorker(shader, uniforms)
+                while (true) {
+                    val next = nextTile.getAndIncrement()
+                    if (next >= binnedTileCount) {
+                        break
+                    }
+                    worker.rasterize(binnedTiles[next])
+                }
+                shadedFragments.addAndGet(worker.shadedCount)
+                occludedFragments.addAndGet(worker.occludedCount)
+            }
+        })
+        for (index in 0 until binnedTileCount) {
+            binSizes[binnedTiles[index]] = 0
+        }
+    }
+
+    /**
+     * Rasterizes tiles on one thread, with scratch memory of its own.
+     */
+    private inner class TileWorker(private val shader: SoftwareShader, private val uniforms: Array<FloatArray>) {
+
+        private val varyings = FloatArray(varyingCount)
+        private val color = FloatArray(4)
+
+        var shadedCount = 0L
+        var occludedCount = 0L
+
+        // pixels of the tile being rasterized, inclusive
+        private var tileLeft = 0
+        private var tileBottom = 0
+        private var tileRight = 0
+        private var tileTop = 0
+
+        fun rasterize(tile: Int) {
+            tileLeft = tile % tileColumns * tileSize
+            tileBottom = tile / tileColumns * tileSize
+            tileRight = Math.min(tileLeft + tileSize, framebuffer.width) - 1
+            tileTop = Math.min(tileBottom + tileSize, framebuffer.height) - 1
+            val bin = bins[tile]
+            for (index in 0 until binSizes[tile]) {
+                val primitive = bin[index]
+                when (kind) {
+                    triangles -> rasterizeTriangle(primitive)
+                    lines -> rasterizeLine(primitive)
+                    else -> rasterizePoint(primitive)
+                }
+            }
+        }
+
+        private fun rasterizeTriangle(primitive: Int) {
+            val ints = primitive * intsPerPrimitive
+            val i = primitiveInts
+            val left = Math.max(i[ints + 6], tileLeft)
+            val bottom = Math.max(i[ints + 7], tileBottom)
+            val right = Math.min(i[ints + 8], tileRight)
+            val top = Math.min(i[ints + 9], tileTop)
+            val x0 = i[ints]
+            val y0 = i[ints + 1]
+            val x1 = i[ints + 2]
+            val y1 = i[ints + 3]
+            val x2 = i[ints + 4]
+            val y2 = i[ints + 5]
+            val inverseArea = 1.0 / ((x2 - x1).toLong() * (y0 - y1) - (y2 - y1).toLong() * (x0 - x1))
+            // edge k is opposite to vertex k, its function is the weight of the vertex scaled by the area
+            val bias0 = edgeBias(x1, y1, x2, y2)
+            val bias1 = edgeBias(x2, y2, x0, y0)
+            val bias2 = edgeBias(x0, y0, x1, y1)
+            val stepX0 = -(y2 - y1).toLong() shl subpixelBits
+            val stepX1 = -(y0 - y2).toLong() shl subpixelBits
+            val stepX2 = -(y1 - y0).toLong() shl subpixelBits
+            val stepY0 = (x2 - x1).toLong() shl subpixelBits
+            val stepY1 = (x0 - x2).toLong() shl subpixelBits
+            val stepY2 = (x1 - x0).toLong() shl subpixelBits
+            var row0 = edgeValue(x1, y1, x2, y2, center(left), center(bottom))
+            var row1 = edgeValue(x2, y2, x0, y0, center(left), center(bottom))
+            var row2 = edgeValue(x0, y0, x1, y1, center(left), center(bottom))
+            val floats = primitive * 3 * vertexStride
+            for (y in bottom..top) {
+                var edge0 = row0
+                var edge1 = row1
+                var edge2 = row2
+                for (x in left..right) {
+                    if (((edge0 + bias0) or (edge1 + bias1) or (edge2 + bias2)) >= 0) {
+                        shadeFragment(x, y, floats, (edge0 * inverseArea).toFloat(), (edge1 * inverseArea).toFloat(),
+                                (edge2 * inverseArea).toFloat())
+                    }
+                    edge0 += stepX0
+                    edge1 += stepX1
+                    edge2 += stepX2
+                }
+                row0 += stepY0
+                row1 += stepY1
+                row2 += stepY2
+            }
+        }
+
+        private fun rasterizeLine(primitive: Int) {
+            val floats = primitive * 3 * vertexStride
+            val f = primitiveFloats
+            val x0 = f[floats]
+            val y0 = f[floats + 1]
+            val dx = f[floats + vertexStride] - x0
+            val dy = f[floats + vertexStride + 1] - y0
+            val ints = primitive * intsPerPrimitive
+            val left = Math.max(primitiveInts[ints + 6], tileLeft)
+            val bottom = Math.max(primitiveInts[ints + 7], tileBottom)
+            val right = Math.min(primitiveInts[ints + 8], tileRight)
+            val top = Math.min(primitiveInts[ints + 9], tileTop)
+            // a pixel per column (or row) the line crosses more along, at its center - the end one left out
+            if (Math.abs(dx) >= Math.abs(dy)) {
+                for (x in Math.max(left, firstCenterFrom(Math.min(x0, x0 + dx)))..
+                        Math.min(right, firstCenterFrom(Math.max(x0, x0 + dx)) - 1)) {
+                    val t = (x + 0.5f - x0) / dx
+                    val y = Math.floor((y0 + t * dy).toDouble()).toInt()
+                    if (y in bottom..top) {
+                        shadeFragment(x, y, floats, 1f - t, t, 0f)
+                    }
+                }
+            } else {
+                for (y in Math.max(bottom, firstCenterFrom(Math.min(y0, y0 + dy)))..
+                        Math.min(top, firstCenterFrom(Math.max(y0, y0 + dy)) - 1)) {
+                    val t = (y + 0.5f - y0) / dy
+                    val x = Math.floor((x0 + t * dx).toDouble()).toInt()
+                    if (x in left..right) {
+                        shadeFragment(x, y, floats, 1f - t, t, 0f)
+                    }
+                }
+            }
+        }
+
+        private fun rasterizePoint(primitive: Int) {
+            val ints = primitive * intsPerPrimitive
+            val floats = primitive * 3 * vertexStride
+            for (y in Math.max(primitiveInts[ints + 7], tileBottom)..Math.min(primitiveInts[ints + 9], tileTop)) {
+                for (x in Math.max(primitiveInts[ints + 6], tileLeft)..Math.min(primitiveInts[ints + 8], tileRight)) {
+                    shadeFragment(x, y, floats, 1f, 0f, 0f)
+                }
+            }
+        }
+
+        /**
+         * Depth tests, shades and writes fragment at pixel ([x], [y]) with barycentric weights of the primitive
+         * vertices starting at [floats].
+         */
+        private fun shadeFragment(x: Int, y: Int, floats: Int, weight0: Float, weight1: Float, weight2: Float) {
+            val f = primitiveFloats
+            val v0 = floats
+            val v1 = floats + vertexStride
+            val v2 = floats + 2 * vertexStride
+            val pixel = y * framebuffer.width + x
+            val depth = weight0 * f[v0 + 2] + weight1 * f[v1 + 2] + weight2 * f[v2 + 2]
+            if (depthTest && !(depth < framebuffer.depths[pixel])) {
+                occludedCount++
+                return
+            }
+            // varyings are interpolated as v / w, which is linear in window space, then divided by 1 / w
+            val w = 1f / (weight0 * f[v0 + 3] + weight1 * f[v1 + 3] + weight2 * f[v2 + 3])
+            for (varying in 0 until varyingCount) {
+                varyings[varying] = (weight0 * f[v0 + 4 + varying] + weight1 * f[v1 + 4 + varying] +
+                        weight2 * f[v2 + 4 + varying]) * w
+            }
+            shader.fragment(varyings, uniforms, color)
+            framebuffer.colors[pixel] = framebuffer.pack(color[0], color[1], color[2], color[3])
+            if (depthTest) {
+                framebuffer.depths[pixel] = depth
+            }
+            shadedCount++
+        }
+    }
+
+    companion object {
+
+        /**
+         * Side of a tile in pixels.
+         */
+        const val tileSize = 32
+
+        /**
+         * Fractional bits of fixed point window coordinates of triangle vertices.
+         */
+        const val subpixelBits = 8
+
+        /**
+         * Primitives are clipped to this many viewports around the actual one - within it the fixed point does
+         * not overflow, while most triangles crossing the viewport edges are not clipped at all.
+         */
+        private const val guardBand = 4f
+
+        private const val points = 0
+        private const val lines = 1
+        private const val triangles = 2
+
+        private const val intsPerPrimitive = 10
+        private const val initialBinSize = 16
+
+        private const val clipPlaneCount = 6
+        private const val maxPolygonVertices = 3 + clipPlaneCount
+
+        private fun toFixed(value: Float) = Math.round(value.toDouble() * (1 shl subpixelBits)).toInt()
+
+        private fun center(pixel: Int) = (pixel shl subpixelBits) + (1 shl subpixelBits - 1)
+
+        /**
+         * First pixel whose center is at [coordinate] or after it.
+         */
+        private fun firstCenterFrom(coordinate: Float) = Math.ceil(coordinate - 0.5).toInt()
+
+        /**
+         * Positive on the left of edge going from a to b - inside of counter-clockwise triangles.
+         */
+        private fun edgeValue(xa: Int, ya: Int, xb: Int, yb: Int, x: Int, y: Int) =
+                (xb - xa).toLong() * (y - ya) - (yb - ya).toLong() * (x - xa)
+
+        /**
+         * 0 for top and left edges, whose pixel centers belong to the triangle, -1 for the rest.
+         */
+        private fun edgeBias(xa: Int, ya: Int, xb: Int, yb: Int) = if (yb < ya || (yb == ya && xb < xa)) 0L else -1L
+
+        /**
+         * Signed distance of vertex at [offset] from [plane] - near, far, then the guard band.
+         */
+        private fun distance(plane: Int, vertices: FloatArray, offset: Int): Float {
+            val x = vertices[offset]
+            val y = vertices[offset + 1]
+            val z = vertices[offset + 2]
+            val w = vertices[offset + 3]
+            return when (plane) {
+                0 -> w + z
+                1 -> w - z
+                2 -> guardBand * w + x
+                3 -> guardBand * w - x
+                4 -> guardBand * w + y
+                else -> guardBand * w - y
+            }
+        }
+
+        private fun determinant(x0: Float, y0: Float, w0: Float,
+                                x1: Float, y1: Float, w1: Float,
+                                x2: Float, y2: Float, w2: Float): Double =
+                x0.toDouble() * (y1.toDouble() * w2 - w1.toDouble() * y2) -
+                        y0.toDouble() * (x1.toDouble() * w2 - w1.toDouble() * x2) +
+                        w0.toDouble() * (x1.toDouble() * y2 - y1.toDouble() * x2)
+    }
+}
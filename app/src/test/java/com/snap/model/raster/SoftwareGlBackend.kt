@@ -0,0 +1,551 @@
+package com.snap.model.raster
+
+import android.opengl.GLES20
+
+import com.snap.concurrent.ParallelFor
+import com.snap.concurrent.RangeTask
+import com.snap.model.RecordingGlBackend
+
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import java.nio.IntBuffer
+import java.nio.ShortBuffer
+
+/**
+ * Backend drawing on the CPU into [framebuffer] - pixel-level tests and fill cost of scenes without a device.
+ *
+ * Covers the part of GLES 2.0 the renderers use: buffer objects and client-side arrays, uniforms, depth test
+ * (GL_LESS) and culling of back faces (counter-clockwise front), triangles, strips, fans, lines and points,
+ * plus instanced draws and mapped buffers of GLES 3.0. No textures, blending or stencil. GLSL is not
+ * compiled - every program is drawn by the [SoftwareShader] [added][addShader] for its attributes and
+ * uniforms. Vertices are shaded and tiles rasterized by [parallelFor], see [Rasterizer].
+ *
+ * Everything else - reflection, counters, recorded commands - works as in [RecordingGlBackend]. Reports
+ * itself as GLES 2.0; set [driverVersion] to take GLES 3.0 paths.
+ */
+class SoftwareGlBackend @JvmOverloads constructor(val width: Int,
+                                                  val height: Int,
+                                                  private val parallelFor: ParallelFor = ParallelFor(),
+                                                  recordCommands: Boolean = false) : RecordingGlBackend(recordCommands) {
+
+    val framebuffer = Framebuffer(width, height)
+
+    private val rasterizer = Rasterizer(framebuffer, parallelFor)
+
+    private class AttributeArray {
+        var isEnabled = false
+        var size = 4
+        var type = GLES20.GL_FLOAT
+        var isNormalized = false
+        var stride = 0
+        var buffer = 0
+        var offset = 0
+        var clientData: Buffer? = null
+        var divisor = 0
+        val constant = floatArrayOf(0f, 0f, 0f, 1f)
+
+        val elementStride: Int
+            get() = if (stride != 0) stride else size * sizeOf(type)
+    }
+
+    /**
+     * Program as drawn by its shader - locations and slot counts of the shader attributes, uniform locations.
+     */
+    private class ProgramBinding(val shader: SoftwareShader,
+                                 val attributeLocations: IntArray,
+                                 val attributeSlots: IntArray,
+                                 val uniformLocations: IntArray) {
+
+        val inputSize = attributeSlots.sum() * 4
+    }
+
+    private class Mapping(val buffer: Int, val offset: Int, val data: ByteBuffer)
+
+    private val shaders = ArrayList<SoftwareShader>()
+    private val bindings = HashMap<Int, ProgramBinding>()
+    private val uniformValues = HashMap<Int, HashMap<Int, FloatArray>>()
+    private val bufferStores = HashMap<Int, ByteBuffer>()
+    private val mappings = HashMap<Int, Mapping>()
+    private val attributeArrays = Array(maxVertexAttributes) { AttributeArray() }
+
+    private var currentProgram = 0
+    private var arrayBuffer = 0
+    private var elementArrayBuffer = 0
+    private val clearColor = FloatArray(4)
+
+    private var positions = FloatArray(0)
+    private var varyings = FloatArray(0)
+
+    init {
+        driverVersion = "OpenGL ES 2.0 Software"
+    }
+
+    /**
+     * Draws programs declaring the same attributes and uniforms as [shader] with it, unless a shader added
+     * before matches them too.
+     */
+    fun addShader(shader: SoftwareShader) {
+        shaders.add(shader)
+    }
+
+    /**
+     * Fragments which passed the depth test and were shaded since [resetCounters] - divided by the pixels of
+     * [framebuffer], it is the overdraw.
+     */
+    val fragmentCount: Long
+        get() = rasterizer.fragmentCount
+
+    /**
+     * Fragments dropped by the depth test before shading.
+     */
+    val occludedFragmentCount: Long
+        get() = rasterizer.occludedFragmentCount
+
+    /**
+     * Primitives rasterized, after clipping and culling.
+     */
+    val primitiveCount: Long
+        get() = rasterizer.primitiveCount
+
+    val culledTriangleCount: Long
+        get() = rasterizer.culledTriangleCount
+
+    fun resetCounters() {
+        rasterizer.resetCounters()
+    }
+
+    // state
+
+    override fun glUseProgram(program: Int) {
+        super.glUseProgram(program)
+        currentProgram = program
+    }
+
+    override fun glEnableVertexAttribArray(index: Int) {
+        super.glEnableVertexAttribArray(index)
+        attributeArray(index).isEnabled = true
+    }
+
+    override fun glDisableVertexAttribArray(index: Int) {
+        super.glDisableVertexAttribArray(index)
+        attributeArray(index).isEnabled = false
+    }
+
+    override fun glBindBuffer(target: Int, buffer: Int) {
+        super.glBindBuffer(target, buffer)
+        when (target) {
+            GLES20.GL_ARRAY_BUFFER -> arrayBuffer = buffer
+            GLES20.GL_ELEMENT_ARRAY_BUFFER -> elementArrayBuffer = buffer
+        }
+    }
+
+    override fun glEnable(capability: Int) {
+        super.glEnable(capability)
+        setCapability(capability, true)
+    }
+
+    override fun glDisable(capability: Int) {
+        super.glDisable(capability)
+        setCapability(capability, false)
+    }
+
+    override fun glViewport(x: Int, y: Int, width: Int, height: Int) {
+        super.glViewport(x, y, width, height)
+        rasterizer.viewportX = x
+        rasterizer.viewportY = y
+        rasterizer.viewportWidth = width
+        rasterizer.viewportHeight = height
+    }
+
+    override fun glClearColor(red: Float, green: Float, blue: Float, alpha: Float) {
+        super.glClearColor(red, green, blue, alpha)
+        clearColor[0] = red
+        clearColor[1] = green
+        clearColor[2] = blue
+        clearColor[3] = alpha
+    }
+
+    // programs - uniforms and the shader drawing them are tied to the link
+
+    override fun glLinkProgram(program: Int) {
+        super.glLinkProgram(program)
+        forgetProgram(program)
+    }
+
+    override fun glProgramBinary(program: Int, binaryFormat: Int, binary: Buffer, length: Int) {
+        super.glProgramBinary(program, binaryFormat, binary, length)
+        forgetProgram(program)
+    }
+
+    override fun glDeleteProgram(program: Int) {
+        super.glDeleteProgram(program)
+        forgetProgram(program)
+    }
+
+    // buffer objects
+
+    override fun glBufferData(target: Int, size: Int, data: Buffer?, usage: Int) {
+        super.glBufferData(target, size, data, usage)
+        val buffer = boundBuffer(target)
+        if (buffer != 0) {
+            val store = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder())
+            if (data != null) {
+                copy(data, store, 0, size)
+            }
+            bufferStores[buffer] = store
+        }
+    }
+
+    override fun glBufferSubData(target: Int, offset: Int, size: Int, data: Buffer) {
+        super.glBufferSubData(target, offset, size, data)
+        copy(data, store(boundBuffer(target)), offset, size)
+    }
+
+    override fun glDeleteBuffers(count: Int, buffers: IntArray, offset: Int) {
+        for (index in 0 until count) {
+            bufferStores.remove(buffers[offset + index])
+        }
+        super.glDeleteBuffers(count, buffers, offset)
+    }
+
+    override fun glMapBufferRange(target: Int, offset: Int, length: Int, access: Int): Buffer? {
+        val mapped = super.glMapBufferRange(target, offset, length, access) as ByteBuffer
+        mappings[target] = Mapping(boundBuffer(target), offset, mapped)
+        return mapped
+    }
+
+    override fun glUnmapBuffer(target: Int): Boolean {
+        val mapping = mappings.remove(target)
+        if (mapping != null) {
+            val data = mapping.data.duplicate()
+            data.clear()
+            copy(data, store(mapping.buffer), mapping.offset, data.capacity())
+        }
+        return super.glUnmapBuffer(target)
+    }
+
+    // vertex data and uniforms
+
+    override fun glVertexAttribPointer(index: Int, size: Int, type: Int, normalized: Boolean, stride: Int, data: Buffer) {
+        super.glVertexAttribPointer(index, size, type, normalized, stride, data)
+        // what the pointer points to is fixed by the call, whatever happens to the buffer position later
+        val clientData = when (data) {
+            is ByteBuffer -> data.duplicate().order(ByteOrder.nativeOrder())
+            is FloatBuffer -> data.duplicate()
+            else -> throw IllegalArgumentException("Client-side array of ${data.javaClass.simpleName} is not supported.")
+        }
+        setPointer(index, size, type, normalized, stride, 0, clientData)
+    }
+
+    override fun glVertexAttribPointer(index: Int, size: Int, type: Int, normalized: Boolean, stride: Int, offset: Int) {
+        super.glVertexAttribPointer(index, size, type, normalized, stride, offset)
+        setPointer(index, size, type, normalized, stride, offset, null)
+    }
+
+    override fun glVertexAttrib4f(index: Int, x: Float, y: Float, z: Float, w: Float) {
+        super.glVertexAttrib4f(index, x, y, z, w)
+        val constant = attributeArray(index).constant
+        constant[0] = x
+        constant[1] = y
+        constant[2] = z
+        constant[3] = w
+    }
+
+    override fun glVertexAttribDivisor(index: Int, divisor: Int) {
+        super.glVertexAttribDivisor(index, divisor)
+        attributeArray(index).divisor = divisor
+    }
+
+    override fun glUniformMatrix4fv(location: Int, count: Int, transpose: Boolean, value: FloatArray, offset: Int) {
+        super.glUniformMatrix4fv(location, count, transpose, value, offset)
+        val uniform = uniformValue(location, count * 16) ?: return
+        for (matrix in 0 until count) {
+            for (element in 0 until 16) {
+                val source = if (transpose) element % 4 * 4 + element / 4 else element
+                uniform[matrix * 16 + element] = value[offset + matrix * 16 + source]
+            }
+        }
+    }
+
+    override fun glUniform3f(location: Int, x: Float, y: Float, z: Float) {
+        super.glUniform3f(location, x, y, z)
+        val uniform = uniformValue(location, 3) ?: return
+        uniform[0] = x
+        uniform[1] = y
+        uniform[2] = z
+    }
+
+    override fun glUniform4f(location: Int, x: Float, y: Float, z: Float, w: Float) {
+        super.glUniform4f(location, x, y, z, w)
+        val uniform = uniformValue(location, 4) ?: return
+        uniform[0] = x
+        uniform[1] = y
+        uniform[2] = z
+        uniform[3] = w
+    }
+
+    // drawing
+
+    override fun glClear(mask: Int) {
+        super.glClear(mask)
+        if (mask and GLES20.GL_COLOR_BUFFER_BIT != 0) {
+            framebuffer.clearColor(framebuffer.pack(clearColor[0], clearColor[1], clearColor[2], clearColor[3]))
+        }
+        if (mask and GLES20.GL_DEPTH_BUFFER_BIT != 0) {
+            framebuffer.clearDepth(1f)
+        }
+    }
+
+    override fun glDrawArrays(mode: Int, first: Int, count: Int) {
+        super.glDrawArrays(mode, first, count)
+        draw(mode, count, 1, first, null, 0, 0)
+    }
+
+    override fun glDrawElements(mode: Int, count: Int, type: Int, offset: Int) {
+        super.glDrawElements(mode, count, type, offset)
+        draw(mode, count, 1, 0, store(elementArrayBuffer), type, offset)
+    }
+
+    override fun glDrawArraysInstanced(mode: Int, first: Int, count: Int, instanceCount: Int) {
+        super.glDrawArraysInstanced(mode, first, count, instanceCount)
+        draw(mode, count, instanceCount, first, null, 0, 0)
+    }
+
+    override fun glDrawElementsInstanced(mode: Int, count: Int, type: Int, offset: Int, instanceCount: Int) {
+        super.glDrawElementsInstanced(mode, count, type, offset, instanceCount)
+        draw(mode, count, instanceCount, 0, store(elementArrayBuffer), type, offset)
+    }
+
+    /**
+     * Shades [count] vertices of every instance - taken from [first] on, or by indices of [type] at [indexOffset]
+     * of [indices] - and rasterizes them.
+     */
+    private fun draw(mode: Int, count: Int, instanceCount: Int, first: Int, indices: ByteBuffer?, type: Int,
+                     indexOffset: Int) {
+        if (count <= 0 || instanceCount <= 0) {
+            return
+        }
+        val binding = binding(currentProgram)
+        val shader = binding.shader
+        val values = uniformValues[currentProgram]
+        val uniforms = Array(binding.uniformLocations.size) { values?.get(binding.uniformLocations[it]) ?: unsetUniform }
+        val vertexCount = count * instanceCount
+        val varyingCount = shader.varyingCount
+        if (positions.size < vertexCount * 4) {
+            positions = FloatArray(vertexCount * 4)
+        }
+        if (varyings.size < vertexCount * varyingCount) {
+            varyings = FloatArray(vertexCount * varyingCount)
+        }
+        val task = object : RangeTask {
+            override fun run(from: Int, to: Int) {
+                val input = FloatArray(binding.inputSize)
+                val position = FloatArray(4)
+                val vertexVaryings = FloatArray(varyingCount)
+                for (vertex in from until to) {
+                    val instance = vertex / count
+                    val element = vertex % count
+                    val index = if (indices == null) first + element else indexAt(indices, type, indexOffset, element)
+                    fetch(binding, index, instance, input)
+                    shader.vertex(input, uniforms, position, vertexVaryings)
+                    System.arraycopy(position, 0, positions, vertex * 4, 4)
+                    System.arraycopy(vertexVaryings, 0, varyings, vertex * varyingCount, varyingCount)
+                }
+            }
+        }
+        if (vertexCount < minParallelVertexCount) {
+            task.run(0, vertexCount)
+        } else {
+            parallelFor.run(vertexCount, task)
+        }
+        rasterizer.draw(mode, positions, varyings, count, instanceCount, shader, uniforms)
+    }
+
+    /**
+     * Reads attributes of vertex [index] of [instance] into shader [input].
+     */
+    private fun fetch(binding: ProgramBinding, index: Int, instance: Int, input: FloatArray) {
+        var target = 0
+        for (attribute in binding.attributeLocations.indices) {
+            for (slot in 0 until binding.attributeSlots[attribute]) {
+                val array = attributeArrays[binding.attributeLocations[attribute] + slot]
+                if (!array.isEnabled) {
+                    System.arraycopy(array.constant, 0, input, target, 4)
+                } else {
+                    val element = if (array.divisor == 0) index else instance / array.divisor
+                    for (component in 0 until 4) {
+                        input[target + component] = if (component < array.size) {
+                            componentAt(array, element, component)
+                        } else {
+                            defaultComponents[component]
+                        }
+                    }
+                }
+                target += 4
+            }
+        }
+    }
+
+    private fun componentAt(array: AttributeArray, element: Int, component: Int): Float {
+        val byteOffset = array.offset + element * array.elementStride + component * sizeOf(array.type)
+        val clientData = array.clientData
+        if (clientData is FloatBuffer) {
+            if (array.type != GLES20.GL_FLOAT) {
+                throw IllegalArgumentException("Client-side float array read as type 0x${Integer.toHexString(array.type)}.")
+            }
+            return clientData.get(clientData.position() + byteOffset / 4)
+        }
+        val bytes = clientData as? ByteBuffer ?: store(array.buffer)
+        val position = bytes.position() + byteOffset
+        val normalized = array.isNormalized
+        return when (array.type) {
+            GLES20.GL_FLOAT -> bytes.getFloat(position)
+            GLES20.GL_BYTE -> bytes.get(position).let { if (normalized) Math.max(it / 127f, -1f) else it.toFloat() }
+            GLES20.GL_UNSIGNED_BYTE -> (bytes.get(position).toInt() and 0xFF).let { if (normalized) it / 255f else it.toFloat() }
+            GLES20.GL_SHORT -> bytes.getShort(position).let { if (normalized) Math.max(it / 32767f, -1f) else it.toFloat() }
+            GLES20.GL_UNSIGNED_SHORT ->
+                (bytes.getShort(position).toInt() and 0xFFFF).let { if (normalized) it / 65535f else it.toFloat() }
+            else -> throw IllegalArgumentException("Attribute type 0x${Integer.toHexString(array.type)} is not supported.")
+        }
+    }
+
+    private fun indexAt(indices: ByteBuffer, type: Int, offset: Int, element: Int) = when (type) {
+        GLES20.GL_UNSIGNED_BYTE -> indices.get(offset + element).toInt() and 0xFF
+        GLES20.GL_UNSIGNED_SHORT -> indices.getShort(offset + element * 2).toInt() and 0xFFFF
+        GLES20.GL_UNSIGNED_INT -> indices.getInt(offset + element * 4)
+        else -> throw IllegalArgumentException("Index type 0x${Integer.toHexString(type)} is not supported.")
+    }
+
+    private fun binding(program: Int): ProgramBinding {
+        bindings[program]?.let { return it }
+        val attributes = attributesOf(program)
+        val uniforms = uniformsOf(program)
+        if (attributes.isEmpty() && uniforms.isEmpty()) {
+            throw IllegalStateException("Program $program is not linked - there is nothing to draw with.")
+        }
+        val attributeNames = attributes.map { it.name }.toSet()
+        val uniformNames = uniforms.map { it.name }.toSet()
+        val shader = shaders.firstOrNull { it.attributes.toSet() == attributeNames && it.uniforms.toSet() == uniformNames }
+                ?: throw IllegalStateException("No software shader added for attributes $attributeNames and " +
+                        "uniforms $uniformNames of program $program.")
+        val binding = ProgramBinding(shader,
+                IntArray(shader.attributes.size) { index -> attributes.indexOfFirst { it.name == shader.attributes[index] } },
+                IntArray(shader.attributes.size) { index -> slotsOf(attributes.first { it.name == shader.attributes[index] }.type) },
+                IntArray(shader.uniforms.size) { index -> uniforms.indexOfFirst { it.name == shader.uniforms[index] } })
+        bindings[program] = binding
+        return binding
+    }
+
+    private fun forgetProgram(program: Int) {
+        bindings.remove(program)
+        uniformValues.remove(program)
+    }
+
+    /**
+     * Storage of uniform at [location] of the current program, with room for at least [size] floats - null
+     * for location -1, which GL ignores.
+     */
+    private fun uniformValue(location: Int, size: Int): FloatArray? {
+        if (location < 0) {
+            return null
+        }
+        if (currentProgram == 0) {
+            throw IllegalStateException("Uniform $location set with no program in use.")
+        }
+        val values = uniformValues.getOrPut(currentProgram) { HashMap() }
+        val value = values[location]
+        if (value != null && value.size >= size) {
+            return value
+        }
+        // elements of an array the call does not reach keep their values
+        val grown = value?.copyOf(size) ?: FloatArray(size)
+        values[location] = grown
+        return grown
+    }
+
+    private fun setPointer(index: Int, size: Int, type: Int, normalized: Boolean, stride: Int, offset: Int,
+                           clientData: Buffer?) {
+        if (size !in 1..4) {
+            throw IllegalArgumentException("Attribute $index of $size components.")
+        }
+        val array = attributeArray(index)
+        array.size = size
+        array.type = type
+        array.isNormalized = normalized
+        array.stride = stride
+        array.offset = offset
+        array.clientData = clientData
+        array.buffer = if (clientData == null) arrayBuffer else 0
+    }
+
+    private fun setCapability(capability: Int, isEnabled: Boolean) {
+        when (capability) {
+            GLES20.GL_DEPTH_TEST -> rasterizer.depthTest = isEnabled
+            GLES20.GL_CULL_FACE -> rasterizer.cullBackFaces = isEnabled
+        }
+    }
+
+    private fun attributeArray(index: Int): AttributeArray {
+        if (index < 0 || index >= maxVertexAttributes) {
+            throw IndexOutOfBoundsException("Attribute location $index of $maxVertexAttributes.")
+        }
+        return attributeArrays[index]
+    }
+
+    private fun store(buffer: Int) = bufferStores[buffer]
+            ?: throw IllegalStateException("Buffer object $buffer has no data store.")
+
+    private companion object {
+
+        /**
+         * GL_MAX_VERTEX_ATTRIBS guaranteed by GLES 2.0.
+         */
+        const val maxVertexAttributes = 8
+
+        /**
+         * Below this many vertices shading on the calling thread is cheaper than handing them out.
+         */
+        const val minParallelVertexCount = 1024
+
+        val defaultComponents = floatArrayOf(0f, 0f, 0f, 1f)
+
+        val unsetUniform = FloatArray(16)
+
+        fun sizeOf(type: Int) = when (type) {
+            GLES20.GL_BYTE, GLES20.GL_UNSIGNED_BYTE -> 1
+            GLES20.GL_SHORT, GLES20.GL_UNSIGNED_SHORT -> 2
+            else -> 4
+        }
+
+        /**
+         * Consecutive locations taken by attribute of GL [type] - a column of a matrix each.
+         */
+        fun slotsOf(type: Int) = when (type) {
+            GLES20.GL_FLOAT_MAT4 -> 4
+            GLES20.GL_FLOAT_MAT3 -> 3
+            GLES20.GL_FLOAT_MAT2 -> 2
+            else -> 1
+        }
+
+        /**
+         * Copies [size] bytes of [data], from its position, into [store] at [offset].
+         */
+        fun copy(data: Buffer, store: ByteBuffer, offset: Int, size: Int) {
+            if (offset < 0 || offset + size > store.capacity()) {
+                throw IndexOutOfBoundsException("$size bytes at $offset do not fit into store of ${store.capacity()}.")
+            }
+            val target = store.duplicate().order(ByteOrder.nativeOrder())
+            target.position(offset)
+            target.limit(offset + size)
+            when (data) {
+                is ByteBuffer -> target.put(data.duplicate().apply { limit(position() + size) })
+                is FloatBuffer -> target.asFloatBuffer().put(data.duplicate().apply { limit(position() + size / 4) })
+                is ShortBuffer -> target.asShortBuffer().put(data.duplicate().apply { limit(position() + size / 2) })
+                is IntBuffer -> target.asIntBuffer().put(data.duplicate().apply { limit(position() + size / 4) })
+                else -> throw IllegalArgumentException("Data of ${data.javaClass.simpleName} is not supported.")
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.snap.model.raster
+
+import android.opengl.GLES20
+import android.opengl.GLES30
+import com.snap.concurrent.ParallelFor
+import com.snap.model.toNativeOrderBuffer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.concurrent.Executors
+
+class SoftwareGlBackendTest {
+
+    private val backend = SoftwareGlBackend(32, 32, ParallelFor(1))
+
+    private val red = 0xFFFF0000.toInt()
+    private val green = 0xFF00FF00.toInt()
+    private val black = 0xFF000000.toInt()
+
+    private fun useFlatProgram(backend: SoftwareGlBackend = this.backend): Int {
+        backend.addShader(UniformColorShader("a_Position", "u_Color"))
+        return useProgram(backend, "attribute vec4 a_Position; void main() { gl_Position = a_Position; }",
+                "precision mediump float; uniform vec4 u_Color; void main() { gl_FragColor = u_Color; }")
+    }
+
+    private fun useVertexColorProgram(backend: SoftwareGlBackend = this.backend): Int {
+        backend.addShader(VertexColorShader("u_Matrix", "a_Position", "a_Color"))
+        val program = useProgram(backend,
+                "uniform mat4 u_Matrix; attribute vec4 a_Position; attribute vec4 a_Color; varying vec4 v_Color; " +
+                        "void main() { v_Color = a_Color; gl_Position = u_Matrix * a_Position; }",
+                "precision mediump float; varying vec4 v_Color; void main() { gl_FragColor = v_Color; }")
+        backend.glUniformMatrix4fv(backend.glGetUniformLocation(program, "u_Matrix"), 1, false, identity, 0)
+        return program
+    }
+
+    private fun useProgram(backend: SoftwareGlBackend, vertexSource: String, fragmentSource: String): Int {
+        val program = backend.glCreateProgram()
+        for ((type, source) in listOf(GLES20.GL_VERTEX_SHADER to vertexSource, GLES20.GL_FRAGMENT_SHADER to fragmentSource)) {
+            val shader = backend.glCreateShader(type)
+            backend.glShaderSource(shader, source)
+            backend.glCompileShader(shader)
+            backend.glAttachShader(program, shader)
+        }
+        backend.glLinkProgram(program)
+        backend.glUseProgram(program)
+        return program
+    }
+
+    private fun setColor(program: Int, red: Float, green: Float, blue: Float) =
+            backend.glUniform4f(backend.glGetUniformLocation(program, "u_Color"), red, green, blue, 1f)
+
+    private fun setPositions(program: Int, vararg positions: Float, backend: SoftwareGlBackend = this.backend) {
+        val location = backend.glGetAttribLocation(program, "a_Position")
+        backend.glEnableVertexAttribArray(location)
+        backend.glVertexAttribPointer(location, 3, GLES20.GL_FLOAT, false, 0, positions.toNativeOrderBuffer())
+    }
+
+    private fun countOf(color: Int, framebuffer: Framebuffer = backend.framebuffer) = framebuffer.colors.count { it == color }
+
+    @Test
+    fun clearFillsColorAndDepth() {
+        backend.glClearColor(0f, 1f, 0f, 0.5f)
+        backend.glClear(GLES20.GL_COLOR_BUFFER_BIT or GLES20.GL_DEPTH_BUFFER_BIT)
+
+        assertEquals(32 * 32, countOf(green))
+        assertEquals(1f, backend.framebuffer.depth(5, 5), 0f)
+    }
+
+    @Test
+    fun quadOfTwoTrianglesCoversEveryPixelOnce() {
+        val program = useFlatProgram()
+        setColor(program, 1f, 0f, 0f)
+        setPositions(program, -1f, -1f, 0f, 1f, -1f, 0f, -1f, 1f, 0f, 1f, 1f, 0f)
+
+        backend.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
+
+        // the shared diagonal goes to exactly one of the triangles
+        assertEquals(32 * 32, countOf(red))
+        assertEquals(32L * 32, backend.fragmentCount)
+        assertEquals(2L, backend.primitiveCount)
+    }
+
+    @Test
+    fun triangleCoversPixelCentersInside() {
+        val program = useFlatProgram()
+        setColor(program, 1f, 0f, 0f)
+        // right triangle over the lower left half of 16x16 pixels
+        setPositions(program, -1f, -1f, 0f, 0f, -1f, 0f, -1f, 0f, 0f)
+
+        backend.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3)
+
+        assertEquals(16 * 15 / 2, countOf(red))
+        assertEquals(red, backend.framebuffer.color(0, 0))
+        assertEquals(black, backend.framebuffer.color(15, 15))
+    }
+
+    @Test
+    fun depthTestKeepsNearerFragments() {
+        val program = useFlatProgram()
+        backend.glEnable(GLES20.GL_DEPTH_TEST)
+        setColor(program, 1f, 0f, 0f)
+        setPositions(program, -1f, -1f, -0.5f, 1f, -1f, -0.5f, -1f, 1f, -0.5f, 1f, 1f, -0.5f)
+        backend.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
+
+        setColor(program, 0f, 1f, 0f)
+        setPositions(program, -1f, -1f, 0.5f, 1f, -1f, 0.5f, -1f, 1f, 0.5f, 1f, 1f, 0.5f)
+        backend.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
+
+        assertEquals(32 * 32, countOf(red))
+        assertEquals(32L * 32, backend.occludedFragmentCount)
+        assertEquals(0.25f, backend.framebuffer.depth(10, 10), 1e-6f)
+    }
+
+    @Test
+    fun withoutDepthTestLaterDrawWins() {
+        val program = useFlatProgram()
+        setColor(program, 1f, 0f, 0f)
+        setPositions(program, -1f, -1f, -0.5f, 1f, -1f, -0.5f, -1f, 1f, -0.5f, 1f, 1f, -0.5f)
+        backend.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
+
+        setColor(program, 0f, 1f, 0f)
+        setPositions(program, -1f, -1f, 0.5f, 1f, -1f, 0.5f, -1f, 1f, 0.5f, 1f, 1f, 0.5f)
+        backend.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
+
+        assertEquals(32 * 32, countOf(green))
+        assertEquals(1f, backend.framebuffer.depth(10, 10), 0f)
+    }
+
+    @Test
+    fun cullFaceSkipsClockwiseTriangles() {
+        val program = useFlatProgram()
+        backend.glEnable(GLES20.GL_CULL_FACE)
+        setColor(program, 1f, 0f, 0f)
+        setPositions(program, -1f, -1f, 0f, -1f, 1f, 0f, 1f, -1f, 0f, 1f, -1f, 0f, 1f, 1f, 0f, -1f, 1f, 0f)
+
+        backend.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6)
+
+        assertEquals(1L, backend.culledTriangleCount)
+        assertEquals(32 * 33 / 2, countOf(red))
+    }
+
+    @Test
+    fun horizontalLineCoversOnePixelPerColumn() {
+        val program = useFlatProgram()
+        setColor(program, 1f, 0f, 0f)
+        setPositions(program, -1f, 0.03f, 0f, 1f, 0.03f, 0f)
+
+        backend.glDrawArrays(GLES20.GL_LINES, 0, 2)
+
+        assertEquals(32, countOf(red))
+        assertEquals(red, backend.framebuffer.color(31, 16))
+    }
+
+    @Test
+    fun pointsCoverSquaresOfPointSize() {
+        backend.addShader(VertexColorShader("u_Matrix", "a_Position", "a_Color", pointSize = 3f))
+        val program = useProgram(backend,
+                "uniform mat4 u_Matrix; attribute vec4 a_Position; attribute vec4 a_Color; varying vec4 v_Color; " +
+                        "void main() { v_Color = a_Color; gl_Position = u_Matrix * a_Position; }",
+                "precision mediump float; varying vec4 v_Color; void main() { gl_FragColor = v_Color; }")
+        backend.glUniformMatrix4fv(backend.glGetUniformLocation(program, "u_Matrix"), 1, false, identity, 0)
+        setPositions(program, 1f / 32, 1f / 32, 0f, -0.5f + 1f / 32, -0.5f + 1f / 32, 0f)
+        backend.glVertexAttrib4f(backend.glGetAttribLocation(program, "a_Color"), 1f, 0f, 0f, 1f)
+
+        backend.glDrawArrays(GLES20.GL_POINTS, 0, 2)
+
+        assertEquals(2 * 9, countOf(red))
+        assertEquals(red, backend.framebuffer.color(15, 15))
+        assertEquals(red, backend.framebuffer.color(17, 17))
+    }
+
+    @Test
+    fun colorsAreInterpolatedAcrossTriangle() {
+        val program = useVertexColorProgram()
+        setPositions(program, -1f, -1f, 0f, 3f, -1f, 0f, -1f, 3f, 0f)
+        val colors = floatArrayOf(0f, 0f, 0f, 1f, 2f, 0f, 0f, 1f, 0f, 2f, 0f, 1f)
+        val colorLocation = backend.glGetAttribLocation(program, "a_Color")
+        backend.glEnableVertexAttribArray(colorLocation)
+        backend.glVertexAttribPointer(colorLocation, 4, GLES20.GL_FLOAT, false, 0, colors.toNativeOrderBuffer())
+
+        backend.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3)
+
+        // red grows along x by 1 / 32 per pixel, green along y
+        val color = backend.framebuffer.color(7, 23)
+        assertEquals(Math.round(7.5f / 32 * 255), color shr 16 and 0xFF)
+        assertEquals(Math.round(23.5f / 32 * 255), color shr 8 and 0xFF)
+        assertEquals(32L * 32, backend.fragmentCount)
+    }
+
+    @Test
+    fun elementsAreReadFromBoundIndexBuffer() {
+        val program = useFlatProgram()
+        setColor(program, 1f, 0f, 0f)
+        val buffers = IntArray(2)
+        backend.glGenBuffers(2, buffers, 0)
+        backend.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0])
+        val positions = floatArrayOf(-1f, -1f, 0f, 1f, -1f, 0f, -1f, 1f, 0f, 1f, 1f, 0f)
+        backend.glBufferData(GLES20.GL_ARRAY_BUFFER, positions.size * 4, positions.toNativeOrderBuffer(),
+                GLES20.GL_STATIC_DRAW)
+        val location = backend.glGetAttribLocation(program, "a_Position")
+        backend.glEnableVertexAttribArray(location)
+        backend.glVertexAttribPointer(location, 3, GLES20.GL_FLOAT, false, 12, 0)
+        backend.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1])
+        val indices = ByteBuffer.allocateDirect(12).order(ByteOrder.nativeOrder())
+        indices.asShortBuffer().put(shortArrayOf(0, 1, 2, 2, 1, 3))
+        backend.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 12, indices, GLES20.GL_STATIC_DRAW)
+
+        backend.glDrawElements(GLES20.GL_TRIANGLES, 3, GLES20.GL_UNSIGNED_SHORT, 6)
+
+        // only the second triangle - the upper right half with the diagonal
+        assertEquals(32 * 33 / 2, countOf(red))
+        assertEquals(red, backend.framebuffer.color(31, 31))
+        assertEquals(black, backend.framebuffer.color(0, 0))
+    }
+
+    @Test
+    fun instancedAttributesAdvancePerInstance() {
+        val program = useVertexColorProgram()
+        // both instances cover the lower left quarter, the second one - green - is drawn last
+        setPositions(program, -1f, -1f, 0f, 0f, -1f, 0f, -1f, 0f, 0f, 0f, 0f, 0f)
+        val colorLocation = backend.glGetAttribLocation(program, "a_Color")
+        backend.glEnableVertexAttribArray(colorLocation)
+        backend.glVertexAttribPointer(colorLocation, 4, GLES20.GL_FLOAT, false, 0,
+                floatArrayOf(1f, 0f, 0f, 1f, 0f, 1f, 0f, 1f).toNativeOrderBuffer())
+        backend.glVertexAttribDivisor(colorLocation, 1)
+
+        backend.glDrawArraysInstanced(GLES20.GL_TRIANGLE_STRIP, 0, 4, 2)
+
+        assertEquals(16 * 16, countOf(green))
+        assertEquals(4L, backend.primitiveCount)
+        assertEquals(2L * 16 * 16, backend.fragmentCount)
+    }
+
+    @Test
+    fun mappedBufferRangeIsVisibleAfterUnmap() {
+        val program = useFlatProgram()
+        setColor(program, 0f, 1f, 0f)
+        val buffers = IntArray(1)
+        backend.glGenBuffers(1, buffers, 0)
+        backend.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0])
+        backend.glBufferData(GLES20.GL_ARRAY_BUFFER, 48, null, GLES20.GL_STREAM_DRAW)
+        val mapped = backend.glMapBufferRange(GLES20.GL_ARRAY_BUFFER, 0, 48, GLES30.GL_MAP_WRITE_BIT) as ByteBuffer
+        mapped.order(ByteOrder.nativeOrder()).asFloatBuffer().put(
+                floatArrayOf(-1f, -1f, 0f, 1f, -1f, 0f, -1f, 1f, 0f, 1f, 1f, 0f))
+        backend.glUnmapBuffer(GLES20.GL_ARRAY_BUFFER)
+        val location = backend.glGetAttribLocation(program, "a_Position")
+        backend.glEnableVertexAttribArray(location)
+        backend.glVertexAttribPointer(location, 3, GLES20.GL_FLOAT, false, 0, 0)
+
+        backend.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
+
+        assertEquals(32 * 32, countOf(green))
+    }
+
+    @Test
+    fun viewportMapsClipSpaceToItsRectangle() {
+        val program = useFlatProgram()
+        setColor(program, 1f, 0f, 0f)
+        backend.glViewport(8, 8, 8, 16)
+        setPositions(program, -1f, -1f, 0f, 1f, -1f, 0f, -1f, 1f, 0f, 1f, 1f, 0f)
+
+        backend.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4)
+
+        assertEquals(8 * 16, countOf(red))
+        assertEquals(red, backend.framebuffer.color(8, 8))
+        assertEquals(black, backend.framebuffer.color(16, 8))
+    }
+
+    @Test
+    fun trianglesCrossingNearPlaneAreClipped() {
+        val program = useVertexColorProgram()
+        val perspective = floatArrayOf(1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 0f, -1.2f, -1f, 0f, 0f, -2.2f, 0f)
+        backend.glUniformMatrix4fv(backend.glGetUniformLocation(program, "u_Matrix"), 1, false, perspective, 0)
+        backend.glVertexAttrib4f(backend.glGetAttribLocation(program, "a_Color"), 1f, 0f, 0f, 1f)
+        // a floor from behind the camera far into the scene, and a triangle behind the camera only
+        setPositions(program, -1f, -1f, 5f, 1f, -1f, 5f, 0f, -1f, -10f, -1f, 1f, 2f, 1f, 1f, 2f, 0f, 2f, 3f)
+
+        backend.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6)
+
+        val floor = countOf(red)
+        assertTrue("Floor covers $floor pixels", floor in 1 until 32 * 16)
+        assertEquals(black, backend.framebuffer.color(16, 24))
+        assertEquals(red, backend.framebuffer.color(16, 1))
+    }
+
+    @Test
+    fun parallelTilesDrawSameImageAsOneThread() {
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val images = listOf(ParallelFor(1), ParallelFor(4, executor)).map { parallelFor ->
+                val backend = SoftwareGlBackend(200, 150, parallelFor)
+                val program = useVertexColorProgram(backend)
+                val random = java.util.Random(7)
+                val positions = FloatArray(3 * 300) { random.nextFloat() * 2.4f - 1.2f }
+                setPositions(program, *positions, backend = backend)
+                val colors = FloatArray(4 * 300) { random.nextFloat() }
+                val colorLocation = backend.glGetAttribLocation(program, "a_Color")
+                backend.glEnableVertexAttribArray(colorLocation)
+                backend.glVertexAttribPointer(colorLocation, 4, GLES20.GL_FLOAT, false, 0, colors.toNativeOrderBuffer())
+                backend.glEnable(GLES20.GL_DEPTH_TEST)
+                backend.glDrawArrays(GLES20.GL_TRIANGLES, 0, 300)
+                backend.framebuffer
+            }
+
+            assertEquals(0, images[0].differingPixelCount(images[1]))
+            assertTrue(images[0].colors.any { it != black })
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun drawingProgramWithoutShaderFails() {
+        val program = useProgram(backend, "attribute vec4 a_Other; void main() { gl_Position = a_Other; }",
+                "void main() { gl_FragColor = vec4(1.0); }")
+        backend.glEnableVertexAttribArray(backend.glGetAttribLocation(program, "a_Other"))
+
+        backend.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3)
+    }
+
+    private companion object {
+
+        val identity = floatArrayOf(1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f)
+    }
+}
@@ -0,0 +1,49 @@
+package com.snap.model.raster
+
+/**
+ * Kotlin twin of a GLSL program, run by [SoftwareGlBackend] in place of the shaders it was linked from.
+ *
+ * A linked program is drawn with the first shader added to the backend which declares the same names of
+ * [attributes] and [uniforms] as the program does. The stages have to compute what the GLSL does, as close
+ * as float math allows - golden images are only as good as the twin.
+ *
+ * Both stages are called from several threads at once, so they must keep no state of their own.
+ */
+interface SoftwareShader {
+
+    /**
+     * Attributes the vertex stage reads, in the order they are packed into its input.
+     */
+    val attributes: List<String>
+
+    /**
+     * Uniforms both stages read, in the order they are passed to them.
+     */
+    val uniforms: List<String>
+
+    /**
+     * Floats interpolated from the vertex stage into the fragment stage.
+     */
+    val varyingCount: Int
+
+    /**
+     * Side in pixels of the square a point is drawn as - gl_PointSize.
+     */
+    val pointSize: Float
+        get() = 1f
+
+    /**
+     * Writes clip space gl_Position into [position] and [varyingCount] varyings into [varyings].
+     *
+     * [attributes] holds values of [SoftwareShader.attributes] one after another, 4 floats per vector - components
+     * missing in the vertex data are filled from (0, 0, 0, 1) - and 16 per mat4, column-major. [uniforms]
+     * holds the last values of [SoftwareShader.uniforms] - 16 floats per mat4, all elements of arrays.
+     */
+    fun vertex(attributes: FloatArray, uniforms: Array<FloatArray>, position: FloatArray, varyings: FloatArray)
+
+    /**
+     * Writes gl_FragColor as red, green, blue and alpha into [color], from [varyings] interpolated
+     * perspective-correct over the primitive.
+     */
+    fun fragment(varyings: FloatArray, uniforms: Array<FloatArray>, color: FloatArray)
+}
@@ -0,0 +1,140 @@
+package com.snap.model.shading
+
+import com.snap.model.GlContext
+import com.snap.model.RecordingGlBackend
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.file.Files
+
+class ProgramBinaryCacheTest {
+
+    private val directory: File = Files.createTempDirectory("programs").toFile()
+
+    @After
+    fun deleteDirectory() {
+        directory.deleteRecursively()
+    }
+
+    /**
+     * Fresh backend and context with cache over the same directory, as after restart of the app.
+     */
+    private inner class Start(configure: RecordingGlBackend.() -> Unit = {}) {
+        val backend = RecordingGlBackend().apply(configure)
+        val cache = ProgramBinaryCache(directory)
+        val glContext = GlContext(backend).also { it.programBinaryCache = cache }
+
+        fun link() = glContext.shaderCache.program(vertexShaderCode, fragmentShaderCode)
+    }
+
+    private fun savedFiles() = directory.listFiles()?.toList() ?: emptyList()
+
+    @Test
+    fun secondStartLinksWithoutCompiling() {
+        val first = Start()
+        first.link()
+        assertEquals(1, first.cache.writes)
+        assertEquals(1, savedFiles().size)
+
+        val second = Start()
+        val program = second.link()
+
+        assertEquals(1, second.cache.hits)
+        assertEquals(0, second.backend.callCount("glCompileShader"))
+        assertEquals(0, second.backend.callCount("glLinkProgram"))
+        assertEquals(setOf("a_Position"), program.reflection.attributeNames)
+        assertEquals(setOf("u_Matrix", "u_Tint"), program.reflection.uniformNames)
+    }
+
+    @Test
+    fun otherDriverVersionDoesNotUseBinary() {
+        Start().link()
+
+        val updated = Start { driverVersion = "OpenGL ES 3.2 Recording" }
+        updated.link()
+
+        assertEquals(0, updated.cache.hits)
+        assertEquals(2, updated.backend.callCount("glCompileShader"))
+        assertEquals(2, savedFiles().size)
+    }
+
+    @Test
+    fun rejectedBinaryFallsBackToSource() {
+        Start().link()
+
+        val rejecting = Start { rejectsProgramBinaries = true }
+        val program = rejecting.link()
+
+        assertTrue(program.isSetup)
+        assertEquals(1, rejecting.cache.rejections)
+        assertEquals(1, rejecting.backend.callCount("glLinkProgram"))
+        assertEquals("rejected binary is replaced", 1, rejecting.cache.writes)
+    }
+
+    @Test
+    fun corruptedFileIsIgnored() {
+        Start().link()
+        RandomAccessFile(savedFiles().single(), "rw").use {
+            it.seek(it.length() - 1)
+            val last = it.read()
+            it.seek(it.length() - 1)
+            it.write(last xor 0xFF)
+        }
+
+        val next = Start()
+        next.link()
+
+        assertEquals(0, next.cache.hits)
+        assertEquals(1, next.cache.misses)
+        assertEquals(0, next.backend.callCount("glProgramBinary"))
+        assertEquals(2, next.backend.callCount("glCompileShader"))
+    }
+
+    @Test
+    fun truncatedFileIsIgnored() {
+        Start().link()
+        RandomAccessFile(savedFiles().single(), "rw").use { it.setLength(10) }
+
+        val next = Start()
+        next.link()
+
+        assertEquals(0, next.cache.hits)
+        assertEquals(2, next.backend.callCount("glCompileShader"))
+    }
+
+    @Test
+    fun nothingIsSavedWithoutDriverSupport() {
+        val start = Start { supportsProgramBinaries = false }
+
+        start.link()
+
+        assertEquals(0, start.cache.writes)
+        assertEquals(0, start.cache.misses)
+        assertTrue(savedFiles().isEmpty())
+    }
+
+    @Test
+    fun clearDeletesSavedBinaries() {
+        val start = Start()
+        start.link()
+
+        start.cache.clear()
+
+        assertTrue(savedFiles().isEmpty())
+    }
+}
+
+private const val vertexShaderCode = "uniform mat4 u_Matrix;" +
+        "attribute vec4 a_Position;" +
+        "void main() {" +
+        "gl_Position = u_Matrix * a_Position;" +
+        "}"
+
+private const val fragmentShaderCode = "precision mediump float;" +
+        "uniform vec4 u_Tint;" +
+        "void main() {" +
+        "gl_FragColor = u_Tint;" +
+        "}"
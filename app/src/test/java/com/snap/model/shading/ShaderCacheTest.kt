@@ -0,0 +1,125 @@
+package com.snap.model.shading
+
+import com.snap.model.GlContext
+import com.snap.model.RecordingGlBackend
+import com.snap.model.exception.GlException
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ShaderCacheTest {
+
+    private val backend = RecordingGlBackend()
+    private val glContext = GlContext(backend)
+    private val cache = glContext.shaderCache
+
+    @Test
+    fun sameSourceIsCompiledAndLinkedOnce() {
+        val programs = List(5) { cache.program(vertexShaderCode, fragmentShaderCode) }
+
+        programs.forEach { assertSame(programs[0], it) }
+        assertEquals(2, backend.callCount("glCompileShader"))
+        assertEquals(1, backend.callCount("glLinkProgram"))
+        assertEquals(4, cache.hits)
+        assertEquals(3, cache.misses)
+    }
+
+    @Test
+    fun programsShareCompiledShaders() {
+        val first = cache.program(vertexShaderCode, fragmentShaderCode)
+        val second = cache.program(vertexShaderCode, otherFragmentShaderCode)
+
+        assertNotSame(first, second)
+        assertEquals(3, backend.callCount("glCompileShader"))
+        assertEquals(3, cache.shaderCount)
+        assertEquals(2, cache.programCount)
+    }
+
+    @Test
+    fun sameSourceOfOtherTypeIsDifferentShader() {
+        val vertex = cache.shader(ShaderType.VERTEX, fragmentShaderCode)
+        val fragment = cache.shader(ShaderType.FRAGMENT, fragmentShaderCode)
+
+        assertNotSame(vertex, fragment)
+        assertEquals(0, cache.hits)
+    }
+
+    @Test
+    fun glObjectsAreDeletedWithLastReference() {
+        val program = cache.program(vertexShaderCode, fragmentShaderCode)
+        cache.program(vertexShaderCode, fragmentShaderCode)
+
+        cache.release(program)
+        assertTrue(program.isSetup)
+        assertEquals(0, backend.callCount("glDeleteProgram"))
+
+        cache.release(program)
+        assertFalse(program.isSetup)
+        assertEquals(1, backend.callCount("glDeleteProgram"))
+        assertEquals(2, backend.callCount("glDeleteShader"))
+        assertEquals(0, cache.programCount)
+        assertEquals(0, cache.shaderCount)
+    }
+
+    @Test
+    fun shaderUsedByProgramOutlivesItsOwnRelease() {
+        val shader = cache.shader(ShaderType.VERTEX, vertexShaderCode)
+        val program = cache.program(vertexShaderCode, fragmentShaderCode)
+
+        cache.release(shader)
+
+        assertTrue(shader.isSetup)
+        cache.release(program)
+        assertFalse(shader.isSetup)
+    }
+
+    @Test
+    fun failedCompilationIsNotCached() {
+        backend.failingSourceMarker = "broken"
+
+        try {
+            cache.program(vertexShaderCode, "broken $fragmentShaderCode")
+        } catch (expected: GlException) {
+        }
+
+        assertEquals(0, cache.shaderCount)
+        assertEquals(0, cache.programCount)
+        assertEquals("compiled vertex shader is deleted", 2, backend.callCount("glDeleteShader"))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun foreignShaderIsRejected() {
+        cache.release(Shader.fromSourceCode(ShaderType.VERTEX, vertexShaderCode, glContext))
+    }
+
+    @Test
+    fun invalidatedCacheCompilesAgain() {
+        cache.program(vertexShaderCode, fragmentShaderCode)
+
+        cache.invalidate()
+        cache.program(vertexShaderCode, fragmentShaderCode)
+
+        assertEquals(2, backend.callCount("glLinkProgram"))
+        assertEquals(0, backend.callCount("glDeleteProgram"))
+    }
+}
+
+private const val vertexShaderCode = "uniform mat4 u_Matrix;" +
+        "attribute vec4 a_Position;" +
+        "void main() {" +
+        "gl_Position = u_Matrix * a_Position;" +
+        "}"
+
+private const val fragmentShaderCode = "precision mediump float;" +
+        "void main() {" +
+        "gl_FragColor = vec4(1.0);" +
+        "}"
+
+private const val otherFragmentShaderCode = "precision mediump float;" +
+        "uniform vec4 u_Tint;" +
+        "void main() {" +
+        "gl_FragColor = u_Tint;" +
+        "}"
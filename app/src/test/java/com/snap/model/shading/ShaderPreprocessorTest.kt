@@ -0,0 +1,113 @@
+package com.snap.model.shading
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.FileNotFoundException
+import java.io.InputStream
+
+class ShaderPreprocessorTest {
+
+    private val files = HashMap<String, String>()
+    private var opened = 0
+
+    private val preprocessor = ShaderPreprocessor(object : ShaderSources {
+        override fun open(name: String): InputStream {
+            opened++
+            val content = files[name] ?: throw FileNotFoundException(name)
+            return ByteArrayInputStream(content.toByteArray(Charsets.UTF_8))
+        }
+    })
+
+    @Test
+    fun includesAreResolvedOnce() {
+        files["common.glsl"] = "float twice(float x) { return 2.0 * x; }"
+        files["main.glsl"] = "#include \"common.glsl\"\n#include \"common.glsl\"\nvoid main() {}"
+
+        assertEquals("float twice(float x) { return 2.0 * x; }\nvoid main() {}\n", preprocessor.preprocess("main.glsl"))
+    }
+
+    @Test
+    fun nestedIncludesAndCycles() {
+        files["a.glsl"] = "#include \"b.glsl\"\na"
+        files["b.glsl"] = "#include \"a.glsl\"\nb"
+
+        assertEquals("b\na\n", preprocessor.preprocess("a.glsl"))
+    }
+
+    @Test
+    fun branchesNotTakenAreDropped() {
+        files["main.glsl"] = "#ifdef SPECULAR\nspecular\n#else\nflat\n#endif\n#ifndef SPECULAR\nno specular\n#endif"
+
+        assertEquals("flat\nno specular\n", preprocessor.preprocess("main.glsl"))
+        assertEquals("#define SPECULAR 0.5\nspecular\n",
+                preprocessor.preprocess("main.glsl", mapOf("SPECULAR" to "0.5")))
+    }
+
+    @Test
+    fun nestedConditionals() {
+        files["main.glsl"] = "#ifdef A\n#ifdef B\nab\n#else\na\n#endif\n#else\n#ifdef B\nb\n#endif\nnone\n#endif"
+
+        assertEquals("a\n", preprocessor.preprocess("main.glsl", mapOf("A" to "")).substringAfter("#define A\n"))
+        assertEquals("ab\n", preprocessor.preprocess("main.glsl", setOf("A", "B")).substringAfter("#define B 1\n"))
+        assertEquals("none\n", preprocessor.preprocess("main.glsl"))
+    }
+
+    @Test
+    fun definesInSourceSwitchLaterBlocks() {
+        files["main.glsl"] = "#define FOG\n#ifdef FOG\nfog\n#endif\n#undef FOG\n#ifdef FOG\nstill fog\n#endif"
+
+        assertEquals("#define FOG\nfog\n#undef FOG\n", preprocessor.preprocess("main.glsl"))
+    }
+
+    @Test
+    fun ifBlocksAreLeftToCompiler() {
+        files["main.glsl"] = "#if QUALITY > 1\n#ifdef A\nhigh a\n#endif\n#else\nlow\n#endif"
+
+        assertEquals("#if QUALITY > 1\n#else\nlow\n#endif\n", preprocessor.preprocess("main.glsl"))
+    }
+
+    @Test
+    fun definesGoAfterVersion() {
+        files["main.glsl"] = "#version 300 es\nvoid main() {}"
+
+        assertEquals("#version 300 es\n#define B 2\n#define C 1\nvoid main() {}\n",
+                preprocessor.preprocess("main.glsl", mapOf("C" to "1", "B" to "2")))
+    }
+
+    @Test
+    fun variantsAreCachedByDefineSet() {
+        files["main.glsl"] = "#include \"common.glsl\""
+        files["common.glsl"] = "common"
+
+        val first = preprocessor.preprocess("main.glsl", mapOf("A" to "1", "B" to "1"))
+        val second = preprocessor.preprocess("main.glsl", setOf("B", "A"))
+        preprocessor.preprocess("main.glsl", setOf("A"))
+
+        assertSame(first, second)
+        assertEquals(2, preprocessor.variantCount)
+        assertEquals("files are read once for all variants", 2, opened)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun unclosedConditionalIsRejected() {
+        files["main.glsl"] = "#ifdef A\na"
+
+        preprocessor.preprocess("main.glsl")
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun unexpectedEndifIsRejected() {
+        files["main.glsl"] = "a\n#endif"
+
+        preprocessor.preprocess("main.glsl")
+    }
+
+    @Test(expected = FileNotFoundException::class)
+    fun missingIncludeIsReported() {
+        files["main.glsl"] = "#include \"missing.glsl\""
+
+        preprocessor.preprocess("main.glsl")
+    }
+}
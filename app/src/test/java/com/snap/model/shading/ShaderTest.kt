@@ -0,0 +1,62 @@
+package com.snap.model.shading
+
+import com.snap.model.GlContext
+import com.snap.model.RecordingGlBackend
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.lang.ref.WeakReference
+
+class ShaderTest {
+
+    private val glContext = GlContext(RecordingGlBackend())
+
+    private var opened = 0
+
+    private val sources = object : ShaderSources {
+        override fun open(name: String): InputStream {
+            opened++
+            return ByteArrayInputStream("#ifdef FOG\nfog\n#endif\nvoid main() {}".toByteArray(Charsets.UTF_8))
+        }
+    }
+
+    @Test
+    fun variantsAreCachedByCallersPreprocessor() {
+        val preprocessor = ShaderPreprocessor(sources)
+
+        val plain = Shader.fromPreprocessor(ShaderType.VERTEX, preprocessor, "main.glsl", glContext = glContext)
+        val fog = Shader.fromPreprocessor(ShaderType.VERTEX, preprocessor, "main.glsl", mapOf("FOG" to "1"),
+                glContext)
+        Shader.fromPreprocessor(ShaderType.FRAGMENT, preprocessor, "main.glsl", glContext = glContext)
+
+        assertEquals("void main() {}\n", plain.sourceCode)
+        assertEquals("#define FOG 1\nfog\nvoid main() {}\n", fog.sourceCode)
+        assertEquals(1, opened)
+    }
+
+    @Test
+    fun shadersDoNotKeepPreprocessorAlive() {
+        var preprocessor: ShaderPreprocessor? = ShaderPreprocessor(sources)
+        val reference = WeakReference(preprocessor)
+        val shader = Shader.fromPreprocessor(ShaderType.VERTEX, preprocessor!!, "main.glsl", glContext = glContext)
+
+        preprocessor = null
+        repeat(10) {
+            if (reference.get() != null) {
+                System.gc()
+                Thread.sleep(10)
+            }
+        }
+
+        // nothing static holds on to the preprocessor, nor to the sources and variants it cached
+        assertNull(reference.get())
+        assertEquals("void main() {}\n", shader.sourceCode)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun rawResourcesNeedRawResourceSources() {
+        Shader.fromRawResId(ShaderType.VERTEX, ShaderPreprocessor(sources), 1, glContext = glContext)
+    }
+}
@@ -0,0 +1,100 @@
+package com.snap.model.shading
+
+import android.opengl.GLES20
+import com.snap.model.GlContext
+import com.snap.model.RecordingGlBackend
+import com.snap.model.exception.GlException
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ShadingProgramTest {
+
+    private val backend = RecordingGlBackend()
+    private val glContext = GlContext(backend)
+
+    private fun newProgram(vertexSource: String = vertexShaderCode) = ShadingProgram(
+            Shader.fromSourceCode(ShaderType.VERTEX, vertexSource, glContext),
+            Shader.fromSourceCode(ShaderType.FRAGMENT, fragmentShaderCode, glContext),
+            glContext)
+
+    @Test
+    fun compileResolvesActiveAttributesAndUniforms() {
+        val program = newProgram().compile()
+
+        assertEquals(setOf("a_Position", "a_Color"), program.reflection.attributeNames)
+        assertEquals(setOf("u_Matrix", "u_Tint"), program.reflection.uniformNames)
+        assertEquals(GLES20.GL_FLOAT_MAT4, program.uniform("u_Matrix").type)
+        assertEquals(GLES20.GL_FLOAT_VEC4, program.attribute("a_Color").type)
+    }
+
+    @Test
+    fun cachedHandlesAreReturnedWithoutAskingGl() {
+        val program = newProgram().compile()
+        backend.beginFrame()
+
+        val first = program.attribute("a_Position")
+        val second = program.attribute("a_Position")
+        program.createUniformBinding("u_Matrix")
+
+        assertSame(first, second)
+        assertEquals(0, backend.callCount("glGetAttribLocation"))
+        assertEquals(0, backend.callCount("glGetUniformLocation"))
+    }
+
+    @Test
+    fun unknownNamesFallBackToGlLookup() {
+        val program = newProgram().compile()
+        backend.beginFrame()
+
+        val binding = program.attribute("a_Missing")
+
+        assertFalse(binding.isActive)
+        assertEquals(1, backend.callCount("glGetAttribLocation"))
+    }
+
+    @Test
+    fun inactiveAttributeIsNotBound() {
+        val program = newProgram().compile()
+        backend.beginFrame()
+
+        program.attribute("a_Missing").bind4f(1f, 1f, 1f, 1f)
+
+        assertEquals(0, backend.callCount("glVertexAttrib4f"))
+    }
+
+    @Test(expected = GlException::class)
+    fun compilationErrorIsReported() {
+        backend.failingSourceMarker = "broken"
+
+        newProgram(vertexSource = "broken $vertexShaderCode").compile()
+    }
+
+    @Test
+    fun releaseForgetsReflection() {
+        val program = newProgram().compile()
+
+        program.release()
+
+        assertFalse(program.isSetup)
+        assertTrue(program.reflection.attributeNames.isEmpty())
+    }
+}
+
+private const val vertexShaderCode = "uniform mat4 u_Matrix;" +
+        "attribute vec4 a_Position;" +
+        "attribute vec4 a_Color;" +
+        "varying vec4 v_Color;" +
+        "void main() {" +
+        "v_Color = a_Color;" +
+        "gl_Position = u_Matrix * a_Position;" +
+        "}"
+
+private const val fragmentShaderCode = "precision mediump float;" +
+        "uniform vec4 u_Tint;" +
+        "varying vec4 v_Color;" +
+        "void main() {" +
+        "gl_FragColor = v_Color * u_Tint;" +
+        "}"
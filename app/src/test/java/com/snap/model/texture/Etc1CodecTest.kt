@@ -0,0 +1,168 @@
+package com.snap.model.texture
+
+import com.snap.concurrent.ParallelFor
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.util.Random
+
+class Etc1CodecTest {
+
+    @Test
+    fun individualBlockIsDecodedPerSpecification() {
+        // red, green and blue 15 on the left half, 0 on the right, tables 0 and 1, every texel index 0
+        // but the top right one, which is 3 - large negative modifier
+        val block = (0xF0F0F0L shl 40) or (1L shl 34) or (1L shl (16 + 12)) or (1L shl 12)
+        val pixels = IntArray(16)
+
+        Etc1Codec.decodeBlock(block, pixels)
+
+        assertEquals(0xFFFFFFFF.toInt(), pixels[0])
+        assertEquals(0xFFFFFFFF.toInt(), pixels[1 + 3 * 4])
+        assertEquals(0xFF050505.toInt(), pixels[2])
+        assertEquals(0xFF000000.toInt(), pixels[3])
+    }
+
+    @Test
+    fun differentialBlockIsDecodedPerSpecification() {
+        // first base color 16, second one less, flipped - top half first
+        val difference = 7L
+        val channel = (16L shl 3) or difference
+        val block = (channel shl 56) or (channel shl 48) or (channel shl 40) or (1L shl 33) or (1L shl 32)
+        val pixels = IntArray(16)
+
+        Etc1Codec.decodeBlock(block, pixels)
+
+        assertEquals(0xFF868686.toInt(), pixels[0])
+        assertEquals(0xFF7D7D7D.toInt(), pixels[3 * 4 + 3])
+    }
+
+    @Test
+    fun solidColorSurvivesEncoding() {
+        for (color in intArrayOf(0xFF000000.toInt(), 0xFFFFFFFF.toInt(), 0xFF336699.toInt(), 0xFF808080.toInt())) {
+            val decoded = IntArray(16)
+
+            Etc1Codec.decodeBlock(Etc1Codec.encodeBlock(IntArray(16) { color }), decoded)
+
+            for (pixel in decoded) {
+                for (shift in intArrayOf(16, 8, 0)) {
+                    val difference = ((pixel shr shift) and 0xFF) - ((color shr shift) and 0xFF)
+                    assertTrue("${Integer.toHexString(color)} became ${Integer.toHexString(pixel)}", Math.abs(difference) <= 4)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun smoothImageKeepsHighQuality() {
+        val pixels = smoothImage(128, 96)
+
+        val decoded = Etc1Codec.decode(Etc1Encoder().encode(pixels, 128, 96))
+
+        val psnr = Etc1Codec.peakSignalToNoiseRatio(pixels, decoded)
+        assertTrue("PSNR $psnr dB", psnr > 35.0)
+    }
+
+    @Test
+    fun noisyImageKeepsUsableQuality() {
+        val random = Random(11)
+        val pixels = IntArray(64 * 64) { (0xFF shl 24) or (random.nextInt() and 0x3F3F3F) or 0x404040 }
+
+        val decoded = Etc1Codec.decode(Etc1Encoder().encode(pixels, 64, 64))
+
+        val psnr = Etc1Codec.peakSignalToNoiseRatio(pixels, decoded)
+        assertTrue("PSNR $psnr dB", psnr > 24.0)
+    }
+
+    @Test
+    fun partialBlocksAreCroppedOnDecoding() {
+        val pixels = smoothImage(13, 6)
+
+        val image = Etc1Encoder().encode(pixels, 13, 6)
+        val decoded = Etc1Codec.decode(image)
+
+        assertEquals(4 * 2 * 8, image.sizeInBytes)
+        assertEquals(13 * 6, decoded.size)
+        // green changes by 42 a row there - chroma gradients are the worst case of ETC1
+        val psnr = Etc1Codec.peakSignalToNoiseRatio(pixels, decoded)
+        assertTrue("PSNR $psnr dB", psnr > 22.0)
+    }
+
+    @Test
+    fun parallelEncodingGivesSameBlocks() {
+        val pixels = smoothImage(256, 256)
+        val parallelFor = ParallelFor(4)
+        try {
+            val sequential = Etc1Encoder().encode(pixels, 256, 256)
+            val parallel = Etc1Encoder(parallelFor).encode(pixels, 256, 256)
+
+            assertEquals(sequential.data, parallel.data)
+        } finally {
+            parallelFor.shutdown()
+        }
+    }
+
+    @Test
+    fun mipChainGoesDownToSinglePixel() {
+        val levels = Etc1Encoder().encodeMipChain(smoothImage(16, 4), 16, 4)
+
+        assertEquals(listOf(16 to 4, 8 to 2, 4 to 1, 2 to 1, 1 to 1), levels.map { it.width to it.height })
+        assertTrue(levels.all { it.format == CompressedFormat.ETC1_RGB8 })
+    }
+
+    @Test
+    fun downsamplingAveragesTexels() {
+        val pixels = intArrayOf(
+                0xFF000000.toInt(), 0xFF040404.toInt(), 0x00FFFFFF,
+                0xFF080808.toInt(), 0xFF0C0C0C.toInt(), 0x00FFFFFF)
+
+        val half = Etc1Encoder.downsample(pixels, 3, 2)
+
+        assertArrayEquals(intArrayOf(0xFF060606.toInt()), half)
+    }
+
+    @Test
+    fun pkmRoundTripKeepsEveryLevel() {
+        val levels = Etc1Encoder().encodeMipChain(smoothImage(8, 8), 8, 8)
+        val bytes = ByteArrayOutputStream()
+
+        PkmFile.write(levels, bytes)
+        val read = PkmFile.read(ByteArrayInputStream(bytes.toByteArray()))
+
+        assertEquals(levels.sumBy { 16 + it.sizeInBytes }, bytes.size())
+        assertEquals(levels.size, read.size)
+        for (level in levels.indices) {
+            assertEquals(levels[level].width, read[level].width)
+            assertEquals(levels[level].format, read[level].format)
+            assertEquals(levels[level].data, read[level].data)
+        }
+        val header = String(bytes.toByteArray(), 0, 6, Charsets.US_ASCII)
+        assertEquals("PKM 10", header)
+    }
+
+    @Test(expected = IOException::class)
+    fun truncatedPkmIsRejected() {
+        val bytes = ByteArrayOutputStream()
+        PkmFile.write(listOf(Etc1Encoder().encode(smoothImage(8, 8), 8, 8)), bytes)
+
+        PkmFile.read(ByteArrayInputStream(bytes.toByteArray().copyOf(bytes.size() - 1)))
+    }
+
+    @Test(expected = IOException::class)
+    fun foreignFileIsRejected() {
+        PkmFile.read(ByteArrayInputStream("\u0089PNG\r\n\u001A\n and the rest".toByteArray(Charsets.ISO_8859_1)))
+    }
+
+    private fun smoothImage(width: Int, height: Int) = IntArray(width * height) {
+        val x = it % width
+        val y = it / width
+        val red = 128 + (100 * Math.sin(x / 13.0)).toInt()
+        val green = y * 255 / height
+        val blue = 128 + (60 * Math.cos((x + y) / 21.0)).toInt()
+        (0xFF shl 24) or (red shl 16) or (green shl 8) or blue
+    }
+}
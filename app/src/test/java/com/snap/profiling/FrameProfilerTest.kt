@@ -0,0 +1,149 @@
+package com.snap.profiling
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class FrameProfilerTest {
+
+    private var now = 0L
+
+    private val clock = object : NanoClock {
+        override fun nanoTime() = now
+    }
+
+    private fun profiler(windowFrames: Int = 120, windowCount: Int = 5) = FrameProfiler(
+            listOf("update", "cull", "submit"), FrameProfiler.defaultFrameBudgetNanos, windowFrames, windowCount, clock)
+
+    /**
+     * Frame of [updateMillis] update and [submitMillis] submit, followed by [swapMillis] outside of it.
+     */
+    private fun FrameProfiler.frame(updateMillis: Long, submitMillis: Long, swapMillis: Long) {
+        beginFrame()
+        beginPhase(update)
+        now += millis(updateMillis)
+        endPhase(update)
+        beginPhase(submit)
+        now += millis(submitMillis)
+        endPhase(submit)
+        endFrame()
+        now += millis(swapMillis)
+    }
+
+    @Test
+    fun recordsFramesAndPhases() {
+        val profiler = profiler()
+
+        repeat(10) { profiler.frame(2, 3, 11) }
+
+        assertEquals(10L, profiler.frameCount)
+        assertEquals(millis(5), profiler.frames.valueAtPercentile(50.0))
+        assertEquals(millis(2), profiler.phase(update).max)
+        assertEquals(millis(3), profiler.phase(submit).max)
+        assertEquals(0L, profiler.phase(cull).count)
+        // swap is measured from the end of a frame to the begin of the next one
+        assertEquals(9L, profiler.phase(profiler.swapPhase).count)
+        assertEquals(millis(11), profiler.phase(profiler.swapPhase).max)
+        assertEquals(0L, profiler.jankCount)
+    }
+
+    @Test
+    fun framesMissingARefreshAreJank() {
+        val profiler = profiler()
+
+        profiler.frame(2, 3, 11)
+        profiler.frame(2, 3, 30)
+        profiler.frame(10, 10, 10)
+        profiler.frame(2, 3, 11)
+        // a refresh late, but not a whole one
+        profiler.frame(2, 3, 18)
+        profiler.frame(2, 3, 11)
+
+        assertEquals(2L, profiler.jankCount)
+        assertEquals(2L, profiler.recentJankCount)
+    }
+
+    @Test
+    fun vsyncJitterIsNotJank() {
+        val profiler = profiler()
+        // 59.94 Hz panel, whose frames come 16.68 ms apart, give or take 0.1 ms of jitter
+        val intervals = longArrayOf(16_600_000, 16_700_000, 16_800_000, 16_683_000, 16_767_000)
+
+        for (frame in 0 until 600) {
+            profiler.beginFrame()
+            now += millis(4)
+            profiler.endFrame()
+            now += intervals[frame % intervals.size] - millis(4)
+        }
+
+        assertEquals(600L, profiler.frameCount)
+        assertEquals(0L, profiler.jankCount)
+        assertEquals(0L, profiler.recentJankCount)
+    }
+
+    @Test
+    fun recentWindowsForgetOldFrames() {
+        val profiler = profiler(windowFrames = 10, windowCount = 2)
+
+        repeat(10) { profiler.frame(30, 0, 0) }
+        repeat(15) { profiler.frame(1, 0, 15) }
+
+        assertEquals(millis(30), profiler.frames.max)
+        // the current window and the one before it
+        assertEquals(15L, profiler.recentFrames.count)
+        assertEquals(millis(1), profiler.recentFrames.max)
+        // only the first fast frame, begun 30 ms after the last slow one, is still in the windows
+        assertEquals(1L, profiler.recentJankCount)
+        assertEquals(10L, profiler.jankCount)
+    }
+
+    @Test
+    fun reportListsPercentilesOfEveryPhase() {
+        val profiler = profiler()
+        repeat(3) { profiler.frame(2, 3, 11) }
+
+        val report = profiler.report()
+
+        assertTrue(report, report.contains("frame: p50 5.00 ms"))
+        assertTrue(report, report.contains("update: p50 2.00 ms"))
+        assertTrue(report, report.contains("swap: p50 11.00 ms"))
+        assertTrue(report, report.contains("jank: 0 recent, 0 of 3 frames over 25.0 ms"))
+    }
+
+    @Test
+    fun recordingDoesNotAllocate() {
+        val profiler = profiler()
+        repeat(1000) { profiler.frame(2, 3, 11) }
+        val threads = java.lang.management.ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+                ?: return
+        val threadId = Thread.currentThread().id
+
+        val before = threads.getThreadAllocatedBytes(threadId)
+        for (frame in 0 until 10_000) {
+            profiler.beginFrame()
+            profiler.beginPhase(update)
+            now += 1_000_000
+            profiler.endPhase(update)
+            profiler.endFrame()
+            now += 15_000_000
+        }
+        val allocated = threads.getThreadAllocatedBytes(threadId) - before
+
+        // the measurement itself may allocate a little, 10000 frames of boxing would take far more
+        assertTrue("$allocated bytes allocated", allocated < 10_000)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun phaseHasToBeginBeforeItEnds() {
+        profiler().endPhase(cull)
+    }
+
+    private companion object {
+        const val update = 0
+        const val cull = 1
+        const val submit = 2
+
+        fun millis(millis: Long) = TimeUnit.MILLISECONDS.toNanos(millis)
+    }
+}
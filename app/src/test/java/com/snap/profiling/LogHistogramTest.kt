@@ -0,0 +1,87 @@
+package com.snap.profiling
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class LogHistogramTest {
+
+    @Test
+    fun smallValuesAreExact() {
+        val histogram = LogHistogram()
+        for (value in 1L..10L) {
+            histogram.record(value)
+        }
+
+        assertEquals(5L, histogram.valueAtPercentile(50.0))
+        assertEquals(10L, histogram.valueAtPercentile(99.0))
+        assertEquals(1L, histogram.valueAtPercentile(0.0))
+        assertEquals(5.5, histogram.mean, 1e-9)
+    }
+
+    @Test
+    fun percentilesStayWithinBucketPrecision() {
+        val histogram = LogHistogram()
+        val random = Random(7)
+        val values = LongArray(100_000) { 1_000_000L + (random.nextDouble() * 30_000_000).toLong() }
+        values.forEach { histogram.record(it) }
+        values.sort()
+
+        for (percentile in doubleArrayOf(50.0, 90.0, 95.0, 99.0, 99.9)) {
+            val exact = values[Math.ceil(percentile / 100 * values.size).toInt() - 1]
+            val reported = histogram.valueAtPercentile(percentile)
+            assertTrue("p$percentile: $reported vs $exact", reported >= exact)
+            assertTrue("p$percentile: $reported vs $exact", reported <= exact + exact / 16)
+        }
+        assertEquals(values.last(), histogram.max)
+        assertEquals(values.first(), histogram.min)
+        assertEquals(values.last(), histogram.valueAtPercentile(100.0))
+    }
+
+    @Test
+    fun valuesAboveMaxGoToLastBucket() {
+        val histogram = LogHistogram(maxValue = 1000)
+
+        histogram.record(5000)
+        histogram.record(-3)
+
+        assertEquals(2L, histogram.count)
+        assertEquals(0L, histogram.min)
+        assertEquals(5000L, histogram.max)
+        assertEquals(5000L, histogram.valueAtPercentile(100.0))
+    }
+
+    @Test
+    fun addMergesCountsAndExtremes() {
+        val first = LogHistogram()
+        val second = LogHistogram()
+        first.record(100)
+        second.record(50)
+        second.record(20_000)
+
+        first.add(second)
+
+        assertEquals(3L, first.count)
+        assertEquals(50L, first.min)
+        assertEquals(20_000L, first.max)
+        assertEquals(1L, first.countAbove(10_000))
+    }
+
+    @Test
+    fun resetForgetsEverything() {
+        val histogram = LogHistogram()
+        histogram.record(42)
+
+        histogram.reset()
+
+        assertEquals(0L, histogram.count)
+        assertEquals(0L, histogram.max)
+        assertEquals(0L, histogram.valueAtPercentile(50.0))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun histogramsOfDifferentBucketsAreNotAdded() {
+        LogHistogram(subBucketBits = 3).add(LogHistogram())
+    }
+}
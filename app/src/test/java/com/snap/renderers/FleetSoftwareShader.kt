@@ -0,0 +1,43 @@
+package com.snap.renderers
+
+import com.snap.math.Mat4
+import com.snap.model.InstancedMesh
+import com.snap.model.raster.SoftwareShader
+
+/**
+ * fleet_vertex.glsl and fleet_fragment.glsl - Model-View-Projection matrix of every boat read from a mat4
+ * attribute with [instancedArrays], else from the uniform array indexed by the instance index attribute.
+ */
+internal class FleetSoftwareShader(private val instancedArrays: Boolean) : SoftwareShader {
+
+    override val attributes = if (instancedArrays) {
+        listOf("a_Position", "a_Color", InstancedMesh.instanceMatrixAttribute)
+    } else {
+        listOf("a_Position", "a_Color", InstancedMesh.instanceIndexAttribute)
+    }
+
+    override val uniforms = if (instancedArrays) emptyList() else listOf(InstancedMesh.instanceMatricesUniform)
+
+    override val varyingCount = 4
+
+    override fun vertex(attributes: FloatArray, uniforms: Array<FloatArray>, position: FloatArray, varyings: FloatArray) {
+        if (instancedArrays) {
+            Mat4.multiplyVec4(position, 0, attributes, instanceData, attributes, 0)
+        } else {
+            Mat4.multiplyVec4(position, 0, uniforms[0], attributes[instanceData].toInt() * Mat4.size, attributes, 0)
+        }
+        System.arraycopy(attributes, 4, varyings, 0, 4)
+    }
+
+    override fun fragment(varyings: FloatArray, uniforms: Array<FloatArray>, color: FloatArray) {
+        System.arraycopy(varyings, 0, color, 0, 4)
+    }
+
+    private companion object {
+
+        /**
+         * Input offset of the instance matrix or index, after position and color.
+         */
+        const val instanceData = 8
+    }
+}
@@ -0,0 +1,196 @@
+package com.snap.renderers
+
+import android.opengl.GLSurfaceView
+import com.snap.concurrent.ParallelFor
+import com.snap.model.GlContext
+import com.snap.model.raster.Framebuffer
+import com.snap.model.raster.PngFile
+import com.snap.model.raster.SoftwareGlBackend
+import com.snap.model.raster.UniformColorShader
+import com.snap.model.raster.VertexColorShader
+import com.snap.model.shading.DirectoryShaderSources
+import com.snap.renderers.lighting.LightSceneRenderer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.File
+import java.lang.reflect.Proxy
+import javax.microedition.khronos.egl.EGLConfig
+import javax.microedition.khronos.opengles.GL10
+
+/**
+ * Renderers drawn headless by [SoftwareGlBackend] and compared with golden images in src/test/resources/golden.
+ *
+ * After an intended change of a scene run the tests with SNAP_UPDATE_GOLDENS=true to record its image again,
+ * and look at it before committing. Images of failed comparisons and of their differences are left in
+ * build/golden-failures.
+ */
+class RendererGoldenTest {
+
+    private val parallelFor = ParallelFor(4)
+
+    private val shaderSources = DirectoryShaderSources(
+            listOf(File("src/main/res/raw"), File("app/src/main/res/raw")).first { it.isDirectory })
+
+    private fun backend() = SoftwareGlBackend(width, height, parallelFor)
+
+    @After
+    fun tearDown() {
+        parallelFor.shutdown()
+    }
+
+    private fun GLSurfaceView.Renderer.drawFrames(frames: Int = 1) {
+        onSurfaceCreated(gl10, eglConfig)
+        onSurfaceChanged(gl10, width, height)
+        repeat(frames) { onDrawFrame(gl10) }
+    }
+
+    private fun LightSceneRenderer.drawUntilVisible(backend: SoftwareGlBackend) {
+        // the scene is built on a worker and shows up in some later frame
+        val deadline = System.currentTimeMillis() + 10000
+        while (visibleBatchCount == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5)
+            backend.resetCounters()
+            onDrawFrame(gl10)
+        }
+        assertEquals(1, visibleBatchCount)
+    }
+
+    @Test
+    fun lightScene() {
+        val backend = backend()
+        backend.addShader(bakedLightShader)
+        val renderer = LightSceneRenderer(shaderSources, GlContext(backend))
+        renderer.drawFrames()
+        renderer.drawUntilVisible(backend)
+
+        assertMatchesGolden("light_scene", backend.framebuffer)
+        // sky, sea and boat do not overlap much - depth test should hardly reject anything
+        assertTrue("${backend.occludedFragmentCount} of ${backend.fragmentCount} fragments occluded",
+                backend.occludedFragmentCount * 10 < backend.fragmentCount)
+
+        renderer.release()
+        // buffers of the batch go with the renderer
+        assertTrue(backend.totalCallCount("glDeleteBuffers") > 0)
+    }
+
+    @Test
+    fun lightSceneIsBakedAgainOnlyWhenLightMoves() {
+        val backend = backend()
+        backend.addShader(bakedLightShader)
+        val renderer = LightSceneRenderer(shaderSources, GlContext(backend))
+        renderer.drawFrames()
+        renderer.drawUntilVisible(backend)
+        val buffers = backend.totalCallCount("glGenBuffers")
+
+        renderer.setLightPosition(0.5f, 0.2f, 0.5f)
+        renderer.onDrawFrame(gl10)
+        assertEquals(buffers, backend.totalCallCount("glGenBuffers"))
+
+        renderer.setLightPosition(-0.5f, 0.2f, 0.5f)
+        val deadline = System.currentTimeMillis() + 10000
+        while (backend.totalCallCount("glDeleteBuffers") == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5)
+            renderer.onDrawFrame(gl10)
+        }
+
+        // the new bake has replaced the old one, whose buffers are gone
+        assertTrue(backend.totalCallCount("glGenBuffers") > buffers)
+        assertTrue(backend.totalCallCount("glDeleteBuffers") > 0)
+        // light on the other side now - the image is mirrored but for the boat
+        val left = backend.framebuffer.color(width / 4, height / 2) and 0xFF
+        val right = backend.framebuffer.color(width * 3 / 4, height / 2) and 0xFF
+        assertTrue("Left $left, right $right", left > right)
+
+        renderer.release()
+    }
+
+    @Test
+    fun fleetWithUniformArrays() {
+        val backend = backend()
+        fleetShaders.forEach { backend.addShader(it) }
+
+        FleetRenderer(shaderSources, GlContext(backend), { 0L }).drawFrames()
+
+        assertMatchesGolden("fleet", backend.framebuffer)
+    }
+
+    @Test
+    fun fleetWithInstancedArraysLooksTheSame() {
+        val backend = backend()
+        backend.driverVersion = "OpenGL ES 3.0 Software"
+        fleetShaders.forEach { backend.addShader(it) }
+
+        FleetRenderer(shaderSources, GlContext(backend), { 0L }).drawFrames()
+
+        assertMatchesGolden("fleet", backend.framebuffer)
+    }
+
+    @Test
+    fun pointsScene() {
+        val backend = backend()
+        backend.addShader(pointsSceneShader)
+
+        PointsSceneRenderer(GlContext(backend)).drawFrames()
+
+        assertMatchesGolden("points_scene", backend.framebuffer)
+    }
+
+    @Test
+    fun coloredTriangle() {
+        val backend = backend()
+        backend.addShader(coloredTriangleShader)
+
+        ColoredTriangleRenderer(GlContext(backend)).drawFrames()
+
+        assertMatchesGolden("colored_triangle", backend.framebuffer)
+    }
+
+    private fun assertMatchesGolden(name: String, framebuffer: Framebuffer) {
+        val golden = File(goldenDirectory, "$name.png")
+        if (System.getenv("SNAP_UPDATE_GOLDENS") == "true") {
+            golden.parentFile.mkdirs()
+            golden.outputStream().use { PngFile.write(framebuffer, it) }
+            return
+        }
+        if (!golden.isFile) {
+            fail("No golden image $golden - run with SNAP_UPDATE_GOLDENS=true to record it.")
+        }
+        val expected = golden.inputStream().use { PngFile.read(it) }
+        val differingPixelCount = framebuffer.differingPixelCount(expected, tolerance)
+        if (differingPixelCount > 0) {
+            val failures = File(buildDirectory, "golden-failures").apply { mkdirs() }
+            File(failures, "$name.png").outputStream().use { PngFile.write(framebuffer, it) }
+            File(failures, "$name.diff.png").outputStream().use {
+                PngFile.write(framebuffer.difference(expected, tolerance), it)
+            }
+            fail("$differingPixelCount pixels differ from golden image $golden, see $failures.")
+        }
+    }
+
+    private companion object {
+
+        const val width = 160
+        const val height = 120
+
+        // rounding of a channel may go either way on another JVM
+        const val tolerance = 2
+
+        val goldenDirectory = listOf(File("src/test/resources/golden"), File("app/src/test/resources/golden"))
+                .firstOrNull { it.parentFile.isDirectory } ?: File("src/test/resources/golden")
+        val buildDirectory = if (File("app").isDirectory) File("app/build") else File("build")
+
+        val gl10 = Proxy.newProxyInstance(GL10::class.java.classLoader, arrayOf(GL10::class.java)) { _, _, _ ->
+            null
+        } as GL10
+        val eglConfig = object : EGLConfig() {}
+
+        // twins of the renderers' shaders, by the names of their uniforms and attributes
+        val bakedLightShader = VertexColorShader("u_modelViewProjectionMatrix", "a_vertex", "a_color")
+        val fleetShaders = listOf(FleetSoftwareShader(true), FleetSoftwareShader(false))
+        val pointsSceneShader = VertexColorShader("u_Matrix", "a_Position", "a_Color")
+        val coloredTriangleShader = UniformColorShader("a_Position", "u_Color")
+    }
+}
@@ -0,0 +1,67 @@
+package com.snap.renderers.lighting
+
+import android.opengl.GLES20
+import com.snap.model.GlContext
+import com.snap.model.RecordingGlBackend
+import com.snap.model.VertexBuffer
+import com.snap.model.shading.DirectoryShaderSources
+import com.snap.model.shading.ShaderPreprocessor
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+
+class LightSceneShadingProgramTest {
+
+    private val backend = RecordingGlBackend()
+    private val glContext = GlContext(backend)
+
+    private val vertices = VertexBuffer(glContext = glContext).upload(LightSceneShadingProgram.vertexFormat.pack(
+            floatArrayOf(0f, 0f, 0f, 1f, 0f, 0f, 0f, 1f, 0f),
+            floatArrayOf(0f, 0f, 1f, 0f, 0f, 1f, 0f, 0f, 1f),
+            FloatArray(12) { 1f }))
+    private val matrix = FloatArray(16)
+
+    private val preprocessor = ShaderPreprocessor(DirectoryShaderSources(
+            listOf(File("src/main/res/raw"), File("app/src/main/res/raw")).first { it.isDirectory }))
+
+    @Test
+    fun lightTermsNotSwitchedOnAreNotCompiled() {
+        val diffuseOnly = preprocessor.preprocess("light_scene_fragment.glsl", LightSceneShadingProgram.diffuseLight)
+        val withSpecular = preprocessor.preprocess("light_scene_fragment.glsl",
+                LightSceneShadingProgram.diffuseLight + mapOf("SPECULAR" to "0.5", "SHININESS" to "40.0"))
+
+        assertTrue(diffuseOnly, diffuseOnly.contains("DIFFUSE * max("))
+        assertFalse(diffuseOnly, diffuseOnly.contains("reflect("))
+        assertFalse(diffuseOnly, diffuseOnly.contains("+= AMBIENT"))
+        assertTrue(withSpecular, withSpecular.contains("reflect("))
+    }
+
+    @Test
+    fun framePathStaysWithinCallBudget() {
+        val program = LightSceneShadingProgram.newInstance(preprocessor, glContext = glContext)
+        program.setup()
+
+        backend.beginFrame()
+        repeat(objectsPerFrame) {
+            program.linkVertices(vertices)
+            program.linkModelViewProjectionMatrix(matrix)
+            program.linkCamera(0f, 0f, 3f)
+            program.linkLightSource(0.5f, 0.2f, 0.5f)
+            backend.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3)
+        }
+        val frame = backend.endFrame()
+
+        assertEquals(objectsPerFrame, frame.drawCalls)
+        assertEquals(0, frame.callCount("glGetAttribLocation"))
+        assertEquals(0, frame.callCount("glGetUniformLocation"))
+        assertEquals(1, frame.callCount("glUseProgram"))
+        assertEquals(3, frame.callCount("glEnableVertexAttribArray"))
+        assertEquals(0, frame.callCount("glBufferData"))
+        assertEquals(0, frame.callCount("glBindBuffer"))
+        assertTrue(frame.toString(), frame.stateChanges <= 1 + 3 + 3 * objectsPerFrame)
+    }
+}
+
+private const val objectsPerFrame = 5
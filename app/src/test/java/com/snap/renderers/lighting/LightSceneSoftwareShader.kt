@@ -0,0 +1,42 @@
+package com.snap.renderers.lighting
+
+import com.snap.math.Mat4
+import com.snap.model.raster.SoftwareShader
+
+/**
+ * light_scene_vertex.glsl and light_scene_fragment.glsl, lit by [LightingModel] of the same [lightTerms] the
+ * shaders are preprocessed with.
+ */
+internal class LightSceneSoftwareShader(lightTerms: Map<String, String>) : SoftwareShader {
+
+    private val lightingModel = LightingModel(lightTerms)
+
+    override val attributes = LightSceneShadingProgram.vertexFormat.attributes.map { it.name }
+
+    override val uniforms = listOf("u_modelViewProjectionMatrix", "u_camera", "u_lightPosition")
+
+    // v_vertex, v_normal, v_color
+    override val varyingCount = 10
+
+    override fun vertex(attributes: FloatArray, uniforms: Array<FloatArray>,
+                        position: FloatArray, varyings: FloatArray) {
+        System.arraycopy(attributes, 0, varyings, 0, 3)
+        val normalLength = length(attributes[4], attributes[5], attributes[6])
+        for (axis in 0 until 3) {
+            varyings[3 + axis] = attributes[4 + axis] / normalLength
+        }
+        System.arraycopy(attributes, 8, varyings, 6, 4)
+        Mat4.multiplyVec4(position, 0, uniforms[0], 0, attributes, 0)
+    }
+
+    override fun fragment(varyings: FloatArray, uniforms: Array<FloatArray>, color: FloatArray) {
+        // v_vertex, v_normal, u_lightPosition, u_camera
+        val intensity = lightingModel.intensity(varyings, 0, varyings, 3, uniforms[2], uniforms[1])
+        lightingModel.color(intensity, varyings, 6, color, 0)
+    }
+
+    private companion object {
+
+        fun length(x: Float, y: Float, z: Float) = Math.sqrt((x * x + y * y + z * z).toDouble()).toFloat()
+    }
+}
@@ -0,0 +1,70 @@
+package com.snap.renderers.lighting
+
+import com.snap.model.Mesh
+import com.snap.model.PrimitiveType
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class LightingBakerTest {
+
+    private val lightTerms = mapOf("AMBIENT" to "0.1", "DIFFUSE" to "0.6", "SPECULAR" to "0.5", "SHININESS" to "8.0",
+            "VERTEX_COLOR" to "0.25")
+
+    private val lightPosition = floatArrayOf(0.5f, 0.2f, 0.5f)
+    private val camera = floatArrayOf(0f, 0f, 3f)
+
+    private val positions = floatArrayOf(-1f, -1f, 0f, 1f, -1f, 0f, -1f, 1f, 0f, 0.4f, 0.3f, 0.2f)
+    private val normals = floatArrayOf(0f, 0f, 1f, 0f, 0f, 2f, 0.3f, 0f, 1f, 0f, 0f, 1f)
+    private val colors = floatArrayOf(1f, 0f, 0f, 1f, 0f, 1f, 0f, 1f, 0f, 0f, 1f, 1f, 1f, 1f, 1f, 1f)
+    private val indices = shortArrayOf(0, 1, 2, 2, 1, 3)
+
+    private val mesh = Mesh(LightSceneShadingProgram.vertexFormat, PrimitiveType.TRIANGLES,
+            listOf(positions, normals, colors), indices)
+
+    @Test
+    fun bakedColorsAreWhatFragmentShaderComputesAtVertices() {
+        val shader = LightSceneSoftwareShader(lightTerms)
+        val uniforms = arrayOf(FloatArray(16), camera, lightPosition)
+
+        val baked = LightingBaker(LightingModel(lightTerms)).bake(mesh, lightPosition, camera)
+
+        val bakedColors = baked.attributesData[1]
+        for (vertex in 0 until mesh.vertexCount) {
+            val varyings = FloatArray(10)
+            System.arraycopy(positions, vertex * 3, varyings, 0, 3)
+            System.arraycopy(normals, vertex * 3, varyings, 3, 3)
+            System.arraycopy(colors, vertex * 4, varyings, 6, 4)
+            val expected = FloatArray(4)
+            shader.fragment(varyings, uniforms, expected)
+            assertArrayEquals("vertex $vertex", expected, bakedColors.copyOfRange(vertex * 4, vertex * 4 + 4), 1e-6f)
+        }
+    }
+
+    @Test
+    fun geometryIsKeptAsItIs() {
+        val baked = LightingBaker(LightingModel(lightTerms)).bake(mesh, lightPosition, camera)
+
+        assertSame(BakedLightShadingProgram.vertexFormat, baked.format)
+        assertEquals(PrimitiveType.TRIANGLES, baked.primitiveType)
+        assertArrayEquals(positions, baked.attributesData[0], 0f)
+        assertArrayEquals(indices, baked.indices)
+    }
+
+    @Test
+    fun diffuseLightFallsOffAwayFromLight() {
+        val baked = LightingBaker(LightingModel(LightSceneShadingProgram.diffuseLight)).bake(mesh, lightPosition, camera)
+
+        val bakedColors = baked.attributesData[1]
+        // light straight above the point - N.L of the unit normal is 1
+        val lit = LightingModel(LightSceneShadingProgram.diffuseLight)
+                .intensity(floatArrayOf(0.5f, 0.2f, 0f), 0, floatArrayOf(0f, 0f, 1f), 0, lightPosition, camera)
+        assertEquals(1f, lit, 1e-6f)
+        // without VERTEX_COLOR colors are plain white light of the intensity
+        assertEquals(bakedColors[0], bakedColors[1], 0f)
+        assertEquals(bakedColors[0], bakedColors[3], 0f)
+        assertTrue(bakedColors[12] > bakedColors[0])
+    }
+}
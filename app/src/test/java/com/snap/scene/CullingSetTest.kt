@@ -0,0 +1,97 @@
+package com.snap.scene
+
+import com.snap.math.Bounds
+import com.snap.math.Frustum
+import com.snap.math.Mat4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class CullingSetTest {
+
+    private val random = Random(3)
+
+    // camera at z = 5 looking at the origin, sees -5..5 there
+    private val frustum = Frustum().set(Mat4.create().also {
+        val view = FloatArray(Mat4.size)
+        Mat4.frustum(it, 0, -1f, 1f, -1f, 1f, 1f, 10f)
+        Mat4.lookAt(view, 0, 0f, 0f, 5f, 0f, 0f, 0f, 0f, 1f, 0f)
+        Mat4.multiply(it, 0, it, 0, view, 0)
+    }, 0)
+
+    private val unitBox = Bounds.of(floatArrayOf(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f))
+
+    private fun translation(x: Float, y: Float, z: Float) = Mat4.create().also { Mat4.translate(it, 0, x, y, z) }
+
+    private fun randomSet(count: Int) = CullingSet(count).apply {
+        repeat(count) {
+            val index = add(unitBox)
+            val world = translation(random.nextFloat() * 40f - 20f, random.nextFloat() * 40f - 20f,
+                    random.nextFloat() * 20f - 10f)
+            Mat4.scale(world, 0, 0.2f + random.nextFloat() * 2f, 1f, 0.5f)
+            setTransformed(index, unitBox, world, 0)
+        }
+    }
+
+    @Test
+    fun objectOutOfViewIsCulled() {
+        val set = CullingSet(3)
+        set.add(unitBox)
+        set.add(unitBox)
+        set.add(unitBox)
+        set.setTransformed(1, unitBox, translation(12f, 0f, 0f), 0)
+        set.setTransformed(2, unitBox, translation(0f, 0f, 9f), 0)
+
+        assertEquals(1, set.cull(frustum))
+
+        assertTrue(set.isVisible(0))
+        assertFalse(set.isVisible(1))
+        assertFalse(set.isVisible(2))
+        assertEquals(1, set.visibleCount)
+        assertEquals(2, set.culledCount)
+        assertEquals(0, set.visibleIndex(0))
+    }
+
+    @Test
+    fun transformedBoundsFollowScaleAndRotation() {
+        val set = CullingSet(1)
+        set.add(unitBox)
+        val world = translation(1f, 2f, 3f)
+        Mat4.rotate(world, 0, 45f, 0f, 0f, 1f)
+        Mat4.scale(world, 0, 2f, 2f, 2f)
+
+        set.setTransformed(0, unitBox, world, 0)
+
+        assertEquals(1f, set.centerX[0], 1e-6f)
+        assertEquals(3f, set.centerZ[0], 1e-6f)
+        // rotated square of side 2 spans its diagonal
+        assertEquals(Math.sqrt(2.0).toFloat(), set.extentX[0], 1e-5f)
+        assertEquals(1f, set.extentZ[0], 1e-6f)
+        assertEquals(unitBox.radius * 2f, set.radius[0], 1e-5f)
+    }
+
+    @Test
+    fun matchesPerObjectFrustumTest() {
+        val set = randomSet(1000)
+
+        set.cull(frustum)
+
+        for (index in 0 until set.count) {
+            val isInside = frustum.intersectsSphere(set.centerX[index], set.centerY[index], set.centerZ[index],
+                    set.radius[index]) && frustum.intersectsBox(set.centerX[index], set.centerY[index],
+                    set.centerZ[index], set.extentX[index], set.extentY[index], set.extentZ[index])
+            assertEquals("object $index", isInside, set.isVisible(index))
+        }
+        assertTrue(set.visibleCount in 1 until set.count)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun fullSetRejectsObjects() {
+        val set = CullingSet(1)
+        set.add(unitBox)
+
+        set.add(unitBox)
+    }
+}
@@ -0,0 +1,123 @@
+package com.snap.scene
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class RenderQueueTest {
+
+    private val queue = RenderQueue()
+
+    private fun replayed(): List<Int> {
+        val order = ArrayList<Int>()
+        queue.replay(object : RenderCommands {
+            override fun draw(command: Int) {
+                order.add(command)
+            }
+        })
+        return order
+    }
+
+    @Test
+    fun opaqueGoesFrontToBack() {
+        queue.submit(0, false, 1, 0, 5f, 0)
+        queue.submit(0, false, 1, 0, 0.5f, 1)
+        queue.submit(0, false, 1, 0, 120f, 2)
+        queue.submit(0, false, 1, 0, 2f, 3)
+
+        assertEquals(listOf(1, 3, 0, 2), replayed())
+    }
+
+    @Test
+    fun translucentGoesBackToFrontAfterOpaque() {
+        queue.submit(0, true, 1, 0, 2f, 0)
+        queue.submit(0, false, 1, 0, 9f, 1)
+        queue.submit(0, true, 1, 0, 30f, 2)
+        queue.submit(0, true, 7, 3, 4f, 3)
+
+        assertEquals(listOf(1, 2, 3, 0), replayed())
+    }
+
+    @Test
+    fun layerComesFirst() {
+        queue.submit(2, false, 1, 0, 1f, 0)
+        queue.submit(0, true, 1, 0, 1f, 1)
+        queue.submit(1, false, 9, 9, 1f, 2)
+
+        assertEquals(listOf(1, 2, 0), replayed())
+    }
+
+    @Test
+    fun opaqueDrawsAreGroupedByProgramAndTexture() {
+        val programs = intArrayOf(3, 1, 3, 1, 3, 1)
+        val textures = intArrayOf(1, 2, 2, 1, 1, 2)
+        for (command in programs.indices) {
+            queue.submit(0, false, programs[command], textures[command], command.toFloat(), command)
+        }
+
+        assertEquals(listOf(3, 1, 5, 0, 4, 2), replayed())
+        // every draw switches program, sorted each program is bound once
+        assertEquals(10, queue.unsortedStateChanges)
+        assertEquals(6, queue.sortedStateChanges)
+    }
+
+    @Test
+    fun equalKeysKeepSubmissionOrder() {
+        for (command in 0 until 10) {
+            queue.submit(0, false, 1, 1, 1f, command)
+        }
+
+        assertEquals((0 until 10).toList(), replayed())
+        assertEquals(2, queue.sortedStateChanges)
+    }
+
+    @Test
+    fun depthBehindCameraCountsAsZero() {
+        queue.submit(0, false, 1, 0, 1f, 0)
+        queue.submit(0, false, 1, 0, -3f, 1)
+        queue.submit(0, false, 1, 0, Float.NaN, 2)
+
+        assertEquals(listOf(1, 2, 0), replayed())
+    }
+
+    @Test
+    fun matchesComparisonSortOfManyDraws() {
+        val random = Random(5)
+        val expected = ArrayList<Triple<Int, Int, Float>>()
+        for (command in 0 until 1000) {
+            val program = random.nextInt(4)
+            val texture = random.nextInt(8)
+            val depth = random.nextFloat() * 100f
+            queue.submit(0, false, program, texture, depth, command)
+            expected.add(Triple(program, texture, depth))
+        }
+
+        val order = replayed()
+
+        assertEquals(expected.indices.sortedWith(compareBy({ expected[it].first }, { expected[it].second },
+                { expected[it].third })), order)
+        assertEquals(1000, queue.size)
+        assertEquals(order[999], queue.sortedCommand(999))
+    }
+
+    @Test
+    fun clearStartsNewFrame() {
+        queue.submit(0, false, 1, 0, 1f, 0)
+        queue.sort()
+
+        queue.clear()
+        queue.submit(0, false, 2, 0, 1f, 7)
+
+        assertEquals(listOf(7), replayed())
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun programIdHasToFitKey() {
+        queue.submit(0, false, 0x10000, 0, 1f, 0)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun layerHasToFitKey() {
+        queue.submit(256, false, 1, 0, 1f, 0)
+    }
+}
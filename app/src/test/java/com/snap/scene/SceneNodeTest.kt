@@ -0,0 +1,124 @@
+package com.snap.scene
+
+import com.snap.math.Mat4
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.util.Arrays
+
+class SceneNodeTest {
+
+    private val root = SceneNode("root")
+    private val boat = SceneNode("boat")
+    private val sail = SceneNode("sail").setPosition(0.3f, 0f, 0f)
+    private val sea = SceneNode("sea")
+
+    init {
+        root.addChild(boat).addChild(sea)
+        boat.addChild(sail)
+    }
+
+    private fun translation(x: Float, y: Float, z: Float) = Mat4.create().also { Mat4.translate(it, 0, x, y, z) }
+
+    @Test
+    fun childrenFollowParent() {
+        boat.setPosition(1f, 2f, 0f)
+        root.updateWorldTransforms()
+
+        assertArrayEquals(translation(1.3f, 2f, 0f), sail.worldMatrix, 1e-6f)
+        assertArrayEquals(translation(0f, 0f, 0f), sea.worldMatrix, 1e-6f)
+    }
+
+    @Test
+    fun parentScaleAppliesToChildPosition() {
+        boat.setScale(2f, 2f, 2f)
+        root.updateWorldTransforms()
+
+        val position = FloatArray(4)
+        Mat4.multiplyVec4(position, 0, sail.worldMatrix, 0, floatArrayOf(0f, 0f, 0f, 1f), 0)
+        assertArrayEquals(floatArrayOf(0.6f, 0f, 0f, 1f), position, 1e-6f)
+    }
+
+    @Test
+    fun unchangedNodesAreNotRecomputed() {
+        root.updateWorldTransforms()
+        assertEquals(0, root.updateWorldTransforms())
+
+        boat.setPosition(0f, 0f, 0f)
+        assertEquals("same position does not dirty the node", 0, root.updateWorldTransforms())
+    }
+
+    @Test
+    fun onlyMovedSubtreeIsRecomputed() {
+        root.updateWorldTransforms()
+
+        boat.setPosition(1f, 0f, 0f)
+        assertEquals(2, root.updateWorldTransforms())
+
+        sail.setRotation(90f, 0f, 0f, 1f)
+        assertEquals(1, root.updateWorldTransforms())
+    }
+
+    @Test
+    fun updatingDescendantAppliesDirtyAncestors() {
+        root.updateWorldTransforms()
+        boat.setPosition(1f, 0f, 0f)
+
+        sail.updateWorldTransforms()
+
+        assertArrayEquals(translation(1.3f, 0f, 0f), sail.worldMatrix, 1e-6f)
+    }
+
+    @Test
+    fun removedChildIsDetached() {
+        boat.removeChild(sail)
+        boat.setPosition(1f, 0f, 0f)
+        root.updateWorldTransforms()
+        sail.updateWorldTransforms()
+
+        assertEquals(null, sail.parent)
+        assertArrayEquals(translation(0.3f, 0f, 0f), sail.worldMatrix, 1e-6f)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun childCannotHaveTwoParents() {
+        sea.addChild(sail)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun ancestorCannotBecomeChild() {
+        sail.addChild(root)
+    }
+
+    @Test
+    fun viewProjectionIsCachedUntilCameraChanges() {
+        val camera = Camera()
+                .lookAt(0f, 0f, 3f, 0f, 0f, 0f, 0f, 1f, 0f)
+                .frustum(-1f, 1f, -1f, 1f, 1f, 10f)
+        val first = camera.viewProjectionMatrix.copyOf()
+        assertSame(camera.viewProjectionMatrix, camera.viewProjectionMatrix)
+
+        camera.lookAt(0f, 0f, 5f, 0f, 0f, 0f, 0f, 1f, 0f)
+
+        val expected = Mat4.create()
+        Mat4.multiply(expected, 0, camera.projectionMatrix, 0, camera.viewMatrix, 0)
+        assertArrayEquals(expected, camera.viewProjectionMatrix, 1e-6f)
+        assertFalse(Arrays.equals(first, camera.viewProjectionMatrix))
+    }
+
+    @Test
+    fun modelViewProjectionCombinesCameraAndWorld() {
+        val camera = Camera().frustum(-1f, 1f, -1f, 1f, 1f, 10f)
+        boat.setPosition(0f, 0f, -2f)
+        root.updateWorldTransforms()
+
+        val result = FloatArray(2 * Mat4.size)
+        camera.modelViewProjection(sail, result, Mat4.size)
+
+        val expected = Mat4.create()
+        Mat4.multiply(expected, 0, camera.viewProjectionMatrix, 0, sail.worldMatrix, 0)
+        assertArrayEquals(expected, result.copyOfRange(Mat4.size, 2 * Mat4.size), 0f)
+    }
+}
@@ -0,0 +1,89 @@
+package com.snap.benchmarks
+
+import com.snap.model.ComponentType
+import com.snap.model.NativeBufferPool
+import com.snap.model.VertexAttribute
+import com.snap.model.VertexFormat
+import com.snap.model.toNativeOrderBuffer
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+import java.nio.FloatBuffer
+import java.util.concurrent.TimeUnit
+
+/**
+ * Vertex data on its way to GL - copies into native memory, fresh and pooled, and interleaving separate
+ * attribute arrays into a single vertex buffer layout.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class BufferBenchmark {
+
+    @Param("64", "4096", "65536")
+    @JvmField
+    var vertexCount = 0
+
+    private val pool = NativeBufferPool()
+
+    private lateinit var positions: FloatArray
+    private lateinit var normals: FloatArray
+    private lateinit var colors: FloatArray
+
+    @Setup
+    fun setUp() {
+        positions = FloatArray(vertexCount * 3) { it * 0.01f }
+        normals = FloatArray(vertexCount * 3) { if (it % 3 == 1) 1f else 0f }
+        colors = FloatArray(vertexCount * 4) { (it % 5) * 0.25f }
+    }
+
+    @Benchmark
+    fun toNativeOrderBuffer(): FloatBuffer = positions.toNativeOrderBuffer()
+
+    @Benchmark
+    fun toNativeOrderBufferPooled(): Int {
+        val buffer = positions.toNativeOrderBuffer(pool)
+        val remaining = buffer.remaining()
+        pool.release(buffer)
+        return remaining
+    }
+
+    @Benchmark
+    fun interleaveFloats(): Int {
+        val packed = floatFormat.pack(pool, positions, normals, colors)
+        val size = packed.remaining()
+        pool.release(packed)
+        return size
+    }
+
+    @Benchmark
+    fun interleaveCompact(): Int {
+        val packed = compactFormat.pack(pool, positions, normals, colors)
+        val size = packed.remaining()
+        pool.release(packed)
+        return size
+    }
+
+    private companion object {
+
+        val floatFormat = VertexFormat(
+                VertexAttribute("a_Position", 3, ComponentType.FLOAT, false),
+                VertexAttribute("a_Normal", 3, ComponentType.FLOAT, false),
+                VertexAttribute("a_Color", 4, ComponentType.FLOAT, false))
+
+        /**
+         * Normals and colors quantized to bytes - packing converts every component.
+         */
+        val compactFormat = VertexFormat(
+                VertexAttribute("a_Position", 3, ComponentType.FLOAT, false),
+                VertexAttribute("a_Normal", 3, ComponentType.BYTE, true),
+                VertexAttribute("a_Color", 4, ComponentType.UNSIGNED_BYTE, true))
+    }
+}
@@ -0,0 +1,63 @@
+package com.snap.benchmarks
+
+import com.snap.math.Frustum
+import com.snap.math.Mat4
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Matrix math done a few times per frame - a multiplication, camera and projection matrices and frustum
+ * planes. Matrices of whole scenes are measured by [SceneBenchmark].
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class MatrixBenchmark {
+
+    private val projection = Mat4.create()
+    private val model = Mat4.create()
+    private val result = Mat4.create()
+    private val frustum = Frustum()
+
+    @Setup
+    fun setUp() {
+        Mat4.perspective(projection, 0, 45f, 1.5f, 1f, 100f)
+        Mat4.translate(model, 0, 1f, 2f, -3f)
+        Mat4.rotate(model, 0, 30f, 0f, 1f, 0f)
+    }
+
+    @Benchmark
+    fun multiply(): FloatArray {
+        Mat4.multiply(result, 0, projection, 0, model, 0)
+        return result
+    }
+
+    @Benchmark
+    fun lookAt(): FloatArray {
+        Mat4.lookAt(result, 0, 0f, 6f, 9f, 0f, 0f, 0f, 0f, 1f, 0f)
+        return result
+    }
+
+    @Benchmark
+    fun perspective(): FloatArray {
+        Mat4.perspective(result, 0, 45f, 1.5f, 1f, 100f)
+        return result
+    }
+
+    @Benchmark
+    fun frustum(): FloatArray {
+        Mat4.frustum(result, 0, -1.5f, 1.5f, -1f, 1f, 1f, 100f)
+        return result
+    }
+
+    @Benchmark
+    fun frustumPlanes(): Frustum = frustum.set(projection, 0)
+}
@@ -0,0 +1,107 @@
+package com.snap.benchmarks
+
+import com.snap.math.Bounds
+import com.snap.math.Frustum
+import com.snap.math.Mat4
+import com.snap.math.TransformBatch
+import com.snap.scene.CullingSet
+import com.snap.scene.RenderCommands
+import com.snap.scene.RenderQueue
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+/**
+ * Per frame work growing with the scene - Model-View-Projection matrices of every object, frustum culling,
+ * and building, sorting and replaying the draw list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class SceneBenchmark {
+
+    @Param("10", "100", "1000", "10000", "100000")
+    @JvmField
+    var objectCount = 0
+
+    private val viewProjection = Mat4.create()
+    private val frustum = Frustum()
+    private val queue = RenderQueue()
+
+    private lateinit var blackhole: Blackhole
+    private val consumeDraws = object : RenderCommands {
+        override fun draw(command: Int) = blackhole.consume(command)
+    }
+
+    private lateinit var batch: TransformBatch
+    private lateinit var modelViewProjections: FloatArray
+    private lateinit var cullingSet: CullingSet
+
+    // draw of every object as submitted by a scene - in no particular order
+    private lateinit var layers: IntArray
+    private lateinit var translucent: BooleanArray
+    private lateinit var programs: IntArray
+    private lateinit var textures: IntArray
+    private lateinit var depths: FloatArray
+
+    @Setup
+    fun setUp() {
+        Mat4.perspective(viewProjection, 0, 60f, 1.5f, 1f, 500f)
+        frustum.set(viewProjection, 0)
+        val random = Random(42)
+        val rows = Math.max(Math.sqrt(objectCount.toDouble()).toInt(), 1)
+        batch = TransformBatch(objectCount)
+        cullingSet = CullingSet(objectCount)
+        for (index in 0 until objectCount) {
+            batch.add()
+            // a grid around the camera - roughly a third of it in view
+            val x = (index % rows - rows / 2) * 2f
+            val z = (index / rows - rows / 2) * 2f
+            batch.setPosition(index, x, 0f, z)
+            batch.setRotationAxisAngle(index, random.nextFloat() * 360f, 0f, 1f, 0f)
+            // unit cube and the sphere around it
+            cullingSet.add(Bounds(x - 0.5f, -0.5f, z - 0.5f, x + 0.5f, 0.5f, z + 0.5f, 0.87f))
+        }
+        modelViewProjections = FloatArray(objectCount * Mat4.size)
+        layers = IntArray(objectCount) { random.nextInt(4) }
+        translucent = BooleanArray(objectCount) { random.nextInt(10) == 0 }
+        programs = IntArray(objectCount) { random.nextInt(16) }
+        textures = IntArray(objectCount) { random.nextInt(256) }
+        depths = FloatArray(objectCount) { random.nextFloat() * 500f }
+    }
+
+    @Benchmark
+    fun modelViewProjection(): FloatArray {
+        batch.computeModelViewProjection(viewProjection, 0, modelViewProjections)
+        return modelViewProjections
+    }
+
+    @Benchmark
+    fun cull(): Int = cullingSet.cull(frustum)
+
+    @Benchmark
+    fun buildAndSortDrawList(): RenderQueue {
+        queue.clear()
+        for (index in 0 until objectCount) {
+            queue.submit(layers[index], translucent[index], programs[index], textures[index], depths[index], index)
+        }
+        queue.sort()
+        return queue
+    }
+
+    @Benchmark
+    fun buildSortAndReplayDrawList(blackhole: Blackhole) {
+        this.blackhole = blackhole
+        buildAndSortDrawList().replay(consumeDraws)
+    }
+}
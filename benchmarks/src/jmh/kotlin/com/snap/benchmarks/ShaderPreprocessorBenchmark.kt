@@ -0,0 +1,79 @@
+package com.snap.benchmarks
+
+import com.snap.model.shading.ShaderPreprocessor
+import com.snap.model.shading.ShaderSources
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.InputStream
+import java.util.concurrent.TimeUnit
+
+/**
+ * Preprocessing the app's shaders into variants, read from memory so that disk does not count. Cold runs
+ * parse every file again, warm ones find variants in the cache - what every program lookup after the first
+ * one costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class ShaderPreprocessorBenchmark {
+
+    private lateinit var preprocessor: ShaderPreprocessor
+
+    @Setup
+    fun setUp() {
+        val directory = File(System.getProperty(shaderDirectoryProperty, "../app/src/main/res/raw"))
+        val files = directory.listFiles { file -> file.name.endsWith(".glsl") }
+                ?: throw FileNotFoundException("No shaders in $directory - set -D$shaderDirectoryProperty.")
+        val sources = files.associate { it.name to it.readBytes() }
+        preprocessor = ShaderPreprocessor(object : ShaderSources {
+            override fun open(name: String): InputStream =
+                    ByteArrayInputStream(sources[name] ?: throw FileNotFoundException(name))
+        })
+    }
+
+    @Benchmark
+    fun coldVariants(): Int {
+        preprocessor.clear()
+        return preprocessAll()
+    }
+
+    @Benchmark
+    fun cachedVariants(): Int = preprocessAll()
+
+    private fun preprocessAll(): Int {
+        var length = 0
+        for (defines in lightSceneVariants) {
+            length += preprocessor.preprocess("light_scene_vertex.glsl", defines).length
+            length += preprocessor.preprocess("light_scene_fragment.glsl", defines).length
+        }
+        for (defines in fleetVariants) {
+            length += preprocessor.preprocess("fleet_vertex.glsl", defines).length
+        }
+        return length
+    }
+
+    private companion object {
+
+        const val shaderDirectoryProperty = "snap.shaderDirectory"
+
+        val lightSceneVariants = listOf(
+                mapOf("AMBIENT" to "1"),
+                mapOf("AMBIENT" to "1", "DIFFUSE" to "1"),
+                mapOf("AMBIENT" to "1", "DIFFUSE" to "1", "SPECULAR" to "1"),
+                mapOf("AMBIENT" to "1", "DIFFUSE" to "1", "SPECULAR" to "1", "VERTEX_COLOR" to "1"))
+
+        val fleetVariants = listOf(
+                mapOf("INSTANCED_ARRAYS" to "1", "INSTANCES_PER_DRAW" to "240"),
+                mapOf("INSTANCES_PER_DRAW" to "24"))
+    }
+}
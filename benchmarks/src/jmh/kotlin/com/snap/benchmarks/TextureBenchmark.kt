@@ -0,0 +1,62 @@
+package com.snap.benchmarks
+
+import com.snap.concurrent.ParallelFor
+import com.snap.model.texture.CompressedImage
+import com.snap.model.texture.Etc1Encoder
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * ETC1 encoding of a 512x512 image - what a drawable costs on first run, on one thread and on several.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class TextureBenchmark {
+
+    @Param("1", "4")
+    @JvmField
+    var parallelism = 0
+
+    private lateinit var parallelFor: ParallelFor
+    private lateinit var encoder: Etc1Encoder
+
+    // smooth gradients with some waves, as in a photo rather than flat UI
+    private val pixels = IntArray(size * size) {
+        val x = it % size
+        val y = it / size
+        val red = 128 + (100 * Math.sin(x / 13.0)).toInt()
+        val green = y * 255 / size
+        val blue = 128 + (60 * Math.cos((x + y) / 21.0)).toInt()
+        (0xFF shl 24) or (red shl 16) or (green shl 8) or blue
+    }
+
+    @Setup
+    fun setUp() {
+        parallelFor = ParallelFor(parallelism)
+        encoder = Etc1Encoder(parallelFor)
+    }
+
+    @TearDown
+    fun tearDown() {
+        parallelFor.shutdown()
+    }
+
+    @Benchmark
+    fun encodeEtc1(): CompressedImage = encoder.encode(pixels, size, size)
+
+    private companion object {
+
+        const val size = 512
+    }
+}